@@ -0,0 +1,172 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationCache;
+import infn.bed.util.CalibrationTable;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * Compares the speed and the results of the reconstruction paths on synthetic
+ * events: the formulas evaluated for every hit (the reference), the
+ * precomputed coefficients with evaluated attenuation corrections, and the
+ * precomputed coefficients with tabulated attenuation corrections.
+ *
+ * <p>
+ * The benchmark lives in its own source tree and is not part of the jar. It
+ * is compiled against the application classes and run with
+ * </p>
+ *
+ * <pre>
+ * ant benchmark -Dargs="[calibrationFile [events [rounds]]]"
+ * </pre>
+ */
+public class ReconstructionBenchmark {
+
+	/**
+	 * The number of bar hits of a synthetic event.
+	 */
+	private static final int BAR_HITS = 6;
+
+	/**
+	 * The number of veto hits of a synthetic event.
+	 */
+	private static final int VETO_HITS = 4;
+
+	/**
+	 * Private constructor; the class only has static methods.
+	 */
+	private ReconstructionBenchmark() {
+	}
+
+	/**
+	 * Creates synthetic events with hits spread along the items.
+	 *
+	 * @param count The number of events.
+	 * @param random The random number generator.
+	 * @return The events.
+	 */
+	private static ChargeTimeData[] createEvents(int count, Random random) {
+		ChargeTimeData events[] = new ChargeTimeData[count];
+		for (int e = 0; e < count; e++) {
+			int layers[] = new int[BAR_HITS];
+			int paddles[] = new int[BAR_HITS];
+			int leftCharges[] = new int[BAR_HITS];
+			int rightCharges[] = new int[BAR_HITS];
+			int leftTimes[] = new int[BAR_HITS];
+			int rightTimes[] = new int[BAR_HITS];
+			for (int i = 0; i < BAR_HITS; i++) {
+				layers[i] = random.nextInt(3);
+				paddles[i] = random.nextInt(3);
+				leftCharges[i] = 500 + random.nextInt(20000);
+				rightCharges[i] = 500 + random.nextInt(20000);
+				leftTimes[i] = 10000 + random.nextInt(3000);
+				rightTimes[i] = 10000 + random.nextInt(3000);
+			}
+			int vetoLayers[] = new int[VETO_HITS];
+			int vetoChannels[] = new int[VETO_HITS];
+			int vetoCharges[] = new int[VETO_HITS];
+			int vetoTimes[] = new int[VETO_HITS];
+			int dualCharges[] = new int[VETO_HITS];
+			int dualTimes[] = new int[VETO_HITS];
+			for (int i = 0; i < VETO_HITS; i++) {
+				vetoLayers[i] = 1 + random.nextInt(2);
+				vetoChannels[i] = random.nextInt(vetoLayers[i] == 1 ? 6 : 8);
+				vetoCharges[i] = 500 + random.nextInt(20000);
+				vetoTimes[i] = 10000 + random.nextInt(3000);
+				dualCharges[i] = 500 + random.nextInt(20000);
+				dualTimes[i] = vetoTimes[i] + random.nextInt(200) - 100;
+			}
+			events[e] = new ChargeTimeData(layers, paddles, leftCharges, rightCharges, leftTimes, rightTimes, vetoLayers, vetoChannels, vetoCharges, vetoTimes, dualCharges, dualTimes);
+		}
+		return events;
+	}
+
+	/**
+	 * Runs one reconstruction path over all events.
+	 *
+	 * @param reconstruction The reconstruction.
+	 * @param events The events.
+	 * @param table The calibration constants.
+	 * @param reference true for the reference path, false for the coefficients.
+	 * @param results Receives the results.
+	 * @return The elapsed time in ns.
+	 */
+	private static long run(Reconstruction reconstruction, ChargeTimeData events[], CalibrationTable table, boolean reference, ReconstructedData results[]) {
+		long start = System.nanoTime();
+		for (int e = 0; e < events.length; e++) {
+			results[e] = reference ? reconstruction.reconstructReference(events[e], table) : reconstruction.reconstruct(events[e], table);
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns the largest relative energy deviation and the largest absolute time deviation.
+	 *
+	 * @param expected The reference results.
+	 * @param actual The results to compare.
+	 * @return The deviations.
+	 */
+	private static double[] compare(ReconstructedData expected[], ReconstructedData actual[]) {
+		double deviations[] = new double[2];
+		for (int e = 0; e < expected.length; e++) {
+			compare(expected[e].getBarEnergyArray(), actual[e].getBarEnergyArray(), expected[e].getBarTimeArray(), actual[e].getBarTimeArray(), deviations);
+			compare(expected[e].getVetoEnergyArray(), actual[e].getVetoEnergyArray(), expected[e].getVetoTimeArray(), actual[e].getVetoTimeArray(), deviations);
+		}
+		return deviations;
+	}
+
+	/**
+	 * Updates the largest deviations with the hits of one event.
+	 *
+	 * @param expectedEnergy The reference energies.
+	 * @param actualEnergy The energies to compare.
+	 * @param expectedTime The reference times.
+	 * @param actualTime The times to compare.
+	 * @param deviations The largest relative energy and absolute time deviations.
+	 */
+	private static void compare(double expectedEnergy[], double actualEnergy[], double expectedTime[], double actualTime[], double deviations[]) {
+		for (int i = 0; i < expectedEnergy.length; i++) {
+			if (expectedEnergy[i] != 0) {
+				deviations[0] = Math.max(deviations[0], Math.abs(actualEnergy[i] / expectedEnergy[i] - 1));
+			}
+			deviations[1] = Math.max(deviations[1], Math.abs(actualTime[i] - expectedTime[i]));
+		}
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param args
+	 *            Command-line arguments
+	 */
+	public static void main(String[] args) {
+		File file = new File((args.length > 0) ? args[0] : "data/calibrationConstantsSimulation.dat");
+		int count = (args.length > 1) ? Integer.parseInt(args[1]) : 200000;
+		int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+		CalibrationTable table = CalibrationCache.load(file);
+		ChargeTimeData events[] = createEvents(count, new Random(12345));
+		Reconstruction reconstruction = Reconstruction.getInstance();
+		ReconstructedData reference[] = new ReconstructedData[count];
+		ReconstructedData evaluated[] = new ReconstructedData[count];
+		ReconstructedData tabulated[] = new ReconstructedData[count];
+
+		long best[] = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+		for (int round = 0; round < rounds; round++) {
+			best[0] = Math.min(best[0], run(reconstruction, events, table, true, reference));
+			reconstruction.setAttenuationTables(false);
+			best[1] = Math.min(best[1], run(reconstruction, events, table, false, evaluated));
+			reconstruction.setAttenuationTables(true);
+			best[2] = Math.min(best[2], run(reconstruction, events, table, false, tabulated));
+		}
+
+		String names[] = { "reference", "coefficients", "coefficients + tables" };
+		double deviations[][] = { { 0, 0 }, compare(reference, evaluated), compare(reference, tabulated) };
+		System.out.println(count + " events, " + (BAR_HITS + VETO_HITS) + " hits each, best of " + rounds + " rounds");
+		for (int i = 0; i < names.length; i++) {
+			System.out.printf("%-22s %8.1f ns/event  max |dE/E| %.2e  max |dt| %.2e ns%n", names[i], (double) best[i] / count, deviations[i][0], deviations[i][1]);
+		}
+	}
+
+}
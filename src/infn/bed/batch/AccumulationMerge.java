@@ -0,0 +1,83 @@
+package infn.bed.batch;
+
+import infn.bed.event.AccumulationFile;
+import infn.bed.event.AccumulationSet;
+import infn.bed.event.CalibrationStatistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges accumulation files, for example the results of runs replayed on
+ * different machines with BatchAccumulation -save or saved from the display,
+ * into one accumulation file and optionally a text report.
+ *
+ * <pre>
+ * java infn.bed.batch.AccumulationMerge -o merged.acc [-text reportFile] file.acc...
+ * </pre>
+ */
+public class AccumulationMerge {
+
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE = "Usage: java infn.bed.batch.AccumulationMerge -o merged.acc [-text reportFile] file.acc...";
+
+	/**
+	 * Runs the merge.
+	 *
+	 * @param args
+	 *            Command-line arguments
+	 */
+	public static void main(String[] args) {
+		File outputFile = null;
+		File reportFile = null;
+		List<File> files = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-o")) {
+					outputFile = new File(args[++i]);
+				} else if (args[i].equals("-text")) {
+					reportFile = new File(args[++i]);
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException(args[i]);
+				} else {
+					files.add(new File(args[i]));
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		if (files.isEmpty() || outputFile == null) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		long start = System.nanoTime();
+		AccumulationSet set = new AccumulationSet(false);
+		CalibrationStatistics statistics = new CalibrationStatistics();
+		try {
+			for (File file : files) {
+				AccumulationFile.read(file, set, statistics);
+			}
+			AccumulationFile.write(outputFile, set, statistics);
+			if (reportFile != null) {
+				try (Writer out = new BufferedWriter(new FileWriter(reportFile))) {
+					BatchAccumulation.write(set, out);
+				}
+			}
+		} catch (IOException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		System.err.println("Merged " + files.size() + " files, " + set.getEventCount() + " events, in " + elapsed + " ms");
+	}
+
+}
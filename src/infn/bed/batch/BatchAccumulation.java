@@ -0,0 +1,474 @@
+package infn.bed.batch;
+
+import infn.bed.event.AccumulationFile;
+import infn.bed.event.AccumulationSet;
+import infn.bed.event.CachedEvent;
+import infn.bed.event.CalibrationFitter;
+import infn.bed.event.CalibrationStatistics;
+import infn.bed.event.DetectorSpectra;
+import infn.bed.event.EventDecoder;
+import infn.bed.event.Reconstruction;
+import infn.bed.event.VetoFilter;
+import infn.bed.util.CalibrationTable;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+
+/**
+ * Accumulates whole runs in parallel without a display: the coincidences, hit
+ * position maps and detector spectra of every event of a list of EVIO files.
+ *
+ * <p>
+ * The files are read sequentially and the unparsed events are handed to a
+ * pool of workers. Every worker fills its own private {@link AccumulationSet},
+ * so the workers share no counters; at the end the private sets are merged
+ * pairwise, in parallel, into one. Everything accumulated is an integer count,
+ * so the result is identical to a serial accumulation of the same events
+ * whatever the number of threads. With -progress, the private sets are also
+ * merged periodically into an approximate snapshot for a progress line. With -save, the result is
+ * also written as an accumulation file, to be merged with the results of other machines by
+ * {@link AccumulationMerge}, together with the calibration statistics. Every worker fills its own
+ * {@link CalibrationStatistics} too; as in the interactive accumulation, they start over when the
+ * calibration constants change, so the saved statistics are those of the events reconstructed with
+ * the last constants.
+ * </p>
+ *
+ * <pre>
+ * java infn.bed.batch.BatchAccumulation [-c calibrationFile | -s calibrationStore]
+ *         [-p channelParametersFile] [-o outputFile] [-save accumulationFile] [-t threads]
+ *         [-progress seconds] [-rejectVeto] file.evio...
+ * </pre>
+ */
+public class BatchAccumulation {
+
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE = "Usage: java infn.bed.batch.BatchAccumulation [-c calibrationFile | -s calibrationStore] [-p channelParametersFile] [-o outputFile] [-save accumulationFile] [-t threads] [-progress seconds] [-rejectVeto] file.evio...";
+
+	/**
+	 * The number of submitted events per worker that may wait to be processed.
+	 */
+	private static final int PENDING_EVENTS_PER_WORKER = 64;
+
+	/**
+	 * The decoder, the private accumulation set and the private calibration statistics of a worker
+	 * thread.
+	 */
+	private class Slot {
+
+		/**
+		 * The parser and decoder of the worker.
+		 */
+		private final DecoderWorker worker = new DecoderWorker();
+
+		/**
+		 * The private accumulation set of the worker.
+		 */
+		private final AccumulationSet set = new AccumulationSet(false);
+
+		/**
+		 * The private calibration statistics of the worker.
+		 */
+		private final CalibrationStatistics calibrationStatistics = new CalibrationStatistics();
+
+		/**
+		 * Constructor; registers the set and the statistics for the final merge.
+		 */
+		private Slot() {
+			sets.add(set);
+			statistics.add(calibrationStatistics);
+		}
+
+	}
+
+	/**
+	 * The private accumulation sets of all workers.
+	 */
+	private final ConcurrentLinkedQueue<AccumulationSet> sets = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The private calibration statistics of all workers.
+	 */
+	private final ConcurrentLinkedQueue<CalibrationStatistics> statistics = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The calibration constants in use when the last event was read, or null.
+	 */
+	private CalibrationTable lastTable;
+
+	/**
+	 * The merged calibration statistics, available after {@link #finish()}.
+	 */
+	private CalibrationStatistics calibrationStatistics = new CalibrationStatistics();
+
+	/**
+	 * The slot of each pool thread.
+	 */
+	private final ThreadLocal<Slot> slots = ThreadLocal.withInitial(Slot::new);
+
+	/**
+	 * The worker pool.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * The maximum number of events waiting to be processed.
+	 */
+	private final int maxPendingEvents;
+
+	/**
+	 * Bounds the number of events waiting to be processed.
+	 */
+	private final Semaphore pending;
+
+	/**
+	 * The first failure of a worker, or null.
+	 */
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	/**
+	 * The number of events read.
+	 */
+	private volatile long eventCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads The number of worker threads.
+	 */
+	public BatchAccumulation(int threads) {
+		pool = Executors.newFixedThreadPool(threads);
+		maxPendingEvents = threads * PENDING_EVENTS_PER_WORKER;
+		pending = new Semaphore(maxPendingEvents);
+	}
+
+	/**
+	 * Hands every event of a file to the workers.
+	 *
+	 * @param file The EVIO file.
+	 * @throws IOException If the file cannot be read or an event could not be processed.
+	 * @throws EvioException If the file is not a valid EVIO file.
+	 */
+	public void process(File file) throws IOException, EvioException {
+		EvioReader reader = new EvioReader(file);
+		try {
+			EvioEvent event;
+			while ((event = reader.nextEvent()) != null) {
+				if (event.getHeader().getTag() == EventDecoder.PRESTART_TAG) {
+					BatchReconstruction.selectRun(EventDecoder.getPrestartRunNumber(event));
+				}
+				final EvioEvent unparsed = event;
+				final CalibrationTable table = Reconstruction.getInstance().getCalibrationTable();
+				lastTable = table;
+				acquire(1);
+				pool.execute(() -> {
+					try {
+						accumulate(unparsed, table);
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					} finally {
+						pending.release();
+					}
+				});
+				eventCount++;
+				checkFailure();
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Parses, decodes, reconstructs and accumulates an event on the current
+	 * worker.
+	 *
+	 * @param event The unparsed event.
+	 * @param table The calibration constants in use when the event was read.
+	 * @throws EvioException If the event cannot be parsed.
+	 */
+	private void accumulate(EvioEvent event, CalibrationTable table) throws EvioException {
+		Slot slot = slots.get();
+		CachedEvent decoded = slot.worker.decode(event, table);
+		if (decoded != null) {
+			slot.set.fill(decoded.getReconstructedData());
+			slot.calibrationStatistics.fill(decoded.getReconstructedData(), decoded.getCalibrationTable());
+		}
+	}
+
+	/**
+	 * Waits for all submitted events and merges the private sets of the
+	 * workers pairwise, in parallel. The calibration statistics of the workers
+	 * are merged too; see {@link #getCalibrationStatistics()}.
+	 *
+	 * @return The accumulated set.
+	 * @throws IOException If an event could not be processed.
+	 */
+	public AccumulationSet finish() throws IOException {
+		acquire(maxPendingEvents);
+		pending.release(maxPendingEvents);
+		checkFailure();
+
+		calibrationStatistics = new CalibrationStatistics();
+		for (CalibrationStatistics workerStatistics : statistics) {
+			// a worker that saw no event since the constants changed holds earlier statistics
+			if (workerStatistics.getCalibrationTable() == lastTable) {
+				calibrationStatistics.merge(workerStatistics);
+			}
+		}
+
+		List<AccumulationSet> level = new ArrayList<>(sets);
+		if (level.isEmpty()) {
+			return new AccumulationSet(false);
+		}
+		try {
+			while (level.size() > 1) {
+				List<Future<AccumulationSet>> merges = new ArrayList<>();
+				for (int i = 0; i + 1 < level.size(); i += 2) {
+					final AccumulationSet a = level.get(i);
+					final AccumulationSet b = level.get(i + 1);
+					merges.add(pool.submit(() -> {
+						a.merge(b);
+						return a;
+					}));
+				}
+				List<AccumulationSet> next = new ArrayList<>();
+				for (Future<AccumulationSet> merge : merges) {
+					next.add(merge.get());
+				}
+				if (level.size() % 2 == 1) {
+					next.add(level.get(level.size() - 1));
+				}
+				level = next;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while merging", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not merge the accumulated data", e.getCause());
+		}
+		return level.get(0);
+	}
+
+	/**
+	 * Returns the calibration statistics of the events reconstructed with the
+	 * calibration constants in use at the end.
+	 *
+	 * @return The merged calibration statistics, empty before {@link #finish()}.
+	 */
+	public CalibrationStatistics getCalibrationStatistics() {
+		return calibrationStatistics;
+	}
+
+	/**
+	 * Merges the private sets of the workers into a new set while they are
+	 * being filled. The counts are only approximate, which is good enough for
+	 * a progress display.
+	 *
+	 * @return The snapshot.
+	 */
+	public AccumulationSet snapshot() {
+		AccumulationSet snapshot = new AccumulationSet(false);
+		for (AccumulationSet set : sets) {
+			snapshot.merge(set);
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Acquires permits of the pending event semaphore.
+	 *
+	 * @param permits The number of permits.
+	 * @throws IOException If the thread is interrupted.
+	 */
+	private void acquire(int permits) throws IOException {
+		try {
+			pending.acquire(permits);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the workers", e);
+		}
+	}
+
+	/**
+	 * Rethrows the first failure of a worker.
+	 *
+	 * @throws IOException If an event could not be processed.
+	 */
+	private void checkFailure() throws IOException {
+		Throwable t = failure.get();
+		if (t != null) {
+			throw new IOException("Could not process an event", t);
+		}
+	}
+
+	/**
+	 * Stops the worker pool.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns the number of events read.
+	 *
+	 * @return The number of events read.
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Writes the accumulated counts as text: the hits and out-of-range
+	 * counts of every detector, the multiplicity distributions, and the
+	 * energy and time spectra of every detector with hits.
+	 *
+	 * @param set The accumulated set.
+	 * @param out The output.
+	 * @throws IOException If the output cannot be written.
+	 */
+	static void write(AccumulationSet set, Writer out) throws IOException {
+		DetectorSpectra spectra = set.getDetectorSpectra();
+		out.write("# events " + set.getEventCount() + "\n");
+		out.write("# detector hits energyOutOfRange timeOutOfRange\n");
+		for (int d = 0; d < DetectorSpectra.DETECTORS; d++) {
+			out.write(CalibrationFitter.getItemName(d) + " " + spectra.getHitCount(d) + " "
+					+ spectra.getEnergyOutOfRange(d) + " " + spectra.getTimeOutOfRange(d) + "\n");
+		}
+		write(out, "barMultiplicity", spectra.getBarMultiplicity());
+		write(out, "vetoMultiplicity", spectra.getVetoMultiplicity());
+		out.write("# energy " + DetectorSpectra.ENERGY_BINS + " bins " + DetectorSpectra.ENERGY_MIN + " to "
+				+ DetectorSpectra.ENERGY_MAX + " MeV, time " + DetectorSpectra.TIME_BINS + " bins "
+				+ DetectorSpectra.TIME_MIN + " to " + DetectorSpectra.TIME_MAX + " ns\n");
+		for (int d = 0; d < DetectorSpectra.DETECTORS; d++) {
+			if (spectra.getHitCount(d) > 0) {
+				write(out, "energy " + CalibrationFitter.getItemName(d), spectra.getEnergySpectrum(d));
+				write(out, "time " + CalibrationFitter.getItemName(d), spectra.getTimeSpectrum(d));
+			}
+		}
+	}
+
+	/**
+	 * Writes one labelled line of counts.
+	 *
+	 * @param out The output.
+	 * @param label The label.
+	 * @param counts The counts.
+	 * @throws IOException If the output cannot be written.
+	 */
+	private static void write(Writer out, String label, long counts[]) throws IOException {
+		StringBuilder sb = new StringBuilder(label);
+		for (long count : counts) {
+			sb.append(' ').append(count);
+		}
+		out.write(sb.append('\n').toString());
+	}
+
+	/**
+	 * Runs the batch accumulation.
+	 *
+	 * @param args
+	 *            Command-line arguments
+	 */
+	public static void main(String[] args) {
+		File calibrationFile = null;
+		File calibrationStore = null;
+		File channelParametersFile = null;
+		File outputFile = null;
+		File accumulationFile = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int progressSeconds = 0;
+		List<File> files = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-c")) {
+					calibrationFile = new File(args[++i]);
+				} else if (args[i].equals("-s")) {
+					calibrationStore = new File(args[++i]);
+				} else if (args[i].equals("-p")) {
+					channelParametersFile = new File(args[++i]);
+				} else if (args[i].equals("-o")) {
+					outputFile = new File(args[++i]);
+				} else if (args[i].equals("-save")) {
+					accumulationFile = new File(args[++i]);
+				} else if (args[i].equals("-t")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-progress")) {
+					progressSeconds = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-rejectVeto")) {
+					VetoFilter.getInstance().setEnabled(true);
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException(args[i]);
+				} else {
+					files.add(new File(args[i]));
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		if (files.isEmpty() || threads < 1 || progressSeconds < 0) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		BatchReconstruction.configure(calibrationFile, calibrationStore, channelParametersFile);
+
+		final BatchAccumulation batch = new BatchAccumulation(threads);
+		ScheduledExecutorService progress = null;
+		if (progressSeconds > 0) {
+			progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "BED accumulation progress");
+				thread.setDaemon(true);
+				return thread;
+			});
+			progress.scheduleAtFixedRate(() -> System.err.println(batch.getEventCount() + " events read, "
+					+ batch.snapshot().getEventCount() + " accumulated"), progressSeconds, progressSeconds, TimeUnit.SECONDS);
+		}
+
+		long start = System.nanoTime();
+		try (Writer out = new BufferedWriter((outputFile == null) ? new OutputStreamWriter(System.out)
+				: new FileWriter(outputFile))) {
+			for (File file : files) {
+				batch.process(file);
+			}
+			AccumulationSet set = batch.finish();
+			if (progress != null) {
+				progress.shutdownNow();
+			}
+			write(set, out);
+			if (accumulationFile != null) {
+				AccumulationFile.write(accumulationFile, set, batch.getCalibrationStatistics());
+			}
+		} catch (IOException | EvioException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} finally {
+			batch.shutdown();
+		}
+		long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+		System.err.println(batch.getEventCount() + " events read in " + elapsed + " ms ("
+				+ (batch.getEventCount() * 1000 / elapsed) + " events/s) on " + threads + " threads");
+		System.err.println(VetoFilter.getInstance());
+	}
+
+}
@@ -0,0 +1,317 @@
+package infn.bed.batch;
+
+import infn.bed.event.CachedEvent;
+import infn.bed.event.EventDecoder;
+import infn.bed.event.Reconstruction;
+import infn.bed.event.VetoFilter;
+import infn.bed.util.CalibrationStore;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.ChannelParameters;
+import infn.bed.util.InvalidCalibrationFileException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+import org.jlab.coda.jevio.EvioReader;
+
+/**
+ * Decodes, finds the pulses of and reconstructs every event of one or more
+ * EVIO files without the graphical interface, and writes one summary line per
+ * event (see {@link EventSummary}).
+ *
+ * <p>
+ * The files are read sequentially; the unparsed events are handed to a pool of
+ * workers, each with its own jevio parser and {@link EventDecoder}. The
+ * summaries are written in event order.
+ * </p>
+ *
+ * <pre>
+ * java infn.bed.batch.BatchReconstruction [-c calibrationFile | -s calibrationStore]
+ *         [-p channelParametersFile] [-o outputFile] [-t threads] [-rejectVeto]
+ *         file.evio...
+ * </pre>
+ *
+ * <p>
+ * With a calibration store, the constants are selected from the run number of
+ * every prestart event; the events that follow are reconstructed with them.
+ * </p>
+ */
+public class BatchReconstruction {
+
+	/**
+	 * The usage message.
+	 */
+	private static final String USAGE = "Usage: java infn.bed.batch.BatchReconstruction [-c calibrationFile | -s calibrationStore] [-p channelParametersFile] [-o outputFile] [-t threads] [-rejectVeto] file.evio...";
+
+	/**
+	 * The number of submitted events per worker that may wait to be written.
+	 */
+	private static final int PENDING_EVENTS_PER_WORKER = 64;
+
+	/**
+	 * The worker of each pool thread.
+	 */
+	private final ThreadLocal<DecoderWorker> workers = ThreadLocal.withInitial(DecoderWorker::new);
+
+	/**
+	 * The worker pool.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * The maximum number of events waiting to be written.
+	 */
+	private final int maxPendingEvents;
+
+	/**
+	 * The number of events read.
+	 */
+	private long eventCount;
+
+	/**
+	 * The number of summaries written.
+	 */
+	private long summaryCount;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param threads The number of worker threads.
+	 */
+	public BatchReconstruction(int threads) {
+		pool = Executors.newFixedThreadPool(threads);
+		maxPendingEvents = threads * PENDING_EVENTS_PER_WORKER;
+	}
+
+	/**
+	 * Processes every event of a file.
+	 *
+	 * @param file The EVIO file.
+	 * @param out The summary output.
+	 * @throws IOException If the file cannot be read or the output cannot be written.
+	 * @throws EvioException If the file is not a valid EVIO file.
+	 */
+	public void process(File file, Writer out) throws IOException, EvioException {
+		out.write("# file " + file.getPath() + "\n");
+		EvioReader reader = new EvioReader(file);
+		Deque<Future<String>> pending = new ArrayDeque<>();
+		try {
+			int eventNumber = 0;
+			EvioEvent event;
+			while ((event = reader.nextEvent()) != null) {
+				if (event.getHeader().getTag() == EventDecoder.PRESTART_TAG) {
+					selectRun(EventDecoder.getPrestartRunNumber(event));
+				}
+				final int number = ++eventNumber;
+				final EvioEvent unparsed = event;
+				final CalibrationTable table = Reconstruction.getInstance().getCalibrationTable();
+				pending.add(pool.submit(() -> summarize(number, unparsed, table)));
+				eventCount++;
+				if (pending.size() >= maxPendingEvents) {
+					write(pending.poll(), out);
+				}
+			}
+			while (!pending.isEmpty()) {
+				write(pending.poll(), out);
+			}
+		} finally {
+			for (Future<String> future : pending) {
+				future.cancel(false);
+			}
+			reader.close();
+		}
+	}
+
+	/**
+	 * Selects the calibration constants of a new run from the calibration store, if one is used.
+	 *
+	 * @param runNumber The run number from the prestart event.
+	 */
+	static void selectRun(int runNumber) {
+		if (runNumber < 0) {
+			return;
+		}
+		try {
+			CalibrationTable table = Reconstruction.getInstance().selectRun(runNumber);
+			if (table != null) {
+				System.err.println("Run " + runNumber + ": calibration constants from " + table.getSource());
+			} else if (Reconstruction.getInstance().getCalibrationStore() != null) {
+				System.err.println("Run " + runNumber + ": no calibration constants in the store, keeping the constants in use");
+			}
+		} catch (InvalidCalibrationFileException e) {
+			System.err.println("Run " + runNumber + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Parses, decodes and reconstructs an event on the current worker.
+	 *
+	 * @param eventNumber The number of the event in the file.
+	 * @param event The unparsed event.
+	 * @param table The calibration constants in use when the event was read.
+	 * @return The summary line, or null if the event was rejected or had no
+	 *         bar or veto data.
+	 * @throws EvioException If the event cannot be parsed.
+	 */
+	private String summarize(int eventNumber, EvioEvent event, CalibrationTable table) throws EvioException {
+		CachedEvent decoded = workers.get().decode(event, table);
+		if (decoded == null) {
+			return null;
+		}
+		return EventSummary.format(eventNumber, decoded.getReconstructedData());
+	}
+
+	/**
+	 * Waits for a summary and writes it.
+	 *
+	 * @param future The pending summary.
+	 * @param out The summary output.
+	 * @throws IOException If the output cannot be written or the event could not be processed.
+	 */
+	private void write(Future<String> future, Writer out) throws IOException {
+		String summary;
+		try {
+			summary = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for an event", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not process an event", e.getCause());
+		}
+		if (summary != null) {
+			out.write(summary);
+			out.write('\n');
+			summaryCount++;
+		}
+	}
+
+	/**
+	 * Stops the worker pool.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Returns the number of events read.
+	 *
+	 * @return The number of events read.
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Returns the number of summaries written.
+	 *
+	 * @return The number of summaries written.
+	 */
+	public long getSummaryCount() {
+		return summaryCount;
+	}
+
+	/**
+	 * Loads the channel parameters and the calibration constants of a batch
+	 * job, exiting if the calibration store cannot be opened.
+	 *
+	 * @param calibrationFile The calibration file, or null.
+	 * @param calibrationStore The calibration store directory, or null.
+	 * @param channelParametersFile The channel parameters file, or null for the defaults.
+	 */
+	static void configure(File calibrationFile, File calibrationStore, File channelParametersFile) {
+		if (channelParametersFile != null) {
+			ChannelParameters.setCurrent(ChannelParameters.parse(channelParametersFile));
+		}
+		if (calibrationFile != null) {
+			Reconstruction.getInstance().setCalibrationFile(calibrationFile);
+		} else if (calibrationStore != null) {
+			try {
+				Reconstruction.getInstance().setCalibrationStore(new CalibrationStore(calibrationStore));
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				System.exit(1);
+			}
+		} else {
+			System.err.println("No calibration file given; energies and times are not calibrated.");
+		}
+	}
+
+	/**
+	 * Runs the batch reconstruction.
+	 *
+	 * @param args
+	 *            Command-line arguments
+	 */
+	public static void main(String[] args) {
+		File calibrationFile = null;
+		File calibrationStore = null;
+		File channelParametersFile = null;
+		File outputFile = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<File> files = new ArrayList<>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-c")) {
+					calibrationFile = new File(args[++i]);
+				} else if (args[i].equals("-s")) {
+					calibrationStore = new File(args[++i]);
+				} else if (args[i].equals("-p")) {
+					channelParametersFile = new File(args[++i]);
+				} else if (args[i].equals("-o")) {
+					outputFile = new File(args[++i]);
+				} else if (args[i].equals("-t")) {
+					threads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-rejectVeto")) {
+					VetoFilter.getInstance().setEnabled(true);
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException(args[i]);
+				} else {
+					files.add(new File(args[i]));
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+		if (files.isEmpty() || threads < 1) {
+			System.err.println(USAGE);
+			System.exit(1);
+		}
+
+		configure(calibrationFile, calibrationStore, channelParametersFile);
+
+		BatchReconstruction batch = new BatchReconstruction(threads);
+		long start = System.nanoTime();
+		try (Writer out = new BufferedWriter((outputFile == null) ? new OutputStreamWriter(System.out)
+				: new FileWriter(outputFile))) {
+			out.write(EventSummary.HEADER + "\n");
+			for (File file : files) {
+				batch.process(file, out);
+			}
+		} catch (IOException | EvioException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} finally {
+			batch.shutdown();
+		}
+		long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+		System.err.println(batch.getEventCount() + " events read, " + batch.getSummaryCount() + " summaries written in " + elapsed + " ms ("
+				+ (batch.getEventCount() * 1000 / elapsed) + " events/s)");
+		System.err.println(VetoFilter.getInstance());
+	}
+
+}
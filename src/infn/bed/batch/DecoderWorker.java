@@ -0,0 +1,50 @@
+package infn.bed.batch;
+
+import infn.bed.event.CachedEvent;
+import infn.bed.event.EventDecoder;
+import infn.bed.util.CalibrationTable;
+
+import org.jlab.coda.jevio.EventParser;
+import org.jlab.coda.jevio.EvioEvent;
+import org.jlab.coda.jevio.EvioException;
+
+/**
+ * The jevio parser and the decoder of one worker thread of a batch job.
+ */
+class DecoderWorker {
+
+	/**
+	 * The jevio parser of the worker.
+	 */
+	private final EventParser parser = new EventParser();
+
+	/**
+	 * The decoder listening to the parser.
+	 */
+	private final EventDecoder decoder = new EventDecoder(false);
+
+	/**
+	 * Constructor.
+	 */
+	DecoderWorker() {
+		parser.addEvioListener(decoder);
+	}
+
+	/**
+	 * Parses, decodes and reconstructs an event.
+	 *
+	 * @param event The unparsed event.
+	 * @param table The calibration constants in use when the event was read.
+	 * @return The decoded event, or null if the event was rejected or had no
+	 *         bar or veto data.
+	 * @throws EvioException If the event cannot be parsed.
+	 */
+	CachedEvent decode(EvioEvent event, CalibrationTable table) throws EvioException {
+		decoder.setCalibrationTable(table);
+		parser.parseEvent(event);
+		CachedEvent decoded = decoder.getEvent();
+		decoder.clear();
+		return decoded;
+	}
+
+}
@@ -0,0 +1,114 @@
+package infn.bed.batch;
+
+import infn.bed.event.ReconstructedData;
+import infn.bed.geometry.GeometricConstants;
+
+import java.util.Formatter;
+import java.util.Locale;
+
+/**
+ * Formats the reconstructed quantities of one event as a single line of text.
+ *
+ * <p>
+ * A line holds the event number, the number of bars and vetoes that fired and,
+ * for every fired detector, its tag (b1..b9, v1..v34), the total energy in MeV,
+ * the number of hits and the comma-separated hit times in ns:
+ * </p>
+ *
+ * <pre>
+ * 17 2 1 b4 12.310 1 3.20 b5 8.102 2 3.41,57.80 v9 1.204 1 2.10
+ * </pre>
+ */
+public class EventSummary {
+
+	/**
+	 * The comment line describing the columns.
+	 */
+	public static final String HEADER = "# event bars vetoes {tag energy[MeV] hits times[ns]}...";
+
+	/**
+	 * Private constructor; the class only has static methods.
+	 */
+	private EventSummary() {
+	}
+
+	/**
+	 * Formats the summary line of an event.
+	 *
+	 * @param eventNumber The number of the event in the file.
+	 * @param rd The reconstructed data of the event.
+	 * @return The summary line, without a line terminator.
+	 */
+	public static String format(int eventNumber, ReconstructedData rd) {
+		int barNumberArray[] = rd.getBarNumberArray();
+		double barEnergyArray[] = rd.getBarEnergyArray();
+		double barTimeArray[] = rd.getBarTimeArray();
+		int vetoNumberArray[] = rd.getVetoNumberArray();
+		double vetoEnergyArray[] = rd.getVetoEnergyArray();
+		double vetoTimeArray[] = rd.getVetoTimeArray();
+
+		int barHits[] = new int[GeometricConstants.BARS + 1];
+		double barEnergy[] = new double[GeometricConstants.BARS + 1];
+		int bars = count(barNumberArray, barEnergyArray, barHits, barEnergy);
+		int vetoHits[] = new int[GeometricConstants.VETOES + 1];
+		double vetoEnergy[] = new double[GeometricConstants.VETOES + 1];
+		int vetoes = count(vetoNumberArray, vetoEnergyArray, vetoHits, vetoEnergy);
+
+		Formatter formatter = new Formatter(new StringBuilder(), Locale.US);
+		formatter.format("%d %d %d", eventNumber, bars, vetoes);
+		append(formatter, "b", barNumberArray, barTimeArray, barHits, barEnergy);
+		append(formatter, "v", vetoNumberArray, vetoTimeArray, vetoHits, vetoEnergy);
+		return formatter.toString();
+	}
+
+	/**
+	 * Sums the hits and the energy of every detector.
+	 *
+	 * @param numberArray The detector number of every hit (0 if unknown).
+	 * @param energyArray The energy of every hit.
+	 * @param hits Filled with the number of hits, indexed by detector number.
+	 * @param energy Filled with the total energy, indexed by detector number.
+	 * @return The number of detectors with at least one hit.
+	 */
+	private static int count(int numberArray[], double energyArray[], int hits[], double energy[]) {
+		int fired = 0;
+		for (int i = 0; i < numberArray.length; i++) {
+			int detector = numberArray[i];
+			if (detector < 1 || detector >= hits.length) {
+				continue;
+			}
+			if (hits[detector]++ == 0) {
+				fired++;
+			}
+			energy[detector] += energyArray[i];
+		}
+		return fired;
+	}
+
+	/**
+	 * Appends the fields of every fired detector.
+	 *
+	 * @param formatter The formatter of the line.
+	 * @param prefix The tag prefix of the detectors.
+	 * @param numberArray The detector number of every hit.
+	 * @param timeArray The time of every hit.
+	 * @param hits The number of hits, indexed by detector number.
+	 * @param energy The total energy, indexed by detector number.
+	 */
+	private static void append(Formatter formatter, String prefix, int numberArray[], double timeArray[], int hits[], double energy[]) {
+		for (int detector = 1; detector < hits.length; detector++) {
+			if (hits[detector] == 0) {
+				continue;
+			}
+			formatter.format(" %s%d %.3f %d ", prefix, detector, energy[detector], hits[detector]);
+			String separator = "";
+			for (int i = 0; i < numberArray.length; i++) {
+				if (numberArray[i] == detector) {
+					formatter.format("%s%.2f", separator, timeArray[i]);
+					separator = ",";
+				}
+			}
+		}
+	}
+
+}
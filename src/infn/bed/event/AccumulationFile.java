@@ -0,0 +1,305 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Saves accumulated data to a compact binary file and adds it back, so that an accumulation
+ * survives the session and runs replayed on different machines can be merged.
+ *
+ * <p>
+ * A file holds every count array of an {@link AccumulationSet} and of the
+ * {@link CalibrationStatistics} in a fixed order. Most of the bins of the spectra and maps are
+ * empty, so a count array is stored sparse: its length, the number of non-zero counts, then for
+ * each of them the distance from the previous one and the count, both as variable-length integers
+ * of 7 bits per byte. The sums of the calibration statistics are stored as plain doubles.
+ * </p>
+ *
+ * <p>
+ * Binary layout (big-endian): magic, version, the number of count arrays and of sum arrays, the
+ * arrays, and the CRC-32 of everything before it. Reading checks the checksum and that every array
+ * has the length of the arrays it is added to before anything is added.
+ * </p>
+ */
+public class AccumulationFile {
+
+	/**
+	 * The suffix of accumulation files.
+	 */
+	public static final String SUFFIX = ".acc";
+
+	/**
+	 * The first word of an accumulation file ("BEDA").
+	 */
+	private static final int MAGIC = 0x42454441;
+
+	/**
+	 * The version of the binary layout.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Private constructor; the class only has static methods.
+	 */
+	private AccumulationFile() {
+	}
+
+	/**
+	 * Writes accumulated data, replacing the file in one step.
+	 *
+	 * @param file The file.
+	 * @param set The coincidences, hit position maps and detector spectra.
+	 * @param statistics The calibration statistics.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public static void write(File file, AccumulationSet set, CalibrationStatistics statistics) throws IOException {
+		List<long[]> counts = getCounts(set, statistics);
+		double sums[][] = statistics.snapshotSums();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(counts.size());
+		out.writeInt(sums.length);
+		for (long array[] : counts) {
+			writeSparse(out, array);
+		}
+		for (double array[] : sums) {
+			out.writeInt(array.length);
+			for (double value : array) {
+				out.writeDouble(value);
+			}
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray());
+		out.writeLong(crc.getValue());
+		out.flush();
+
+		File parent = file.getAbsoluteFile().getParentFile();
+		Path temporary = Files.createTempFile(parent.toPath(), file.getName(), ".tmp");
+		try {
+			Files.write(temporary, bytes.toByteArray());
+			Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Reads accumulated data and adds it to a set and calibration statistics. Nothing is added if
+	 * the file is damaged, was written with a different binning or would overflow a bin.
+	 *
+	 * @param file The file.
+	 * @param set The set to add the coincidences, hit position maps and detector spectra to.
+	 * @param statistics The statistics to add the calibration statistics to.
+	 * @throws IOException If the file cannot be read, is not an accumulation file, is damaged, does
+	 *             not match the binning, or would overflow a calibration statistics bin.
+	 */
+	public static void read(File file, AccumulationSet set, CalibrationStatistics statistics) throws IOException {
+		byte bytes[] = Files.readAllBytes(file.toPath());
+		if (bytes.length < 4 * Integer.BYTES + Long.BYTES) {
+			throw new IOException(file.getPath() + ": not an accumulation file");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (buffer.getInt() != MAGIC) {
+			throw new IOException(file.getPath() + ": not an accumulation file");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException(file.getPath() + ": unsupported accumulation file version " + version);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length - Long.BYTES);
+		if (buffer.getLong(bytes.length - Long.BYTES) != crc.getValue()) {
+			throw new IOException(file.getPath() + ": checksum mismatch, the file is damaged");
+		}
+		buffer.limit(bytes.length - Long.BYTES);
+
+		List<long[]> expectedCounts = getCounts(set, statistics);
+		double expectedSums[][] = statistics.snapshotSums();
+		try {
+			if (buffer.getInt() != expectedCounts.size() || buffer.getInt() != expectedSums.length) {
+				throw new IOException(file.getPath() + ": different layout");
+			}
+			List<long[]> counts = new ArrayList<>(expectedCounts.size());
+			for (long expected[] : expectedCounts) {
+				long array[] = readSparse(buffer, expected.length);
+				if (array == null) {
+					throw new IOException(file.getPath() + ": different binning");
+				}
+				counts.add(array);
+			}
+			double sums[][] = new double[expectedSums.length][];
+			for (int s = 0; s < sums.length; s++) {
+				if (buffer.getInt() != expectedSums[s].length) {
+					throw new IOException(file.getPath() + ": different binning");
+				}
+				sums[s] = new double[expectedSums[s].length];
+				buffer.asDoubleBuffer().get(sums[s]);
+				buffer.position(buffer.position() + sums[s].length * Double.BYTES);
+			}
+			if (buffer.hasRemaining()) {
+				throw new IOException(file.getPath() + ": unexpected data at the end");
+			}
+			addCounts(set, statistics, counts, sums);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException(file.getPath() + ": truncated or malformed accumulation file", e);
+		} catch (ArithmeticException e) {
+			throw new IOException(file.getPath() + ": " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns copies of every count array in file order.
+	 *
+	 * @param set The coincidences, hit position maps and detector spectra.
+	 * @param statistics The calibration statistics.
+	 * @return The count arrays.
+	 */
+	private static List<long[]> getCounts(AccumulationSet set, CalibrationStatistics statistics) {
+		List<long[]> counts = new ArrayList<>();
+		counts.add(set.getCoincidenceMatrix().snapshot());
+		for (int bar = 1; bar <= GeometricConstants.BARS; bar++) {
+			counts.add(set.getHitPositionMap().getHistogram(bar).snapshot());
+		}
+		DetectorSpectra spectra = set.getDetectorSpectra();
+		for (int d = 0; d < DetectorSpectra.DETECTORS; d++) {
+			counts.add(spectra.getEnergyHistogram(d).snapshot());
+			counts.add(spectra.getTimeHistogram(d).snapshot());
+		}
+		counts.add(spectra.getBarMultiplicityHistogram().snapshot());
+		counts.add(spectra.getVetoMultiplicityHistogram().snapshot());
+		for (long array[] : statistics.snapshotCounts()) {
+			counts.add(array);
+		}
+		return counts;
+	}
+
+	/**
+	 * Adds count arrays in file order. Nothing is added if a calibration statistics bin would
+	 * overflow.
+	 *
+	 * @param set The set to add to.
+	 * @param statistics The statistics to add to.
+	 * @param counts The count arrays.
+	 * @param sums The sums of the calibration statistics.
+	 */
+	private static void addCounts(AccumulationSet set, CalibrationStatistics statistics, List<long[]> counts, double sums[][]) {
+		// the statistics are checked for overflow before anything is added, so they go first
+		int statisticsIndex = counts.size() - 3;
+		statistics.add(new long[][] { counts.get(statisticsIndex), counts.get(statisticsIndex + 1), counts.get(statisticsIndex + 2) }, sums);
+		int k = 0;
+		set.getCoincidenceMatrix().add(counts.get(k++));
+		for (int bar = 1; bar <= GeometricConstants.BARS; bar++) {
+			set.getHitPositionMap().getHistogram(bar).add(counts.get(k++));
+		}
+		DetectorSpectra spectra = set.getDetectorSpectra();
+		for (int d = 0; d < DetectorSpectra.DETECTORS; d++) {
+			spectra.getEnergyHistogram(d).add(counts.get(k++));
+			spectra.getTimeHistogram(d).add(counts.get(k++));
+		}
+		spectra.getBarMultiplicityHistogram().add(counts.get(k++));
+		spectra.getVetoMultiplicityHistogram().add(counts.get(k++));
+	}
+
+	/**
+	 * Writes a count array sparse.
+	 *
+	 * @param out The output.
+	 * @param array The counts.
+	 * @throws IOException If the output cannot be written.
+	 */
+	private static void writeSparse(DataOutputStream out, long array[]) throws IOException {
+		int nonZero = 0;
+		for (long count : array) {
+			if (count != 0) {
+				nonZero++;
+			}
+		}
+		out.writeInt(array.length);
+		out.writeInt(nonZero);
+		int previous = -1;
+		for (int k = 0; k < array.length; k++) {
+			if (array[k] != 0) {
+				writeVarLong(out, k - previous);
+				// zigzag, so that negative counts stay short too
+				writeVarLong(out, (array[k] << 1) ^ (array[k] >> 63));
+				previous = k;
+			}
+		}
+	}
+
+	/**
+	 * Reads a sparse count array.
+	 *
+	 * @param buffer The input.
+	 * @param expectedLength The length the array must have.
+	 * @return The counts, or null if the array has a different length.
+	 */
+	private static long[] readSparse(ByteBuffer buffer, int expectedLength) {
+		int length = buffer.getInt();
+		int nonZero = buffer.getInt();
+		if (length != expectedLength || nonZero < 0 || nonZero > length) {
+			return null;
+		}
+		long array[] = new long[length];
+		int k = -1;
+		for (int i = 0; i < nonZero; i++) {
+			long gap = readVarLong(buffer);
+			if (gap < 1 || gap > length - 1 - k) {
+				throw new IllegalArgumentException("Count index out of range");
+			}
+			k += (int) gap;
+			long zigzag = readVarLong(buffer);
+			array[k] = (zigzag >>> 1) ^ -(zigzag & 1);
+		}
+		return array;
+	}
+
+	/**
+	 * Writes a variable-length integer, 7 bits per byte, low bits first.
+	 *
+	 * @param out The output.
+	 * @param value The value, treated as unsigned.
+	 * @throws IOException If the output cannot be written.
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Reads a variable-length integer.
+	 *
+	 * @param buffer The input.
+	 * @return The value.
+	 */
+	private static long readVarLong(ByteBuffer buffer) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Variable-length integer too long");
+	}
+
+}
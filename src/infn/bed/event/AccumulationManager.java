@@ -3,9 +3,14 @@ package infn.bed.event;
 import cnuphys.bCNU.event.BaseAccumulationManager;
 import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.event.IPhysicsEventListener;
+import cnuphys.bCNU.log.Log;
 import cnuphys.bCNU.graphics.colorscale.ColorScaleModel;
-import cnuphys.bCNU.util.Histo2DData;
 import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationTable;
+
+import java.io.File;
+import java.io.IOException;
+
 import org.jlab.coda.jevio.EvioEvent;
 
 /**
@@ -20,48 +25,54 @@ public class AccumulationManager extends BaseAccumulationManager implements
 	// the singleton
 	private static AccumulationManager instance;
 
-	// dc accumulated data indices are sector, superlayer, layer, wire
-	private int _dcGemcAccumulatedData[];
-	private int _maxGemcDcCount;
-	
-	//dc XY accumulated data stored in a 2D histogram
-	private Histo2DData _dcXYGemcAccumulatedData;
-	
-	//bst hit xy accumulated data
-	private Histo2DData _bstXYAccumulatedData;
-	
+	/**
+	 * The number of detectors in the coincidence matrix. The bars come first,
+	 * followed by the vetoes.
+	 */
+	public static final int DETECTORS = GeometricConstants.BARS
+			+ GeometricConstants.VETOES;
+
+	// coincidences, hit position maps and detector spectra, replaced by a
+	// fresh set when cleared
+	private volatile AccumulationSet _accumulationSet;
+
+	// detector spectra of the last seconds
+	private WindowedSpectra _windowedSpectra;
+
+	// trigger bit counts of the emulated trigger conditions
+	private TriggerEmulator _triggerEmulator;
+
+	// time difference and log charge ratio sums for the veff and lambda fits
+	private CalibrationStatistics _calibrationStatistics;
+
+	// held while the accumulation is cleared
+	private final Object _lock = new Object();
+
 	/**
 	 * private constructor for singleton.
 	 */
 	private AccumulationManager() {
 		EventControl.getInstance().addPhysicsListener(this);
-		_dcGemcAccumulatedData = new int[GeometricConstants.BARS];
-
-		//dc XY accumulated data stored in a 2D histogram
-		_dcXYGemcAccumulatedData = new Histo2DData("DC XY Data",
-				-390, 390, 100, -450, 450, 100);
-		
-		//BST XY accumulated data also stored in histo
-		_bstXYAccumulatedData = new Histo2DData("BST XY Data",
-				-170, 170, 100, -170, 170, 100);
-		
+		_windowedSpectra = new WindowedSpectra(
+				WindowedSpectra.DEFAULT_WINDOW_SECONDS);
+		_triggerEmulator = new TriggerEmulator();
+		_calibrationStatistics = new CalibrationStatistics();
 		clear();
 	}
 
 	/**
-	 * Clears all accumulated data.
+	 * Clears all accumulated data. The accumulation set is replaced by a fresh
+	 * one rather than cleared bin by bin, so an event filled meanwhile is
+	 * either fully in the old set or fully in the new one.
 	 */
 	@Override
 	public void clear() {
-		//clear accumulated gemc dc data
-		for (int sector = 0; sector < GeometricConstants.BARS; sector++) {
-			_dcGemcAccumulatedData[sector] = 0;
+		synchronized (_lock) {
+			_accumulationSet = new AccumulationSet(true);
+			_windowedSpectra.clear();
+			_triggerEmulator.clear();
+			_calibrationStatistics.clear();
 		}
-		_maxGemcDcCount = 0;
-		
-		//clear other stuff
-		_dcXYGemcAccumulatedData.clear();
-		_bstXYAccumulatedData.clear();
 	}
 
 	/**
@@ -81,45 +92,178 @@ public class AccumulationManager extends BaseAccumulationManager implements
 		
 		// only care if I am accumulating
 		if (EventControl.getInstance().isAccumulating()) {
+			CachedEvent cachedEvent = EventManager.getInstance().getEvent();
+			if (cachedEvent != null) {
+				ReconstructedData reconstructedData = cachedEvent
+						.getReconstructedData();
+				_accumulationSet.fill(reconstructedData);
+				_windowedSpectra.fill(reconstructedData);
+				_triggerEmulator.fill(reconstructedData);
+				fillCalibrationStatistics(reconstructedData,
+						cachedEvent.getCalibrationTable());
+			}
+		}
+	}
+
+	/**
+	 * Get the bit mask of the detectors hit in an event. Bit (bar - 1) is set
+	 * for a hit bar and bit (BARS + veto - 1) for a hit veto.
+	 * 
+	 * @param reconstructedData the reconstructed data of the event
+	 * @return the bit mask of the hit detectors
+	 */
+	public static long getFiredMask(ReconstructedData reconstructedData) {
+		long mask = 0;
+		for (int bar : reconstructedData.getBarNumberArray()) {
+			if (bar > 0) {
+				mask |= 1L << (bar - 1);
+			}
 		}
+		for (int veto : reconstructedData.getVetoNumberArray()) {
+			if (veto > 0) {
+				mask |= 1L << (GeometricConstants.BARS + veto - 1);
+			}
+		}
+		return mask;
 	}
 
 	/**
-	 * Get the accumulated Gemc DC data
-	 * @return the accumulated dc data
+	 * Add the time difference and charge ratio of every hit read out at both
+	 * ends to the calibration statistics. The statistics start over when the
+	 * event was reconstructed with other constants than the previous ones.
+	 * 
+	 * @param reconstructedData the reconstructed data of the event
+	 * @param table the constants the event was reconstructed with
 	 */
-	public int[] getAccumulatedGemcDcData() {
-		return _dcGemcAccumulatedData;
+	private void fillCalibrationStatistics(ReconstructedData reconstructedData,
+			CalibrationTable table) {
+		if (_calibrationStatistics.fill(reconstructedData, table)) {
+			Log.getInstance().info("Calibration statistics cleared: the events are now reconstructed with "
+					+ table.getSource());
+		}
 	}
 
 	/**
-	 * @return the max counts for any DC wire.
+	 * Save the accumulated data to a binary accumulation file. The file is
+	 * written from snapshots of the histograms, taken without blocking the
+	 * accumulation, so events filled meanwhile may be saved in part.
+	 * 
+	 * @param file the accumulation file
+	 * @throws IOException if the file cannot be written
 	 */
-	public int getMaxGemcDcCount() {
-		return _maxGemcDcCount;
+	public void save(File file) throws IOException {
+		AccumulationSet set = new AccumulationSet(false);
+		CalibrationStatistics statistics = new CalibrationStatistics();
+		set.merge(_accumulationSet);
+		statistics.merge(_calibrationStatistics);
+		AccumulationFile.write(file, set, statistics);
 	}
 
 	/**
-	 * @return the colorScaleModel
+	 * Add the data of a binary accumulation file to the accumulated data, for
+	 * example to combine runs processed elsewhere. The file is read and
+	 * checked completely first, then added to the counters while events are
+	 * still accumulated; nothing is added if the file is invalid or a bin
+	 * would overflow.
+	 * 
+	 * @param file the accumulation file
+	 * @throws IOException if the file cannot be read, is damaged, has a
+	 *             different binning or would overflow a bin
 	 */
-	public static ColorScaleModel getColorScaleModel() {
-		return colorScaleModel;
+	public void add(File file) throws IOException {
+		AccumulationSet set = new AccumulationSet(false);
+		CalibrationStatistics statistics = new CalibrationStatistics();
+		AccumulationFile.read(file, set, statistics);
+		try {
+			// checked for overflow before anything is added, so it goes first
+			_calibrationStatistics.merge(statistics);
+		} catch (ArithmeticException e) {
+			throw new IOException(file.getPath() + ": " + e.getMessage(), e);
+		}
+		_accumulationSet.merge(set);
 	}
-	
+
 	/**
-	 * Get the Gemc DC xy accumulated data
-	 * @return the Gemc DC xy accumulated data
+	 * Get the accumulated coincidences, hit position maps and detector spectra
+	 * @return the accumulation set
 	 */
-	public Histo2DData getDcXYGemcAccumulatedData() {
-		return _dcXYGemcAccumulatedData;
+	public AccumulationSet getAccumulationSet() {
+		return _accumulationSet;
 	}
-	
+
 	/**
-	 * Get the BST XY ccumulated data
-	 * @return the BST XY accumulated data
+	 * Get the accumulated hit position along each bar versus energy
+	 * @return the hit position map
 	 */
-	public Histo2DData getBSTXYGemcAccumulatedData() {
-		return _bstXYAccumulatedData;
+	public HitPositionMap getHitPositionMap() {
+		return _accumulationSet.getHitPositionMap();
+	}
+
+	/**
+	 * Get the accumulated statistics of the veff and lambda fits
+	 * @return the calibration statistics
+	 */
+	public CalibrationStatistics getCalibrationStatistics() {
+		return _calibrationStatistics;
+	}
+
+	/**
+	 * Get the accumulated hit counts, spectra and multiplicities
+	 * @return the detector spectra
+	 */
+	public DetectorSpectra getDetectorSpectra() {
+		return _accumulationSet.getDetectorSpectra();
+	}
+
+	/**
+	 * Get the hit counts, spectra and multiplicities of the last seconds
+	 * @return the windowed spectra
+	 */
+	public WindowedSpectra getWindowedSpectra() {
+		return _windowedSpectra;
+	}
+
+	/**
+	 * Get the trigger bit counts of the emulated trigger conditions
+	 * @return the trigger emulator
+	 */
+	public TriggerEmulator getTriggerEmulator() {
+		return _triggerEmulator;
+	}
+
+	/**
+	 * Get the accumulated bar and veto coincidence counts
+	 * @return the coincidence matrix
+	 */
+	public CoincidenceMatrix getCoincidenceMatrix() {
+		return _accumulationSet.getCoincidenceMatrix();
+	}
+
+	/**
+	 * Get the number of accumulated events in which a bar fired
+	 * @param bar the bar (1-based)
+	 * @return the hit count of the bar
+	 */
+	public long getBarHitCount(int bar) {
+		return getCoincidenceMatrix().getCount(bar - 1, bar - 1);
+	}
+
+	/**
+	 * @return the max hit count for any bar.
+	 */
+	public long getMaxBarHitCount() {
+		long max = 0;
+		for (int bar = 1; bar <= GeometricConstants.BARS; bar++) {
+			max = Math.max(max, getBarHitCount(bar));
+		}
+		return max;
+	}
+
+	/**
+	 * @return the colorScaleModel
+	 */
+	public static ColorScaleModel getColorScaleModel() {
+		return colorScaleModel;
 	}
 
 }
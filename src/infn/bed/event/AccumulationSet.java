@@ -0,0 +1,111 @@
+package infn.bed.event;
+
+/**
+ * One set of everything that is accumulated per event: the coincidence matrix, the hit position
+ * maps and the detector spectra. All of them are integer counts, so sets filled by different threads
+ * and merged in any order give exactly the counts of one set filled serially.
+ */
+public class AccumulationSet {
+
+	/**
+	 * How often pairs of bars and vetoes fire in the same event.
+	 */
+	private final CoincidenceMatrix coincidenceMatrix;
+
+	/**
+	 * The position along each bar versus energy.
+	 */
+	private final HitPositionMap hitPositionMap;
+
+	/**
+	 * The hit counts, energy and time spectra and multiplicities.
+	 */
+	private final DetectorSpectra detectorSpectra;
+
+	/**
+	 * Creates a set.
+	 *
+	 * @param concurrent true if the set may be filled by any number of threads at once, false for the
+	 *            private set of one thread.
+	 */
+	public AccumulationSet(boolean concurrent) {
+		coincidenceMatrix = new CoincidenceMatrix(AccumulationManager.DETECTORS, concurrent);
+		hitPositionMap = new HitPositionMap(concurrent);
+		detectorSpectra = new DetectorSpectra(concurrent);
+	}
+
+	/**
+	 * Adds one event.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 */
+	public void fill(ReconstructedData reconstructedData) {
+		coincidenceMatrix.fill(AccumulationManager.getFiredMask(reconstructedData));
+		detectorSpectra.fill(reconstructedData);
+		int bars[] = reconstructedData.getBarNumberArray();
+		double positions[] = reconstructedData.getBarPositionArray();
+		double energies[] = reconstructedData.getBarEnergyArray();
+		for (int i = 0; i < bars.length; i++) {
+			if (bars[i] > 0 && energies[i] > 0) {
+				hitPositionMap.fill(bars[i], positions[i], energies[i]);
+			}
+		}
+	}
+
+	/**
+	 * Adds the counts of another set. The other set should not be filled meanwhile.
+	 *
+	 * @param other The set to add.
+	 */
+	public void merge(AccumulationSet other) {
+		coincidenceMatrix.merge(other.coincidenceMatrix);
+		hitPositionMap.merge(other.hitPositionMap);
+		detectorSpectra.merge(other.detectorSpectra);
+	}
+
+	/**
+	 * Clears all counts.
+	 */
+	public void clear() {
+		coincidenceMatrix.clear();
+		hitPositionMap.clear();
+		detectorSpectra.clear();
+	}
+
+	/**
+	 * Returns the number of accumulated events.
+	 *
+	 * @return The event count.
+	 */
+	public long getEventCount() {
+		return detectorSpectra.getEventCount();
+	}
+
+	/**
+	 * Returns the coincidence matrix.
+	 *
+	 * @return The coincidence matrix.
+	 */
+	public CoincidenceMatrix getCoincidenceMatrix() {
+		return coincidenceMatrix;
+	}
+
+	/**
+	 * Returns the hit position maps.
+	 *
+	 * @return The hit position maps.
+	 */
+	public HitPositionMap getHitPositionMap() {
+		return hitPositionMap;
+	}
+
+	/**
+	 * Returns the detector spectra.
+	 *
+	 * @return The detector spectra.
+	 */
+	public DetectorSpectra getDetectorSpectra() {
+		return detectorSpectra;
+	}
+
+}
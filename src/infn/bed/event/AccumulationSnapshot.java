@@ -0,0 +1,246 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.histo.Axis;
+import infn.bed.histo.Histogram1D;
+import infn.bed.math.MathematicalConstants;
+
+import java.awt.Color;
+
+/**
+ * The colors of the accumulated mode displays, computed from a copy of the accumulation taken at
+ * a fixed cadence rather than on every event: the occupancy and the mean energy of every bar and
+ * veto, and the hit position map of every bar.
+ *
+ * <p>
+ * A snapshot is immutable. The views take the shared snapshot with {@link #refresh()} on a timer and
+ * draw their items from it, so watching an accumulating run costs the event dispatch thread the same
+ * work at any event rate.
+ * </p>
+ */
+public final class AccumulationSnapshot {
+
+	/**
+	 * The interval between two snapshots in ms.
+	 */
+	public static final int REFRESH_MILLIS = 500;
+
+	/**
+	 * The snapshot of an empty accumulation.
+	 */
+	private static final AccumulationSnapshot EMPTY = new AccumulationSnapshot(new AccumulationSet(false), 0);
+
+	/**
+	 * The latest snapshot.
+	 */
+	private static volatile AccumulationSnapshot current = EMPTY;
+
+	/**
+	 * The time the snapshot was taken in ms.
+	 */
+	private final long time;
+
+	/**
+	 * The number of accumulated events.
+	 */
+	private final long eventCount;
+
+	/**
+	 * The number of hits of every detector, bars first, then vetoes.
+	 */
+	private final long hits[] = new long[DetectorSpectra.DETECTORS];
+
+	/**
+	 * The mean energy of the hits of every detector in MeV (NaN without hits inside the spectrum).
+	 */
+	private final double meanEnergy[] = new double[DetectorSpectra.DETECTORS];
+
+	/**
+	 * The occupancy color of every detector, or null without hits.
+	 */
+	private final Color occupancyColor[] = new Color[DetectorSpectra.DETECTORS];
+
+	/**
+	 * The mean energy color of every detector, or null without hits.
+	 */
+	private final Color energyColor[] = new Color[DetectorSpectra.DETECTORS];
+
+	/**
+	 * The color of every hit position map cell of every bar indexed by [bar - 1][positionBin *
+	 * ENERGY_BINS + energyBin], or null for empty cells.
+	 */
+	private final Color positionColor[][] = new Color[GeometricConstants.BARS][];
+
+	/**
+	 * Takes a snapshot.
+	 *
+	 * @param set The accumulation.
+	 * @param time The time in ms.
+	 */
+	private AccumulationSnapshot(AccumulationSet set, long time) {
+		this.time = time;
+		eventCount = set.getEventCount();
+
+		DetectorSpectra spectra = set.getDetectorSpectra();
+		long maxBarHits = 0;
+		long maxVetoHits = 0;
+		for (int d = 0; d < DetectorSpectra.DETECTORS; d++) {
+			hits[d] = spectra.getHitCount(d);
+			meanEnergy[d] = mean(spectra.getEnergyHistogram(d));
+			if (d < GeometricConstants.BARS) {
+				maxBarHits = Math.max(maxBarHits, hits[d]);
+			} else {
+				maxVetoHits = Math.max(maxVetoHits, hits[d]);
+			}
+		}
+		for (int d = 0; d < DetectorSpectra.DETECTORS; d++) {
+			if (hits[d] > 0) {
+				long max = (d < GeometricConstants.BARS) ? maxBarHits : maxVetoHits;
+				occupancyColor[d] = AccumulationManager.getColorScaleModel().getColor(((double) hits[d]) / max);
+				energyColor[d] = getEnergyColor(meanEnergy[d]);
+			}
+		}
+
+		HitPositionMap map = set.getHitPositionMap();
+		for (int bar = 1; bar <= GeometricConstants.BARS; bar++) {
+			Color colors[] = new Color[HitPositionMap.POSITION_BINS * HitPositionMap.ENERGY_BINS];
+			// one snapshot per bar, rather than summing the counter stripes for every cell
+			long counts[] = map.getHistogram(bar).snapshot();
+			long max = HitPositionMap.getMaxCount(counts);
+			for (int x = 0; x < HitPositionMap.POSITION_BINS && max > 0; x++) {
+				for (int y = 0; y < HitPositionMap.ENERGY_BINS; y++) {
+					long count = counts[HitPositionMap.index(x, y)];
+					if (count > 0) {
+						colors[x * HitPositionMap.ENERGY_BINS + y] = AccumulationManager.getColorScaleModel().getColor(((double) count) / max);
+					}
+				}
+			}
+			positionColor[bar - 1] = colors;
+		}
+	}
+
+	/**
+	 * Returns the mean of the entries of a histogram inside its axis.
+	 *
+	 * @param histogram The histogram.
+	 * @return The mean of the bin centers weighted by the counts, or NaN without entries.
+	 */
+	static double mean(Histogram1D histogram) {
+		Axis axis = histogram.getAxis();
+		long counts[] = histogram.snapshot();
+		long n = 0;
+		double sum = 0;
+		for (int bin = 1; bin <= axis.getBins(); bin++) {
+			n += counts[bin];
+			sum += counts[bin] * axis.getCenter(bin);
+		}
+		return (n > 0) ? sum / n : Double.NaN;
+	}
+
+	/**
+	 * Returns the color of an energy on the blue (no energy) to red (upper energy limit) scale of the
+	 * single event displays.
+	 *
+	 * @param energy The energy in MeV.
+	 * @return The color, red at and above the upper energy limit.
+	 */
+	public static Color getEnergyColor(double energy) {
+		double scale = Math.max(0, Math.min(1, energy / MathematicalConstants.UPPER_ENERGY_LIMIT));
+		if (Double.isNaN(scale)) {
+			scale = 0;
+		}
+		return new Color((int) Math.ceil(scale * 255), 0, (int) Math.ceil(255 - scale * 255));
+	}
+
+	/**
+	 * Returns the latest snapshot, taking a new one from the accumulation manager if it is older than
+	 * about REFRESH_MILLIS and events were accumulated or cleared since. Call from the event dispatch
+	 * thread.
+	 *
+	 * @return The latest snapshot.
+	 */
+	public static AccumulationSnapshot refresh() {
+		AccumulationSnapshot snapshot = current;
+		long now = System.currentTimeMillis();
+		if (now - snapshot.time >= REFRESH_MILLIS / 2) {
+			AccumulationSet set = AccumulationManager.getInstance().getAccumulationSet();
+			if (set.getEventCount() != snapshot.eventCount) {
+				snapshot = new AccumulationSnapshot(set, now);
+				current = snapshot;
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the latest snapshot without taking a new one.
+	 *
+	 * @return The latest snapshot.
+	 */
+	public static AccumulationSnapshot getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Returns the number of accumulated events.
+	 *
+	 * @return The event count.
+	 */
+	public long getEventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Returns the number of hits of a detector.
+	 *
+	 * @param detector The detector index, bars first, then vetoes.
+	 * @return The hit count.
+	 */
+	public long getHits(int detector) {
+		return hits[detector];
+	}
+
+	/**
+	 * Returns the mean energy of the hits of a detector.
+	 *
+	 * @param detector The detector index, bars first, then vetoes.
+	 * @return The mean energy in MeV, or NaN without hits.
+	 */
+	public double getMeanEnergy(int detector) {
+		return meanEnergy[detector];
+	}
+
+	/**
+	 * Returns the occupancy color of a detector, relative to the busiest bar for bars and to the
+	 * busiest veto for vetoes.
+	 *
+	 * @param detector The detector index, bars first, then vetoes.
+	 * @return The color, or null without hits.
+	 */
+	public Color getOccupancyColor(int detector) {
+		return occupancyColor[detector];
+	}
+
+	/**
+	 * Returns the mean energy color of a detector.
+	 *
+	 * @param detector The detector index, bars first, then vetoes.
+	 * @return The color, or null without hits.
+	 */
+	public Color getMeanEnergyColor(int detector) {
+		return energyColor[detector];
+	}
+
+	/**
+	 * Returns the color of a hit position map cell.
+	 *
+	 * @param bar The bar (1-based).
+	 * @param positionBin The position bin.
+	 * @param energyBin The energy bin.
+	 * @return The color, or null for an empty cell.
+	 */
+	public Color getPositionColor(int bar, int positionBin, int energyBin) {
+		return positionColor[bar - 1][positionBin * HitPositionMap.ENERGY_BINS + energyBin];
+	}
+
+}
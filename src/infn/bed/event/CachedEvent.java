@@ -0,0 +1,126 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+/**
+ * Holds the decoded intermediate results of one event of the in-memory event history.
+ *
+ * <p>
+ * The raw samples never change. The pulses and the energy-time information derived from them are
+ * replaced together whenever the event is reprocessed. The event keeps the calibration constants it
+ * was reconstructed with, such as the constants of its run, until new constants are given.
+ * </p>
+ */
+public class CachedEvent {
+
+	/**
+	 * The full-waveform samples of every channel, or null if the event only had charge-time banks.
+	 */
+	private final short samples[][];
+
+	/**
+	 * The number of samples of every channel, or null if the event only had charge-time banks.
+	 */
+	private final int sampleCounts[];
+
+	/**
+	 * The energy-time information, which also references the pulses (charge-time data) it was made from.
+	 */
+	private volatile ReconstructedData reconstructedData;
+
+	/**
+	 * The calibration constants the event is reconstructed with, or null for none.
+	 */
+	private volatile CalibrationTable calibrationTable;
+
+	/**
+	 * The constructor. The event keeps the samples of the full-waveform data, not its plot data sets.
+	 *
+	 * @param fullWaveformData The full-waveform data of the event, or null.
+	 * @param reconstructedData The energy-time information of the event.
+	 * @param calibrationTable The calibration constants the event was reconstructed with, or null for none.
+	 */
+	public CachedEvent(FullWaveformData fullWaveformData, ReconstructedData reconstructedData, CalibrationTable calibrationTable) {
+		if (fullWaveformData != null) {
+			samples = fullWaveformData.getSamples();
+			sampleCounts = fullWaveformData.getSampleCounts();
+		} else {
+			samples = null;
+			sampleCounts = null;
+		}
+		this.reconstructedData = reconstructedData;
+		this.calibrationTable = calibrationTable;
+	}
+
+	/**
+	 * Re-runs the processing stages of the event from the given stage onwards with the calibration
+	 * constants the event was reconstructed with.
+	 *
+	 * @param stage The first stage to re-run.
+	 */
+	void reprocess(EventCache.Stage stage) {
+		reprocess(stage, calibrationTable);
+	}
+
+	/**
+	 * Re-runs the processing stages of the event from the given stage onwards with new calibration
+	 * constants, which the event keeps from now on.
+	 *
+	 * @param stage The first stage to re-run.
+	 * @param calibrationTable The calibration constants, or null for none.
+	 */
+	void reprocess(EventCache.Stage stage, CalibrationTable calibrationTable) {
+		ChargeTimeData ctData = reconstructedData.getChargeTimeData();
+		if (stage == EventCache.Stage.PULSE_FINDING && samples != null) {
+			ctData = new ChargeTimeData(samples, sampleCounts);
+		}
+		this.calibrationTable = calibrationTable;
+		reconstructedData = Reconstruction.getInstance().reconstruct(ctData, calibrationTable);
+	}
+
+	/**
+	 * Returns the full-waveform samples of the event.
+	 *
+	 * @return The samples of every channel, or null if the event only had charge-time banks.
+	 */
+	public short[][] getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Returns the number of full-waveform samples of every channel of the event.
+	 *
+	 * @return The sample counts, or null if the event only had charge-time banks.
+	 */
+	public int[] getSampleCounts() {
+		return sampleCounts;
+	}
+
+	/**
+	 * Returns the charge-time data (pulses) of the event.
+	 *
+	 * @return The charge-time data of the event.
+	 */
+	public ChargeTimeData getChargeTimeData() {
+		return reconstructedData.getChargeTimeData();
+	}
+
+	/**
+	 * Returns the energy-time information of the event.
+	 *
+	 * @return The energy-time information of the event.
+	 */
+	public ReconstructedData getReconstructedData() {
+		return reconstructedData;
+	}
+
+	/**
+	 * Returns the calibration constants of the event.
+	 *
+	 * @return The calibration constants the event is reconstructed with, or null for none.
+	 */
+	public CalibrationTable getCalibrationTable() {
+		return calibrationTable;
+	}
+
+}
@@ -0,0 +1,228 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationConstants;
+import infn.bed.util.CalibrationTable;
+
+import java.util.Arrays;
+
+/**
+ * The calibration constants of a table rearranged, once per table, into
+ * per-item coefficient arrays so that the reconstruction of a hit is a few
+ * multiply-adds.
+ *
+ * <p>
+ * Items are indexed by position: 0 for an unknown item (whose coefficients are
+ * zero, like missing constants), 1..9 for the bars and 10..43 for the vetoes.
+ * Optionally, the attenuation corrections exp(x / lambda) and
+ * exp((L - x) / lambda) are tabulated over {@value #POSITION_BINS} position
+ * bins along each item and linearly interpolated, so that no exponential is
+ * evaluated for hits inside the item; hits outside it still use Math.exp.
+ * </p>
+ */
+final class CalibrationCoefficients {
+
+	/**
+	 * The number of position bins of the attenuation tables.
+	 */
+	static final int POSITION_BINS = 64;
+
+	/**
+	 * The number of item positions, including the unknown item.
+	 */
+	private static final int SIZE = CalibrationTable.ITEMS + 1;
+
+	/**
+	 * The table the coefficients were computed from, or null for none.
+	 */
+	final CalibrationTable table;
+
+	/**
+	 * true if the attenuation corrections are tabulated, false otherwise.
+	 */
+	final boolean tabulated;
+
+	/**
+	 * 1 / tdcConvLeft.
+	 */
+	private final double leftTimeScale[] = new double[SIZE];
+
+	/**
+	 * deltaL.
+	 */
+	private final double leftShift[] = new double[SIZE];
+
+	/**
+	 * 1 / tdcConvRight.
+	 */
+	private final double rightTimeScale[] = new double[SIZE];
+
+	/**
+	 * deltaR.
+	 */
+	private final double rightShift[] = new double[SIZE];
+
+	/**
+	 * Aleft.
+	 */
+	private final double leftEnergyScale[] = new double[SIZE];
+
+	/**
+	 * Aright.
+	 */
+	private final double rightEnergyScale[] = new double[SIZE];
+
+	/**
+	 * veff / 2.
+	 */
+	private final double halfVelocity[] = new double[SIZE];
+
+	/**
+	 * L / 2.
+	 */
+	private final double halfLength[] = new double[SIZE];
+
+	/**
+	 * L / (2 veff), half of the transit time along the item.
+	 */
+	private final double halfTransitTime[] = new double[SIZE];
+
+	/**
+	 * 1 / lambda.
+	 */
+	private final double inverseAttenuationLength[] = new double[SIZE];
+
+	/**
+	 * POSITION_BINS / L, or NaN if the item has no tables.
+	 */
+	private final double binScale[] = new double[SIZE];
+
+	/**
+	 * exp(x / lambda) at the POSITION_BINS + 1 bin edges of every item.
+	 */
+	private final double leftAttenuation[];
+
+	/**
+	 * exp((L - x) / lambda) at the POSITION_BINS + 1 bin edges of every item.
+	 */
+	private final double rightAttenuation[];
+
+	/**
+	 * Computes the coefficients of a table.
+	 *
+	 * @param table The calibration constants, or null for none.
+	 * @param tabulated true to tabulate the attenuation corrections, false to evaluate them.
+	 */
+	CalibrationCoefficients(CalibrationTable table, boolean tabulated) {
+		this.table = table;
+		this.tabulated = tabulated;
+		leftAttenuation = new double[tabulated ? SIZE * (POSITION_BINS + 1) : 0];
+		rightAttenuation = new double[leftAttenuation.length];
+		Arrays.fill(binScale, Double.NaN);
+		if (table == null) {
+			return;
+		}
+		for (int item = 1; item < SIZE; item++) {
+			CalibrationConstants c = (item <= GeometricConstants.BARS) ? table.getBarConstants(item) : table.getVetoConstants(item - GeometricConstants.BARS);
+			if (c == null) {
+				continue;
+			}
+			double length = c.getItemLength();
+			double lambda = c.getAttenuationLength();
+			leftTimeScale[item] = 1.0 / c.getLeftTDCConversionFactor();
+			leftShift[item] = c.getLeftShift();
+			rightTimeScale[item] = 1.0 / c.getRightTDCConversionFactor();
+			rightShift[item] = c.getRightShift();
+			leftEnergyScale[item] = c.getLeftADCConversionFactor();
+			rightEnergyScale[item] = c.getRightADCConversionFactor();
+			halfVelocity[item] = c.getEffectiveVelocity() / 2;
+			halfLength[item] = length / 2;
+			halfTransitTime[item] = length / c.getEffectiveVelocity() / 2;
+			inverseAttenuationLength[item] = 1.0 / lambda;
+			if (tabulated && length > 0 && lambda != 0 && !Double.isNaN(lambda)) {
+				binScale[item] = POSITION_BINS / length;
+				for (int bin = 0; bin <= POSITION_BINS; bin++) {
+					double x = bin * length / POSITION_BINS;
+					leftAttenuation[item * (POSITION_BINS + 1) + bin] = Math.exp(x / lambda);
+					rightAttenuation[item * (POSITION_BINS + 1) + bin] = Math.exp((length - x) / lambda);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the item position of a bar.
+	 *
+	 * @param bar The bar number in one-based indexing, or 0 if unknown.
+	 * @return The item position.
+	 */
+	static int barItem(int bar) {
+		return (bar < 1 || bar > GeometricConstants.BARS) ? 0 : bar;
+	}
+
+	/**
+	 * Returns the item position of a veto.
+	 *
+	 * @param veto The veto number in one-based indexing, or 0 if unknown.
+	 * @return The item position.
+	 */
+	static int vetoItem(int veto) {
+		return (veto < 1 || veto > GeometricConstants.VETOES) ? 0 : GeometricConstants.BARS + veto;
+	}
+
+	/**
+	 * Reconstructs a hit read out at both ends of an item.
+	 *
+	 * @param item The item position.
+	 * @param leftCharge The left charge.
+	 * @param rightCharge The right charge.
+	 * @param leftTime The left time.
+	 * @param rightTime The right time.
+	 * @param energyArray Receives the energy at index hit.
+	 * @param timeArray Receives the time at index hit.
+	 * @param positionArray Receives the position from the left end at index hit, or null.
+	 * @param hit The hit index.
+	 */
+	void reconstruct(int item, int leftCharge, int rightCharge, int leftTime, int rightTime, double energyArray[], double timeArray[], double positionArray[], int hit) {
+		double left = leftTime * leftTimeScale[item] - leftShift[item];
+		double right = rightTime * rightTimeScale[item] - rightShift[item];
+		double position = halfVelocity[item] * (left - right) + halfLength[item];
+
+		double leftFactor;
+		double rightFactor;
+		// NaN compares false, so it falls through to the evaluated corrections
+		double x = position * binScale[item];
+		if (x >= 0 && x < POSITION_BINS) {
+			int bin = (int) x;
+			double fraction = x - bin;
+			int k = item * (POSITION_BINS + 1) + bin;
+			leftFactor = leftAttenuation[k] + fraction * (leftAttenuation[k + 1] - leftAttenuation[k]);
+			rightFactor = rightAttenuation[k] + fraction * (rightAttenuation[k + 1] - rightAttenuation[k]);
+		} else {
+			leftFactor = Math.exp(position * inverseAttenuationLength[item]);
+			rightFactor = Math.exp((2 * halfLength[item] - position) * inverseAttenuationLength[item]);
+		}
+
+		energyArray[hit] = (leftCharge * leftEnergyScale[item] * leftFactor + rightCharge * rightEnergyScale[item] * rightFactor) / 2;
+		timeArray[hit] = (left + right) / 2 - halfTransitTime[item];
+		if (positionArray != null) {
+			positionArray[hit] = position;
+		}
+	}
+
+	/**
+	 * Reconstructs a hit read out at one end of an item.
+	 *
+	 * @param item The item position.
+	 * @param charge The charge.
+	 * @param time The time.
+	 * @param energyArray Receives the energy at index hit.
+	 * @param timeArray Receives the time at index hit.
+	 * @param hit The hit index.
+	 */
+	void reconstruct(int item, int charge, int time, double energyArray[], double timeArray[], int hit) {
+		energyArray[hit] = charge * leftEnergyScale[item];
+		timeArray[hit] = time * leftTimeScale[item];
+	}
+
+}
@@ -0,0 +1,180 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationConstants;
+import infn.bed.util.CalibrationTable;
+
+/**
+ * Fits the effective velocity and the attenuation length of every item read out at both ends
+ * from accumulated {@link CalibrationStatistics}, without rereading any event.
+ *
+ * <p>
+ * For a hit at x from the left end of an item of length L, the time difference between the ends
+ * is dt = (2x - L) / veff and the log charge ratio is ln(qL / qR) = c - veff dt / lambda. With
+ * the items illuminated uniformly, dt is uniform over a width 2L / veff, whose interquartile range
+ * is L / veff; veff follows from the quartiles of the time difference histogram, which are
+ * insensitive to the timing resolution, and lambda from the slope of the log charge ratio
+ * regression. Items with too few entries, or whose fit is unphysical, keep their constants.
+ * </p>
+ */
+public class CalibrationFitter {
+
+	/**
+	 * The least number of entries an item needs to be fitted.
+	 */
+	public static final int MIN_ENTRIES = 200;
+
+	/**
+	 * The constants the fit starts from.
+	 */
+	private final CalibrationTable base;
+
+	/**
+	 * The fitted effective velocities in calibration file order (NaN if not fitted).
+	 */
+	private final double effectiveVelocity[] = new double[CalibrationTable.ITEMS];
+
+	/**
+	 * The fitted attenuation lengths in calibration file order (NaN if not fitted).
+	 */
+	private final double attenuationLength[] = new double[CalibrationTable.ITEMS];
+
+	/**
+	 * The fitted constants.
+	 */
+	private final CalibrationTable table;
+
+	/**
+	 * Fits the constants.
+	 *
+	 * @param statistics The accumulated statistics.
+	 * @param base The constants the statistics were accumulated with; the fit replaces their veff and lambda.
+	 */
+	public CalibrationFitter(CalibrationStatistics statistics, CalibrationTable base) {
+		this.base = base;
+		CalibrationConstants bars[] = new CalibrationConstants[GeometricConstants.BARS];
+		CalibrationConstants vetoes[] = new CalibrationConstants[GeometricConstants.VETOES];
+		for (int item = 0; item < CalibrationTable.ITEMS; item++) {
+			CalibrationConstants c = getConstants(base, item);
+			effectiveVelocity[item] = Double.NaN;
+			attenuationLength[item] = Double.NaN;
+			if (c != null && statistics.getEntries(item) >= MIN_ENTRIES) {
+				fit(statistics, item, c.getItemLength());
+			}
+			if (c != null && !Double.isNaN(effectiveVelocity[item])) {
+				double values[] = c.toArray();
+				values[0] = effectiveVelocity[item];
+				if (!Double.isNaN(attenuationLength[item])) {
+					values[3] = attenuationLength[item];
+				}
+				c = new CalibrationConstants(values);
+			}
+			if (item < bars.length) {
+				bars[item] = c;
+			} else {
+				vetoes[item - bars.length] = c;
+			}
+		}
+		table = new CalibrationTable(bars, vetoes, base.getSource() + " (fitted)");
+	}
+
+	/**
+	 * Fits one item.
+	 *
+	 * @param statistics The accumulated statistics.
+	 * @param item The item in calibration file order (zero-based).
+	 * @param length The item length in cm.
+	 */
+	private void fit(CalibrationStatistics statistics, int item, double length) {
+		double interquartileRange = statistics.getQuantile(item, 0.75) - statistics.getQuantile(item, 0.25);
+		if (!(length > 0 && interquartileRange > 0)) {
+			return;
+		}
+		double velocity = length / interquartileRange;
+		effectiveVelocity[item] = velocity;
+
+		double lambda = -velocity / statistics.getLogChargeRatioSlope(item);
+		if (lambda > 0 && !Double.isInfinite(lambda)) {
+			attenuationLength[item] = lambda;
+		}
+	}
+
+	/**
+	 * Returns the constants of an item by position in calibration file order.
+	 *
+	 * @param table The calibration table.
+	 * @param item The zero-based position (bars first, then vetoes).
+	 * @return The constants, or null if the item has none.
+	 */
+	private static CalibrationConstants getConstants(CalibrationTable table, int item) {
+		return (item < GeometricConstants.BARS) ? table.getBarConstants(item + 1) : table.getVetoConstants(item - GeometricConstants.BARS + 1);
+	}
+
+	/**
+	 * Returns the name of an item.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return The item name, such as b1 or v8.
+	 */
+	public static String getItemName(int item) {
+		return (item < GeometricConstants.BARS) ? CalibrationTable.BAR + (item + 1) : CalibrationTable.VETO + (item - GeometricConstants.BARS + 1);
+	}
+
+	/**
+	 * Returns the fitted constants: the base constants with the fitted veff and lambda.
+	 *
+	 * @return The fitted constants.
+	 */
+	public CalibrationTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Returns true if the effective velocity of an item was fitted, false otherwise.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return true if the item was fitted, false otherwise.
+	 */
+	public boolean isFitted(int item) {
+		return !Double.isNaN(effectiveVelocity[item]);
+	}
+
+	/**
+	 * Returns the fitted effective velocity of an item.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return The effective velocity in cm/ns, or NaN if not fitted.
+	 */
+	public double getEffectiveVelocity(int item) {
+		return effectiveVelocity[item];
+	}
+
+	/**
+	 * Returns the fitted attenuation length of an item.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return The attenuation length in cm, or NaN if not fitted.
+	 */
+	public double getAttenuationLength(int item) {
+		return attenuationLength[item];
+	}
+
+	/**
+	 * Returns a summary of the fit, one line per fitted item with the old and new constants.
+	 *
+	 * @return The summary.
+	 */
+	public String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-5s %9s %9s %9s %9s%n", "item", "veff", "fitted", "lambda", "fitted"));
+		for (int item = 0; item < CalibrationTable.ITEMS; item++) {
+			if (!isFitted(item)) {
+				continue;
+			}
+			CalibrationConstants c = getConstants(base, item);
+			sb.append(String.format("%-5s %9.3f %9.3f %9.1f %9.1f%n", getItemName(item), c.getEffectiveVelocity(), effectiveVelocity[item], c.getAttenuationLength(), attenuationLength[item]));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,401 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationConstants;
+import infn.bed.util.CalibrationTable;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates, for every item read out at both ends, the sufficient statistics of the effective
+ * velocity and attenuation length fits: a histogram of the time difference between the two ends
+ * (which maps linearly to the position along the item) and the sums of the linear regression of
+ * the log charge ratio on the time difference.
+ *
+ * <p>
+ * Items are indexed in calibration file order, 0..8 for b1..b9 and 9..42 for v1..v34. Everything
+ * lives in primitive arrays of fixed size, so a fill is a few additions and memory does not grow
+ * with the number of events. Every method is synchronized, so the event thread may fill the
+ * statistics while views read them or other statistics are added; an uncontended fill costs one
+ * lock on top of the additions.
+ * </p>
+ *
+ * <p>
+ * The time differences depend on the shifts and TDC conversion factors they were converted with,
+ * so the statistics remember those constants and start over when hits converted with other
+ * constants arrive.
+ * </p>
+ */
+public class CalibrationStatistics {
+
+	/**
+	 * The number of time difference bins.
+	 */
+	public static final int TIME_BINS = 400;
+
+	/**
+	 * The lower edge of the time difference axis in ns.
+	 */
+	public static final double TIME_MIN = -10;
+
+	/**
+	 * The upper edge of the time difference axis in ns.
+	 */
+	public static final double TIME_MAX = 10;
+
+	/**
+	 * The number of time difference bins per ns.
+	 */
+	private static final double TIME_SCALE = TIME_BINS / (TIME_MAX - TIME_MIN);
+
+	/**
+	 * The number of items.
+	 */
+	private static final int ITEMS = CalibrationTable.ITEMS;
+
+	/**
+	 * The time difference bin counts indexed by item * TIME_BINS + bin.
+	 */
+	private final int counts[] = new int[ITEMS * TIME_BINS];
+
+	/**
+	 * The number of entries of each item inside the time difference axis.
+	 */
+	private final long entries[] = new long[ITEMS];
+
+	/**
+	 * The number of entries of each item outside the time difference axis.
+	 */
+	private final long outOfRange[] = new long[ITEMS];
+
+	/**
+	 * The sums of the time differences.
+	 */
+	private final double sumT[] = new double[ITEMS];
+
+	/**
+	 * The sums of the squared time differences.
+	 */
+	private final double sumTT[] = new double[ITEMS];
+
+	/**
+	 * The sums of the log charge ratios.
+	 */
+	private final double sumR[] = new double[ITEMS];
+
+	/**
+	 * The sums of the squared log charge ratios.
+	 */
+	private final double sumRR[] = new double[ITEMS];
+
+	/**
+	 * The sums of the products of time difference and log charge ratio.
+	 */
+	private final double sumTR[] = new double[ITEMS];
+
+	/**
+	 * The calibration constants the time differences were converted with, or null if unknown.
+	 */
+	private CalibrationTable calibrationTable;
+
+	/**
+	 * Sets the calibration constants the following hits are converted with. If the statistics hold
+	 * hits converted with other constants, they are cleared first.
+	 *
+	 * @param table The calibration constants.
+	 * @return true if the statistics were cleared.
+	 */
+	public synchronized boolean setCalibrationTable(CalibrationTable table) {
+		if (table == calibrationTable) {
+			return false;
+		}
+		boolean filled = (calibrationTable != null) && !isEmpty();
+		if (filled) {
+			clear();
+		}
+		calibrationTable = table;
+		return filled;
+	}
+
+	/**
+	 * Returns the calibration constants the time differences were converted with.
+	 *
+	 * @return The calibration constants, or null if unknown, for example for statistics read from a
+	 *         file only.
+	 */
+	public synchronized CalibrationTable getCalibrationTable() {
+		return calibrationTable;
+	}
+
+	/**
+	 * Returns whether no hit has been added.
+	 *
+	 * @return true if the statistics are empty.
+	 */
+	private boolean isEmpty() {
+		for (int item = 0; item < ITEMS; item++) {
+			if (entries[item] != 0 || outOfRange[item] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a hit.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @param timeDifference The left time minus the right time in ns.
+	 * @param leftCharge The left charge.
+	 * @param rightCharge The right charge.
+	 */
+	public synchronized void fill(int item, double timeDifference, int leftCharge, int rightCharge) {
+		if (leftCharge <= 0 || rightCharge <= 0) {
+			return;
+		}
+		// NaN compares false, so it falls through to out of range
+		double x = (timeDifference - TIME_MIN) * TIME_SCALE;
+		if (!(x >= 0 && x < TIME_BINS)) {
+			outOfRange[item]++;
+			return;
+		}
+		double ratio = Math.log((double) leftCharge / rightCharge);
+		counts[item * TIME_BINS + (int) x]++;
+		entries[item]++;
+		sumT[item] += timeDifference;
+		sumTT[item] += timeDifference * timeDifference;
+		sumR[item] += ratio;
+		sumRR[item] += ratio * ratio;
+		sumTR[item] += timeDifference * ratio;
+	}
+
+	/**
+	 * Adds the time difference and charge ratio of every hit of an event read out at both ends, the
+	 * bars and the dual SiPM vetoes. The times are converted with the constants the event was
+	 * reconstructed with; if they differ from the constants of the hits added so far, the statistics
+	 * are cleared first.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 * @param table The constants the event was reconstructed with, or null to add nothing.
+	 * @return true if the statistics were cleared.
+	 */
+	public synchronized boolean fill(ReconstructedData reconstructedData, CalibrationTable table) {
+		ChargeTimeData ctData = reconstructedData.getChargeTimeData();
+		if (table == null || ctData == null) {
+			return false;
+		}
+		boolean cleared = setCalibrationTable(table);
+
+		int bars[] = reconstructedData.getBarNumberArray();
+		for (int i = 0; i < bars.length; i++) {
+			CalibrationConstants c = table.getBarConstants(bars[i]);
+			if (c != null) {
+				fill(bars[i] - 1, c, ctData.getLeftPMTChargeArray()[i], ctData.getRightPMTChargeArray()[i], ctData.getLeftPMTTimeArray()[i], ctData.getRightPMTTimeArray()[i]);
+			}
+		}
+
+		int vetoes[] = reconstructedData.getVetoNumberArray();
+		int dualCharges[] = ctData.getDualSiPMVetoChargeArray();
+		int dualTimes[] = ctData.getDualSiPMVetoTimeArray();
+		if (dualCharges == null || dualTimes == null) {
+			return cleared;
+		}
+		for (int i = 0; i < vetoes.length && i < dualCharges.length && i < dualTimes.length; i++) {
+			CalibrationConstants c = table.getVetoConstants(vetoes[i]);
+			if (c != null && Reconstruction.isDualSiPMVeto(vetoes[i])) {
+				fill(GeometricConstants.BARS + vetoes[i] - 1, c, ctData.getVetoChargeArray()[i], dualCharges[i], ctData.getVetoTimeArray()[i], dualTimes[i]);
+			}
+		}
+		return cleared;
+	}
+
+	/**
+	 * Adds one hit read out at both ends.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @param c The constants the times are converted with.
+	 * @param leftCharge The left charge.
+	 * @param rightCharge The right charge.
+	 * @param leftTime The left TDC value.
+	 * @param rightTime The right TDC value.
+	 */
+	private void fill(int item, CalibrationConstants c, int leftCharge, int rightCharge, int leftTime, int rightTime) {
+		double left = leftTime / c.getLeftTDCConversionFactor() - c.getLeftShift();
+		double right = rightTime / c.getRightTDCConversionFactor() - c.getRightShift();
+		fill(item, left - right, leftCharge, rightCharge);
+	}
+
+	/**
+	 * Returns the count of a time difference bin.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @param bin The time difference bin.
+	 * @return The count of the bin.
+	 */
+	public synchronized int getCount(int item, int bin) {
+		return counts[item * TIME_BINS + bin];
+	}
+
+	/**
+	 * Returns the number of entries of an item inside the time difference axis.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return The number of entries.
+	 */
+	public synchronized long getEntries(int item) {
+		return entries[item];
+	}
+
+	/**
+	 * Returns the number of entries of an item outside the time difference axis.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return The number of entries outside the axis.
+	 */
+	public synchronized long getOutOfRange(int item) {
+		return outOfRange[item];
+	}
+
+	/**
+	 * Returns a quantile of the time difference distribution of an item, interpolated linearly
+	 * within the bin it falls in.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @param fraction The fraction of entries below the quantile, between 0 and 1.
+	 * @return The quantile in ns, or NaN if the item has no entries.
+	 */
+	public synchronized double getQuantile(int item, double fraction) {
+		long n = entries[item];
+		if (n == 0) {
+			return Double.NaN;
+		}
+		double target = fraction * n;
+		long cumulative = 0;
+		int start = item * TIME_BINS;
+		for (int bin = 0; bin < TIME_BINS; bin++) {
+			int count = counts[start + bin];
+			if (count > 0 && cumulative + count >= target) {
+				return TIME_MIN + (bin + (target - cumulative) / count) / TIME_SCALE;
+			}
+			cumulative += count;
+		}
+		return TIME_MAX;
+	}
+
+	/**
+	 * Returns the slope of the least-squares line of the log charge ratio versus the time
+	 * difference of an item.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return The slope in 1/ns, or NaN if the item has fewer than two distinct time differences.
+	 */
+	public synchronized double getLogChargeRatioSlope(int item) {
+		double n = entries[item];
+		double denominator = n * sumTT[item] - sumT[item] * sumT[item];
+		if (n < 2 || denominator <= 0) {
+			return Double.NaN;
+		}
+		return (n * sumTR[item] - sumT[item] * sumR[item]) / denominator;
+	}
+
+	/**
+	 * Returns the correlation coefficient of the log charge ratio and the time difference of an
+	 * item, a measure of how well the attenuation fit describes the data.
+	 *
+	 * @param item The item in calibration file order (zero-based).
+	 * @return The correlation coefficient, or NaN if undefined.
+	 */
+	public synchronized double getCorrelation(int item) {
+		double n = entries[item];
+		double varianceT = n * sumTT[item] - sumT[item] * sumT[item];
+		double varianceR = n * sumRR[item] - sumR[item] * sumR[item];
+		if (n < 2 || varianceT <= 0 || varianceR <= 0) {
+			return Double.NaN;
+		}
+		return (n * sumTR[item] - sumT[item] * sumR[item]) / Math.sqrt(varianceT * varianceR);
+	}
+
+	/**
+	 * Adds the statistics of another accumulation, for example of another run. The other statistics
+	 * should not be filled meanwhile. Statistics of unknown constants take over the constants of the
+	 * other statistics.
+	 *
+	 * @param other The statistics to add.
+	 */
+	public void merge(CalibrationStatistics other) {
+		CalibrationTable table = other.getCalibrationTable();
+		add(other.snapshotCounts(), other.snapshotSums());
+		synchronized (this) {
+			if (calibrationTable == null) {
+				calibrationTable = table;
+			}
+		}
+	}
+
+	/**
+	 * Returns copies of the integer statistics: the time difference bins, the entries and the
+	 * entries out of range.
+	 *
+	 * @return The counts, in that order.
+	 */
+	synchronized long[][] snapshotCounts() {
+		long binCounts[] = new long[counts.length];
+		for (int k = 0; k < counts.length; k++) {
+			binCounts[k] = counts[k];
+		}
+		return new long[][] { binCounts, entries.clone(), outOfRange.clone() };
+	}
+
+	/**
+	 * Returns copies of the sums of the time difference and the log charge ratio.
+	 *
+	 * @return sumT, sumTT, sumR, sumRR and sumTR.
+	 */
+	synchronized double[][] snapshotSums() {
+		return new double[][] { sumT.clone(), sumTT.clone(), sumR.clone(), sumRR.clone(), sumTR.clone() };
+	}
+
+	/**
+	 * Adds statistics laid out like {@link #snapshotCounts()} and {@link #snapshotSums()}. Every
+	 * time difference bin is checked first, so nothing is added if one would overflow.
+	 *
+	 * @param addedCounts The counts to add.
+	 * @param addedSums The sums to add.
+	 * @throws ArithmeticException If a time difference bin would overflow.
+	 */
+	synchronized void add(long addedCounts[][], double addedSums[][]) {
+		for (int k = 0; k < counts.length; k++) {
+			long count = counts[k] + addedCounts[0][k];
+			if (count < Integer.MIN_VALUE || count > Integer.MAX_VALUE) {
+				throw new ArithmeticException("time difference bin " + (k % TIME_BINS) + " of item " + (k / TIME_BINS) + " overflows");
+			}
+		}
+		for (int k = 0; k < counts.length; k++) {
+			counts[k] += (int) addedCounts[0][k];
+		}
+		double sums[][] = { sumT, sumTT, sumR, sumRR, sumTR };
+		for (int item = 0; item < ITEMS; item++) {
+			entries[item] += addedCounts[1][item];
+			outOfRange[item] += addedCounts[2][item];
+			for (int s = 0; s < sums.length; s++) {
+				sums[s][item] += addedSums[s][item];
+			}
+		}
+	}
+
+	/**
+	 * Clears all statistics and forgets the calibration constants they were converted with.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(entries, 0);
+		Arrays.fill(outOfRange, 0);
+		Arrays.fill(sumT, 0);
+		Arrays.fill(sumTT, 0);
+		Arrays.fill(sumR, 0);
+		Arrays.fill(sumRR, 0);
+		Arrays.fill(sumTR, 0);
+		calibrationTable = null;
+	}
+
+}
@@ -0,0 +1,181 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationCache;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.InvalidCalibrationFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Watches the active calibration file and reloads it whenever it changes on
+ * disk. The file is parsed on the watcher thread; the constants used by the
+ * reconstruction are swapped in one step and the cached events are
+ * reconstructed again, so the event stream never waits for a reload. A file
+ * that fails validation is reported and the previous constants are kept.
+ */
+public class CalibrationWatcher {
+
+	/**
+	 * The time in ms to wait for an editor to finish writing before the file is
+	 * parsed. Further changes within this time are folded into one reload.
+	 */
+	private static final long SETTLE_TIME = 250;
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static CalibrationWatcher instance;
+
+	/**
+	 * The watch service of the directory of the active file, or null if no file
+	 * is watched.
+	 */
+	private WatchService watchService;
+
+	/**
+	 * The active calibration file, or null if no file is watched.
+	 */
+	private Path watchedFile;
+
+	/**
+	 * Private constructor for singleton CalibrationWatcher.
+	 */
+	private CalibrationWatcher() {
+	}
+
+	/**
+	 * Public access to the calibration watcher singleton.
+	 *
+	 * @return The calibration watcher singleton.
+	 */
+	public static CalibrationWatcher getInstance() {
+		if (instance == null) {
+			instance = new CalibrationWatcher();
+		}
+		return instance;
+	}
+
+	/**
+	 * Starts watching a calibration file, replacing the file watched so far.
+	 *
+	 * @param file The active calibration file.
+	 * @throws IOException If the directory of the file cannot be watched.
+	 */
+	public synchronized void watch(File file) throws IOException {
+		stop();
+		Path path = file.toPath().toAbsolutePath();
+		WatchService service = path.getFileSystem().newWatchService();
+		try {
+			path.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			service.close();
+			throw e;
+		}
+		watchService = service;
+		watchedFile = path;
+
+		Thread thread = new Thread(() -> run(service, path), "BED calibration watcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching the active calibration file.
+	 */
+	public synchronized void stop() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				Log.getInstance().exception(e);
+			}
+			watchService = null;
+			watchedFile = null;
+		}
+	}
+
+	/**
+	 * Returns the watched calibration file.
+	 *
+	 * @return The watched file, or null if no file is watched.
+	 */
+	public synchronized File getWatchedFile() {
+		return (watchedFile == null) ? null : watchedFile.toFile();
+	}
+
+	/**
+	 * Waits for changes of the file until the watch service is closed.
+	 *
+	 * @param service The watch service of the directory of the file.
+	 * @param file The watched file.
+	 */
+	private void run(WatchService service, Path file) {
+		try {
+			while (true) {
+				if (changed(service.take(), file)) {
+					// let the writer finish, folding the burst of events into one reload
+					WatchKey key;
+					while ((key = service.poll(SETTLE_TIME, TimeUnit.MILLISECONDS)) != null) {
+						changed(key, file);
+					}
+					reload(file);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	/**
+	 * Consumes the events of a watch key.
+	 *
+	 * @param key The signalled key.
+	 * @param file The watched file.
+	 * @return true if one of the events concerns the file, false otherwise.
+	 */
+	private static boolean changed(WatchKey key, Path file) {
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (file.getFileName().equals(event.context())) {
+				changed = true;
+			}
+		}
+		key.reset();
+		return changed;
+	}
+
+	/**
+	 * Parses the file and, if it is valid, swaps in its constants and
+	 * reconstructs the cached events again.
+	 *
+	 * @param file The changed file.
+	 */
+	private void reload(Path file) {
+		synchronized (this) {
+			if (!file.equals(watchedFile)) {
+				return;
+			}
+		}
+		try {
+			CalibrationTable table = CalibrationCache.load(file.toFile());
+			Reconstruction.getInstance().setCalibrationTable(table);
+			EventCache.getInstance().reprocess(EventCache.Stage.RECONSTRUCTION, table);
+			Log.getInstance().info("Reloaded calibration constants from " + file);
+		} catch (InvalidCalibrationFileException e) {
+			Log.getInstance().warning("Keeping the previous calibration constants: " + e.getMessage());
+		}
+	}
+
+}
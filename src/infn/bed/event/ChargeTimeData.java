@@ -1,7 +1,7 @@
 package infn.bed.event;
 
 import infn.bed.geometry.GeometricConstants;
-import infn.bed.math.MathematicalConstants;
+import infn.bed.util.ChannelParameters;
 
 import java.util.ArrayList;
 import java.util.Vector;
@@ -105,12 +105,46 @@ public class ChargeTimeData implements ILoad {
 		super();
 	}
 
+	/**
+	 * Builds charge-time data from hit arrays, for synthetic events.
+	 *
+	 * @param layerArray The bar layer of every bar hit.
+	 * @param paddleArray The bar paddle of every bar hit.
+	 * @param leftPMTChargeArray The left charge of every bar hit.
+	 * @param rightPMTChargeArray The right charge of every bar hit.
+	 * @param leftPMTTimeArray The left time of every bar hit.
+	 * @param rightPMTTimeArray The right time of every bar hit.
+	 * @param vetoLayerArray The veto layer of every veto hit.
+	 * @param vetoChannelArray The veto channel of every veto hit.
+	 * @param vetoChargeArray The charge of every veto hit.
+	 * @param vetoTimeArray The time of every veto hit.
+	 * @param dualSiPMVetoChargeArray The second SiPM charge of every veto hit.
+	 * @param dualSiPMVetoTimeArray The second SiPM time of every veto hit.
+	 */
+	ChargeTimeData(int layerArray[], int paddleArray[], int leftPMTChargeArray[], int rightPMTChargeArray[], int leftPMTTimeArray[], int rightPMTTimeArray[], int vetoLayerArray[], int vetoChannelArray[], int vetoChargeArray[], int vetoTimeArray[], int dualSiPMVetoChargeArray[], int dualSiPMVetoTimeArray[]) {
+		this.sectorArray = new int[layerArray.length];
+		this.layerArray = layerArray;
+		this.paddleArray = paddleArray;
+		this.leftPMTChargeArray = leftPMTChargeArray;
+		this.rightPMTChargeArray = rightPMTChargeArray;
+		this.leftPMTTimeArray = leftPMTTimeArray;
+		this.rightPMTTimeArray = rightPMTTimeArray;
+		this.vetoSectorArray = new int[vetoLayerArray.length];
+		this.vetoLayerArray = vetoLayerArray;
+		this.vetoChannelArray = vetoChannelArray;
+		this.vetoChargeArray = vetoChargeArray;
+		this.vetoTimeArray = vetoTimeArray;
+		this.dualSiPMVetoChargeArray = dualSiPMVetoChargeArray;
+		this.dualSiPMVetoTimeArray = dualSiPMVetoTimeArray;
+	}
+
 	/**
 	 * Converts full-waveform data to charge-time data.
 	 * 
-	 * @param sampleArrayList An ArrayList of PMT (photomultiplier tube) full-waveform data.
+	 * @param samples The PMT (photomultiplier tube) full-waveform samples of every channel.
+	 * @param sampleCounts The number of samples of every channel.
 	 */
-	public ChargeTimeData(ArrayList<ArrayList<Short>> sampleArrayList) {
+	public ChargeTimeData(short samples[][], int sampleCounts[]) {
 		ArrayList<Double> leftPMTChargeArrayList = new ArrayList<>();
 		ArrayList<Double> leftPMTTimeArrayList = new ArrayList<>();
 		
@@ -121,11 +155,9 @@ public class ChargeTimeData implements ILoad {
 		ArrayList<Integer> layerArrayList = new ArrayList<>();
 		ArrayList<Integer> paddleArrayList = new ArrayList<>();
 		
-		for (int i = 0; i < sampleArrayList.size(); i++) {
+		ChannelParameters parameters = ChannelParameters.getCurrent();
+		for (int i = 0; i < samples.length; i++) {
 			if (i < (GeometricConstants.BARS * 2)) {
-				ArrayList<Short> leftPMTSampleArrayList = sampleArrayList.get(i);
-				ArrayList<Short> rightPMTSampleArrayList = sampleArrayList.get(i + 1);
-				
 				int[] barLeftPMTArray = TranslationTable.bars[i];
 				int[] barRightPMTArray = TranslationTable.bars[i + 1];
 				
@@ -141,8 +173,8 @@ public class ChargeTimeData implements ILoad {
 				int barRightPMTLayer = barRightPMTArray[2];
 				int barRightPMTPaddle = barRightPMTArray[3];
 				
-				int barLeftPMTHits = convertHits(leftPMTSampleArrayList, leftPMTChargeArrayList, leftPMTTimeArrayList);
-				int barRightPMTHits = convertHits(rightPMTSampleArrayList, rightPMTChargeArrayList, rightPMTTimeArrayList);
+				int barLeftPMTHits = convertHits(samples[i], sampleCounts[i], parameters, i, leftPMTChargeArrayList, leftPMTTimeArrayList);
+				int barRightPMTHits = convertHits(samples[i + 1], sampleCounts[i + 1], parameters, i + 1, rightPMTChargeArrayList, rightPMTTimeArrayList);
 				
 				for (int hit = 0; hit < barLeftPMTHits; hit++) {
 					sectorArrayList.add(barLeftPMTSector);
@@ -173,31 +205,44 @@ public class ChargeTimeData implements ILoad {
 	}
 	
 	/**
-	 * @param sampleArrayList An ArrayList of samples.
+	 * Finds the pulses of one channel. The channel parameters are read once, so the loop over the
+	 * samples only touches the sample array and local primitives.
+	 *
+	 * @param samples The samples of the channel.
+	 * @param sampleCount The number of samples.
+	 * @param parameters The pulse-finding parameters.
+	 * @param channel The channel of the samples.
 	 * @param chargeArrayList An ArrayList of charges.
 	 * @param timeArrayList An ArrayList of times.
 	 * @return hits The number of hits.
 	 */
-	private int convertHits(ArrayList<Short> sampleArrayList, ArrayList<Double> chargeArrayList, ArrayList<Double> timeArrayList) {
+	private int convertHits(short samples[], int sampleCount, ChannelParameters parameters, int channel, ArrayList<Double> chargeArrayList, ArrayList<Double> timeArrayList) {
+		final int threshold = parameters.getThreshold(channel);
+		final int resistance = parameters.getResistance(channel);
+		final int period = parameters.getSamplePeriod(channel);
+
 		int hits = 0;
 		double a_L = 0;
 		double b_L = 0;
 		double charge = 0;
 		double time = 0;
 		boolean collectingPulse = false;
-		for (int i = 1; i < (sampleArrayList.size() - 1); i++) {
-			if (sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD && sampleArrayList.get(i - 1) < MathematicalConstants.ADC_THRESHOLD) {
-				a_L = sampleArrayList.get(i + 1) - sampleArrayList.get(i - 1) * 1 / 4;
-				b_L = sampleArrayList.get(i + 1) - a_L * (i - 1) * 4;
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+		for (int i = 1; i < (sampleCount - 1); i++) {
+			int previous = samples[i - 1];
+			int sample = samples[i];
+			int next = samples[i + 1];
+			if (sample > threshold && previous < threshold) {
+				a_L = next - previous * 1 / period;
+				b_L = next - a_L * (i - 1) * period;
+				charge = charge + (sample / resistance) * (i - 1) * period;
 				collectingPulse = true;
-			} else if ((sampleArrayList.get(i + 1) < sampleArrayList.get(i)) && (sampleArrayList.get(i - 1) < sampleArrayList.get(i)) && (sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD)) {
-				time = sampleArrayList.get(i) / 2;
+			} else if ((next < sample) && (previous < sample) && (sample > threshold)) {
+				time = sample / 2;
 				time = time - b_L;
 				time = time / a_L;
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
-			} else if ((sampleArrayList.get(i) > MathematicalConstants.ADC_THRESHOLD) && (sampleArrayList.get(i + 1) < MathematicalConstants.ADC_THRESHOLD)) {
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+				charge = charge + (sample / resistance) * (i - 1) * period;
+			} else if ((sample > threshold) && (next < threshold)) {
+				charge = charge + (sample / resistance) * (i - 1) * period;
 				chargeArrayList.add(charge);
 				timeArrayList.add(time);
 				hits++;
@@ -207,7 +252,7 @@ public class ChargeTimeData implements ILoad {
 				time = 0;
 				collectingPulse = false;
 			} else if (collectingPulse) {
-				charge = charge + (sampleArrayList.get(i) / MathematicalConstants.FADC_RESISTANCE) * (i - 1) * 4;
+				charge = charge + (sample / resistance) * (i - 1) * period;
 			}
 		}
 		return hits;
@@ -0,0 +1,143 @@
+package infn.bed.event;
+
+import infn.bed.histo.Counts;
+
+/**
+ * Counts how often pairs of detectors fire in the same event.
+ *
+ * <p>
+ * The matrix is symmetric, so only the upper triangle (diagonal included) is stored, packed row by row
+ * in the counters of the histogram package. The diagonal holds the number of events in which a
+ * detector fired at all. A concurrent matrix may be filled by any number of threads at once without
+ * contending on a single cache line; the private matrix of one thread uses plain counters.
+ * </p>
+ */
+public class CoincidenceMatrix {
+
+	/**
+	 * The number of detectors (rows and columns).
+	 */
+	private final int size;
+
+	/**
+	 * The counts of the packed upper triangle.
+	 */
+	private final Counts counts;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param size The number of detectors (at most 64).
+	 * @param concurrent true if the matrix may be filled by any number of threads at once, false for
+	 *            the private matrix of one thread.
+	 */
+	public CoincidenceMatrix(int size, boolean concurrent) {
+		if (size < 1 || size > Long.SIZE) {
+			throw new IllegalArgumentException("Unsupported number of detectors: " + size);
+		}
+		this.size = size;
+		counts = Counts.create(getPackedSize(), concurrent);
+	}
+
+	/**
+	 * Returns the number of detectors (rows and columns).
+	 *
+	 * @return The number of detectors.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of stored counters.
+	 *
+	 * @return The number of cells of the packed upper triangle.
+	 */
+	public int getPackedSize() {
+		return size * (size + 1) / 2;
+	}
+
+	/**
+	 * Returns the packed index of a pair of detectors. The order of the detectors does not matter.
+	 *
+	 * @param i The first detector index.
+	 * @param j The second detector index.
+	 * @return The index of the pair in the packed upper triangle.
+	 */
+	public int index(int i, int j) {
+		if (i > j) {
+			int k = i;
+			i = j;
+			j = k;
+		}
+		return i * (2 * size - i + 1) / 2 + (j - i);
+	}
+
+	/**
+	 * Counts one event in which the given set of detectors fired.
+	 *
+	 * @param firedMask A bit mask of the fired detectors (bit d set if detector d fired).
+	 */
+	public void fill(long firedMask) {
+		for (long rows = firedMask; rows != 0; rows &= rows - 1) {
+			int i = Long.numberOfTrailingZeros(rows);
+			int rowStart = i * (2 * size - i + 1) / 2 - i;
+			for (long columns = rows; columns != 0; columns &= columns - 1) {
+				counts.add(rowStart + Long.numberOfTrailingZeros(columns), 1);
+			}
+		}
+	}
+
+	/**
+	 * Adds the counts of another matrix of the same size. The other matrix should not be filled
+	 * meanwhile.
+	 *
+	 * @param other The matrix to add.
+	 */
+	public void merge(CoincidenceMatrix other) {
+		if (other.size != size) {
+			throw new IllegalArgumentException("Cannot merge a matrix of " + other.size + " detectors into one of " + size);
+		}
+		add(other.snapshot());
+	}
+
+	/**
+	 * Adds packed counts laid out like {@link #snapshot()}, for example counts read back from a file.
+	 *
+	 * @param counts The packed counts to add.
+	 */
+	public void add(long counts[]) {
+		if (counts.length != getPackedSize()) {
+			throw new IllegalArgumentException("Cannot add " + counts.length + " packed counts to a matrix of " + getPackedSize());
+		}
+		this.counts.addAll(counts);
+	}
+
+	/**
+	 * Returns the number of events in which both detectors fired.
+	 *
+	 * @param i The first detector index.
+	 * @param j The second detector index.
+	 * @return The coincidence count.
+	 */
+	public long getCount(int i, int j) {
+		return counts.get(index(i, j));
+	}
+
+	/**
+	 * Returns the packed upper triangle. Writers are never blocked.
+	 *
+	 * @return A copy of the packed counts.
+	 */
+	public long[] snapshot() {
+		return counts.snapshot();
+	}
+
+	/**
+	 * Clears all counts.
+	 */
+	public void clear() {
+		counts.clear();
+	}
+
+}
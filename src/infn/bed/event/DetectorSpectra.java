@@ -0,0 +1,333 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.histo.Axis;
+import infn.bed.histo.Histogram1D;
+import infn.bed.math.MathematicalConstants;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates, for every bar and veto, the hit count and the energy and time spectra, and, per event,
+ * the distributions of the number of bars and vetoes that fired.
+ *
+ * <p>
+ * Detectors are indexed like the coincidence matrix: the bars first (bar - 1), then the vetoes
+ * (BARS + veto - 1). Every spectrum is a fixed-bin {@link Histogram1D}; concurrent spectra may be
+ * filled from many threads without contention and read without blocking the writers, local spectra
+ * are the private set of a worker thread, merged into a shared set with {@link #merge}.
+ * </p>
+ */
+public class DetectorSpectra {
+
+	/**
+	 * The number of detectors, bars first, then vetoes.
+	 */
+	public static final int DETECTORS = GeometricConstants.BARS + GeometricConstants.VETOES;
+
+	/**
+	 * The number of energy bins.
+	 */
+	public static final int ENERGY_BINS = 100;
+
+	/**
+	 * The lower edge of the energy axis in MeV.
+	 */
+	public static final double ENERGY_MIN = 0;
+
+	/**
+	 * The upper edge of the energy axis in MeV.
+	 */
+	public static final double ENERGY_MAX = MathematicalConstants.UPPER_ENERGY_LIMIT;
+
+	/**
+	 * The number of time bins.
+	 */
+	public static final int TIME_BINS = 250;
+
+	/**
+	 * The lower edge of the time axis in ns.
+	 */
+	public static final double TIME_MIN = 0;
+
+	/**
+	 * The upper edge of the time axis in ns.
+	 */
+	public static final double TIME_MAX = 500;
+
+	/**
+	 * The axis of the energy spectra.
+	 */
+	private static final Axis ENERGY_AXIS = new Axis(ENERGY_BINS, ENERGY_MIN, ENERGY_MAX);
+
+	/**
+	 * The axis of the time spectra.
+	 */
+	private static final Axis TIME_AXIS = new Axis(TIME_BINS, TIME_MIN, TIME_MAX);
+
+	/**
+	 * The axis of the bar multiplicity, one bin per number of bars.
+	 */
+	private static final Axis BAR_MULTIPLICITY_AXIS = new Axis(GeometricConstants.BARS + 1, -0.5, GeometricConstants.BARS + 0.5);
+
+	/**
+	 * The axis of the veto multiplicity, one bin per number of vetoes.
+	 */
+	private static final Axis VETO_MULTIPLICITY_AXIS = new Axis(GeometricConstants.VETOES + 1, -0.5, GeometricConstants.VETOES + 0.5);
+
+	/**
+	 * The mask of the bar bits of a fired mask.
+	 */
+	private static final long BAR_MASK = (1L << GeometricConstants.BARS) - 1;
+
+	/**
+	 * The energy spectrum of every detector.
+	 */
+	private final Histogram1D energy[] = new Histogram1D[DETECTORS];
+
+	/**
+	 * The time spectrum of every detector.
+	 */
+	private final Histogram1D time[] = new Histogram1D[DETECTORS];
+
+	/**
+	 * The distribution of the number of bars that fired in an event.
+	 */
+	private final Histogram1D barMultiplicity;
+
+	/**
+	 * The distribution of the number of vetoes that fired in an event.
+	 */
+	private final Histogram1D vetoMultiplicity;
+
+	/**
+	 * Creates concurrent spectra.
+	 */
+	public DetectorSpectra() {
+		this(true);
+	}
+
+	/**
+	 * Creates the spectra.
+	 *
+	 * @param concurrent true if any number of threads may fill the spectra at once, false if they are
+	 *            filled by one thread at a time.
+	 */
+	public DetectorSpectra(boolean concurrent) {
+		for (int d = 0; d < DETECTORS; d++) {
+			energy[d] = new Histogram1D("Energy " + d, ENERGY_AXIS, concurrent);
+			time[d] = new Histogram1D("Time " + d, TIME_AXIS, concurrent);
+		}
+		barMultiplicity = new Histogram1D("Bar multiplicity", BAR_MULTIPLICITY_AXIS, concurrent);
+		vetoMultiplicity = new Histogram1D("Veto multiplicity", VETO_MULTIPLICITY_AXIS, concurrent);
+	}
+
+	/**
+	 * Adds the hits of one event.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 */
+	public void fill(ReconstructedData reconstructedData) {
+		int bars[] = reconstructedData.getBarNumberArray();
+		double barEnergies[] = reconstructedData.getBarEnergyArray();
+		double barTimes[] = reconstructedData.getBarTimeArray();
+		for (int i = 0; i < bars.length; i++) {
+			if (bars[i] > 0) {
+				energy[bars[i] - 1].fill(barEnergies[i]);
+				time[bars[i] - 1].fill(barTimes[i]);
+			}
+		}
+
+		int vetoes[] = reconstructedData.getVetoNumberArray();
+		double vetoEnergies[] = reconstructedData.getVetoEnergyArray();
+		double vetoTimes[] = reconstructedData.getVetoTimeArray();
+		for (int i = 0; i < vetoes.length; i++) {
+			if (vetoes[i] > 0) {
+				energy[GeometricConstants.BARS + vetoes[i] - 1].fill(vetoEnergies[i]);
+				time[GeometricConstants.BARS + vetoes[i] - 1].fill(vetoTimes[i]);
+			}
+		}
+
+		long fired = AccumulationManager.getFiredMask(reconstructedData);
+		barMultiplicity.fill(Long.bitCount(fired & BAR_MASK));
+		vetoMultiplicity.fill(Long.bitCount(fired & ~BAR_MASK));
+	}
+
+	/**
+	 * Adds the counts of other spectra. The other spectra should not be filled meanwhile.
+	 *
+	 * @param other The spectra to add.
+	 */
+	public void merge(DetectorSpectra other) {
+		for (int d = 0; d < DETECTORS; d++) {
+			energy[d].merge(other.energy[d]);
+			time[d].merge(other.time[d]);
+		}
+		barMultiplicity.merge(other.barMultiplicity);
+		vetoMultiplicity.merge(other.vetoMultiplicity);
+	}
+
+	/**
+	 * Removes the counts of other spectra, for example an expired slice of a sliding window. The
+	 * other spectra should not be filled meanwhile.
+	 *
+	 * @param other The spectra to remove.
+	 */
+	public void subtract(DetectorSpectra other) {
+		for (int d = 0; d < DETECTORS; d++) {
+			energy[d].subtract(other.energy[d]);
+			time[d].subtract(other.time[d]);
+		}
+		barMultiplicity.subtract(other.barMultiplicity);
+		vetoMultiplicity.subtract(other.vetoMultiplicity);
+	}
+
+	/**
+	 * Returns the bins of a histogram inside its axis.
+	 *
+	 * @param histogram The histogram.
+	 * @return A copy of the bin counts without underflow and overflow.
+	 */
+	private static long[] inRange(Histogram1D histogram) {
+		long counts[] = histogram.snapshot();
+		return Arrays.copyOfRange(counts, 1, counts.length - 1);
+	}
+
+	/**
+	 * Returns the number of entries of a histogram outside its axis.
+	 *
+	 * @param histogram The histogram.
+	 * @return The underflow plus the overflow.
+	 */
+	private static long outOfRange(Histogram1D histogram) {
+		return histogram.getCount(0) + histogram.getCount(histogram.getAxis().getBins() + 1);
+	}
+
+	/**
+	 * Returns the number of hits of a detector.
+	 *
+	 * @param detector The detector index.
+	 * @return The hit count.
+	 */
+	public long getHitCount(int detector) {
+		return energy[detector].getEntries();
+	}
+
+	/**
+	 * Returns the energy histogram of a detector, including underflow and overflow.
+	 *
+	 * @param detector The detector index.
+	 * @return The energy histogram.
+	 */
+	public Histogram1D getEnergyHistogram(int detector) {
+		return energy[detector];
+	}
+
+	/**
+	 * Returns the energy spectrum of a detector.
+	 *
+	 * @param detector The detector index.
+	 * @return A copy of the ENERGY_BINS bin counts.
+	 */
+	public long[] getEnergySpectrum(int detector) {
+		return inRange(energy[detector]);
+	}
+
+	/**
+	 * Returns the number of hits of a detector outside the energy axis.
+	 *
+	 * @param detector The detector index.
+	 * @return The number of hits outside the energy axis.
+	 */
+	public long getEnergyOutOfRange(int detector) {
+		return outOfRange(energy[detector]);
+	}
+
+	/**
+	 * Returns the time histogram of a detector, including underflow and overflow.
+	 *
+	 * @param detector The detector index.
+	 * @return The time histogram.
+	 */
+	public Histogram1D getTimeHistogram(int detector) {
+		return time[detector];
+	}
+
+	/**
+	 * Returns the time spectrum of a detector.
+	 *
+	 * @param detector The detector index.
+	 * @return A copy of the TIME_BINS bin counts.
+	 */
+	public long[] getTimeSpectrum(int detector) {
+		return inRange(time[detector]);
+	}
+
+	/**
+	 * Returns the number of hits of a detector outside the time axis.
+	 *
+	 * @param detector The detector index.
+	 * @return The number of hits outside the time axis.
+	 */
+	public long getTimeOutOfRange(int detector) {
+		return outOfRange(time[detector]);
+	}
+
+	/**
+	 * Returns the distribution of the number of bars that fired in an event.
+	 *
+	 * @return A copy of the counts of events with 0..BARS bars fired.
+	 */
+	public long[] getBarMultiplicity() {
+		return inRange(barMultiplicity);
+	}
+
+	/**
+	 * Returns the distribution of the number of vetoes that fired in an event.
+	 *
+	 * @return A copy of the counts of events with 0..VETOES vetoes fired.
+	 */
+	public long[] getVetoMultiplicity() {
+		return inRange(vetoMultiplicity);
+	}
+
+	/**
+	 * Returns the histogram of the number of bars that fired in an event.
+	 *
+	 * @return The bar multiplicity histogram, including underflow and overflow.
+	 */
+	Histogram1D getBarMultiplicityHistogram() {
+		return barMultiplicity;
+	}
+
+	/**
+	 * Returns the histogram of the number of vetoes that fired in an event.
+	 *
+	 * @return The veto multiplicity histogram, including underflow and overflow.
+	 */
+	Histogram1D getVetoMultiplicityHistogram() {
+		return vetoMultiplicity;
+	}
+
+	/**
+	 * Returns the number of accumulated events.
+	 *
+	 * @return The event count.
+	 */
+	public long getEventCount() {
+		return barMultiplicity.getEntries();
+	}
+
+	/**
+	 * Clears all counts.
+	 */
+	public void clear() {
+		for (int d = 0; d < DETECTORS; d++) {
+			energy[d].clear();
+			time[d].clear();
+		}
+		barMultiplicity.clear();
+		vetoMultiplicity.clear();
+	}
+
+}
@@ -0,0 +1,214 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.swing.SwingUtilities;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Keeps the decoded intermediate results (raw samples, pulses and energy-time information) of the most
+ * recent events so that a change of calibration constants or pulse-finding parameters only re-runs the
+ * affected downstream stages instead of rereading the file.
+ */
+public class EventCache {
+
+	/**
+	 * The processing stages that can be re-run on cached events.
+	 */
+	public enum Stage {
+		/**
+		 * Pulse finding on the raw samples, followed by the reconstruction.
+		 */
+		PULSE_FINDING,
+		/**
+		 * Energy-time reconstruction of the pulses.
+		 */
+		RECONSTRUCTION
+	}
+
+	/**
+	 * The default number of cached events.
+	 */
+	public static final int DEFAULT_CAPACITY = 500;
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static EventCache instance;
+
+	/**
+	 * The ring of cached events.
+	 */
+	private CachedEvent ring[] = new CachedEvent[DEFAULT_CAPACITY];
+
+	/**
+	 * The index of the next ring slot to be written.
+	 */
+	private int next;
+
+	/**
+	 * The number of cached events.
+	 */
+	private int size;
+
+	/**
+	 * Runs the reprocessing jobs one at a time, off the event dispatch thread.
+	 */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "BED event reprocessing");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * The listeners notified after reprocessing.
+	 */
+	private final List<IEventCacheListener> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Private constructor for singleton EventCache.
+	 */
+	private EventCache() {
+	}
+
+	/**
+	 * Public access to the event cache singleton.
+	 *
+	 * @return The event cache singleton.
+	 */
+	public static EventCache getInstance() {
+		if (instance == null) {
+			instance = new EventCache();
+		}
+		return instance;
+	}
+
+	/**
+	 * Adds an event to the cache, dropping the oldest event if the cache is full.
+	 *
+	 * @param event The event to cache.
+	 */
+	public synchronized void add(CachedEvent event) {
+		ring[next] = event;
+		next = (next + 1) % ring.length;
+		size = Math.min(size + 1, ring.length);
+	}
+
+	/**
+	 * Removes every event from the cache.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(ring, null);
+		next = 0;
+		size = 0;
+	}
+
+	/**
+	 * Sets the number of cached events. The cache is cleared.
+	 *
+	 * @param capacity The number of cached events (at least 1).
+	 */
+	public synchronized void setCapacity(int capacity) {
+		ring = new CachedEvent[Math.max(1, capacity)];
+		next = 0;
+		size = 0;
+	}
+
+	/**
+	 * Returns the cached events from the oldest to the most recent.
+	 *
+	 * @return A snapshot of the cached events.
+	 */
+	public synchronized List<CachedEvent> getEvents() {
+		List<CachedEvent> events = new ArrayList<>(size);
+		int first = (next - size + ring.length) % ring.length;
+		for (int i = 0; i < size; i++) {
+			events.add(ring[(first + i) % ring.length]);
+		}
+		return events;
+	}
+
+	/**
+	 * Re-runs the given stage and every later stage on all cached events, each with the calibration
+	 * constants it was reconstructed with. The work is spread over the available processors in the
+	 * background; the listeners are notified on the event dispatch thread once every cached event is
+	 * up to date.
+	 *
+	 * @param stage The first stage to re-run.
+	 */
+	public void reprocess(final Stage stage) {
+		reprocess(stage, false, null);
+	}
+
+	/**
+	 * Re-runs the given stage and every later stage on all cached events with new calibration
+	 * constants, which replace the constants of every cached event.
+	 *
+	 * @param stage The first stage to re-run.
+	 * @param calibrationTable The calibration constants, or null for none.
+	 */
+	public void reprocess(final Stage stage, final CalibrationTable calibrationTable) {
+		reprocess(stage, true, calibrationTable);
+	}
+
+	/**
+	 * Re-runs the given stage and every later stage on all cached events in the background. Only the
+	 * cached events are reprocessed: the accumulated histograms keep the events they were filled
+	 * with, which the log says when there are any.
+	 *
+	 * @param stage The first stage to re-run.
+	 * @param replaceTable true to reconstruct with the given constants, false to keep the constants
+	 *            of every event.
+	 * @param calibrationTable The calibration constants if they are replaced.
+	 */
+	private void reprocess(final Stage stage, final boolean replaceTable, final CalibrationTable calibrationTable) {
+		executor.execute(() -> {
+			List<CachedEvent> events = getEvents();
+			long start = System.nanoTime();
+			if (replaceTable) {
+				events.parallelStream().forEach(event -> event.reprocess(stage, calibrationTable));
+			} else {
+				events.parallelStream().forEach(event -> event.reprocess(stage));
+			}
+			long elapsed = (System.nanoTime() - start) / 1000000;
+			Log.getInstance().info("Reprocessed " + events.size() + " cached events from " + stage + " in " + elapsed + " ms");
+			long accumulated = AccumulationManager.getInstance().getAccumulationSet().getEventCount();
+			if (accumulated > 0) {
+				Log.getInstance().warning("The accumulated histograms are not rebuilt: they still hold " + accumulated
+						+ " events processed with the earlier settings. Clear the accumulation and reread the events to rebuild them.");
+			}
+			SwingUtilities.invokeLater(() -> {
+				for (IEventCacheListener listener : listeners) {
+					listener.cachedEventsReprocessed();
+				}
+			});
+		});
+	}
+
+	/**
+	 * Adds a listener notified after reprocessing.
+	 *
+	 * @param listener The listener to add.
+	 */
+	public void addEventCacheListener(IEventCacheListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener notified after reprocessing.
+	 *
+	 * @param listener The listener to remove.
+	 */
+	public void removeEventCacheListener(IEventCacheListener listener) {
+		listeners.remove(listener);
+	}
+
+}
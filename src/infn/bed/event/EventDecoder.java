@@ -0,0 +1,255 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationTable;
+
+import org.jlab.coda.jevio.BaseStructure;
+import org.jlab.coda.jevio.BaseStructureHeader;
+import org.jlab.coda.jevio.IEvioListener;
+import org.jlab.coda.jevio.IEvioStructure;
+
+/**
+ * Decodes one event at a time from the jevio parser callbacks: the charge-time
+ * banks and the full-waveform bank are loaded, the veto filter is applied,
+ * pulses are found and the event is reconstructed. The decoder does not touch
+ * any view, so one instance per thread can be used to decode events in
+ * parallel.
+ */
+public class EventDecoder implements IEvioListener {
+
+	/**
+	 * The tag of the CODA prestart event, which carries the run number.
+	 */
+	public static final int PRESTART_TAG = 17;
+
+	/**
+	 * true if the full-waveform plot data sets are filled, false otherwise
+	 */
+	private final boolean plotData;
+
+	/**
+	 * The instance to read in full waveform data
+	 */
+	private FullWaveformData fullWaveformData;
+
+	/**
+	 * The instance to read in charge-time data or convert to charge-time data
+	 */
+	private ChargeTimeData ctData;
+
+	/**
+	 * The decoded and reconstructed event, once the parsing has ended
+	 */
+	private CachedEvent event;
+
+	/**
+	 * true if the veto filter rejected the current event, false otherwise
+	 */
+	private boolean eventRejected;
+
+	/**
+	 * The run number if the current event is a prestart event, -1 otherwise
+	 */
+	private int prestartRunNumber = -1;
+
+	/**
+	 * The calibration constants used to reconstruct, or null for the constants
+	 * in use by the reconstruction
+	 */
+	private CalibrationTable calibrationTable;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param plotData
+	 *            true to also fill the full-waveform plot data sets, false to
+	 *            keep only the samples
+	 */
+	public EventDecoder(boolean plotData) {
+		this.plotData = plotData;
+	}
+
+	/**
+	 * Got a structure from the event source. The banks of interest are loaded
+	 * into the data classes.
+	 *
+	 * @param baseStructure
+	 *            the base structure being passed.
+	 * @param structure
+	 *            structure received.
+	 */
+	@Override
+	public void gotStructure(BaseStructure baseStructure,
+			IEvioStructure structure) {
+
+		BaseStructureHeader header = structure.getHeader();
+		int tag = header.getTag();
+		int num = header.getNumber();
+		if (tag == PRESTART_TAG && structure == baseStructure) {
+			prestartRunNumber = getPrestartRunNumber(structure);
+			return;
+		}
+
+		// a rejected event gets no further processing
+		if (eventRejected) {
+			return;
+		}
+		if (tag == 102 || tag == 202) {
+			if (ctData == null) {
+				ctData = new ChargeTimeData();
+			}
+			ctData.load(structure, tag, num);
+		}
+
+		if (tag == 57601) {
+			if (fullWaveformData == null) {
+				fullWaveformData = new FullWaveformData(plotData);
+			}
+			// the veto channels are checked while the bank is read, before any pulse finding
+			if (!fullWaveformData.load(structure, VetoFilter.getInstance())) {
+				reject();
+				return;
+			}
+			ctData = new ChargeTimeData(fullWaveformData.getSamples(), fullWaveformData.getSampleCounts());
+		}
+	}
+
+	/**
+	 * Rejects the current event. The event data are dropped so that no bar
+	 * processing takes place.
+	 */
+	private void reject() {
+		eventRejected = true;
+		fullWaveformData = null;
+		ctData = null;
+	}
+
+	/**
+	 * A new event is starting to be parsed by jevio.
+	 *
+	 * @param baseStructure
+	 *            the base structure being passed.
+	 */
+	@Override
+	public void startEventParse(BaseStructure baseStructure) {
+		clear();
+	}
+
+	/**
+	 * The end of an event parsing has occurred. The charge-time veto check is
+	 * applied and the surviving event is reconstructed.
+	 *
+	 * @param baseStructure
+	 *            the base structure being passed.
+	 */
+	@Override
+	public void endEventParse(BaseStructure baseStructure) {
+		// control events are not examined
+		if (prestartRunNumber >= 0) {
+			return;
+		}
+
+		VetoFilter vetoFilter = VetoFilter.getInstance();
+		vetoFilter.countExaminedEvent();
+
+		// the veto charge-time banks are checked once the whole event is in
+		if (!eventRejected && fullWaveformData == null && ctData != null) {
+			if (vetoFilter.rejectChargeTimeData(ctData.getVetoLayerArray(), ctData.getVetoChargeArray())) {
+				reject();
+			}
+		}
+
+		// reconstruct once and keep the intermediate results for reprocessing
+		if (!eventRejected && ctData != null) {
+			Reconstruction reconstruction = Reconstruction.getInstance();
+			CalibrationTable table = (calibrationTable == null) ? reconstruction
+					.getCalibrationTable() : calibrationTable;
+			event = new CachedEvent(fullWaveformData, reconstruction.reconstruct(ctData, table), table);
+		}
+	}
+
+	/**
+	 * Clear the data of the previous event
+	 */
+	public void clear() {
+		fullWaveformData = null;
+		ctData = null;
+		event = null;
+		eventRejected = false;
+		prestartRunNumber = -1;
+	}
+
+	/**
+	 * Sets the calibration constants used to reconstruct the following events.
+	 *
+	 * @param calibrationTable
+	 *            the calibration constants, or null for the constants in use by
+	 *            the reconstruction
+	 */
+	public void setCalibrationTable(CalibrationTable calibrationTable) {
+		this.calibrationTable = calibrationTable;
+	}
+
+	/**
+	 * Returns the run number of a CODA prestart event, whose data are the
+	 * time, the run number and the run type.
+	 *
+	 * @param event
+	 *            an event with the prestart tag
+	 * @return the run number, or -1 if the event holds no run number
+	 */
+	public static int getPrestartRunNumber(IEvioStructure event) {
+		int data[] = event.getIntData();
+		return (data == null || data.length < 2) ? -1 : data[1];
+	}
+
+	/**
+	 * Get the run number of the current event if it is a prestart event
+	 *
+	 * @return The run number, or -1 if the current event is not a prestart
+	 *         event
+	 */
+	public int getPrestartRunNumber() {
+		return prestartRunNumber;
+	}
+
+	/**
+	 * Get the full waveform data
+	 *
+	 * @return The full waveform data instance
+	 */
+	public FullWaveformData getFullWaveformData() {
+		return fullWaveformData;
+	}
+
+	/**
+	 * Get the charge-time data
+	 *
+	 * @return The charge-time data instance
+	 */
+	public ChargeTimeData getChargeTimeData() {
+		if (event != null) {
+			return event.getChargeTimeData();
+		}
+		return ctData;
+	}
+
+	/**
+	 * Get the decoded and reconstructed event
+	 *
+	 * @return The event, or null if the parsing has not ended, the event had
+	 *         no bar or veto data or it was rejected
+	 */
+	public CachedEvent getEvent() {
+		return event;
+	}
+
+	/**
+	 * Check whether the veto filter rejected the current event
+	 *
+	 * @return true if the current event was rejected, false otherwise
+	 */
+	public boolean isEventRejected() {
+		return eventRejected;
+	}
+
+}
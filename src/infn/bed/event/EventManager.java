@@ -2,11 +2,13 @@ package infn.bed.event;
 
 import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.event.StructureHandler;
+import cnuphys.bCNU.log.Log;
 import infn.bed.event.FullWaveformData;
 import infn.bed.frame.Bed;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.InvalidCalibrationFileException;
 
 import org.jlab.coda.jevio.BaseStructure;
-import org.jlab.coda.jevio.BaseStructureHeader;
 import org.jlab.coda.jevio.IEvioListener;
 import org.jlab.coda.jevio.IEvioStructure;
 
@@ -32,14 +34,9 @@ public class EventManager implements IEvioListener {
 	private StructureHandler _structureHandler = new StructureHandler(1543);
 
 	/**
-	 * The instance to read in full waveform data
+	 * Decodes and reconstructs the events, keeping the plot data sets
 	 */
-	private FullWaveformData fullWaveformData;
-
-	/**
-	 * The instance to read in charge-time data or convert to charge-time data
-	 */
-	private ChargeTimeData ctData;
+	private final EventDecoder _decoder = new EventDecoder(true);
 
 	/**
 	 * Private constructor for singleton EventManager. This with getInstance()
@@ -75,26 +72,20 @@ public class EventManager implements IEvioListener {
 	public void gotStructure(BaseStructure baseStructure,
 			IEvioStructure structure) {
 
+		// a rejected event gets no further processing
+		if (_decoder.isEventRejected()) {
+			return;
+		}
+
 		_structureHandler.addStructure(structure);
+		_decoder.gotStructure(baseStructure, structure);
 
-		// grab the structures I'm interested in
-		BaseStructureHeader header = structure.getHeader();
-		int tag = header.getTag();
-		int num = header.getNumber();
-		if (tag == 102 || tag == 202) {
-			if (ctData == null) {
-				ctData = new ChargeTimeData();
-			}
-			ctData.load(structure, tag, num);
+		if (_decoder.isEventRejected()) {
+			_structureHandler.clear();
+			return;
 		}
-
-		if (tag == 57601) {
-			if (fullWaveformData == null) {
-				fullWaveformData = new FullWaveformData();
-			}
-			fullWaveformData.load(structure, tag, num);
-			ctData = new ChargeTimeData(fullWaveformData.getChannelSampleArrayList());
-			Bed.getInstance().fillPlots(fullWaveformData.getDataSetArray());
+		if (structure.getHeader().getTag() == 57601) {
+			Bed.getInstance().fillPlots(_decoder.getFullWaveformData().getDataSetArray());
 		}
 	}
 
@@ -117,6 +108,38 @@ public class EventManager implements IEvioListener {
 	 */
 	@Override
 	public void endEventParse(BaseStructure baseStructure) {
+		_decoder.endEventParse(baseStructure);
+		if (_decoder.getPrestartRunNumber() >= 0) {
+			selectRun(_decoder.getPrestartRunNumber());
+		}
+		if (_decoder.isEventRejected()) {
+			_structureHandler.clear();
+		} else if (_decoder.getEvent() != null) {
+			EventCache.getInstance().add(_decoder.getEvent());
+			RateMeter.getInstance().fill(_decoder.getEvent().getReconstructedData());
+			GainMonitor.getInstance().fill(_decoder.getEvent().getChargeTimeData());
+			WaveformPersistence.getInstance().fill(_decoder.getEvent().getSamples(), _decoder.getEvent().getSampleCounts());
+			NoiseSpectrum.getInstance().fill(_decoder.getEvent().getSamples(), _decoder.getEvent().getSampleCounts());
+		}
+	}
+
+	/**
+	 * Selects the calibration constants of a new run.
+	 * 
+	 * @param runNumber
+	 *            the run number from the prestart event
+	 */
+	private void selectRun(int runNumber) {
+		try {
+			CalibrationTable table = Reconstruction.getInstance().selectRun(runNumber);
+			if (table != null) {
+				Log.getInstance().info("Run " + runNumber + ": calibration constants from " + table.getSource());
+			} else if (Reconstruction.getInstance().getCalibrationStore() != null) {
+				Log.getInstance().warning("Run " + runNumber + ": no calibration constants in the store, keeping the constants in use");
+			}
+		} catch (InvalidCalibrationFileException e) {
+			Log.getInstance().warning("Run " + runNumber + ": " + e.getMessage());
+		}
 	}
 
 	/**
@@ -124,10 +147,7 @@ public class EventManager implements IEvioListener {
 	 */
 	private void clear() {
 		_structureHandler.clear();
-
-		// nullify data pointers
-		fullWaveformData = null;
-		ctData = null;
+		_decoder.clear();
 	}
 
 	/**
@@ -136,7 +156,7 @@ public class EventManager implements IEvioListener {
 	 * @return The full waveform data instance
 	 */
 	public FullWaveformData getFullWaveformData() {
-		return fullWaveformData;
+		return _decoder.getFullWaveformData();
 	}
 
 	/**
@@ -145,7 +165,40 @@ public class EventManager implements IEvioListener {
 	 * @return The charge-time data instance
 	 */
 	public ChargeTimeData getChargeTimeData() {
-		return ctData;
+		return _decoder.getChargeTimeData();
+	}
+
+	/**
+	 * Get the decoded and reconstructed event
+	 * 
+	 * @return The event, or null if it had no bar or veto data or it was
+	 *         rejected
+	 */
+	public CachedEvent getEvent() {
+		return _decoder.getEvent();
+	}
+
+	/**
+	 * Get the energy-time information reconstructed from the charge-time data
+	 * 
+	 * @return The reconstructed data instance, or null if the event has not
+	 *         been reconstructed
+	 */
+	public ReconstructedData getReconstructedData() {
+		CachedEvent event = _decoder.getEvent();
+		if (event != null) {
+			return event.getReconstructedData();
+		}
+		return null;
+	}
+
+	/**
+	 * Check whether the veto filter rejected the current event
+	 * 
+	 * @return true if the current event was rejected, false otherwise
+	 */
+	public boolean isEventRejected() {
+		return _decoder.isEventRejected();
 	}
 
 }
@@ -3,6 +3,7 @@ package infn.bed.event;
 import infn.bed.view.plot.WavePlot;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Vector;
 
 import org.jlab.coda.jevio.CompositeData;
@@ -20,26 +21,55 @@ import cnuphys.splot.pdata.DataSetType;
  */
 public class FullWaveformData implements ILoad {
 
+	/**
+	 * The number of FADC (flash analog-to-digital converter) channels.
+	 */
+	private static final int CHANNELS = 34;
+
 	/**
 	 * An ArrayList of PMT (photomultiplier tube) full-waveform data.
 	 */
 	private final ArrayList<ArrayList<Short>> channelSampleArrayList;
 
 	/**
-	 * An array of plot data sets.
+	 * An array of plot data sets, or null if no plot data are kept.
 	 */
 	private final DataSet[] dataSetArray;
 
 	/**
-	 * Prepares the full-waveform data.
+	 * The samples of every channel as read. Only the first sampleCounts[channel] samples of a
+	 * channel are valid.
+	 */
+	private final short[][] samples = new short[CHANNELS][0];
+
+	/**
+	 * The number of samples read of every channel.
+	 */
+	private final int[] sampleCounts = new int[CHANNELS];
+
+	/**
+	 * Prepares the full-waveform data, including the plot data sets.
 	 */
 	public FullWaveformData() {
+		this(true);
+	}
+
+	/**
+	 * Prepares the full-waveform data.
+	 * 
+	 * @param plotData true to also fill the plot data sets, false to keep only the samples.
+	 */
+	public FullWaveformData(boolean plotData) {
 		channelSampleArrayList = new ArrayList<>();
-		dataSetArray = new DataSet[34];
-		for (int i = 0; i < 34; i++) {
+		for (int i = 0; i < CHANNELS; i++) {
 			channelSampleArrayList.add(new ArrayList<>());
 		}
-		for (int i = 0; i < 34; i++) {
+		if (!plotData) {
+			dataSetArray = null;
+			return;
+		}
+		dataSetArray = new DataSet[CHANNELS];
+		for (int i = 0; i < CHANNELS; i++) {
 			try {
 				dataSetArray[i] = new DataSet(DataSetType.XYXY, WavePlot.getColumnNames());
 			} catch (DataSetException e) {
@@ -57,19 +87,35 @@ public class FullWaveformData implements ILoad {
 	 */
 	@Override
 	public void load(IEvioStructure structure, int tag, int num) {
+		load(structure, null);
+	}
+
+	/**
+	 * Loads full-waveform data from a full-waveform data file, checking every veto channel as soon
+	 * as it is read. The samples are first read into primitive arrays; only if the event passes the
+	 * veto filter are they copied to the sample lists and the plot data sets.
+	 * 
+	 * @param structure An instance of the IEvioStructure object.
+	 * @param vetoFilter The veto filter, or null to accept every event.
+	 * @return true if the event was loaded, false if the veto filter rejected it.
+	 */
+	public boolean load(IEvioStructure structure, VetoFilter vetoFilter) {
+		channelSampleArrayList.forEach(ArrayList<Short>::clear);
+		Arrays.fill(sampleCounts, 0);
+		boolean filtering = (vetoFilter != null) && vetoFilter.isEnabled();
+		int minimumHits = filtering ? vetoFilter.getMinimumHits() : 0;
+		int vetoHits = 0;
 		try {
-			channelSampleArrayList.forEach(ArrayList<Short>::clear);
 			CompositeData[] compositeDataArray = structure.getCompositeData();
 			if (compositeDataArray != null) {
 				for (CompositeData compositeData : compositeDataArray) {
 					int channelCount = compositeData.getNValue();
 					for (int i = 0; i < channelCount; i++) {
 						byte channelNumber = compositeData.getByte();
-						int sampleCount = compositeData.getNValue();
-						for (int j = 0; j < sampleCount; j++) {
-							short sample = compositeData.getShort();
-							channelSampleArrayList.get(channelNumber).add(sample);
-							dataSetArray[channelNumber].add((j + 1) * 4, sample);
+						readSamples(compositeData, channelNumber);
+						if (filtering && vetoFilter.isFullWaveformHit(channelNumber, samples[channelNumber], sampleCounts[channelNumber]) && ++vetoHits >= minimumHits) {
+							vetoFilter.countFullWaveformRejection();
+							return false;
 						}
 					}
 					byte boardNumber = compositeData.getByte();
@@ -77,12 +123,11 @@ public class FullWaveformData implements ILoad {
 					compositeData.getLong();
 					channelCount = compositeData.getNValue();
 					for (int i = 0; i < channelCount; i++) {
-						byte channelNum = compositeData.getByte();
-						int numSamples = compositeData.getNValue();
-						for (int j = 0; j < numSamples; j++) {
-							short sample = compositeData.getShort();
-							channelSampleArrayList.get((boardNumber - 7) * 16 + channelNum).add(sample);
-							dataSetArray[(boardNumber - 7) * 16 + channelNum].add((j + 1) * 4, sample);
+						int channel = (boardNumber - 7) * 16 + compositeData.getByte();
+						readSamples(compositeData, channel);
+						if (filtering && vetoFilter.isFullWaveformHit(channel, samples[channel], sampleCounts[channel]) && ++vetoHits >= minimumHits) {
+							vetoFilter.countFullWaveformRejection();
+							return false;
 						}
 					}
 				}
@@ -90,6 +135,39 @@ public class FullWaveformData implements ILoad {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+		for (int channel = 0; channel < CHANNELS; channel++) {
+			ArrayList<Short> sampleArrayList = channelSampleArrayList.get(channel);
+			short channelSamples[] = samples[channel];
+			int count = sampleCounts[channel];
+			sampleArrayList.ensureCapacity(count);
+			for (int j = 0; j < count; j++) {
+				sampleArrayList.add(channelSamples[j]);
+				if (dataSetArray != null) {
+					dataSetArray[channel].add((j + 1) * 4, channelSamples[j]);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the samples of one channel from a composite data item and appends them to the samples
+	 * of the channel.
+	 * 
+	 * @param compositeData The composite data item, positioned at the sample count.
+	 * @param channel The channel.
+	 */
+	private void readSamples(CompositeData compositeData, int channel) {
+		int sampleCount = compositeData.getNValue();
+		int count = sampleCounts[channel];
+		if (samples[channel].length < count + sampleCount) {
+			samples[channel] = Arrays.copyOf(samples[channel], count + sampleCount);
+		}
+		short channelSamples[] = samples[channel];
+		for (int j = 0; j < sampleCount; j++) {
+			channelSamples[count + j] = compositeData.getShort();
+		}
+		sampleCounts[channel] = count + sampleCount;
 	}
 
 	/**
@@ -101,10 +179,29 @@ public class FullWaveformData implements ILoad {
 		return channelSampleArrayList;
 	}
 
+	/**
+	 * Returns the samples of every channel as read, without copying them.
+	 * 
+	 * @return The samples, indexed by channel; only the first {@link #getSampleCounts()} samples of
+	 *         a channel are valid.
+	 */
+	public short[][] getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Returns the number of samples read of every channel.
+	 * 
+	 * @return The sample counts, indexed by channel.
+	 */
+	public int[] getSampleCounts() {
+		return sampleCounts;
+	}
+
 	/**
 	 * Returns an array of plot data sets.
 	 * 
-	 * @return An array of plot data sets.
+	 * @return An array of plot data sets, or null if no plot data are kept.
 	 */
 	public DataSet[] getDataSetArray() {
 		return dataSetArray;
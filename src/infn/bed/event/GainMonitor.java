@@ -0,0 +1,388 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationTable;
+
+import java.util.Arrays;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Tracks the peak of the charge spectrum of every readout channel (for example the cosmic MIP
+ * peak) while events stream in, and flags the channels whose peak drifts from its reference by more
+ * than a tolerance.
+ *
+ * <p>
+ * Every channel keeps an exponentially weighted histogram of log2(charge) with a fixed number of
+ * bins, so the older hits fade out with a memory of about {@link #DEFAULT_MEMORY} hits. Instead of
+ * decaying every bin on every hit, the weight of a new hit grows geometrically and the bins are
+ * rescaled on the rare occasions the weight gets large; the counts then only grow, so the highest
+ * bin is tracked on the fly. A fill is one logarithm, one addition and a few comparisons, and the
+ * peak is refined by a parabola through the highest bin and its neighbours.
+ * </p>
+ *
+ * <p>
+ * Channels are numbered 2 * item + side, with the items in calibration file order (b1..b9, then
+ * v1..v34) and side 0 for the left (or only) readout and 1 for the right (or second SiPM) readout.
+ * The monitor is filled from the event thread and read, reset or cleared from the views, so its
+ * methods are synchronized; an event takes the lock once for all of its hits.
+ * </p>
+ */
+public class GainMonitor {
+
+	/**
+	 * The number of channels.
+	 */
+	public static final int CHANNELS = 2 * CalibrationTable.ITEMS;
+
+	/**
+	 * The number of histogram bins per factor of two in charge.
+	 */
+	public static final int BINS_PER_OCTAVE = 16;
+
+	/**
+	 * log2 of the lowest charge of the histograms.
+	 */
+	public static final int MIN_OCTAVE = 4;
+
+	/**
+	 * The number of factors of two in charge the histograms span.
+	 */
+	public static final int OCTAVES = 16;
+
+	/**
+	 * The number of histogram bins per channel.
+	 */
+	public static final int BINS = BINS_PER_OCTAVE * OCTAVES;
+
+	/**
+	 * The default number of hits over which the histograms fade out.
+	 */
+	public static final int DEFAULT_MEMORY = 5000;
+
+	/**
+	 * The default tolerated relative drift of the peak.
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.05;
+
+	/**
+	 * The number of hits a channel needs before its peak becomes its reference.
+	 */
+	public static final int REFERENCE_HITS = 2000;
+
+	/**
+	 * The number of hits between two drift checks of a channel.
+	 */
+	private static final int CHECK_INTERVAL = 64;
+
+	/**
+	 * The weight above which the histogram of a channel is rescaled.
+	 */
+	private static final double MAX_WEIGHT = 1e200;
+
+	/**
+	 * 1 / ln(2).
+	 */
+	private static final double INVERSE_LN2 = 1 / Math.log(2);
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static GainMonitor instance;
+
+	/**
+	 * The weighted bin contents indexed by channel * BINS + bin.
+	 */
+	private final double counts[] = new double[CHANNELS * BINS];
+
+	/**
+	 * The weight of the next hit of every channel.
+	 */
+	private final double weight[] = new double[CHANNELS];
+
+	/**
+	 * The highest bin of every channel.
+	 */
+	private final int peakBin[] = new int[CHANNELS];
+
+	/**
+	 * The number of hits of every channel since the reference was cleared.
+	 */
+	private final long hits[] = new long[CHANNELS];
+
+	/**
+	 * The reference peak of every channel (NaN until established).
+	 */
+	private final double reference[] = new double[CHANNELS];
+
+	/**
+	 * true for the channels whose peak is out of tolerance.
+	 */
+	private final boolean drifting[] = new boolean[CHANNELS];
+
+	/**
+	 * The factor the weight grows by with every hit.
+	 */
+	private double growth;
+
+	/**
+	 * The tolerated relative drift of the peak.
+	 */
+	private volatile double tolerance = DEFAULT_TOLERANCE;
+
+	/**
+	 * Private constructor for singleton GainMonitor.
+	 */
+	private GainMonitor() {
+		setMemory(DEFAULT_MEMORY);
+		clear();
+	}
+
+	/**
+	 * Public access to the gain monitor singleton.
+	 *
+	 * @return The gain monitor singleton.
+	 */
+	public static GainMonitor getInstance() {
+		if (instance == null) {
+			instance = new GainMonitor();
+		}
+		return instance;
+	}
+
+	/**
+	 * Adds the charges of every hit of an event.
+	 *
+	 * @param ctData The charge-time data of the event.
+	 */
+	public synchronized void fill(ChargeTimeData ctData) {
+		int layers[] = ctData.getLayerArray();
+		int paddles[] = ctData.getPaddleArray();
+		int leftCharges[] = ctData.getLeftPMTChargeArray();
+		int rightCharges[] = ctData.getRightPMTChargeArray();
+		if (layers != null && paddles != null && leftCharges != null && rightCharges != null) {
+			int n = Math.min(Math.min(layers.length, paddles.length), Math.min(leftCharges.length, rightCharges.length));
+			for (int i = 0; i < n; i++) {
+				int bar = ReconstructedData.getBarNumber(layers[i], paddles[i]);
+				if (bar > 0) {
+					fill(2 * (bar - 1), leftCharges[i]);
+					fill(2 * (bar - 1) + 1, rightCharges[i]);
+				}
+			}
+		}
+
+		int vetoLayers[] = ctData.getVetoLayerArray();
+		int vetoChannels[] = ctData.getVetoChannelArray();
+		int vetoCharges[] = ctData.getVetoChargeArray();
+		int dualCharges[] = ctData.getDualSiPMVetoChargeArray();
+		if (vetoLayers != null && vetoChannels != null && vetoCharges != null) {
+			int n = Math.min(vetoLayers.length, Math.min(vetoChannels.length, vetoCharges.length));
+			for (int i = 0; i < n; i++) {
+				int veto = ReconstructedData.getVetoNumber(vetoLayers[i], vetoChannels[i]);
+				if (veto > 0) {
+					int item = GeometricConstants.BARS + veto - 1;
+					fill(2 * item, vetoCharges[i]);
+					if (Reconstruction.isDualSiPMVeto(veto) && dualCharges != null && i < dualCharges.length) {
+						fill(2 * item + 1, dualCharges[i]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the charge of one hit.
+	 *
+	 * @param channel The channel.
+	 * @param charge The charge.
+	 */
+	public synchronized void fill(int channel, int charge) {
+		// NaN and -Infinity compare false, so non-positive charges are skipped
+		double x = (Math.log(charge) * INVERSE_LN2 - MIN_OCTAVE) * BINS_PER_OCTAVE;
+		if (!(x >= 0 && x < BINS)) {
+			return;
+		}
+		int start = channel * BINS;
+		int bin = (int) x;
+		double w = weight[channel];
+		double c = counts[start + bin] + w;
+		counts[start + bin] = c;
+		if (c > counts[start + peakBin[channel]]) {
+			peakBin[channel] = bin;
+		}
+		w *= growth;
+		if (w > MAX_WEIGHT) {
+			for (int i = start; i < start + BINS; i++) {
+				counts[i] /= w;
+			}
+			w = 1;
+		}
+		weight[channel] = w;
+
+		long n = ++hits[channel];
+		if (n % CHECK_INTERVAL == 0) {
+			check(channel, n);
+		}
+	}
+
+	/**
+	 * Establishes the reference peak of a channel or compares the peak with it.
+	 *
+	 * @param channel The channel.
+	 * @param n The number of hits since the reference was cleared.
+	 */
+	private void check(int channel, long n) {
+		double peak = getPeak(channel);
+		if (Double.isNaN(reference[channel])) {
+			if (n >= REFERENCE_HITS) {
+				reference[channel] = peak;
+			}
+			return;
+		}
+		boolean drift = Math.abs(peak / reference[channel] - 1) > tolerance;
+		if (drift != drifting[channel]) {
+			drifting[channel] = drift;
+			if (drift) {
+				Log.getInstance().warning("Gain drift on " + getChannelName(channel) + ": peak " + Math.round(peak) + ", reference " + Math.round(reference[channel]));
+			} else {
+				Log.getInstance().info("Gain of " + getChannelName(channel) + " back within tolerance");
+			}
+		}
+	}
+
+	/**
+	 * Returns the current peak of the charge spectrum of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The peak charge, or NaN if the channel has no hits.
+	 */
+	public synchronized double getPeak(int channel) {
+		int start = channel * BINS;
+		int bin = peakBin[channel];
+		double y1 = counts[start + bin];
+		if (y1 == 0) {
+			return Double.NaN;
+		}
+		double offset = 0;
+		if (bin > 0 && bin < BINS - 1) {
+			double y0 = counts[start + bin - 1];
+			double y2 = counts[start + bin + 1];
+			double curvature = y0 - 2 * y1 + y2;
+			if (curvature < 0) {
+				offset = 0.5 * (y0 - y2) / curvature;
+			}
+		}
+		return Math.pow(2, MIN_OCTAVE + (bin + 0.5 + offset) / BINS_PER_OCTAVE);
+	}
+
+	/**
+	 * Returns the reference peak of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The reference peak charge, or NaN if not established yet.
+	 */
+	public synchronized double getReference(int channel) {
+		return reference[channel];
+	}
+
+	/**
+	 * Returns the number of hits of a channel since the reference was cleared.
+	 *
+	 * @param channel The channel.
+	 * @return The number of hits in the histogram range.
+	 */
+	public synchronized long getHits(int channel) {
+		return hits[channel];
+	}
+
+	/**
+	 * Returns true if the peak of a channel is out of tolerance, false otherwise.
+	 *
+	 * @param channel The channel.
+	 * @return true if the channel is drifting, false otherwise.
+	 */
+	public synchronized boolean isDrifting(int channel) {
+		return drifting[channel];
+	}
+
+	/**
+	 * Returns the name of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The channel name, such as b1L or v8R.
+	 */
+	public static String getChannelName(int channel) {
+		int item = channel / 2;
+		String name = (item < GeometricConstants.BARS) ? CalibrationTable.BAR + (item + 1) : CalibrationTable.VETO + (item - GeometricConstants.BARS + 1);
+		return name + ((channel % 2 == 0) ? "L" : "R");
+	}
+
+	/**
+	 * Sets the number of hits over which the histograms fade out.
+	 *
+	 * @param memory The memory in hits (at least 1).
+	 */
+	public synchronized void setMemory(int memory) {
+		growth = 1 / (1 - 1.0 / Math.max(2, memory));
+	}
+
+	/**
+	 * Sets the tolerated relative drift of the peaks.
+	 *
+	 * @param tolerance The tolerance, for example 0.05 for 5%.
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Returns the tolerated relative drift of the peaks.
+	 *
+	 * @return The tolerance.
+	 */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Takes the current peaks as the new references. Channels without hits establish theirs later.
+	 */
+	public synchronized void resetReferences() {
+		for (int channel = 0; channel < CHANNELS; channel++) {
+			reference[channel] = (hits[channel] > 0) ? getPeak(channel) : Double.NaN;
+			drifting[channel] = false;
+		}
+	}
+
+	/**
+	 * Clears all histograms and references.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(weight, 1);
+		Arrays.fill(peakBin, 0);
+		Arrays.fill(hits, 0);
+		Arrays.fill(reference, Double.NaN);
+		Arrays.fill(drifting, false);
+	}
+
+	/**
+	 * Returns a summary of the channels with hits, one line each.
+	 *
+	 * @return The summary.
+	 */
+	public synchronized String getSummary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-6s %10s %10s %10s %8s%n", "chan", "hits", "peak", "reference", "drift"));
+		for (int channel = 0; channel < CHANNELS; channel++) {
+			if (hits[channel] == 0) {
+				continue;
+			}
+			double peak = getPeak(channel);
+			double drift = 100 * (peak / reference[channel] - 1);
+			sb.append(String.format("%-6s %10d %10.0f %10.0f %7.1f%%%s%n", getChannelName(channel), hits[channel], peak, reference[channel], drift, drifting[channel] ? " !" : ""));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,204 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.histo.Axis;
+import infn.bed.histo.Histogram2D;
+import infn.bed.math.MathematicalConstants;
+
+/**
+ * Accumulates, for every bar, a two-dimensional histogram of the hit position along the bar versus the
+ * hit energy. The maps are the basis of attenuation checks.
+ *
+ * <p>
+ * Every bar has a {@link Histogram2D} with a fixed binning, so a fill is a couple of
+ * multiplications and one increment. The maps are concurrent or local as chosen by the constructor:
+ * concurrent maps may be filled by any number of threads at once and read while they are being
+ * filled, local maps are the private maps of one thread and use plain counts.
+ * </p>
+ */
+public class HitPositionMap {
+
+	/**
+	 * The number of position bins.
+	 */
+	public static final int POSITION_BINS = 40;
+
+	/**
+	 * The number of energy bins.
+	 */
+	public static final int ENERGY_BINS = 50;
+
+	/**
+	 * The lower edge of the position axis in cm.
+	 */
+	public static final double POSITION_MIN = 0;
+
+	/**
+	 * The upper edge of the position axis in cm.
+	 */
+	public static final double POSITION_MAX = GeometricConstants.BAR_LENGTH;
+
+	/**
+	 * The lower edge of the energy axis in MeV.
+	 */
+	public static final double ENERGY_MIN = 0;
+
+	/**
+	 * The upper edge of the energy axis in MeV.
+	 */
+	public static final double ENERGY_MAX = MathematicalConstants.UPPER_ENERGY_LIMIT;
+
+	/**
+	 * The position axis.
+	 */
+	private static final Axis POSITION_AXIS = new Axis(POSITION_BINS, POSITION_MIN, POSITION_MAX);
+
+	/**
+	 * The energy axis.
+	 */
+	private static final Axis ENERGY_AXIS = new Axis(ENERGY_BINS, ENERGY_MIN, ENERGY_MAX);
+
+	/**
+	 * The number of energy bins including underflow and overflow, the stride of the position bins
+	 * in a histogram snapshot.
+	 */
+	private static final int STRIDE = ENERGY_BINS + 2;
+
+	/**
+	 * The map of every bar indexed by zero-based bar number.
+	 */
+	private final Histogram2D maps[] = new Histogram2D[GeometricConstants.BARS];
+
+	/**
+	 * The constructor.
+	 *
+	 * @param concurrent true if the maps may be filled by any number of threads at once, false for
+	 *            the private maps of one thread.
+	 */
+	public HitPositionMap(boolean concurrent) {
+		for (int i = 0; i < maps.length; i++) {
+			maps[i] = new Histogram2D("Position vs energy b" + (i + 1), POSITION_AXIS, ENERGY_AXIS, concurrent);
+		}
+	}
+
+	/**
+	 * Adds a hit.
+	 *
+	 * @param bar The bar number in one-based indexing.
+	 * @param position The hit position from the left side of the bar in cm.
+	 * @param energy The hit energy in MeV.
+	 */
+	public void fill(int bar, double position, double energy) {
+		maps[bar - 1].fill(position, energy);
+	}
+
+	/**
+	 * Adds the counts of other maps. The other maps should not be filled meanwhile.
+	 *
+	 * @param other The maps to add.
+	 */
+	public void merge(HitPositionMap other) {
+		for (int i = 0; i < maps.length; i++) {
+			maps[i].merge(other.maps[i]);
+		}
+	}
+
+	/**
+	 * Returns the map of a bar.
+	 *
+	 * @param bar The bar number in one-based indexing.
+	 * @return The histogram of the bar, including underflow and overflow.
+	 */
+	Histogram2D getHistogram(int bar) {
+		return maps[bar - 1];
+	}
+
+	/**
+	 * Returns the count of a bin.
+	 *
+	 * @param bar The bar number in one-based indexing.
+	 * @param positionBin The position bin.
+	 * @param energyBin The energy bin.
+	 * @return The count of the bin.
+	 */
+	public long getCount(int bar, int positionBin, int energyBin) {
+		return maps[bar - 1].getCount(positionBin + 1, energyBin + 1);
+	}
+
+	/**
+	 * Returns the index of a bin in a snapshot of the histogram of a bar.
+	 *
+	 * @param positionBin The position bin.
+	 * @param energyBin The energy bin.
+	 * @return The index in the array returned by {@link Histogram2D#snapshot()}.
+	 */
+	static int index(int positionBin, int energyBin) {
+		return (positionBin + 1) * STRIDE + energyBin + 1;
+	}
+
+	/**
+	 * Returns the largest count of the bins inside the axes of a histogram snapshot.
+	 *
+	 * @param counts The snapshot of the histogram of a bar.
+	 * @return The largest bin count.
+	 */
+	static long getMaxCount(long counts[]) {
+		long max = 0;
+		for (int x = 0; x < POSITION_BINS; x++) {
+			for (int y = 0; y < ENERGY_BINS; y++) {
+				max = Math.max(max, counts[index(x, y)]);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the largest bin count of a bar.
+	 *
+	 * @param bar The bar number in one-based indexing.
+	 * @return The largest bin count of the bar.
+	 */
+	public long getMaxCount(int bar) {
+		return getMaxCount(maps[bar - 1].snapshot());
+	}
+
+	/**
+	 * Returns the number of entries of a bar, including the entries outside the axes.
+	 *
+	 * @param bar The bar number in one-based indexing.
+	 * @return The number of entries of the bar.
+	 */
+	public long getEntries(int bar) {
+		return maps[bar - 1].getEntries();
+	}
+
+	/**
+	 * Returns the number of entries of a bar outside the axes.
+	 *
+	 * @param bar The bar number in one-based indexing.
+	 * @return The number of entries of the bar outside the axes.
+	 */
+	public long getOutOfRange(int bar) {
+		long counts[] = maps[bar - 1].snapshot();
+		long outside = 0;
+		for (long count : counts) {
+			outside += count;
+		}
+		for (int x = 0; x < POSITION_BINS; x++) {
+			for (int y = 0; y < ENERGY_BINS; y++) {
+				outside -= counts[index(x, y)];
+			}
+		}
+		return outside;
+	}
+
+	/**
+	 * Clears all maps.
+	 */
+	public void clear() {
+		for (Histogram2D map : maps) {
+			map.clear();
+		}
+	}
+
+}
@@ -0,0 +1,13 @@
+package infn.bed.event;
+
+/**
+ * Interface used by classes that must refresh when the cached events are reprocessed
+ */
+public interface IEventCacheListener {
+
+	/**
+	 * The cached events have been reprocessed. This is called on the event
+	 * dispatch thread.
+	 */
+	public void cachedEventsReprocessed();
+}
@@ -0,0 +1,337 @@
+package infn.bed.event;
+
+import infn.bed.util.ChannelParameters;
+import infn.bed.util.FFT;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the average noise power spectrum of every FADC (flash analog-to-digital converter)
+ * channel from the pre-trigger window of its waveforms, that is the first samples before the pulse.
+ * Pickup and oscillations show up as lines, a rising baseline as power at the lowest frequencies.
+ *
+ * <p>
+ * The window is made zero-mean and tapered with a Hann window, then transformed. The two channels
+ * of a PMT pair are real, so they go into one complex transform, one as the real and one as the
+ * imaginary part, and are separated afterwards by the symmetry of real transforms; this halves the
+ * number of transforms. The one-sided power is normalized so that the bins of a channel add up to
+ * the variance of its pre-trigger samples in ADC^2. All buffers are allocated when the window length
+ * is set, so filling allocates nothing.
+ * </p>
+ *
+ * <p>
+ * Under load only a fraction of the events can be transformed; the events are then taken at
+ * regular intervals. The spectrum is filled from the event thread and read from the views.
+ * </p>
+ */
+public class NoiseSpectrum {
+
+	/**
+	 * The number of FADC channels.
+	 */
+	public static final int CHANNELS = ChannelParameters.CHANNELS;
+
+	/**
+	 * The shortest pre-trigger window in samples.
+	 */
+	public static final int MIN_WINDOW = 8;
+
+	/**
+	 * The longest pre-trigger window in samples.
+	 */
+	public static final int MAX_WINDOW = 256;
+
+	/**
+	 * The default pre-trigger window in samples.
+	 */
+	public static final int DEFAULT_WINDOW = 32;
+
+	/**
+	 * The number of frequency bins reserved per channel.
+	 */
+	private static final int MAX_BINS = MAX_WINDOW / 2 + 1;
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static NoiseSpectrum instance;
+
+	/**
+	 * The summed power of every channel indexed by channel * MAX_BINS + bin.
+	 */
+	private final double sums[] = new double[CHANNELS * MAX_BINS];
+
+	/**
+	 * The number of spectra summed for every channel.
+	 */
+	private final long spectra[] = new long[CHANNELS];
+
+	/**
+	 * The pre-trigger window in samples, a power of two.
+	 */
+	private int window;
+
+	/**
+	 * The transform of the window length.
+	 */
+	private FFT fft;
+
+	/**
+	 * The Hann taper of the window length.
+	 */
+	private double taper[];
+
+	/**
+	 * The normalization of the power: 1 / (window * sum of the squared taper).
+	 */
+	private double norm;
+
+	/**
+	 * The real parts: the even channel of a pair, then its transform.
+	 */
+	private double re[];
+
+	/**
+	 * The imaginary parts: the odd channel of a pair, then its transform.
+	 */
+	private double im[];
+
+	/**
+	 * The fraction of the events that are transformed.
+	 */
+	private double fraction = 1;
+
+	/**
+	 * The accumulated fraction; an event is transformed each time it reaches 1.
+	 */
+	private double credit;
+
+	/**
+	 * Private constructor for singleton NoiseSpectrum.
+	 */
+	private NoiseSpectrum() {
+		setWindow(DEFAULT_WINDOW);
+	}
+
+	/**
+	 * Public access to the noise spectrum singleton.
+	 *
+	 * @return The noise spectrum singleton.
+	 */
+	public static NoiseSpectrum getInstance() {
+		if (instance == null) {
+			instance = new NoiseSpectrum();
+		}
+		return instance;
+	}
+
+	/**
+	 * Sets the pre-trigger window and clears the spectra.
+	 *
+	 * @param samples The number of samples, rounded down to a power of two between
+	 *            {@link #MIN_WINDOW} and {@link #MAX_WINDOW}.
+	 */
+	public synchronized void setWindow(int samples) {
+		window = Integer.highestOneBit(Math.max(MIN_WINDOW, Math.min(MAX_WINDOW, samples)));
+		fft = new FFT(window);
+		taper = new double[window];
+		double sumSquares = 0;
+		for (int i = 0; i < window; i++) {
+			taper[i] = 0.5 - 0.5 * Math.cos(2 * Math.PI * i / window);
+			sumSquares += taper[i] * taper[i];
+		}
+		norm = 1 / (window * sumSquares);
+		re = new double[window];
+		im = new double[window];
+		clear();
+	}
+
+	/**
+	 * Returns the pre-trigger window.
+	 *
+	 * @return The number of samples.
+	 */
+	public synchronized int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Sets the fraction of the events that are transformed.
+	 *
+	 * @param fraction The fraction, from 0 (none) to 1 (every event).
+	 */
+	public synchronized void setFraction(double fraction) {
+		this.fraction = Math.max(0, Math.min(1, fraction));
+	}
+
+	/**
+	 * Returns the fraction of the events that are transformed.
+	 *
+	 * @return The fraction.
+	 */
+	public synchronized double getFraction() {
+		return fraction;
+	}
+
+	/**
+	 * Adds the pre-trigger windows of every channel of an event, if the event is among the fraction
+	 * that is transformed.
+	 *
+	 * @param samples The samples of every channel, or null if the event had no full-waveform data.
+	 * @param sampleCounts The number of samples of every channel.
+	 */
+	public synchronized void fill(short samples[][], int sampleCounts[]) {
+		if (samples == null) {
+			return;
+		}
+		credit += fraction;
+		if (credit < 1) {
+			return;
+		}
+		credit -= 1;
+		int channels = Math.min(CHANNELS, samples.length);
+		for (int even = 0; even < channels; even += 2) {
+			boolean hasEven = load(samples[even], sampleCounts[even], re);
+			boolean hasOdd = (even + 1 < channels) && load(samples[even + 1], sampleCounts[even + 1], im);
+			if (!hasEven && !hasOdd) {
+				continue;
+			}
+			fft.transform(re, im);
+			accumulate(even, hasEven, hasOdd);
+		}
+	}
+
+	/**
+	 * Copies the pre-trigger window of a channel, zero-mean and tapered.
+	 *
+	 * @param samples The samples of the channel.
+	 * @param sampleCount The number of samples.
+	 * @param values The array to copy to; zeroed if the waveform is shorter than the window.
+	 * @return true if the waveform covers the window, false otherwise.
+	 */
+	private boolean load(short samples[], int sampleCount, double values[]) {
+		if (sampleCount < window) {
+			Arrays.fill(values, 0);
+			return false;
+		}
+		double sum = 0;
+		for (int i = 0; i < window; i++) {
+			values[i] = samples[i];
+			sum += values[i];
+		}
+		double mean = sum / window;
+		for (int i = 0; i < window; i++) {
+			values[i] = (values[i] - mean) * taper[i];
+		}
+		return true;
+	}
+
+	/**
+	 * Separates the transform of a channel pair and adds the power of each channel.
+	 *
+	 * @param even The even channel of the pair.
+	 * @param hasEven true if the even channel was loaded.
+	 * @param hasOdd true if the odd channel was loaded.
+	 */
+	private void accumulate(int even, boolean hasEven, boolean hasOdd) {
+		int half = window / 2;
+		int evenStart = even * MAX_BINS;
+		int oddStart = evenStart + MAX_BINS;
+		for (int k = 0; k <= half; k++) {
+			int m = (window - k) & (window - 1);
+			// the even channel is (X[k] + conj X[m]) / 2, the odd one (X[k] - conj X[m]) / 2i
+			double evenRe = re[k] + re[m];
+			double evenIm = im[k] - im[m];
+			double oddRe = im[k] + im[m];
+			double oddIm = re[k] - re[m];
+			double scale = ((k == 0 || k == half) ? 0.25 : 0.5) * norm;
+			if (hasEven) {
+				sums[evenStart + k] += scale * (evenRe * evenRe + evenIm * evenIm);
+			}
+			if (hasOdd) {
+				sums[oddStart + k] += scale * (oddRe * oddRe + oddIm * oddIm);
+			}
+		}
+		if (hasEven) {
+			spectra[even]++;
+		}
+		if (hasOdd) {
+			spectra[even + 1]++;
+		}
+	}
+
+	/**
+	 * Returns the number of frequency bins, from zero to the Nyquist frequency.
+	 *
+	 * @return window / 2 + 1.
+	 */
+	public synchronized int getBins() {
+		return window / 2 + 1;
+	}
+
+	/**
+	 * Returns the frequency of a bin.
+	 *
+	 * @param channel The channel, for its sample period.
+	 * @param bin The bin.
+	 * @return The frequency in MHz.
+	 */
+	public synchronized double getFrequency(int channel, int bin) {
+		return 1000.0 * bin / (window * ChannelParameters.getCurrent().getSamplePeriod(channel));
+	}
+
+	/**
+	 * Returns the average power spectrum of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The average power of every bin in ADC^2, all zero if the channel has no spectra.
+	 */
+	public synchronized double[] getAverage(int channel) {
+		double average[] = new double[window / 2 + 1];
+		long n = spectra[channel];
+		if (n > 0) {
+			for (int k = 0; k < average.length; k++) {
+				average[k] = sums[channel * MAX_BINS + k] / n;
+			}
+		}
+		return average;
+	}
+
+	/**
+	 * Returns the RMS noise of a channel, the square root of its summed average power.
+	 *
+	 * @param channel The channel.
+	 * @return The RMS of the pre-trigger samples in ADC, or NaN if the channel has no spectra.
+	 */
+	public synchronized double getRms(int channel) {
+		long n = spectra[channel];
+		if (n == 0) {
+			return Double.NaN;
+		}
+		double sum = 0;
+		for (int k = 0; k <= window / 2; k++) {
+			sum += sums[channel * MAX_BINS + k];
+		}
+		return Math.sqrt(sum / n);
+	}
+
+	/**
+	 * Returns the number of spectra of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The number of pre-trigger windows added.
+	 */
+	public synchronized long getSpectra(int channel) {
+		return spectra[channel];
+	}
+
+	/**
+	 * Clears the spectra of every channel.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(sums, 0);
+		Arrays.fill(spectra, 0);
+		credit = 0;
+	}
+
+}
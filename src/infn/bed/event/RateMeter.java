@@ -0,0 +1,239 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+import infn.bed.util.CalibrationTable;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the live hit rate of every bar and veto and the event rate, as exponentially decaying
+ * averages, so that a detector that goes quiet fades to zero within a few time constants.
+ *
+ * <p>
+ * Filling only increments striped counters ({@link LongAdder}), so it takes no lock and does not
+ * contend with the readers. The rates are updated lazily when read, at most every
+ * {@link #UPDATE_MILLIS} ms: the counts since the previous update divided by the elapsed time are
+ * blended into the rates with the weight 1 - exp(-elapsed / time constant), which is exact for any
+ * update interval. The rates are then published as an immutable array, so reading takes no lock
+ * either unless an update is due.
+ * </p>
+ *
+ * <p>
+ * Detectors are indexed bars first, then vetoes, like the accumulated detector spectra.
+ * </p>
+ */
+public class RateMeter {
+
+	/**
+	 * The number of detectors: the bars, then the vetoes.
+	 */
+	public static final int DETECTORS = AccumulationManager.DETECTORS;
+
+	/**
+	 * The default time constant in seconds.
+	 */
+	public static final double DEFAULT_TIME_CONSTANT = 10;
+
+	/**
+	 * The shortest interval between two updates of the rates in ms.
+	 */
+	public static final int UPDATE_MILLIS = 250;
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static RateMeter instance;
+
+	/**
+	 * The number of hits of every detector.
+	 */
+	private final LongAdder hits[] = new LongAdder[DETECTORS];
+
+	/**
+	 * The number of events.
+	 */
+	private final LongAdder events = new LongAdder();
+
+	/**
+	 * The counts at the last update, the events last.
+	 */
+	private final long lastCounts[] = new long[DETECTORS + 1];
+
+	/**
+	 * The rates in Hz at the last update, the event rate last. Replaced, never modified.
+	 */
+	private volatile double rates[] = new double[DETECTORS + 1];
+
+	/**
+	 * The time of the last update in ns.
+	 */
+	private volatile long lastNanos;
+
+	/**
+	 * The time constant in seconds.
+	 */
+	private volatile double timeConstant = DEFAULT_TIME_CONSTANT;
+
+	/**
+	 * Private constructor for singleton RateMeter.
+	 */
+	private RateMeter() {
+		for (int d = 0; d < DETECTORS; d++) {
+			hits[d] = new LongAdder();
+		}
+		lastNanos = System.nanoTime();
+	}
+
+	/**
+	 * Public access to the rate meter singleton.
+	 *
+	 * @return The rate meter singleton.
+	 */
+	public static synchronized RateMeter getInstance() {
+		if (instance == null) {
+			instance = new RateMeter();
+		}
+		return instance;
+	}
+
+	/**
+	 * Counts an event and its hit detectors.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 */
+	public void fill(ReconstructedData reconstructedData) {
+		events.increment();
+		long fired = AccumulationManager.getFiredMask(reconstructedData);
+		while (fired != 0) {
+			hits[Long.numberOfTrailingZeros(fired)].increment();
+			fired &= fired - 1;
+		}
+	}
+
+	/**
+	 * Returns the hit rate of a detector.
+	 *
+	 * @param detector The detector index, bars first, then vetoes.
+	 * @return The rate in Hz.
+	 */
+	public double getRate(int detector) {
+		return getRates()[detector];
+	}
+
+	/**
+	 * Returns the event rate.
+	 *
+	 * @return The rate in Hz.
+	 */
+	public double getEventRate() {
+		return getRates()[DETECTORS];
+	}
+
+	/**
+	 * Returns the current rates, updating them if due.
+	 *
+	 * @return The hit rates of the detectors in Hz, followed by the event rate. Must not be
+	 *         modified.
+	 */
+	private double[] getRates() {
+		if (System.nanoTime() - lastNanos >= UPDATE_MILLIS * 1000000L) {
+			update();
+		}
+		return rates;
+	}
+
+	/**
+	 * Blends the counts since the last update into the rates.
+	 */
+	private synchronized void update() {
+		long now = System.nanoTime();
+		long previous = lastNanos;
+		if (now - previous < UPDATE_MILLIS * 1000000L) {
+			// another reader just updated
+			return;
+		}
+		double updated[] = rates.clone();
+		double seconds = (now - previous) * 1e-9;
+		double weight = -Math.expm1(-seconds / timeConstant);
+		for (int d = 0; d <= DETECTORS; d++) {
+			long count = (d < DETECTORS) ? hits[d].sum() : events.sum();
+			updated[d] += weight * ((count - lastCounts[d]) / seconds - updated[d]);
+			lastCounts[d] = count;
+		}
+		rates = updated;
+		lastNanos = now;
+	}
+
+	/**
+	 * Sets the time constant of the averages.
+	 *
+	 * @param seconds The time constant in seconds (positive).
+	 */
+	public void setTimeConstant(double seconds) {
+		if (seconds > 0) {
+			timeConstant = seconds;
+		}
+	}
+
+	/**
+	 * Returns the time constant of the averages.
+	 *
+	 * @return The time constant in seconds.
+	 */
+	public double getTimeConstant() {
+		return timeConstant;
+	}
+
+	/**
+	 * Sets every rate to zero.
+	 */
+	public synchronized void clear() {
+		for (int d = 0; d <= DETECTORS; d++) {
+			lastCounts[d] = (d < DETECTORS) ? hits[d].sum() : events.sum();
+		}
+		rates = new double[DETECTORS + 1];
+		lastNanos = System.nanoTime();
+	}
+
+	/**
+	 * Returns the name of a detector.
+	 *
+	 * @param detector The detector index, bars first, then vetoes.
+	 * @return The detector name, such as b1 or v8.
+	 */
+	public static String getDetectorName(int detector) {
+		return (detector < GeometricConstants.BARS) ? CalibrationTable.BAR + (detector + 1) : CalibrationTable.VETO + (detector - GeometricConstants.BARS + 1);
+	}
+
+	/**
+	 * Formats a rate with a unit that keeps it short.
+	 *
+	 * @param rate The rate in Hz.
+	 * @return The rate, such as 12.3 Hz or 1.25 kHz.
+	 */
+	public static String format(double rate) {
+		if (rate >= 1e6) {
+			return String.format("%.2f MHz", rate * 1e-6);
+		}
+		if (rate >= 1e3) {
+			return String.format("%.2f kHz", rate * 1e-3);
+		}
+		return String.format("%.1f Hz", rate);
+	}
+
+	/**
+	 * Returns a table of the rates, one line per detector.
+	 *
+	 * @return The table.
+	 */
+	public String getSummary() {
+		double current[] = getRates();
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%-6s %12s%n", "events", format(current[DETECTORS])));
+		for (int d = 0; d < DETECTORS; d++) {
+			sb.append(String.format("%-6s %12s%n", getDetectorName(d), format(current[d])));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,178 @@
+package infn.bed.event;
+
+/**
+ * Holds the energy-time information reconstructed from the charge-time data of one event.
+ *
+ * <p>
+ * The arrays are aligned with the hit arrays of the charge-time data the reconstruction was made from,
+ * so index i of the bar (veto) arrays describes the i-th bar (veto) hit.
+ * </p>
+ */
+public class ReconstructedData {
+
+	/**
+	 * The charge-time data the energy-time information was reconstructed from.
+	 */
+	private final ChargeTimeData chargeTimeData;
+
+	/**
+	 * An array of hit bar numbers in one-based indexing (0 if the hit is not in a bar).
+	 */
+	private final int barNumberArray[];
+
+	/**
+	 * An array of bar hit energies.
+	 */
+	private final double barEnergyArray[];
+
+	/**
+	 * An array of bar hit times.
+	 */
+	private final double barTimeArray[];
+
+	/**
+	 * An array of bar hit positions from the left side of the bar.
+	 */
+	private final double barPositionArray[];
+
+	/**
+	 * An array of hit veto numbers in one-based indexing (0 if the hit is not in a veto).
+	 */
+	private final int vetoNumberArray[];
+
+	/**
+	 * An array of veto hit energies.
+	 */
+	private final double vetoEnergyArray[];
+
+	/**
+	 * An array of veto hit times.
+	 */
+	private final double vetoTimeArray[];
+
+	/**
+	 * The constructor.
+	 *
+	 * @param chargeTimeData The charge-time data the energy-time information was reconstructed from.
+	 * @param barNumberArray An array of hit bar numbers.
+	 * @param barEnergyArray An array of bar hit energies.
+	 * @param barTimeArray An array of bar hit times.
+	 * @param barPositionArray An array of bar hit positions from the left side of the bar.
+	 * @param vetoNumberArray An array of hit veto numbers.
+	 * @param vetoEnergyArray An array of veto hit energies.
+	 * @param vetoTimeArray An array of veto hit times.
+	 */
+	ReconstructedData(ChargeTimeData chargeTimeData, int[] barNumberArray, double[] barEnergyArray, double[] barTimeArray, double[] barPositionArray, int[] vetoNumberArray, double[] vetoEnergyArray, double[] vetoTimeArray) {
+		this.chargeTimeData = chargeTimeData;
+		this.barNumberArray = barNumberArray;
+		this.barEnergyArray = barEnergyArray;
+		this.barTimeArray = barTimeArray;
+		this.barPositionArray = barPositionArray;
+		this.vetoNumberArray = vetoNumberArray;
+		this.vetoEnergyArray = vetoEnergyArray;
+		this.vetoTimeArray = vetoTimeArray;
+	}
+
+	/**
+	 * Returns the bar number of a sector/layer/paddle combination.
+	 *
+	 * @param layer The number of the layer (column).
+	 * @param paddle The number of the paddle (row).
+	 * @return The bar number (1-9), or 0 if the combination is not a bar.
+	 */
+	public static int getBarNumber(int layer, int paddle) {
+		if (layer < 0 || layer > 2 || paddle < 0 || paddle > 2) {
+			return 0;
+		}
+		return 7 - 3 * paddle + layer;
+	}
+
+	/**
+	 * Returns the veto number of a layer/channel combination.
+	 *
+	 * @param layer The number of the layer (1 if the layer is interior or 2 if the layer is exterior).
+	 * @param channel The number of the channel.
+	 * @return The veto number (1-14), or 0 if the combination is not a veto.
+	 */
+	public static int getVetoNumber(int layer, int channel) {
+		if (layer == 1 && channel >= 0 && channel <= 5) {
+			return channel + 1;
+		} else if (layer == 2 && channel >= 0 && channel <= 7) {
+			return channel + 7;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the charge-time data the energy-time information was reconstructed from.
+	 *
+	 * @return The charge-time data.
+	 */
+	public ChargeTimeData getChargeTimeData() {
+		return chargeTimeData;
+	}
+
+	/**
+	 * Returns the array of hit bar numbers in one-based indexing.
+	 *
+	 * @return The array of hit bar numbers.
+	 */
+	public int[] getBarNumberArray() {
+		return barNumberArray;
+	}
+
+	/**
+	 * Returns the array of bar hit energies.
+	 *
+	 * @return The array of bar hit energies.
+	 */
+	public double[] getBarEnergyArray() {
+		return barEnergyArray;
+	}
+
+	/**
+	 * Returns the array of bar hit times.
+	 *
+	 * @return The array of bar hit times.
+	 */
+	public double[] getBarTimeArray() {
+		return barTimeArray;
+	}
+
+	/**
+	 * Returns the array of bar hit positions from the left side of the bar.
+	 *
+	 * @return The array of bar hit positions.
+	 */
+	public double[] getBarPositionArray() {
+		return barPositionArray;
+	}
+
+	/**
+	 * Returns the array of hit veto numbers in one-based indexing.
+	 *
+	 * @return The array of hit veto numbers.
+	 */
+	public int[] getVetoNumberArray() {
+		return vetoNumberArray;
+	}
+
+	/**
+	 * Returns the array of veto hit energies.
+	 *
+	 * @return The array of veto hit energies.
+	 */
+	public double[] getVetoEnergyArray() {
+		return vetoEnergyArray;
+	}
+
+	/**
+	 * Returns the array of veto hit times.
+	 *
+	 * @return The array of veto hit times.
+	 */
+	public double[] getVetoTimeArray() {
+		return vetoTimeArray;
+	}
+
+}
@@ -0,0 +1,392 @@
+package infn.bed.event;
+
+import infn.bed.util.CalibrationCache;
+import infn.bed.util.CalibrationConstants;
+import infn.bed.util.CalibrationStore;
+import infn.bed.util.CalibrationTable;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts charge-time information to energy-time information for the bars and the vetoes.
+ *
+ * <p>
+ * This is the only place where the calibration constants are applied, so the views, the accumulation
+ * and the event cache all see the same reconstruction.
+ * </p>
+ */
+public class Reconstruction {
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static Reconstruction instance;
+
+	/**
+	 * The calibration constants in use, or null if none have been loaded.
+	 */
+	private volatile CalibrationTable calibrationTable;
+
+	/**
+	 * true if the attenuation corrections are tabulated, false if they are evaluated.
+	 */
+	private volatile boolean attenuationTables = true;
+
+	/**
+	 * The number of tables whose coefficients are kept.
+	 */
+	private static final int COEFFICIENT_CACHE_SIZE = 16;
+
+	/**
+	 * The coefficients of the constants in use, looked up without a lock.
+	 */
+	private volatile CalibrationCoefficients coefficients = new CalibrationCoefficients(null, true);
+
+	/**
+	 * The coefficients of the tables used most recently, evaluated and tabulated, least recently
+	 * used first. Tables have no equality of their own, so they are told apart by identity.
+	 */
+	private final Map<CalibrationTable, CalibrationCoefficients[]> coefficientCache = new LinkedHashMap<CalibrationTable, CalibrationCoefficients[]>(COEFFICIENT_CACHE_SIZE, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<CalibrationTable, CalibrationCoefficients[]> eldest) {
+			return size() > COEFFICIENT_CACHE_SIZE;
+		}
+
+	};
+
+	/**
+	 * The store the constants are selected from by run number, or null if a single file is used.
+	 */
+	private CalibrationStore calibrationStore;
+
+	/**
+	 * The run number of the events being reconstructed, or -1 if unknown.
+	 */
+	private int runNumber = -1;
+
+	/**
+	 * Private constructor for singleton Reconstruction.
+	 */
+	private Reconstruction() {
+	}
+
+	/**
+	 * Public access to the reconstruction singleton.
+	 *
+	 * @return The reconstruction singleton.
+	 */
+	public static Reconstruction getInstance() {
+		if (instance == null) {
+			instance = new Reconstruction();
+		}
+		return instance;
+	}
+
+	/**
+	 * Loads the calibration constants of every bar and veto from a calibration file. The constants
+	 * in use are only replaced once the whole file has been read.
+	 *
+	 * @param file A calibration file.
+	 * @throws infn.bed.util.InvalidCalibrationFileException If the calibration file is invalid.
+	 */
+	public void setCalibrationFile(File file) {
+		setCalibrationTable(CalibrationCache.load(file));
+	}
+
+	/**
+	 * Replaces the calibration constants in use. Events reconstructed afterwards use the new table.
+	 *
+	 * @param calibrationTable The calibration constants.
+	 */
+	public void setCalibrationTable(CalibrationTable calibrationTable) {
+		this.calibrationTable = calibrationTable;
+		getCoefficients(calibrationTable);
+	}
+
+	/**
+	 * Chooses between tabulated and evaluated attenuation corrections.
+	 *
+	 * @param attenuationTables true to interpolate the attenuation corrections in tables computed
+	 *            when the constants are loaded, false to evaluate them for every hit.
+	 */
+	public void setAttenuationTables(boolean attenuationTables) {
+		this.attenuationTables = attenuationTables;
+	}
+
+	/**
+	 * Returns the coefficients of a table. The coefficients of the constants in use are found without
+	 * a lock; those of other tables, such as the tables of the runs decoded by batch workers, are
+	 * kept per table, so workers with different tables do not recompute each other's coefficients.
+	 *
+	 * @param table The calibration constants, or null for none.
+	 * @return The coefficients.
+	 */
+	private CalibrationCoefficients getCoefficients(CalibrationTable table) {
+		boolean tabulated = attenuationTables;
+		CalibrationCoefficients c = coefficients;
+		if (c.table == table && c.tabulated == tabulated) {
+			return c;
+		}
+		synchronized (coefficientCache) {
+			CalibrationCoefficients pair[] = coefficientCache.computeIfAbsent(table, t -> new CalibrationCoefficients[2]);
+			int i = tabulated ? 1 : 0;
+			if (pair[i] == null) {
+				pair[i] = new CalibrationCoefficients(table, tabulated);
+			}
+			c = pair[i];
+		}
+		if (table == calibrationTable) {
+			coefficients = c;
+		}
+		return c;
+	}
+
+	/**
+	 * Returns the calibration constants in use.
+	 *
+	 * @return The calibration constants, or null if none have been loaded.
+	 */
+	public CalibrationTable getCalibrationTable() {
+		return calibrationTable;
+	}
+
+	/**
+	 * Selects the calibration constants by run number from a store from now on. If the current run
+	 * is known, its constants are selected right away.
+	 *
+	 * @param calibrationStore The calibration store, or null to keep the constants in use.
+	 * @return The constants selected for the current run, or null if none were selected.
+	 * @throws infn.bed.util.InvalidCalibrationFileException If the calibration file of the run is invalid.
+	 */
+	public synchronized CalibrationTable setCalibrationStore(CalibrationStore calibrationStore) {
+		this.calibrationStore = calibrationStore;
+		return (runNumber < 0) ? null : selectRun(runNumber);
+	}
+
+	/**
+	 * Returns the store the constants are selected from.
+	 *
+	 * @return The calibration store, or null if a single file is used.
+	 */
+	public synchronized CalibrationStore getCalibrationStore() {
+		return calibrationStore;
+	}
+
+	/**
+	 * Notes the start of a run and, if a store is used, selects the constants of the run.
+	 *
+	 * @param runNumber The run number.
+	 * @return The constants selected for the run, or null if no store is used or it has no
+	 *         constants for the run, in which case the constants in use are kept.
+	 * @throws infn.bed.util.InvalidCalibrationFileException If the calibration file of the run is invalid.
+	 */
+	public synchronized CalibrationTable selectRun(int runNumber) {
+		this.runNumber = runNumber;
+		if (calibrationStore == null) {
+			return null;
+		}
+		CalibrationTable table = calibrationStore.getTable(runNumber);
+		if (table != null) {
+			setCalibrationTable(table);
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the run number of the events being reconstructed.
+	 *
+	 * @return The run number, or -1 if unknown.
+	 */
+	public synchronized int getRunNumber() {
+		return runNumber;
+	}
+
+	/**
+	 * Returns true if calibration constants have been loaded, false otherwise.
+	 *
+	 * @return true if calibration constants have been loaded, false otherwise.
+	 */
+	public boolean isCalibrated() {
+		return calibrationTable != null;
+	}
+
+	/**
+	 * Reconstructs the energy-time information of an event with the constants in use.
+	 *
+	 * @param ctData The charge-time data of the event.
+	 * @return The reconstructed energy-time information, or null if ctData is null.
+	 */
+	public ReconstructedData reconstruct(ChargeTimeData ctData) {
+		return reconstruct(ctData, calibrationTable);
+	}
+
+	/**
+	 * Reconstructs the energy-time information of an event.
+	 *
+	 * @param ctData The charge-time data of the event.
+	 * @param table The calibration constants, or null for none.
+	 * @return The reconstructed energy-time information, or null if ctData is null.
+	 */
+	public ReconstructedData reconstruct(ChargeTimeData ctData, CalibrationTable table) {
+		if (ctData == null) {
+			return null;
+		}
+		CalibrationCoefficients c = getCoefficients(table);
+
+		int barHits = hitCount(ctData.getSectorArray(), ctData.getLayerArray(), ctData.getPaddleArray(), ctData.getLeftPMTChargeArray(), ctData.getRightPMTChargeArray(), ctData.getLeftPMTTimeArray(), ctData.getRightPMTTimeArray());
+		int layerArray[] = ctData.getLayerArray();
+		int paddleArray[] = ctData.getPaddleArray();
+		int leftChargeArray[] = ctData.getLeftPMTChargeArray();
+		int rightChargeArray[] = ctData.getRightPMTChargeArray();
+		int leftTimeArray[] = ctData.getLeftPMTTimeArray();
+		int rightTimeArray[] = ctData.getRightPMTTimeArray();
+		int barNumberArray[] = new int[barHits];
+		double barEnergyArray[] = new double[barHits];
+		double barTimeArray[] = new double[barHits];
+		double barPositionArray[] = new double[barHits];
+		for (int i = 0; i < barHits; i++) {
+			int bar = ReconstructedData.getBarNumber(layerArray[i], paddleArray[i]);
+			barNumberArray[i] = bar;
+			c.reconstruct(CalibrationCoefficients.barItem(bar), leftChargeArray[i], rightChargeArray[i], leftTimeArray[i], rightTimeArray[i], barEnergyArray, barTimeArray, barPositionArray, i);
+		}
+
+		int vetoHits = hitCount(ctData.getVetoSectorArray(), ctData.getVetoLayerArray(), ctData.getVetoChannelArray(), ctData.getVetoChargeArray(), ctData.getVetoTimeArray());
+		int vetoLayerArray[] = ctData.getVetoLayerArray();
+		int vetoChannelArray[] = ctData.getVetoChannelArray();
+		int vetoChargeArray[] = ctData.getVetoChargeArray();
+		int vetoTimeArray[] = ctData.getVetoTimeArray();
+		int dualSiPMChargeArray[] = ctData.getDualSiPMVetoChargeArray();
+		int dualSiPMTimeArray[] = ctData.getDualSiPMVetoTimeArray();
+		int vetoNumberArray[] = new int[vetoHits];
+		double vetoEnergyArray[] = new double[vetoHits];
+		double vetoTimeOutArray[] = new double[vetoHits];
+		for (int i = 0; i < vetoHits; i++) {
+			int veto = ReconstructedData.getVetoNumber(vetoLayerArray[i], vetoChannelArray[i]);
+			vetoNumberArray[i] = veto;
+			int item = CalibrationCoefficients.vetoItem(veto);
+			if (isDualSiPMVeto(veto) && dualSiPMChargeArray != null && dualSiPMTimeArray != null && i < dualSiPMChargeArray.length && i < dualSiPMTimeArray.length) {
+				c.reconstruct(item, vetoChargeArray[i], dualSiPMChargeArray[i], vetoTimeArray[i], dualSiPMTimeArray[i], vetoEnergyArray, vetoTimeOutArray, null, i);
+			} else {
+				c.reconstruct(item, vetoChargeArray[i], vetoTimeArray[i], vetoEnergyArray, vetoTimeOutArray, i);
+			}
+		}
+
+		return new ReconstructedData(ctData, barNumberArray, barEnergyArray, barTimeArray, barPositionArray, vetoNumberArray, vetoEnergyArray, vetoTimeOutArray);
+	}
+
+	/**
+	 * Reconstructs the energy-time information of an event by evaluating the calibration formulas
+	 * for every hit. This is the reference for the coefficient-based reconstruction.
+	 *
+	 * @param ctData The charge-time data of the event.
+	 * @param table The calibration constants, or null for none.
+	 * @return The reconstructed energy-time information, or null if ctData is null.
+	 */
+	ReconstructedData reconstructReference(ChargeTimeData ctData, CalibrationTable table) {
+		if (ctData == null) {
+			return null;
+		}
+
+		int barHits = hitCount(ctData.getSectorArray(), ctData.getLayerArray(), ctData.getPaddleArray(), ctData.getLeftPMTChargeArray(), ctData.getRightPMTChargeArray(), ctData.getLeftPMTTimeArray(), ctData.getRightPMTTimeArray());
+		int barNumberArray[] = new int[barHits];
+		double barEnergyArray[] = new double[barHits];
+		double barTimeArray[] = new double[barHits];
+		double barPositionArray[] = new double[barHits];
+		for (int i = 0; i < barHits; i++) {
+			int bar = ReconstructedData.getBarNumber(ctData.getLayerArray()[i], ctData.getPaddleArray()[i]);
+			barNumberArray[i] = bar;
+			CalibrationConstants c = (table == null) ? null : table.getBarConstants(bar);
+			double v_eff = (c == null) ? 0 : c.getEffectiveVelocity();
+			double A_left = (c == null) ? 0 : c.getLeftADCConversionFactor();
+			double A_right = (c == null) ? 0 : c.getRightADCConversionFactor();
+			double lambda = (c == null) ? 0 : c.getAttenuationLength();
+			double delta_left = (c == null) ? 0 : c.getLeftShift();
+			double delta_right = (c == null) ? 0 : c.getRightShift();
+			double tdcConvLeft = (c == null) ? 0 : c.getLeftTDCConversionFactor();
+			double tdcConvRight = (c == null) ? 0 : c.getRightTDCConversionFactor();
+			double length = (c == null) ? 0 : c.getItemLength();
+
+			double t_l = (ctData.getLeftPMTTimeArray()[i] * 1.0 / tdcConvLeft) - delta_left;
+			double t_r = (ctData.getRightPMTTimeArray()[i] * 1.0 / tdcConvRight) - delta_right;
+			double posFromLeft = (v_eff * (t_l - t_r) + length) / 2.0;
+			double e_l = ctData.getLeftPMTChargeArray()[i] * A_left;
+			double e_r = ctData.getRightPMTChargeArray()[i] * A_right;
+			double e_l_prime = e_l * Math.exp(posFromLeft / lambda);
+			double e_r_prime = e_r * Math.exp((length - posFromLeft) / lambda);
+			barPositionArray[i] = posFromLeft;
+			barEnergyArray[i] = (e_l_prime + e_r_prime) / 2;
+			barTimeArray[i] = (t_l + t_r - (length / v_eff)) / 2.0;
+		}
+
+		int vetoHits = hitCount(ctData.getVetoSectorArray(), ctData.getVetoLayerArray(), ctData.getVetoChannelArray(), ctData.getVetoChargeArray(), ctData.getVetoTimeArray());
+		int dualSiPMChargeArray[] = ctData.getDualSiPMVetoChargeArray();
+		int dualSiPMTimeArray[] = ctData.getDualSiPMVetoTimeArray();
+		int vetoNumberArray[] = new int[vetoHits];
+		double vetoEnergyArray[] = new double[vetoHits];
+		double vetoTimeArray[] = new double[vetoHits];
+		for (int i = 0; i < vetoHits; i++) {
+			int veto = ReconstructedData.getVetoNumber(ctData.getVetoLayerArray()[i], ctData.getVetoChannelArray()[i]);
+			vetoNumberArray[i] = veto;
+			CalibrationConstants c = (table == null) ? null : table.getVetoConstants(veto);
+			double effectiveVelocity = (c == null) ? 0 : c.getEffectiveVelocity();
+			double leftADCConversionFactor = (c == null) ? 0 : c.getLeftADCConversionFactor();
+			double rightADCConversionFactor = (c == null) ? 0 : c.getRightADCConversionFactor();
+			double attenuationLength = (c == null) ? 0 : c.getAttenuationLength();
+			double leftShift = (c == null) ? 0 : c.getLeftShift();
+			double rightShift = (c == null) ? 0 : c.getRightShift();
+			double leftTDCConversionFactor = (c == null) ? 0 : c.getLeftTDCConversionFactor();
+			double rightTDCConversionFactor = (c == null) ? 0 : c.getRightTDCConversionFactor();
+			double vetoLength = (c == null) ? 0 : c.getItemLength();
+
+			int charge = ctData.getVetoChargeArray()[i];
+			int time = ctData.getVetoTimeArray()[i];
+			if (isDualSiPMVeto(veto) && dualSiPMChargeArray != null && dualSiPMTimeArray != null && i < dualSiPMChargeArray.length && i < dualSiPMTimeArray.length) {
+				double leftTime = (time / leftTDCConversionFactor) - leftShift;
+				double rightTime = (dualSiPMTimeArray[i] / rightTDCConversionFactor) - rightShift;
+				double positionFromLeft = (effectiveVelocity * (leftTime - rightTime) + vetoLength) / 2;
+				double leftEnergyPrime = charge * leftADCConversionFactor * Math.exp(positionFromLeft / attenuationLength);
+				double rightEnergyPrime = dualSiPMChargeArray[i] * rightADCConversionFactor * Math.exp((vetoLength - positionFromLeft) / attenuationLength);
+				vetoEnergyArray[i] = (leftEnergyPrime + rightEnergyPrime) / 2;
+				vetoTimeArray[i] = (leftTime + rightTime - (vetoLength / effectiveVelocity)) / 2;
+			} else {
+				vetoEnergyArray[i] = charge * leftADCConversionFactor;
+				vetoTimeArray[i] = time / leftTDCConversionFactor;
+			}
+		}
+
+		return new ReconstructedData(ctData, barNumberArray, barEnergyArray, barTimeArray, barPositionArray, vetoNumberArray, vetoEnergyArray, vetoTimeArray);
+	}
+
+	/**
+	 * Returns true if a veto is read out by two SiPMs (silicon photomultipliers), false otherwise.
+	 *
+	 * @param veto The number of the veto in one-based indexing.
+	 * @return true if the veto is read out by two SiPMs, false otherwise.
+	 */
+	static boolean isDualSiPMVeto(int veto) {
+		return veto == 8 || veto == 9 || veto == 11 || veto == 12;
+	}
+
+	/**
+	 * Returns the number of hits that every array has an entry for.
+	 *
+	 * @param arrays The hit arrays.
+	 * @return The length of the shortest array, or 0 if any array is null.
+	 */
+	private static int hitCount(int[]... arrays) {
+		int count = Integer.MAX_VALUE;
+		for (int array[] : arrays) {
+			if (array == null) {
+				return 0;
+			}
+			count = Math.min(count, array.length);
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,297 @@
+package infn.bed.event;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A software trigger condition on the reconstructed hits of an event, compiled from a line of text
+ * into thresholds and detector bit masks.
+ *
+ * <p>
+ * A condition is a name, a colon and any number of terms, all of which must hold:
+ * </p>
+ *
+ * <pre>
+ * bars&gt;=N, bars&lt;=N       number of hit bars
+ * vetoes&gt;=N, vetoes&lt;=N   number of hit vetoes (crystals included)
+ * energy&gt;=E, energy&lt;=E   summed bar energy in MeV
+ * all=LIST               every listed detector hit
+ * any=LIST               at least one listed detector hit
+ * none=LIST              no listed detector hit
+ * </pre>
+ *
+ * <p>
+ * A LIST is a comma-separated list of detectors (b3, v12), ranges (v5-v22) and groups (bars,
+ * vetoes, crystals, internal, external). For example
+ * <code>clean2: bars&gt;=2 energy&gt;=5 none=external</code> asks for two bars, 5 MeV and a quiet
+ * external veto. Evaluation works on the bit mask of the hit detectors and the energy sum of an
+ * event and combines the terms without branches.
+ * </p>
+ */
+public final class TriggerCondition {
+
+	/**
+	 * The mask of every bar in the fired-detector bit mask.
+	 */
+	static final long BAR_MASK = (1L << GeometricConstants.BARS) - 1;
+
+	/**
+	 * The mask of every veto in the fired-detector bit mask.
+	 */
+	static final long VETO_MASK = ((1L << GeometricConstants.VETOES) - 1) << GeometricConstants.BARS;
+
+	/**
+	 * Separates the terms of a condition.
+	 */
+	private static final Pattern DELIMITER = Pattern.compile("\\s+");
+
+	/**
+	 * Matches a threshold term.
+	 */
+	private static final Pattern THRESHOLD = Pattern.compile("(bars|vetoes|energy)(>=|<=)(.+)");
+
+	/**
+	 * The name.
+	 */
+	private final String name;
+
+	/**
+	 * The minimum and maximum number of hit bars.
+	 */
+	private int minBars = 0, maxBars = Integer.MAX_VALUE;
+
+	/**
+	 * The minimum and maximum number of hit vetoes.
+	 */
+	private int minVetoes = 0, maxVetoes = Integer.MAX_VALUE;
+
+	/**
+	 * The minimum and maximum summed bar energy in MeV.
+	 */
+	private double minEnergy = Double.NEGATIVE_INFINITY, maxEnergy = Double.POSITIVE_INFINITY;
+
+	/**
+	 * The detectors that must all be hit.
+	 */
+	private long allMask;
+
+	/**
+	 * The detectors of which one must be hit, or 0 for no such term.
+	 */
+	private long anyMask;
+
+	/**
+	 * The detectors that must not be hit.
+	 */
+	private long noneMask;
+
+	/**
+	 * The text the condition was compiled from.
+	 */
+	private final String text;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param name The name.
+	 * @param text The text.
+	 */
+	private TriggerCondition(String name, String text) {
+		this.name = name;
+		this.text = text;
+	}
+
+	/**
+	 * Compiles a condition.
+	 *
+	 * @param line The condition, such as <code>double: bars&gt;=2 energy&gt;=5</code>.
+	 * @return The compiled condition.
+	 * @throws IllegalArgumentException If the line is not a valid condition.
+	 */
+	public static TriggerCondition parse(String line) {
+		String s = line.trim();
+		int colon = s.indexOf(':');
+		if (colon <= 0) {
+			throw new IllegalArgumentException("expected name: terms in \"" + s + "\"");
+		}
+		String name = s.substring(0, colon).trim();
+		String terms = s.substring(colon + 1).trim();
+		TriggerCondition condition = new TriggerCondition(name, name + ": " + terms);
+		if (terms.isEmpty()) {
+			return condition;
+		}
+		for (String term : DELIMITER.split(terms)) {
+			condition.addTerm(term);
+		}
+		return condition;
+	}
+
+	/**
+	 * Adds a term.
+	 *
+	 * @param term The term.
+	 * @throws IllegalArgumentException If the term is not valid.
+	 */
+	private void addTerm(String term) {
+		Matcher matcher = THRESHOLD.matcher(term);
+		if (matcher.matches()) {
+			boolean minimum = matcher.group(2).equals(">=");
+			try {
+				switch (matcher.group(1)) {
+				case "bars":
+					if (minimum) {
+						minBars = Integer.parseInt(matcher.group(3));
+					} else {
+						maxBars = Integer.parseInt(matcher.group(3));
+					}
+					break;
+				case "vetoes":
+					if (minimum) {
+						minVetoes = Integer.parseInt(matcher.group(3));
+					} else {
+						maxVetoes = Integer.parseInt(matcher.group(3));
+					}
+					break;
+				default:
+					if (minimum) {
+						minEnergy = Double.parseDouble(matcher.group(3));
+					} else {
+						maxEnergy = Double.parseDouble(matcher.group(3));
+					}
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid number in \"" + term + "\"");
+			}
+			return;
+		}
+		int equals = term.indexOf('=');
+		if (equals > 0) {
+			long mask = parseList(term.substring(equals + 1));
+			switch (term.substring(0, equals)) {
+			case "all":
+				allMask |= mask;
+				return;
+			case "any":
+				anyMask |= mask;
+				return;
+			case "none":
+				noneMask |= mask;
+				return;
+			default:
+			}
+		}
+		throw new IllegalArgumentException("unknown term \"" + term + "\"");
+	}
+
+	/**
+	 * Converts a list of detectors, ranges and groups to a fired-detector bit mask.
+	 *
+	 * @param list The list.
+	 * @return The mask.
+	 * @throws IllegalArgumentException If an entry is not valid.
+	 */
+	private static long parseList(String list) {
+		long mask = 0;
+		for (String entry : list.split(",")) {
+			switch (entry) {
+			case "bars":
+				mask |= BAR_MASK;
+				break;
+			case "vetoes":
+				mask |= VETO_MASK;
+				break;
+			case "crystals":
+				mask |= range(GeometricConstants.BARS, GeometricConstants.CRYSTALS);
+				break;
+			case "internal":
+				mask |= range(GeometricConstants.BARS + GeometricConstants.CRYSTALS, GeometricConstants.INTERNAL_VETOES);
+				break;
+			case "external":
+				mask |= range(GeometricConstants.BARS + GeometricConstants.CRYSTALS + GeometricConstants.INTERNAL_VETOES, GeometricConstants.EXTERNAL_VETOES);
+				break;
+			default:
+				int dash = entry.indexOf('-');
+				if (dash > 0) {
+					int first = parseDetector(entry.substring(0, dash));
+					int last = parseDetector(entry.substring(dash + 1));
+					if (last < first) {
+						throw new IllegalArgumentException("empty range \"" + entry + "\"");
+					}
+					mask |= range(first, last - first + 1);
+				} else {
+					mask |= 1L << parseDetector(entry);
+				}
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Converts a detector name to its bit in the fired-detector bit mask.
+	 *
+	 * @param detector The name, such as b3 or v12.
+	 * @return The bit index, bars first, then vetoes.
+	 * @throws IllegalArgumentException If the name is not valid.
+	 */
+	private static int parseDetector(String detector) {
+		try {
+			int number = Integer.parseInt(detector.substring(1));
+			if (detector.charAt(0) == 'b' && number >= 1 && number <= GeometricConstants.BARS) {
+				return number - 1;
+			}
+			if (detector.charAt(0) == 'v' && number >= 1 && number <= GeometricConstants.VETOES) {
+				return GeometricConstants.BARS + number - 1;
+			}
+		} catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("unknown detector \"" + detector + "\"");
+	}
+
+	/**
+	 * Returns a mask of consecutive bits.
+	 *
+	 * @param first The first bit.
+	 * @param count The number of bits.
+	 * @return The mask.
+	 */
+	private static long range(int first, int count) {
+		return ((1L << count) - 1) << first;
+	}
+
+	/**
+	 * Evaluates the condition.
+	 *
+	 * @param fired The bit mask of the hit detectors, bars first, then vetoes.
+	 * @param energy The summed bar energy in MeV.
+	 * @return true if every term holds, false otherwise.
+	 */
+	public boolean accept(long fired, double energy) {
+		int bars = Long.bitCount(fired & BAR_MASK);
+		int vetoes = Long.bitCount(fired & VETO_MASK);
+		// non-short-circuit operators: every term is evaluated, without branches
+		return (bars >= minBars) & (bars <= maxBars) & (vetoes >= minVetoes) & (vetoes <= maxVetoes) & (energy >= minEnergy) & (energy <= maxEnergy) & ((fired & allMask) == allMask) & ((fired & noneMask) == 0) & ((anyMask == 0) | ((fired & anyMask) != 0));
+	}
+
+	/**
+	 * Returns the name.
+	 *
+	 * @return The name of the condition.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the condition as text, in the form it is parsed from.
+	 *
+	 * @return The text.
+	 */
+	@Override
+	public String toString() {
+		return text;
+	}
+
+}
@@ -0,0 +1,325 @@
+package infn.bed.event;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Emulates a trigger in software: evaluates a list of {@link TriggerCondition}s on every
+ * accumulated event and counts how often each trigger bit fires and how often two bits fire
+ * together. From these follow the rate of every bit and its efficiency relative to any other bit,
+ * N(i and j) / N(j).
+ *
+ * <p>
+ * An event is reduced once to the bit mask of its hit detectors and its summed bar energy; every
+ * condition is then a handful of mask and threshold comparisons. The conditions and counts are
+ * replaced together, so a new set of conditions starts from zero. The emulator is filled from the
+ * event thread; views read the counts while they are being filled, which at worst shows a count
+ * that is one event late.
+ * </p>
+ */
+public class TriggerEmulator {
+
+	/**
+	 * The largest number of conditions.
+	 */
+	public static final int MAX_CONDITIONS = 16;
+
+	/**
+	 * The conditions used until others are set.
+	 */
+	public static final String DEFAULT_CONDITIONS = "single: bars>=1\n" + "double: bars>=2\n" + "esum10: energy>=10\n" + "clean: bars>=1 none=vetoes\n" + "cosmic: bars>=1 any=external\n";
+
+	/**
+	 * Starts a comment in condition text.
+	 */
+	private static final String COMMENT = "#";
+
+	/**
+	 * The conditions and their counts, replaced together.
+	 */
+	private static final class Table {
+
+		/**
+		 * The conditions, one per trigger bit.
+		 */
+		final TriggerCondition conditions[];
+
+		/**
+		 * The number of events in which bits i and j both fired, indexed by i * n + j.
+		 */
+		final long overlaps[];
+
+		/**
+		 * The number of events.
+		 */
+		long events;
+
+		/**
+		 * The times of the first and last event in ms.
+		 */
+		long firstMillis = Long.MIN_VALUE, lastMillis = Long.MIN_VALUE;
+
+		/**
+		 * The constructor.
+		 *
+		 * @param conditions The conditions.
+		 */
+		Table(List<TriggerCondition> conditions) {
+			this.conditions = conditions.toArray(new TriggerCondition[0]);
+			overlaps = new long[this.conditions.length * this.conditions.length];
+		}
+	}
+
+	/**
+	 * The conditions and their counts.
+	 */
+	private volatile Table table;
+
+	/**
+	 * The constructor, with the default conditions.
+	 */
+	public TriggerEmulator() {
+		table = new Table(parse(DEFAULT_CONDITIONS));
+	}
+
+	/**
+	 * Compiles conditions, one per line. Empty lines and lines starting with # are skipped.
+	 *
+	 * @param text The conditions.
+	 * @return The compiled conditions.
+	 * @throws IllegalArgumentException If a line is not a valid condition or there are more than
+	 *             {@link #MAX_CONDITIONS} conditions.
+	 */
+	public static List<TriggerCondition> parse(String text) {
+		List<TriggerCondition> conditions = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new StringReader(text));
+		int lineNumber = 0;
+		try {
+			String s;
+			while ((s = reader.readLine()) != null) {
+				lineNumber++;
+				s = s.trim();
+				if (s.isEmpty() || s.startsWith(COMMENT)) {
+					continue;
+				}
+				try {
+					conditions.add(TriggerCondition.parse(s));
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			// a string reader does not fail
+			throw new IllegalStateException(e);
+		}
+		if (conditions.size() > MAX_CONDITIONS) {
+			throw new IllegalArgumentException("more than " + MAX_CONDITIONS + " conditions");
+		}
+		return conditions;
+	}
+
+	/**
+	 * Replaces the conditions and clears the counts.
+	 *
+	 * @param conditions The conditions, at most {@link #MAX_CONDITIONS}.
+	 */
+	public void setConditions(List<TriggerCondition> conditions) {
+		if (conditions.size() > MAX_CONDITIONS) {
+			throw new IllegalArgumentException("more than " + MAX_CONDITIONS + " conditions");
+		}
+		table = new Table(conditions);
+	}
+
+	/**
+	 * Returns the conditions.
+	 *
+	 * @return The conditions, one per trigger bit.
+	 */
+	public List<TriggerCondition> getConditions() {
+		List<TriggerCondition> conditions = new ArrayList<>();
+		Collections.addAll(conditions, table.conditions);
+		return conditions;
+	}
+
+	/**
+	 * Evaluates the conditions and counts the trigger bits of an event, timed now.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 */
+	public void fill(ReconstructedData reconstructedData) {
+		fill(reconstructedData, System.currentTimeMillis());
+	}
+
+	/**
+	 * Evaluates the conditions and counts the trigger bits of an event.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 * @param millis The time of the event in ms.
+	 */
+	public void fill(ReconstructedData reconstructedData, long millis) {
+		Table t = table;
+		int bits = evaluate(t.conditions, AccumulationManager.getFiredMask(reconstructedData), getBarEnergySum(reconstructedData));
+		int n = t.conditions.length;
+		for (int i = bits; i != 0; i &= i - 1) {
+			int row = Integer.numberOfTrailingZeros(i) * n;
+			for (int j = bits; j != 0; j &= j - 1) {
+				t.overlaps[row + Integer.numberOfTrailingZeros(j)]++;
+			}
+		}
+		t.events++;
+		if (t.firstMillis == Long.MIN_VALUE) {
+			t.firstMillis = millis;
+		}
+		t.lastMillis = millis;
+	}
+
+	/**
+	 * Evaluates conditions.
+	 *
+	 * @param conditions The conditions.
+	 * @param fired The bit mask of the hit detectors.
+	 * @param energy The summed bar energy in MeV.
+	 * @return The bit mask of the conditions that hold.
+	 */
+	private static int evaluate(TriggerCondition conditions[], long fired, double energy) {
+		int bits = 0;
+		for (int i = 0; i < conditions.length; i++) {
+			bits |= (conditions[i].accept(fired, energy) ? 1 : 0) << i;
+		}
+		return bits;
+	}
+
+	/**
+	 * Returns the summed energy of the bars hit in an event.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 * @return The energy in MeV.
+	 */
+	static double getBarEnergySum(ReconstructedData reconstructedData) {
+		int bars[] = reconstructedData.getBarNumberArray();
+		double energies[] = reconstructedData.getBarEnergyArray();
+		double sum = 0;
+		int n = Math.min(bars.length, energies.length);
+		for (int i = 0; i < n; i++) {
+			if (bars[i] > 0 && energies[i] > 0) {
+				sum += energies[i];
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Returns the number of events evaluated.
+	 *
+	 * @return The number of events since the conditions were set or cleared.
+	 */
+	public long getEventCount() {
+		return table.events;
+	}
+
+	/**
+	 * Returns the number of events in which a trigger bit fired.
+	 *
+	 * @param bit The trigger bit.
+	 * @return The count.
+	 */
+	public long getCount(int bit) {
+		return getOverlap(bit, bit);
+	}
+
+	/**
+	 * Returns the number of events in which two trigger bits both fired.
+	 *
+	 * @param bit1 The first trigger bit.
+	 * @param bit2 The second trigger bit.
+	 * @return The count.
+	 */
+	public long getOverlap(int bit1, int bit2) {
+		Table t = table;
+		return t.overlaps[bit1 * t.conditions.length + bit2];
+	}
+
+	/**
+	 * Returns the rate of a trigger bit over the time of the evaluated events.
+	 *
+	 * @param bit The trigger bit.
+	 * @return The rate in Hz, or NaN if the events span no time.
+	 */
+	public double getRate(int bit) {
+		return getRate(table, bit);
+	}
+
+	/**
+	 * Returns the rate of a trigger bit of a table.
+	 *
+	 * @param t The conditions and counts.
+	 * @param bit The trigger bit.
+	 * @return The rate in Hz, or NaN if the events span no time.
+	 */
+	private static double getRate(Table t, int bit) {
+		double seconds = (t.lastMillis - t.firstMillis) / 1000.0;
+		return (seconds > 0) ? t.overlaps[bit * t.conditions.length + bit] / seconds : Double.NaN;
+	}
+
+	/**
+	 * Returns the efficiency of a trigger bit relative to a reference bit: the fraction of the
+	 * events of the reference bit in which the bit fired too.
+	 *
+	 * @param bit The trigger bit.
+	 * @param reference The reference trigger bit.
+	 * @return The efficiency, or NaN if the reference bit never fired.
+	 */
+	public double getEfficiency(int bit, int reference) {
+		long referenceCount = getCount(reference);
+		return (referenceCount > 0) ? (double) getOverlap(bit, reference) / referenceCount : Double.NaN;
+	}
+
+	/**
+	 * Clears the counts, keeping the conditions.
+	 */
+	public void clear() {
+		table = new Table(getConditions());
+	}
+
+	/**
+	 * Returns a summary: the count, rate and fraction of the events of every trigger bit, then the
+	 * efficiency of every bit (row) relative to every other bit (column) in percent.
+	 *
+	 * @return The summary.
+	 */
+	public String getSummary() {
+		Table t = table;
+		int n = t.conditions.length;
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("%d events%n%n", t.events));
+		sb.append(String.format("%-3s %-12s %10s %12s %8s%n", "bit", "name", "count", "rate", "events"));
+		for (int i = 0; i < n; i++) {
+			long count = t.overlaps[i * n + i];
+			double rate = getRate(t, i);
+			sb.append(String.format("%-3d %-12s %10d %12s %7.2f%%%n", i, t.conditions[i].getName(), count, Double.isNaN(rate) ? "-" : RateMeter.format(rate), (t.events > 0) ? 100.0 * count / t.events : 0));
+		}
+		sb.append(String.format("%nefficiency of row given column (%%)%n%-3s", ""));
+		for (int j = 0; j < n; j++) {
+			sb.append(String.format(" %6d", j));
+		}
+		sb.append(String.format("%n"));
+		for (int i = 0; i < n; i++) {
+			sb.append(String.format("%-3d", i));
+			for (int j = 0; j < n; j++) {
+				long reference = t.overlaps[j * n + j];
+				sb.append((reference > 0) ? String.format(" %6.1f", 100.0 * t.overlaps[i * n + j] / reference) : String.format(" %6s", "-"));
+			}
+			sb.append(String.format("%n"));
+		}
+		sb.append(String.format("%nconditions%n"));
+		for (int i = 0; i < n; i++) {
+			sb.append(String.format("%-3d %s%n", i, t.conditions[i]));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,355 @@
+package infn.bed.event;
+
+import infn.bed.util.ChannelParameters;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rejects events with veto activity before any scintillator bar processing takes place.
+ *
+ * <p>
+ * The filter only looks at the veto charge-time banks (tag 202) or at the veto channels of the
+ * full-waveform bank, so rejected events never reach pulse finding or energy-time reconstruction.
+ * </p>
+ */
+public class VetoFilter {
+
+	/**
+	 * The veto layer of an internal veto in a charge-time bank.
+	 */
+	public static final int INTERNAL_VETO_LAYER = 1;
+
+	/**
+	 * The veto layer of an external veto in a charge-time bank.
+	 */
+	public static final int EXTERNAL_VETO_LAYER = 2;
+
+	/**
+	 * The first full-waveform channel of the internal vetoes.
+	 */
+	private static final int FIRST_INTERNAL_VETO_CHANNEL = TranslationTable.vetoInner1[0];
+
+	/**
+	 * The first full-waveform channel of the external vetoes.
+	 */
+	private static final int FIRST_EXTERNAL_VETO_CHANNEL = TranslationTable.vetoOuter1[0];
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static VetoFilter instance;
+
+	/**
+	 * true if the filter is enabled, false otherwise.
+	 */
+	private volatile boolean enabled = false;
+
+	/**
+	 * true if internal veto hits count towards rejection, false otherwise.
+	 */
+	private volatile boolean internalVetoesSelected = false;
+
+	/**
+	 * true if external veto hits count towards rejection, false otherwise.
+	 */
+	private volatile boolean externalVetoesSelected = true;
+
+	/**
+	 * The charge above which a veto hit counts towards rejection.
+	 */
+	private volatile int chargeThreshold = 0;
+
+	/**
+	 * The minimum number of selected veto hits that rejects an event.
+	 */
+	private volatile int minimumHits = 1;
+
+	/**
+	 * The number of examined events.
+	 */
+	private final AtomicLong examinedEventCount = new AtomicLong();
+
+	/**
+	 * The number of events rejected from charge-time banks.
+	 */
+	private final AtomicLong chargeTimeRejectedEventCount = new AtomicLong();
+
+	/**
+	 * The number of events rejected from full-waveform banks.
+	 */
+	private final AtomicLong fullWaveformRejectedEventCount = new AtomicLong();
+
+	/**
+	 * Private constructor for singleton VetoFilter.
+	 */
+	private VetoFilter() {
+	}
+
+	/**
+	 * Public access to the veto filter singleton.
+	 *
+	 * @return The veto filter singleton.
+	 */
+	public static VetoFilter getInstance() {
+		if (instance == null) {
+			instance = new VetoFilter();
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns true if the charge-time veto hits satisfy the rejection condition, false otherwise.
+	 *
+	 * @param vetoLayerArray The array of veto hit layers (internal or external).
+	 * @param vetoChargeArray The array of veto hit charges.
+	 * @return true if the event should be rejected, false otherwise.
+	 */
+	public boolean rejectChargeTimeData(int[] vetoLayerArray, int[] vetoChargeArray) {
+		if (!enabled || vetoLayerArray == null || vetoChargeArray == null) {
+			return false;
+		}
+		int threshold = chargeThreshold;
+		int hits = 0;
+		int length = Math.min(vetoLayerArray.length, vetoChargeArray.length);
+		for (int i = 0; i < length; i++) {
+			if (isSelectedLayer(vetoLayerArray[i]) && vetoChargeArray[i] > threshold) {
+				hits++;
+			}
+		}
+		if (hits >= minimumHits) {
+			chargeTimeRejectedEventCount.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns true if a full-waveform channel is a selected veto channel with a hit, false otherwise.
+	 * A hit is a pulse above the ADC (analog-to-digital converter) threshold of the channel whose
+	 * charge, integrated as in the charge-time conversion, exceeds the charge threshold. The check
+	 * is done while the full-waveform bank is read, so a rejected event is never fully decoded.
+	 *
+	 * @param channel The channel.
+	 * @param samples The samples of the channel.
+	 * @param length The number of samples.
+	 * @return true if the channel counts towards rejection, false otherwise.
+	 */
+	public boolean isFullWaveformHit(int channel, short[] samples, int length) {
+		if (!isSelectedChannel(channel)) {
+			return false;
+		}
+		ChannelParameters parameters = ChannelParameters.getCurrent();
+		final int threshold = parameters.getThreshold(channel);
+		final int resistance = parameters.getResistance(channel);
+		final int period = parameters.getSamplePeriod(channel);
+		final int minimumCharge = chargeThreshold;
+		double charge = 0;
+		boolean collectingPulse = false;
+		for (int i = 1; i < length; i++) {
+			int sample = samples[i];
+			if (sample > threshold) {
+				charge = charge + (sample / resistance) * (i - 1) * period;
+				collectingPulse = true;
+			} else if (collectingPulse) {
+				if (charge > minimumCharge) {
+					return true;
+				}
+				charge = 0;
+				collectingPulse = false;
+			}
+		}
+		return collectingPulse && charge > minimumCharge;
+	}
+
+	/**
+	 * Returns true if hits in a full-waveform channel count towards rejection, false otherwise.
+	 *
+	 * @param channel The channel.
+	 * @return true if the channel is a selected veto channel, false otherwise.
+	 */
+	private boolean isSelectedChannel(int channel) {
+		if (channel >= FIRST_EXTERNAL_VETO_CHANNEL) {
+			return externalVetoesSelected;
+		}
+		return channel >= FIRST_INTERNAL_VETO_CHANNEL && internalVetoesSelected;
+	}
+
+	/**
+	 * Counts an event rejected from a full-waveform bank.
+	 */
+	void countFullWaveformRejection() {
+		fullWaveformRejectedEventCount.incrementAndGet();
+	}
+
+	/**
+	 * Counts an event that was examined by the filter.
+	 */
+	void countExaminedEvent() {
+		if (enabled) {
+			examinedEventCount.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Returns true if hits in a charge-time veto layer count towards rejection, false otherwise.
+	 *
+	 * @param vetoLayer The veto layer (1 if the layer is internal or 2 if the layer is external).
+	 * @return true if the veto layer is selected, false otherwise.
+	 */
+	private boolean isSelectedLayer(int vetoLayer) {
+		return (vetoLayer == INTERNAL_VETO_LAYER && internalVetoesSelected) || (vetoLayer == EXTERNAL_VETO_LAYER && externalVetoesSelected);
+	}
+
+	/**
+	 * Resets the rejection counters.
+	 */
+	public void resetCounters() {
+		examinedEventCount.set(0);
+		chargeTimeRejectedEventCount.set(0);
+		fullWaveformRejectedEventCount.set(0);
+	}
+
+	/**
+	 * Returns true if the filter is enabled, false otherwise.
+	 *
+	 * @return true if the filter is enabled, false otherwise.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Enables or disables the filter.
+	 *
+	 * @param enabled true to enable the filter, false otherwise.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Returns true if internal veto hits count towards rejection, false otherwise.
+	 *
+	 * @return true if internal veto hits count towards rejection, false otherwise.
+	 */
+	public boolean isInternalVetoesSelected() {
+		return internalVetoesSelected;
+	}
+
+	/**
+	 * Sets whether internal veto hits count towards rejection.
+	 *
+	 * @param internalVetoesSelected true if internal veto hits count towards rejection, false otherwise.
+	 */
+	public void setInternalVetoesSelected(boolean internalVetoesSelected) {
+		this.internalVetoesSelected = internalVetoesSelected;
+	}
+
+	/**
+	 * Returns true if external veto hits count towards rejection, false otherwise.
+	 *
+	 * @return true if external veto hits count towards rejection, false otherwise.
+	 */
+	public boolean isExternalVetoesSelected() {
+		return externalVetoesSelected;
+	}
+
+	/**
+	 * Sets whether external veto hits count towards rejection.
+	 *
+	 * @param externalVetoesSelected true if external veto hits count towards rejection, false otherwise.
+	 */
+	public void setExternalVetoesSelected(boolean externalVetoesSelected) {
+		this.externalVetoesSelected = externalVetoesSelected;
+	}
+
+	/**
+	 * Returns the charge above which a veto hit counts towards rejection.
+	 *
+	 * @return The charge threshold.
+	 */
+	public int getChargeThreshold() {
+		return chargeThreshold;
+	}
+
+	/**
+	 * Sets the charge above which a veto hit counts towards rejection.
+	 *
+	 * @param chargeThreshold The charge threshold.
+	 */
+	public void setChargeThreshold(int chargeThreshold) {
+		this.chargeThreshold = chargeThreshold;
+	}
+
+	/**
+	 * Returns the minimum number of selected veto hits that rejects an event.
+	 *
+	 * @return The minimum number of selected veto hits.
+	 */
+	public int getMinimumHits() {
+		return minimumHits;
+	}
+
+	/**
+	 * Sets the minimum number of selected veto hits that rejects an event.
+	 *
+	 * @param minimumHits The minimum number of selected veto hits (at least 1).
+	 */
+	public void setMinimumHits(int minimumHits) {
+		this.minimumHits = Math.max(1, minimumHits);
+	}
+
+	/**
+	 * Returns the number of examined events.
+	 *
+	 * @return The number of examined events.
+	 */
+	public long getExaminedEventCount() {
+		return examinedEventCount.get();
+	}
+
+	/**
+	 * Returns the number of rejected events.
+	 *
+	 * @return The number of rejected events.
+	 */
+	public long getRejectedEventCount() {
+		return chargeTimeRejectedEventCount.get() + fullWaveformRejectedEventCount.get();
+	}
+
+	/**
+	 * Returns the number of events rejected from charge-time banks.
+	 *
+	 * @return The number of events rejected from charge-time banks.
+	 */
+	public long getChargeTimeRejectedEventCount() {
+		return chargeTimeRejectedEventCount.get();
+	}
+
+	/**
+	 * Returns the number of events rejected from full-waveform banks.
+	 *
+	 * @return The number of events rejected from full-waveform banks.
+	 */
+	public long getFullWaveformRejectedEventCount() {
+		return fullWaveformRejectedEventCount.get();
+	}
+
+	/**
+	 * Returns a summary of the rejection counters.
+	 *
+	 * @return A summary of the rejection counters.
+	 */
+	@Override
+	public String toString() {
+		long examined = getExaminedEventCount();
+		long rejected = getRejectedEventCount();
+		double fraction = (examined > 0) ? ((double) rejected) / examined : 0;
+		return "Examined events: " + examined
+				+ "\nRejected events: " + rejected
+				+ "\n    from charge-time veto banks: " + getChargeTimeRejectedEventCount()
+				+ "\n    from full-waveform veto channels: " + getFullWaveformRejectedEventCount()
+				+ "\nRejected fraction: " + String.format("%.3f", fraction);
+	}
+
+}
@@ -0,0 +1,195 @@
+package infn.bed.event;
+
+import infn.bed.util.ChannelParameters;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Accumulates, for every FADC (flash analog-to-digital converter) channel, the density of the
+ * waveforms over many events: the number of samples per sample index and ADC bin, like the
+ * persistence display of an oscilloscope. Baseline shifts show up as a second horizontal band and
+ * ringing as a smeared tail behind the pulses.
+ *
+ * <p>
+ * The samples are read straight from the primitive arrays of the full-waveform data. Binning is
+ * done in two passes: a branch-free pass computes the cell of every sample (a shift and a clamp,
+ * which the JIT compiles to vector instructions), and a second pass increments the cells. The
+ * density and the waveform count of a channel live in one object, allocated on the first waveform
+ * and dropped as a whole on a clear, so a fill running during a clear only ever lands in the
+ * dropped object. The persistence is filled from the event thread only; views read it while it is
+ * being filled, which at worst shows a sample that is one event late.
+ * </p>
+ */
+public class WaveformPersistence {
+
+	/**
+	 * The number of FADC channels.
+	 */
+	public static final int CHANNELS = ChannelParameters.CHANNELS;
+
+	/**
+	 * The number of sample indices kept; later samples of a waveform are ignored.
+	 */
+	public static final int SAMPLES = 256;
+
+	/**
+	 * log2 of the number of ADC values per bin.
+	 */
+	public static final int ADC_SHIFT = 4;
+
+	/**
+	 * The number of ADC bins, covering the 12-bit range of the FADC. Values outside go to the first
+	 * or last bin.
+	 */
+	public static final int ADC_BINS = 4096 >> ADC_SHIFT;
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static WaveformPersistence instance;
+
+	/**
+	 * The density of one channel and the number of waveforms in it.
+	 */
+	private static final class Density {
+
+		/**
+		 * The counts indexed by sample * ADC_BINS + adcBin.
+		 */
+		final int counts[] = new int[SAMPLES * ADC_BINS];
+
+		/**
+		 * The number of waveforms.
+		 */
+		volatile long waveforms;
+
+	}
+
+	/**
+	 * The density of every channel, or null before the first waveform.
+	 */
+	private final AtomicReferenceArray<Density> densities = new AtomicReferenceArray<>(CHANNELS);
+
+	/**
+	 * The cell of every sample of the waveform being added.
+	 */
+	private final int cells[] = new int[SAMPLES];
+
+	/**
+	 * Private constructor for singleton WaveformPersistence.
+	 */
+	private WaveformPersistence() {
+	}
+
+	/**
+	 * Public access to the waveform persistence singleton.
+	 *
+	 * @return The waveform persistence singleton.
+	 */
+	public static WaveformPersistence getInstance() {
+		if (instance == null) {
+			instance = new WaveformPersistence();
+		}
+		return instance;
+	}
+
+	/**
+	 * Adds the waveforms of every channel of an event.
+	 *
+	 * @param samples The samples of every channel, or null if the event had no full-waveform data.
+	 * @param sampleCounts The number of samples of every channel.
+	 */
+	public void fill(short samples[][], int sampleCounts[]) {
+		if (samples == null) {
+			return;
+		}
+		int channels = Math.min(CHANNELS, samples.length);
+		for (int channel = 0; channel < channels; channel++) {
+			if (sampleCounts[channel] > 0) {
+				fill(channel, samples[channel], sampleCounts[channel]);
+			}
+		}
+	}
+
+	/**
+	 * Adds one waveform.
+	 *
+	 * @param channel The channel.
+	 * @param waveform The samples.
+	 * @param length The number of samples.
+	 */
+	public void fill(int channel, short waveform[], int length) {
+		Density density = densities.get(channel);
+		if (density == null) {
+			density = new Density();
+			densities.set(channel, density);
+		}
+		int counts[] = density.counts;
+		int n = Math.min(length, SAMPLES);
+		// branch-free, so the loop vectorizes
+		for (int i = 0; i < n; i++) {
+			int bin = Math.max(0, Math.min(ADC_BINS - 1, waveform[i] >> ADC_SHIFT));
+			cells[i] = i * ADC_BINS + bin;
+		}
+		for (int i = 0; i < n; i++) {
+			counts[cells[i]]++;
+		}
+		density.waveforms++;
+	}
+
+	/**
+	 * Returns a copy of the density of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The counts indexed by sample * ADC_BINS + adcBin, or null if the channel has no
+	 *         waveforms.
+	 */
+	public int[] snapshot(int channel) {
+		Density density = densities.get(channel);
+		return (density == null) ? null : density.counts.clone();
+	}
+
+	/**
+	 * Returns the count of a cell.
+	 *
+	 * @param channel The channel.
+	 * @param sample The sample index.
+	 * @param adcBin The ADC bin.
+	 * @return The number of waveforms with that sample in that bin.
+	 */
+	public int getCount(int channel, int sample, int adcBin) {
+		Density density = densities.get(channel);
+		return (density == null) ? 0 : density.counts[sample * ADC_BINS + adcBin];
+	}
+
+	/**
+	 * Returns the number of waveforms of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The number of waveforms.
+	 */
+	public long getWaveforms(int channel) {
+		Density density = densities.get(channel);
+		return (density == null) ? 0 : density.waveforms;
+	}
+
+	/**
+	 * Returns the lowest ADC value of a bin.
+	 *
+	 * @param adcBin The ADC bin.
+	 * @return The lower edge of the bin.
+	 */
+	public static int getAdcLowEdge(int adcBin) {
+		return adcBin << ADC_SHIFT;
+	}
+
+	/**
+	 * Clears the density of every channel. May be called from any thread.
+	 */
+	public void clear() {
+		for (int channel = 0; channel < CHANNELS; channel++) {
+			densities.set(channel, null);
+		}
+	}
+
+}
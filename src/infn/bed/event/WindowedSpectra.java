@@ -0,0 +1,258 @@
+package infn.bed.event;
+
+/**
+ * The detector spectra of the last seconds of data taking, for online monitoring, as opposed to the
+ * whole accumulation.
+ *
+ * <p>
+ * The events are filled into a ring of one-second {@link DetectorSpectra} slices and into the
+ * running sum of the slices in the window. When a second starts, the slice that leaves the window is
+ * subtracted from the sum and its slot is cleared for reuse, so sliding costs one subtraction per
+ * second whatever the window length, and reading the window costs nothing more than reading one
+ * set of spectra. The window can be changed at runtime up to {@link #MAX_WINDOW_SECONDS}; only
+ * then is the sum rebuilt from the slices.
+ * </p>
+ *
+ * <p>
+ * Time is the wall-clock time the events arrive. The windowed spectra are concurrent, so views may
+ * read them while the event thread fills them.
+ * </p>
+ */
+public class WindowedSpectra {
+
+	/**
+	 * The number of slices in the ring, the longest window in seconds.
+	 */
+	public static final int MAX_WINDOW_SECONDS = 120;
+
+	/**
+	 * The default window in seconds.
+	 */
+	public static final int DEFAULT_WINDOW_SECONDS = 30;
+
+	/**
+	 * The length of a slice in ms.
+	 */
+	private static final long SLICE_MILLIS = 1000;
+
+	/**
+	 * The ring of slices; the slice of second t is at t modulo MAX_WINDOW_SECONDS. A slice takes about
+	 * 120 kB, so the ring is kept to a couple of minutes.
+	 */
+	private final DetectorSpectra slices[] = new DetectorSpectra[MAX_WINDOW_SECONDS];
+
+	/**
+	 * The sum of the slices in the window.
+	 */
+	private final DetectorSpectra window = new DetectorSpectra(true);
+
+	/**
+	 * The window in seconds.
+	 */
+	private volatile int windowSeconds;
+
+	/**
+	 * The current second, or Long.MIN_VALUE before the first event.
+	 */
+	private volatile long second = Long.MIN_VALUE;
+
+	/**
+	 * The second of the first event since the last clear.
+	 */
+	private volatile long firstSecond;
+
+	/**
+	 * The latest time seen in ms.
+	 */
+	private volatile long lastMillis = Long.MIN_VALUE;
+
+	/**
+	 * Creates windowed spectra.
+	 *
+	 * @param windowSeconds The window in seconds (1 to MAX_WINDOW_SECONDS).
+	 */
+	public WindowedSpectra(int windowSeconds) {
+		for (int i = 0; i < slices.length; i++) {
+			slices[i] = new DetectorSpectra(false);
+		}
+		this.windowSeconds = clamp(windowSeconds);
+	}
+
+	/**
+	 * Adds an event arriving now.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 */
+	public void fill(ReconstructedData reconstructedData) {
+		fill(reconstructedData, System.currentTimeMillis());
+	}
+
+	/**
+	 * Adds an event.
+	 *
+	 * @param reconstructedData The reconstructed data of the event.
+	 * @param millis The time of the event in ms.
+	 */
+	public synchronized void fill(ReconstructedData reconstructedData, long millis) {
+		advance(millis);
+		slice(second).fill(reconstructedData);
+		window.fill(reconstructedData);
+	}
+
+	/**
+	 * Slides the window to a time, so that the seconds without events expire too. Times earlier than
+	 * the current second count as the current second.
+	 *
+	 * @param millis The time in ms.
+	 */
+	public synchronized void advance(long millis) {
+		long now = Math.floorDiv(millis, SLICE_MILLIS);
+		if (second == Long.MIN_VALUE) {
+			second = now;
+			firstSecond = now;
+		} else if (now - second >= MAX_WINDOW_SECONDS) {
+			// every slice has expired
+			for (DetectorSpectra slice : slices) {
+				slice.clear();
+			}
+			window.clear();
+			second = now;
+			firstSecond = now;
+		} else {
+			while (second < now) {
+				long next = second + 1;
+				window.subtract(slice(next - windowSeconds));
+				// the slot held second next - MAX_WINDOW_SECONDS, already out of any window
+				slice(next).clear();
+				second = next;
+			}
+		}
+		lastMillis = Math.max(lastMillis, millis);
+	}
+
+	/**
+	 * Returns the slice of a second.
+	 *
+	 * @param t The second.
+	 * @return The slice.
+	 */
+	private DetectorSpectra slice(long t) {
+		return slices[(int) Math.floorMod(t, (long) MAX_WINDOW_SECONDS)];
+	}
+
+	/**
+	 * Clamps a window to the ring.
+	 *
+	 * @param seconds The window in seconds.
+	 * @return The window between 1 and MAX_WINDOW_SECONDS.
+	 */
+	private static int clamp(int seconds) {
+		return Math.max(1, Math.min(MAX_WINDOW_SECONDS, seconds));
+	}
+
+	/**
+	 * Changes the window. The sum is rebuilt from the slices, so the counts of the new window are
+	 * available at once as far as the ring reaches back.
+	 *
+	 * @param seconds The window in seconds (clamped to 1 to MAX_WINDOW_SECONDS).
+	 */
+	public synchronized void setWindowSeconds(int seconds) {
+		windowSeconds = clamp(seconds);
+		window.clear();
+		if (second != Long.MIN_VALUE) {
+			for (long t = second - windowSeconds + 1; t <= second; t++) {
+				window.merge(slice(t));
+			}
+		}
+	}
+
+	/**
+	 * Returns the window.
+	 *
+	 * @return The window in seconds.
+	 */
+	public int getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	/**
+	 * Returns the time the window actually covers: the window, or less right after a clear.
+	 *
+	 * @return The covered time in seconds, 0 before the first event.
+	 */
+	public double getCoveredSeconds() {
+		long current = second;
+		if (current == Long.MIN_VALUE) {
+			return 0;
+		}
+		long full = Math.min(windowSeconds - 1, current - firstSecond);
+		long partial = lastMillis - current * SLICE_MILLIS;
+		return (full * SLICE_MILLIS + partial + 1) / (double) SLICE_MILLIS;
+	}
+
+	/**
+	 * Returns the spectra of the window. Call {@link #advance(long)} first if events may have
+	 * stopped arriving.
+	 *
+	 * @return The windowed spectra, not to be filled by the caller.
+	 */
+	public DetectorSpectra getSpectra() {
+		return window;
+	}
+
+	/**
+	 * Returns the event rate over the window.
+	 *
+	 * @return The rate in Hz, 0 before the first event.
+	 */
+	public double getEventRate() {
+		double seconds = getCoveredSeconds();
+		return (seconds > 0) ? window.getEventCount() / seconds : 0;
+	}
+
+	/**
+	 * Returns the hit rate of a detector over the window.
+	 *
+	 * @param detector The detector index, bars first, then vetoes.
+	 * @return The rate in Hz, 0 before the first event.
+	 */
+	public double getHitRate(int detector) {
+		double seconds = getCoveredSeconds();
+		return (seconds > 0) ? window.getHitCount(detector) / seconds : 0;
+	}
+
+	/**
+	 * Returns a table of the window: the covered time and the event rate, then the hits, the hit
+	 * rate and the mean energy of every detector. Call {@link #advance(long)} first if events may
+	 * have stopped arriving.
+	 *
+	 * @return The table.
+	 */
+	public String getSummary() {
+		double seconds = getCoveredSeconds();
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("window %d s, covered %.1f s%n", windowSeconds, seconds));
+		sb.append(String.format("%-6s %10d %12s%n%n", "events", window.getEventCount(), RateMeter.format(getEventRate())));
+		sb.append(String.format("%-6s %10s %12s %10s%n", "", "hits", "rate", "mean MeV"));
+		for (int d = 0; d < DetectorSpectra.DETECTORS; d++) {
+			long hits = window.getHitCount(d);
+			double meanEnergy = AccumulationSnapshot.mean(window.getEnergyHistogram(d));
+			String mean = Double.isNaN(meanEnergy) ? "-" : String.format("%.2f", meanEnergy);
+			sb.append(String.format("%-6s %10d %12s %10s%n", RateMeter.getDetectorName(d), hits, RateMeter.format((seconds > 0) ? hits / seconds : 0), mean));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Clears the window and every slice.
+	 */
+	public synchronized void clear() {
+		for (DetectorSpectra slice : slices) {
+			slice.clear();
+		}
+		window.clear();
+		second = Long.MIN_VALUE;
+		lastMillis = Long.MIN_VALUE;
+	}
+
+}
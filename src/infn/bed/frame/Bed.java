@@ -2,31 +2,61 @@ package infn.bed.frame;
 
 import infn.bed.view.BarFrontView;
 import infn.bed.view.BarSideView;
+import infn.bed.view.CoincidenceView;
+import infn.bed.view.DisplayScheduler;
 import infn.bed.view.FullSideView;
+import infn.bed.view.plot.NoiseSpectrumPlot;
 import infn.bed.view.plot.WavePlot;
+import infn.bed.event.AccumulationFile;
 import infn.bed.event.AccumulationManager;
-import infn.bed.item.FrontViewBar;
-import infn.bed.item.FullSideViewBar;
-import infn.bed.item.FullSideViewVeto;
-import infn.bed.item.SideViewBar;
+import infn.bed.event.CalibrationFitter;
+import infn.bed.event.CalibrationStatistics;
+import infn.bed.event.EventCache;
+import infn.bed.event.GainMonitor;
+import infn.bed.event.NoiseSpectrum;
+import infn.bed.event.RateMeter;
+import infn.bed.event.Reconstruction;
+import infn.bed.event.TriggerCondition;
+import infn.bed.event.TriggerEmulator;
+import infn.bed.event.VetoFilter;
+import infn.bed.event.WaveformPersistence;
+import infn.bed.event.WindowedSpectra;
+import infn.bed.util.CalibrationStore;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.ChannelParameters;
 
+import java.awt.BorderLayout;
 import java.awt.EventQueue;
+import java.awt.Font;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.ComponentEvent;
 import java.awt.event.ComponentListener;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
 
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JDialog;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JMenu;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.JTextField;
 import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
 import cnuphys.bCNU.application.BaseMDIApplication;
@@ -34,6 +64,7 @@ import cnuphys.bCNU.application.Desktop;
 import cnuphys.bCNU.attributes.AttributeType;
 import cnuphys.bCNU.et.ETSupport;
 import cnuphys.bCNU.event.AccumulationDialog;
+import cnuphys.bCNU.event.EventControl;
 import cnuphys.bCNU.event.EventMenu;
 import cnuphys.bCNU.graphics.ImageManager;
 import cnuphys.bCNU.log.Log;
@@ -86,6 +117,11 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 	 */
 	private FullSideView fullSideView;
 
+	/**
+	 * The instance of the CoincidenceView class
+	 */
+	private CoincidenceView coincidenceView;
+
 	/**
 	 * An array of the plots of the left PMT values
 	 */
@@ -96,6 +132,22 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 	 */
 	private WavePlot rightPlot[];
 
+	/**
+	 * The noise spectrum plot of every FADC channel, created when first shown
+	 */
+	private NoiseSpectrumPlot noiseSpectrumPlot[] = new NoiseSpectrumPlot[NoiseSpectrum.CHANNELS];
+
+	/**
+	 * The live rate table, or null if it is not showing
+	 */
+	private JDialog rateDialog;
+
+	/**
+	 * The table of the spectra of the last seconds, or null if it is not
+	 * showing
+	 */
+	private JDialog windowedSpectraDialog;
+
 	/**
 	 * The instance of this class being used
 	 */
@@ -161,6 +213,7 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 			virtualView.moveTo(fullSideView, 0, 0);
 			virtualView.moveTo(eventView, 0, 1, true);
 			virtualView.moveTo(barFrontView, 0, 2);
+			virtualView.moveTo(coincidenceView, 0, 2);
 			virtualView.moveTo(barSideView, 0, 3);
 			for (int i = 0; i < 9; i++) {
 				virtualView.moveTo(leftPlot[i], 0, 3);
@@ -190,13 +243,15 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 
 		fullSideView = FullSideView.createFullSideView();
 
+		coincidenceView = CoincidenceView.createCoincidenceView();
+
 		leftPlot = new WavePlot[9];
 
 		rightPlot = new WavePlot[9];
 		
 		for (int i = 0; i < 9; i++) {
-			leftPlot[i] = new WavePlot();
-			rightPlot[i] = new WavePlot();
+			leftPlot[i] = new WavePlot(2 * i);
+			rightPlot[i] = new WavePlot(2 * i + 1);
 		}
 		clearViewMenu();
 		// log some environment info
@@ -262,28 +317,15 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 			    chooser.setFileFilter(filter);
 			    int returnVal = chooser.showOpenDialog(Bed.getInstance());
 		        if (returnVal == JFileChooser.APPROVE_OPTION) {
-		            File calibrationFile = chooser.getSelectedFile();
-		            FullSideViewBar[] fsvBars = fullSideView.getBars();
-		            for(int i = 0; i < fsvBars.length; i++) {
-		            	fsvBars[i].getConstants(calibrationFile);
-		            }
-		            FullSideViewVeto[] fsvVetoes = fullSideView.getVetoes();
-		            for(int i = 0; i < fsvBars.length; i++) {
-		            	fsvVetoes[i].getConstants(calibrationFile);
-		            }
-		            FrontViewBar[] frontBars = barFrontView.getBars();
-		            for(int i = 0; i < frontBars.length; i++) {
-		            	frontBars[i].getConstants(calibrationFile);
-		            }
-		            SideViewBar[] sideBars = barSideView.getBars();
-		            for(int i = 0; i < sideBars.length; i++) {
-		            	sideBars[i].getConstants(calibrationFile);
-		            }
+		            CalibrationLoader.loadFile(chooser.getSelectedFile());
 		        } 
 			}
 		};
 		calibrationItem.addActionListener(calibAL);
 		menu.add(calibrationItem, 2);
+		menu.add(createCalibrationStoreMenu(), 3);
+		menu.add(createChannelParametersMenu(), 4);
+		menu.add(createVetoFilterMenu(), 5);
 		
 		EventMenu.menuAdditions();
 
@@ -303,6 +345,55 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 		accItem.setEnabled(false);
 		EventMenu.setAccumulationItem(accItem);
 
+		// keep accumulations across sessions and combine runs
+		MenuManager.addMenuItem("Save Accumulation...", menu,
+				e -> saveAccumulation());
+		MenuManager.addMenuItem("Add Accumulation Files...", menu,
+				e -> addAccumulationFiles());
+
+		// fit veff and lambda from the accumulated statistics
+		MenuManager.addMenuItem("Fit Calibration Constants...", menu,
+				e -> fitCalibrationConstants());
+
+		// rates and efficiencies of software trigger conditions
+		MenuManager.addMenuItem("Trigger Emulation...", menu,
+				e -> showTriggerEmulation());
+
+		// the per-channel gain drift monitor
+		MenuManager.addMenuItem("Gain Monitor...", menu, e -> showGainMonitor());
+
+		// show the accumulated waveform density instead of the current waveform
+		final JCheckBoxMenuItem persistenceItem = new JCheckBoxMenuItem(
+				"Waveform Persistence", WavePlot.isPersistence());
+		persistenceItem.addActionListener(e -> setWaveformPersistence(persistenceItem
+				.isSelected()));
+		menu.add(persistenceItem);
+		MenuManager.addMenuItem("Clear Waveform Persistence", menu,
+				e -> WaveformPersistence.getInstance().clear());
+
+		// cap the repaints of the views at high event rates
+		MenuManager.addMenuItem("Display Frame Rate...", menu,
+				e -> setDisplayFrameRate());
+
+		// the live hit rates
+		MenuManager.addMenuItem("Rates...", menu, e -> showRates());
+		final JCheckBoxMenuItem rateOverlayItem = new JCheckBoxMenuItem(
+				"Show Rates On Full Side View", FullSideView.isRateOverlay());
+		rateOverlayItem.addActionListener(e -> FullSideView
+				.setRateOverlay(rateOverlayItem.isSelected()));
+		menu.add(rateOverlayItem);
+
+		// the hit counts, rates and mean energies of the last seconds
+		MenuManager.addMenuItem("Windowed Spectra...", menu,
+				e -> showWindowedSpectra());
+
+		// the average noise spectra of the pre-trigger windows
+		MenuManager.addMenuItem("Noise Spectrum...", menu, e -> showNoiseSpectrum());
+		MenuManager.addMenuItem("Noise Spectrum Settings...", menu,
+				e -> setNoiseSpectrumParameters());
+		MenuManager.addMenuItem("Clear Noise Spectra", menu,
+				e -> NoiseSpectrum.getInstance().clear());
+
 		// add the noise parameter menu item
 		ActionListener al2 = new ActionListener() {
 			@Override
@@ -313,6 +404,521 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 		
 	}
 
+	/**
+	 * Saves the accumulated data to a binary accumulation file
+	 */
+	private void saveAccumulation() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("Accumulation files", "acc"));
+		if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		File file = chooser.getSelectedFile();
+		if (!file.getName().endsWith(AccumulationFile.SUFFIX)) {
+			file = new File(file.getPath() + AccumulationFile.SUFFIX);
+		}
+		try {
+			AccumulationManager.getInstance().save(file);
+			Log.getInstance().info("Saved the accumulation to " + file.getPath());
+		} catch (IOException ex) {
+			JOptionPane.showMessageDialog(this, "Cannot save the accumulation: "
+					+ ex.getMessage(), "Save Accumulation", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * Adds binary accumulation files, for example runs processed on other
+	 * machines, to the accumulated data, optionally replacing it
+	 */
+	private void addAccumulationFiles() {
+		if (EventControl.getInstance().isAccumulating()) {
+			JOptionPane.showMessageDialog(this, "Wait for the accumulation to finish.",
+					"Add Accumulation Files", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("Accumulation files", "acc"));
+		chooser.setMultiSelectionEnabled(true);
+		if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+		AccumulationManager manager = AccumulationManager.getInstance();
+		if (manager.getAccumulationSet().getEventCount() > 0) {
+			String options[] = { "Add", "Replace", "Cancel" };
+			int choice = JOptionPane.showOptionDialog(this,
+					"Add the files to the current accumulation or replace it?",
+					"Add Accumulation Files", JOptionPane.DEFAULT_OPTION,
+					JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+			if (choice == 1) {
+				manager.clear();
+			} else if (choice != 0) {
+				return;
+			}
+		}
+		for (File file : chooser.getSelectedFiles()) {
+			try {
+				manager.add(file);
+			} catch (IOException ex) {
+				JOptionPane.showMessageDialog(this, ex.getMessage(),
+						"Add Accumulation Files", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+		Log.getInstance().info(manager.getAccumulationSet().getEventCount()
+				+ " accumulated events after adding " + chooser.getSelectedFiles().length + " files");
+	}
+
+	/**
+	 * Fits the effective velocities and attenuation lengths from the
+	 * accumulated statistics, shows the result and lets the user apply it or
+	 * save it as a calibration file
+	 */
+	private void fitCalibrationConstants() {
+		CalibrationStatistics statistics = AccumulationManager.getInstance()
+				.getCalibrationStatistics();
+		// fit against the constants the statistics were converted with
+		CalibrationTable table = statistics.getCalibrationTable();
+		if (table == null) {
+			table = Reconstruction.getInstance().getCalibrationTable();
+		}
+		if (table == null) {
+			JOptionPane.showMessageDialog(this, "Open a calibration constants file first.",
+					"Fit Calibration Constants", JOptionPane.WARNING_MESSAGE);
+			return;
+		}
+		CalibrationFitter fitter = new CalibrationFitter(statistics, table);
+		boolean fitted = false;
+		for (int item = 0; item < CalibrationTable.ITEMS; item++) {
+			fitted |= fitter.isFitted(item);
+		}
+		if (!fitted) {
+			JOptionPane.showMessageDialog(this, "No item has " + CalibrationFitter.MIN_ENTRIES
+					+ " accumulated hits yet.", "Fit Calibration Constants",
+					JOptionPane.INFORMATION_MESSAGE);
+			return;
+		}
+
+		JTextArea summary = new JTextArea(fitter.getSummary());
+		summary.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		summary.setEditable(false);
+		String options[] = { "Apply", "Save As...", "Cancel" };
+		int choice = JOptionPane.showOptionDialog(this, new JScrollPane(summary),
+				"Fit Calibration Constants", JOptionPane.DEFAULT_OPTION,
+				JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+		if (choice == 1) {
+			JFileChooser chooser = new JFileChooser();
+			chooser.setFileFilter(new FileNameExtensionFilter("DAT files", "dat"));
+			if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+				return;
+			}
+			try {
+				fitter.getTable().write(chooser.getSelectedFile());
+			} catch (IOException ex) {
+				JOptionPane.showMessageDialog(this, "Cannot save the calibration constants: "
+						+ ex.getMessage(), "Fit Calibration Constants", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			CalibrationLoader.loadFile(chooser.getSelectedFile());
+		} else if (choice == 0) {
+			Reconstruction.getInstance().setCalibrationTable(fitter.getTable());
+			EventCache.getInstance().reprocess(EventCache.Stage.RECONSTRUCTION, fitter.getTable());
+		}
+	}
+
+	/**
+	 * Shows the trigger bit counts, rates and efficiencies of the accumulated
+	 * events and lets the user edit the trigger conditions or clear the counts
+	 */
+	private void showTriggerEmulation() {
+		TriggerEmulator emulator = AccumulationManager.getInstance()
+				.getTriggerEmulator();
+		JTextArea summary = new JTextArea(emulator.getSummary(), 20, 60);
+		summary.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		summary.setEditable(false);
+		StringBuilder text = new StringBuilder();
+		for (TriggerCondition condition : emulator.getConditions()) {
+			text.append(condition).append('\n');
+		}
+		JTextArea conditions = new JTextArea(text.toString(), 8, 60);
+		conditions.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		JPanel panel = new JPanel(new BorderLayout(0, 8));
+		panel.add(new JScrollPane(summary), BorderLayout.CENTER);
+		panel.add(new JScrollPane(conditions), BorderLayout.SOUTH);
+
+		String options[] = { "Close", "Apply Conditions", "Clear" };
+		int choice = JOptionPane.showOptionDialog(this, panel,
+				"Trigger Emulation", JOptionPane.DEFAULT_OPTION,
+				JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+		if (choice == 1) {
+			try {
+				emulator.setConditions(TriggerEmulator.parse(conditions.getText()));
+			} catch (IllegalArgumentException ex) {
+				JOptionPane.showMessageDialog(this, "Invalid trigger conditions: "
+						+ ex.getMessage(), "Trigger Emulation",
+						JOptionPane.ERROR_MESSAGE);
+			}
+		} else if (choice == 2) {
+			emulator.clear();
+		}
+	}
+
+	/**
+	 * Shows the charge peaks of the gain monitor and lets the user take them
+	 * as the new references or clear the monitor
+	 */
+	private void showGainMonitor() {
+		GainMonitor monitor = GainMonitor.getInstance();
+		JTextArea summary = new JTextArea(monitor.getSummary(), 20, 50);
+		summary.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		summary.setEditable(false);
+		String options[] = { "Close", "Reset References", "Clear" };
+		int choice = JOptionPane.showOptionDialog(this, new JScrollPane(summary),
+				"Gain Monitor (tolerance " + Math.round(100 * monitor.getTolerance()) + "%)",
+				JOptionPane.DEFAULT_OPTION, JOptionPane.PLAIN_MESSAGE, null, options, options[0]);
+		if (choice == 1) {
+			monitor.resetReferences();
+		} else if (choice == 2) {
+			monitor.clear();
+		}
+	}
+
+	/**
+	 * Shows the frame counts of the display scheduler and asks for its
+	 * maximum frame rate
+	 */
+	private void setDisplayFrameRate() {
+		DisplayScheduler scheduler = DisplayScheduler.getInstance();
+		String frameRate = JOptionPane.showInputDialog(this, scheduler
+				+ "\nMaximum frame rate (1-" + DisplayScheduler.MAX_FRAME_RATE
+				+ " fps):", scheduler.getFrameRate());
+		if (frameRate == null) {
+			return;
+		}
+		try {
+			scheduler.setFrameRate(Integer.parseInt(frameRate.trim()));
+		} catch (NumberFormatException ex) {
+			Log.getInstance().warning(
+					"Invalid display frame rate: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Shows the live rate table, refreshed every second until it is closed,
+	 * with a field for the time constant of the rates
+	 */
+	private void showRates() {
+		if (rateDialog != null) {
+			rateDialog.toFront();
+			return;
+		}
+		final RateMeter rateMeter = RateMeter.getInstance();
+		final JTextArea table = new JTextArea(rateMeter.getSummary(), 20, 24);
+		table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		table.setEditable(false);
+		final Timer timer = new Timer(1000, e -> table.setText(rateMeter
+				.getSummary()));
+
+		final JTextField timeConstant = new JTextField(Double.toString(rateMeter
+				.getTimeConstant()), 6);
+		timeConstant.addActionListener(e -> {
+			try {
+				rateMeter.setTimeConstant(Double.parseDouble(timeConstant
+						.getText().trim()));
+			} catch (NumberFormatException ex) {
+				Log.getInstance().warning(
+						"Invalid rate time constant: " + ex.getMessage());
+			}
+		});
+		JPanel controls = new JPanel();
+		controls.add(new JLabel("Time constant (s):"));
+		controls.add(timeConstant);
+		JButton clear = new JButton("Clear");
+		clear.addActionListener(e -> rateMeter.clear());
+		controls.add(clear);
+
+		rateDialog = new JDialog(this, "Rates", false);
+		rateDialog.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		rateDialog.add(new JScrollPane(table), BorderLayout.CENTER);
+		rateDialog.add(controls, BorderLayout.SOUTH);
+		rateDialog.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				timer.stop();
+				rateDialog = null;
+			}
+		});
+		rateDialog.pack();
+		rateDialog.setLocationRelativeTo(this);
+		rateDialog.setVisible(true);
+		timer.start();
+	}
+
+	/**
+	 * Shows the table of the windowed spectra, slid to the current time and
+	 * refreshed every second until it is closed, with a field for the window
+	 */
+	private void showWindowedSpectra() {
+		if (windowedSpectraDialog != null) {
+			windowedSpectraDialog.toFront();
+			return;
+		}
+		final WindowedSpectra windowedSpectra = AccumulationManager
+				.getInstance().getWindowedSpectra();
+		windowedSpectra.advance(System.currentTimeMillis());
+		final JTextArea table = new JTextArea(windowedSpectra.getSummary(), 24,
+				42);
+		table.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		table.setEditable(false);
+		final Timer timer = new Timer(1000, e -> {
+			// expire the seconds without events too
+			windowedSpectra.advance(System.currentTimeMillis());
+			table.setText(windowedSpectra.getSummary());
+		});
+
+		final JTextField window = new JTextField(Integer
+				.toString(windowedSpectra.getWindowSeconds()), 6);
+		window.addActionListener(e -> {
+			try {
+				windowedSpectra.setWindowSeconds(Integer.parseInt(window
+						.getText().trim()));
+			} catch (NumberFormatException ex) {
+				Log.getInstance().warning(
+						"Invalid spectra window: " + ex.getMessage());
+			}
+			window.setText(Integer.toString(windowedSpectra.getWindowSeconds()));
+			table.setText(windowedSpectra.getSummary());
+		});
+		JPanel controls = new JPanel();
+		controls.add(new JLabel("Window (1-" + WindowedSpectra.MAX_WINDOW_SECONDS
+				+ " s):"));
+		controls.add(window);
+
+		windowedSpectraDialog = new JDialog(this, "Windowed Spectra", false);
+		windowedSpectraDialog
+				.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+		windowedSpectraDialog.add(new JScrollPane(table), BorderLayout.CENTER);
+		windowedSpectraDialog.add(controls, BorderLayout.SOUTH);
+		windowedSpectraDialog.addWindowListener(new WindowAdapter() {
+			@Override
+			public void windowClosed(WindowEvent e) {
+				timer.stop();
+				windowedSpectraDialog = null;
+			}
+		});
+		windowedSpectraDialog.pack();
+		windowedSpectraDialog.setLocationRelativeTo(this);
+		windowedSpectraDialog.setVisible(true);
+		timer.start();
+	}
+
+	/**
+	 * Asks for an FADC channel and shows its noise spectrum plot
+	 */
+	private void showNoiseSpectrum() {
+		String channel = JOptionPane.showInputDialog(this, "FADC channel (0-"
+				+ (NoiseSpectrum.CHANNELS - 1) + "):", 0);
+		if (channel == null) {
+			return;
+		}
+		try {
+			int c = Integer.parseInt(channel.trim());
+			if (noiseSpectrumPlot[c] == null) {
+				noiseSpectrumPlot[c] = new NoiseSpectrumPlot(c);
+			}
+			noiseSpectrumPlot[c].refresh();
+			noiseSpectrumPlot[c].setVisible(true);
+			noiseSpectrumPlot[c].toFront();
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException ex) {
+			Log.getInstance().warning("Invalid FADC channel: " + channel);
+		}
+	}
+
+	/**
+	 * Asks for the pre-trigger window and the fraction of the events of the
+	 * noise spectra; a new window clears them
+	 */
+	private void setNoiseSpectrumParameters() {
+		NoiseSpectrum noiseSpectrum = NoiseSpectrum.getInstance();
+		String window = JOptionPane.showInputDialog(this,
+				"Pre-trigger window in samples (power of two, "
+						+ NoiseSpectrum.MIN_WINDOW + "-" + NoiseSpectrum.MAX_WINDOW
+						+ "):", noiseSpectrum.getWindow());
+		String fraction = JOptionPane.showInputDialog(this,
+				"Fraction of the events to transform (0-1):",
+				noiseSpectrum.getFraction());
+		try {
+			if (window != null && Integer.parseInt(window.trim()) != noiseSpectrum.getWindow()) {
+				noiseSpectrum.setWindow(Integer.parseInt(window.trim()));
+			}
+			if (fraction != null) {
+				noiseSpectrum.setFraction(Double.parseDouble(fraction.trim()));
+			}
+		} catch (NumberFormatException ex) {
+			Log.getInstance().warning(
+					"Invalid noise spectrum parameters: " + ex.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the menu of the run-range calibration store
+	 *
+	 * @return The calibration store menu
+	 */
+	private JMenu createCalibrationStoreMenu() {
+		JMenu storeMenu = new JMenu("Calibration Store");
+
+		ActionListener openAL = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = new JFileChooser();
+				chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+				if (chooser.showOpenDialog(Bed.getInstance()) == JFileChooser.APPROVE_OPTION) {
+					CalibrationLoader.openStore(chooser.getSelectedFile());
+				}
+			}
+		};
+		MenuManager.addMenuItem("Open Calibration Store...", storeMenu, openAL);
+
+		ActionListener addAL = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				CalibrationStore store = Reconstruction.getInstance().getCalibrationStore();
+				if (store == null) {
+					JOptionPane.showMessageDialog(Bed.getInstance(), "Open a calibration store first.",
+							"Calibration Store", JOptionPane.WARNING_MESSAGE);
+					return;
+				}
+				JFileChooser chooser = new JFileChooser();
+				chooser.setFileFilter(new FileNameExtensionFilter("DAT files", "dat"));
+				if (chooser.showOpenDialog(Bed.getInstance()) != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+				String range = JOptionPane.showInputDialog(Bed.getInstance(),
+						"Run range (first last, or first * for an open range):");
+				if (range == null) {
+					return;
+				}
+				int firstRun;
+				int lastRun;
+				try {
+					String tokens[] = range.trim().split("\\s+");
+					firstRun = Integer.parseInt(tokens[0]);
+					lastRun = tokens[1].equals("*") ? Integer.MAX_VALUE : Integer.parseInt(tokens[1]);
+				} catch (RuntimeException ex) {
+					JOptionPane.showMessageDialog(Bed.getInstance(), "Invalid run range: " + range,
+							"Calibration Store", JOptionPane.ERROR_MESSAGE);
+					return;
+				}
+				CalibrationLoader.addToStore(store, firstRun, lastRun, chooser.getSelectedFile());
+			}
+		};
+		MenuManager.addMenuItem("Add Calibration File...", storeMenu, addAL);
+
+		return storeMenu;
+	}
+
+	/**
+	 * Creates the menu that switches the per-channel pulse-finding parameters
+	 *
+	 * @return The channel parameters menu
+	 */
+	private JMenu createChannelParametersMenu() {
+		JMenu parametersMenu = new JMenu("Channel Parameters");
+
+		ActionListener openAL = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JFileChooser chooser = new JFileChooser();
+				chooser.setFileFilter(new FileNameExtensionFilter("DAT files", "dat"));
+				if (chooser.showOpenDialog(Bed.getInstance()) != JFileChooser.APPROVE_OPTION) {
+					return;
+				}
+				CalibrationLoader.loadChannelParameters(chooser.getSelectedFile());
+			}
+		};
+		MenuManager.addMenuItem("Open Channel Parameters File...", parametersMenu, openAL);
+
+		ActionListener defaultAL = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				ChannelParameters.setCurrent(null);
+				EventCache.getInstance().reprocess(EventCache.Stage.PULSE_FINDING);
+			}
+		};
+		MenuManager.addMenuItem("Use Default Channel Parameters", parametersMenu, defaultAL);
+
+		return parametersMenu;
+	}
+
+	/**
+	 * Creates the menu that configures the veto-based event rejection filter
+	 * 
+	 * @return The veto filter menu
+	 */
+	private JMenu createVetoFilterMenu() {
+		final VetoFilter vetoFilter = VetoFilter.getInstance();
+		JMenu vetoMenu = new JMenu("Veto Filter");
+
+		final JCheckBoxMenuItem enabledItem = new JCheckBoxMenuItem(
+				"Reject Events With Veto Hits", vetoFilter.isEnabled());
+		enabledItem.addActionListener(e -> vetoFilter.setEnabled(enabledItem
+				.isSelected()));
+		vetoMenu.add(enabledItem);
+		vetoMenu.addSeparator();
+
+		final JCheckBoxMenuItem internalItem = new JCheckBoxMenuItem(
+				"Internal Vetoes", vetoFilter.isInternalVetoesSelected());
+		internalItem.addActionListener(e -> vetoFilter
+				.setInternalVetoesSelected(internalItem.isSelected()));
+		vetoMenu.add(internalItem);
+
+		final JCheckBoxMenuItem externalItem = new JCheckBoxMenuItem(
+				"External Vetoes", vetoFilter.isExternalVetoesSelected());
+		externalItem.addActionListener(e -> vetoFilter
+				.setExternalVetoesSelected(externalItem.isSelected()));
+		vetoMenu.add(externalItem);
+
+		ActionListener conditionAL = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				String threshold = JOptionPane.showInputDialog(
+						Bed.getInstance(), "Veto charge threshold:",
+						vetoFilter.getChargeThreshold());
+				String hits = JOptionPane.showInputDialog(Bed.getInstance(),
+						"Minimum number of veto hits:",
+						vetoFilter.getMinimumHits());
+				try {
+					if (threshold != null) {
+						vetoFilter.setChargeThreshold(Integer
+								.parseInt(threshold.trim()));
+					}
+					if (hits != null) {
+						vetoFilter.setMinimumHits(Integer.parseInt(hits.trim()));
+					}
+				} catch (NumberFormatException ex) {
+					Log.getInstance().warning(
+							"Invalid veto filter condition: " + ex.getMessage());
+				}
+			}
+		};
+		MenuManager.addMenuItem("Rejection Condition...", vetoMenu, conditionAL);
+		vetoMenu.addSeparator();
+
+		ActionListener statisticsAL = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				JOptionPane.showMessageDialog(Bed.getInstance(),
+						vetoFilter.toString(), "Veto Filter Statistics",
+						JOptionPane.INFORMATION_MESSAGE);
+			}
+		};
+		MenuManager.addMenuItem("Rejection Statistics...", vetoMenu,
+				statisticsAL);
+		MenuManager.addMenuItem("Reset Rejection Statistics", vetoMenu,
+				e -> vetoFilter.resetCounters());
+
+		return vetoMenu;
+	}
+
 	/**
 	 * Returns the instance of the frame
 	 * 
@@ -401,6 +1007,19 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 
 	}
 
+	/**
+	 * Switches the plots between the waveform persistence and the waveform of the current event.
+	 * 
+	 * @param persistence true to show the waveform persistence.
+	 */
+	private void setWaveformPersistence(boolean persistence) {
+		WavePlot.setPersistence(persistence);
+		for (int i = 0; i < leftPlot.length; i++) {
+			leftPlot[i].updateMode();
+			rightPlot[i].updateMode();
+		}
+	}
+
 	/**
 	 * Empties the plots and passes in new data sets.
 	 * 
@@ -419,8 +1038,8 @@ public class Bed extends BaseMDIApplication implements PropertyChangeListener {
 	 */
 	private void clearPlots() { //TODO
 		for(int i = 0; i < leftPlot.length; i++) {
-			leftPlot[i] = new WavePlot();
-			rightPlot[i] = new WavePlot();
+			leftPlot[i] = new WavePlot(2 * i);
+			rightPlot[i] = new WavePlot(2 * i + 1);
 			virtualView.moveTo(leftPlot[i], 0, 3);
 			virtualView.moveTo(rightPlot[i], 0, 3);
 		}
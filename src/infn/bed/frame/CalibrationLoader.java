@@ -0,0 +1,247 @@
+package infn.bed.frame;
+
+import infn.bed.event.CalibrationWatcher;
+import infn.bed.event.EventCache;
+import infn.bed.event.Reconstruction;
+import infn.bed.util.CalibrationCache;
+import infn.bed.util.CalibrationStore;
+import infn.bed.util.CalibrationTable;
+import infn.bed.util.ChannelParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JOptionPane;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+import cnuphys.bCNU.log.Log;
+
+/**
+ * Loads a calibration file, opens a calibration store, adds a calibration file
+ * to the store or loads a channel parameters file in the background, showing a
+ * progress monitor with a cancel button if the load takes a while. The
+ * constants are applied to the reconstruction, and through it to every view, in
+ * one step on the event dispatch thread once the load has finished; a cancelled
+ * or failed load leaves the constants in use untouched.
+ */
+public class CalibrationLoader extends SwingWorker<CalibrationTable, Void> {
+
+	/**
+	 * What is loaded.
+	 */
+	private enum Kind {
+		/** A calibration file. */
+		FILE,
+		/** A calibration store directory. */
+		STORE,
+		/** A calibration file added to a calibration store. */
+		STORE_FILE,
+		/** A channel parameters file. */
+		CHANNEL_PARAMETERS
+	}
+
+	/**
+	 * The file or the calibration store directory.
+	 */
+	private final File file;
+
+	/**
+	 * What file is.
+	 */
+	private final Kind kind;
+
+	/**
+	 * The calibration store, opened from file or added to.
+	 */
+	private CalibrationStore calibrationStore;
+
+	/**
+	 * The first run of a calibration file added to a store.
+	 */
+	private int firstRun;
+
+	/**
+	 * The last run of a calibration file added to a store.
+	 */
+	private int lastRun;
+
+	/**
+	 * The parsed channel parameters, if file is a channel parameters file.
+	 */
+	private ChannelParameters channelParameters;
+
+	/**
+	 * The progress monitor.
+	 */
+	private final ProgressMonitor monitor;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param file
+	 *            the file or the calibration store directory
+	 * @param kind
+	 *            what file is
+	 * @param message
+	 *            the message of the progress monitor
+	 */
+	private CalibrationLoader(File file, Kind kind, String message) {
+		this.file = file;
+		this.kind = kind;
+		monitor = new ProgressMonitor(Bed.getInstance(), message,
+				file.getName(), 0, 100);
+		addPropertyChangeListener(evt -> {
+			if ("progress".equals(evt.getPropertyName())) {
+				monitor.setProgress((Integer) evt.getNewValue());
+				if (monitor.isCanceled()) {
+					cancel(true);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts loading a calibration file in the background.
+	 *
+	 * @param file
+	 *            the calibration file
+	 */
+	public static void loadFile(File file) {
+		new CalibrationLoader(file, Kind.FILE, "Loading calibration constants")
+				.execute();
+	}
+
+	/**
+	 * Starts opening a calibration store in the background.
+	 *
+	 * @param directory
+	 *            the calibration store directory
+	 */
+	public static void openStore(File directory) {
+		new CalibrationLoader(directory, Kind.STORE,
+				"Opening calibration store").execute();
+	}
+
+	/**
+	 * Starts adding a calibration file to a calibration store in the
+	 * background.
+	 *
+	 * @param store
+	 *            the calibration store
+	 * @param firstRun
+	 *            the first run the constants are valid for
+	 * @param lastRun
+	 *            the last run the constants are valid for (Integer.MAX_VALUE
+	 *            for an open range)
+	 * @param file
+	 *            the calibration file
+	 */
+	public static void addToStore(CalibrationStore store, int firstRun,
+			int lastRun, File file) {
+		CalibrationLoader loader = new CalibrationLoader(file,
+				Kind.STORE_FILE, "Adding to calibration store");
+		loader.calibrationStore = store;
+		loader.firstRun = firstRun;
+		loader.lastRun = lastRun;
+		loader.execute();
+	}
+
+	/**
+	 * Starts loading a channel parameters file in the background.
+	 *
+	 * @param file
+	 *            the channel parameters file
+	 */
+	public static void loadChannelParameters(File file) {
+		new CalibrationLoader(file, Kind.CHANNEL_PARAMETERS,
+				"Loading channel parameters").execute();
+	}
+
+	/**
+	 * Reads the constants off the event dispatch thread.
+	 *
+	 * @return the constants, or null if a store has none for the current run
+	 *         or no calibration constants are loaded
+	 * @throws IOException
+	 *             if the store index cannot be read or written
+	 */
+	@Override
+	protected CalibrationTable doInBackground() throws IOException {
+		switch (kind) {
+		case STORE:
+			calibrationStore = new CalibrationStore(file);
+			int run = Reconstruction.getInstance().getRunNumber();
+			setProgress(50);
+			return (run < 0) ? null : calibrationStore.getTable(run);
+		case STORE_FILE:
+			calibrationStore.put(firstRun, lastRun, file,
+					items -> setProgress(100 * items / CalibrationTable.ITEMS));
+			return null;
+		case CHANNEL_PARAMETERS:
+			channelParameters = ChannelParameters.parse(file);
+			setProgress(100);
+			return null;
+		default:
+			return CalibrationCache.load(file,
+					items -> setProgress(100 * items / CalibrationTable.ITEMS));
+		}
+	}
+
+	/**
+	 * Applies the constants on the event dispatch thread.
+	 */
+	@Override
+	protected void done() {
+		monitor.close();
+		CalibrationTable table;
+		try {
+			table = get();
+		} catch (CancellationException | InterruptedException e) {
+			Log.getInstance().info("Loading of " + file + " cancelled");
+			return;
+		} catch (ExecutionException e) {
+			String title = (kind == Kind.CHANNEL_PARAMETERS) ? "Channel Parameters"
+					: (kind == Kind.STORE_FILE) ? "Calibration Store"
+							: "Calibration Constants";
+			JOptionPane.showMessageDialog(Bed.getInstance(), e.getCause()
+					.getMessage(), title, JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		if (kind == Kind.CHANNEL_PARAMETERS) {
+			ChannelParameters.setCurrent(channelParameters);
+			EventCache.getInstance().reprocess(EventCache.Stage.PULSE_FINDING);
+			return;
+		}
+		if (kind == Kind.STORE_FILE) {
+			Log.getInstance().info("Added " + file + " to calibration store "
+					+ calibrationStore.getDirectory() + " for runs " + firstRun
+					+ "-" + ((lastRun == Integer.MAX_VALUE) ? "" : lastRun));
+			return;
+		}
+
+		Reconstruction reconstruction = Reconstruction.getInstance();
+		if (kind == Kind.STORE) {
+			CalibrationWatcher.getInstance().stop();
+			// the table of the current run is already in the store cache
+			reconstruction.setCalibrationStore(calibrationStore);
+			Log.getInstance().info("Calibration store " + file + " with "
+					+ calibrationStore.size() + " run ranges");
+		} else {
+			reconstruction.setCalibrationStore(null);
+			reconstruction.setCalibrationTable(table);
+			try {
+				CalibrationWatcher.getInstance().watch(file);
+			} catch (IOException e) {
+				Log.getInstance().warning("Cannot watch " + file
+						+ " for changes: " + e.getMessage());
+			}
+		}
+		EventCache.getInstance().reprocess(EventCache.Stage.RECONSTRUCTION,
+				reconstruction.getCalibrationTable());
+	}
+
+}
@@ -13,6 +13,11 @@ public class GeometricConstants {
 	 * The number of scinatillator bars.
 	 */
 	public static final int BARS = 9;
+
+	/**
+	 * The length of a scintillator bar in cm.
+	 */
+	public static final double BAR_LENGTH = 40;
 	
 	/**
 	 * The number of detector channels.
@@ -0,0 +1,124 @@
+package infn.bed.histo;
+
+/**
+ * A fixed binning of a histogram axis: bins of equal width between a lower and an upper edge, plus
+ * an underflow and an overflow bin.
+ *
+ * <p>
+ * Bin indices run from 0 (underflow) through 1..bins to bins + 1 (overflow), so every value has a
+ * bin and the binning is a multiply-add and a clamp, without a range branch. NaN falls into the
+ * underflow bin.
+ * </p>
+ */
+public final class Axis {
+
+	/**
+	 * The number of bins between the edges.
+	 */
+	private final int bins;
+
+	/**
+	 * The lower edge.
+	 */
+	private final double min;
+
+	/**
+	 * The upper edge.
+	 */
+	private final double max;
+
+	/**
+	 * The number of bins per unit.
+	 */
+	private final double scale;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param bins The number of bins between the edges (at least 1).
+	 * @param min The lower edge.
+	 * @param max The upper edge (greater than min).
+	 */
+	public Axis(int bins, double min, double max) {
+		if (bins < 1 || !(max > min)) {
+			throw new IllegalArgumentException("Invalid axis: " + bins + " bins from " + min + " to " + max);
+		}
+		this.bins = bins;
+		this.min = min;
+		this.max = max;
+		scale = bins / (max - min);
+	}
+
+	/**
+	 * Returns the bin of a value.
+	 *
+	 * @param x The value.
+	 * @return The bin, 0 for underflow (and NaN), 1..bins inside the axis, bins + 1 for overflow.
+	 */
+	public int index(double x) {
+		// (int) truncates toward zero, so values just below min land in 0 as well
+		return (int) Math.max(0, Math.min(bins + 1, (x - min) * scale + 1));
+	}
+
+	/**
+	 * Returns the number of bins between the edges.
+	 *
+	 * @return The number of bins, without underflow and overflow.
+	 */
+	public int getBins() {
+		return bins;
+	}
+
+	/**
+	 * Returns the lower edge.
+	 *
+	 * @return The lower edge.
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the upper edge.
+	 *
+	 * @return The upper edge.
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the lower edge of a bin.
+	 *
+	 * @param bin The bin, 1..bins.
+	 * @return The lower edge of the bin.
+	 */
+	public double getLowEdge(int bin) {
+		return min + (bin - 1) / scale;
+	}
+
+	/**
+	 * Returns the center of a bin.
+	 *
+	 * @param bin The bin, 1..bins.
+	 * @return The center of the bin.
+	 */
+	public double getCenter(int bin) {
+		return min + (bin - 0.5) / scale;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Axis)) {
+			return false;
+		}
+		Axis a = (Axis) o;
+		return bins == a.bins && min == a.min && max == a.max;
+	}
+
+	@Override
+	public int hashCode() {
+		return Integer.hashCode(bins) * 31 + Double.hashCode(min) * 17 + Double.hashCode(max);
+	}
+
+}
@@ -0,0 +1,63 @@
+package infn.bed.histo;
+
+/**
+ * The storage of the bin counts of a histogram or of any other set of counters, such as the
+ * coincidence matrix.
+ */
+public abstract class Counts {
+
+	/**
+	 * Returns storage for a number of counters.
+	 *
+	 * @param size The number of counters.
+	 * @param concurrent true for storage that any number of threads may fill at once, false for storage
+	 *            filled by one thread at a time.
+	 * @return The storage.
+	 */
+	public static Counts create(int size, boolean concurrent) {
+		return concurrent ? new StripedCounts(size) : new LocalCounts(size);
+	}
+
+	/**
+	 * Returns the number of counters.
+	 *
+	 * @return The number of counters.
+	 */
+	public abstract int size();
+
+	/**
+	 * Adds to a counter.
+	 *
+	 * @param index The counter.
+	 * @param n The amount to add.
+	 */
+	public abstract void add(int index, long n);
+
+	/**
+	 * Returns a counter.
+	 *
+	 * @param index The counter.
+	 * @return The count.
+	 */
+	public abstract long get(int index);
+
+	/**
+	 * Adds the counts of a snapshot to every counter.
+	 *
+	 * @param counts The counts, one per counter.
+	 */
+	public abstract void addAll(long counts[]);
+
+	/**
+	 * Returns a copy of all counters, taken without blocking the writers.
+	 *
+	 * @return The counts.
+	 */
+	public abstract long[] snapshot();
+
+	/**
+	 * Clears all counters.
+	 */
+	public abstract void clear();
+
+}
@@ -0,0 +1,173 @@
+package infn.bed.histo;
+
+/**
+ * A one-dimensional histogram with a fixed binning and long bin counts, including underflow and
+ * overflow bins.
+ *
+ * <p>
+ * A concurrent histogram may be filled by any number of threads at once and read while it is being
+ * filled; a local histogram is meant for one thread, typically a worker that later merges it into a
+ * shared one.
+ * </p>
+ */
+public class Histogram1D {
+
+	/**
+	 * The name of the histogram.
+	 */
+	private final String name;
+
+	/**
+	 * The binning.
+	 */
+	private final Axis axis;
+
+	/**
+	 * The bin counts, indexed like the axis bins.
+	 */
+	private final Counts counts;
+
+	/**
+	 * Creates a concurrent histogram.
+	 *
+	 * @param name The name of the histogram.
+	 * @param axis The binning.
+	 */
+	public Histogram1D(String name, Axis axis) {
+		this(name, axis, true);
+	}
+
+	/**
+	 * Creates a histogram.
+	 *
+	 * @param name The name of the histogram.
+	 * @param axis The binning.
+	 * @param concurrent true if any number of threads may fill the histogram at once, false if it is
+	 *            filled by one thread at a time.
+	 */
+	public Histogram1D(String name, Axis axis, boolean concurrent) {
+		this.name = name;
+		this.axis = axis;
+		counts = Counts.create(axis.getBins() + 2, concurrent);
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param x The value.
+	 */
+	public void fill(double x) {
+		counts.add(axis.index(x), 1);
+	}
+
+	/**
+	 * Adds a value several times.
+	 *
+	 * @param x The value.
+	 * @param n The number of entries.
+	 */
+	public void fill(double x, long n) {
+		counts.add(axis.index(x), n);
+	}
+
+	/**
+	 * Adds the counts of another histogram with the same binning. The other histogram should not be
+	 * filled meanwhile.
+	 *
+	 * @param other The histogram to add.
+	 */
+	public void merge(Histogram1D other) {
+		if (!axis.equals(other.axis)) {
+			throw new IllegalArgumentException("Cannot merge " + other.name + " into " + name + ": different binning");
+		}
+		counts.addAll(other.counts.snapshot());
+	}
+
+	/**
+	 * Removes the counts of another histogram with the same binning, for example an expired slice
+	 * of a sliding window. The other histogram should not be filled meanwhile.
+	 *
+	 * @param other The histogram to remove.
+	 */
+	public void subtract(Histogram1D other) {
+		if (!axis.equals(other.axis)) {
+			throw new IllegalArgumentException("Cannot subtract " + other.name + " from " + name + ": different binning");
+		}
+		long difference[] = other.counts.snapshot();
+		for (int k = 0; k < difference.length; k++) {
+			difference[k] = -difference[k];
+		}
+		counts.addAll(difference);
+	}
+
+	/**
+	 * Adds bin counts laid out like {@link #snapshot()}, for example counts read back from a file.
+	 *
+	 * @param binCounts The counts to add, one per bin including underflow and overflow.
+	 */
+	public void add(long binCounts[]) {
+		if (binCounts.length != counts.size()) {
+			throw new IllegalArgumentException("Cannot add " + binCounts.length + " bins to " + name + ": expected " + counts.size());
+		}
+		counts.addAll(binCounts);
+	}
+
+	/**
+	 * Returns the count of a bin.
+	 *
+	 * @param bin The bin, 0 for underflow, 1..bins, bins + 1 for overflow.
+	 * @return The count.
+	 */
+	public long getCount(int bin) {
+		return counts.get(bin);
+	}
+
+	/**
+	 * Returns a copy of all bin counts, taken without blocking the writers. Index 0 is the underflow
+	 * and index bins + 1 the overflow.
+	 *
+	 * @return The bin counts.
+	 */
+	public long[] snapshot() {
+		return counts.snapshot();
+	}
+
+	/**
+	 * Returns the number of entries, including underflow and overflow.
+	 *
+	 * @return The number of entries.
+	 */
+	public long getEntries() {
+		long entries = 0;
+		for (long count : counts.snapshot()) {
+			entries += count;
+		}
+		return entries;
+	}
+
+	/**
+	 * Clears all bins.
+	 */
+	public void clear() {
+		counts.clear();
+	}
+
+	/**
+	 * Returns the name of the histogram.
+	 *
+	 * @return The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the binning.
+	 *
+	 * @return The axis.
+	 */
+	public Axis getAxis() {
+		return axis;
+	}
+
+}
@@ -0,0 +1,171 @@
+package infn.bed.histo;
+
+/**
+ * A two-dimensional histogram with a fixed binning and long bin counts, including underflow and
+ * overflow bins on both axes.
+ *
+ * <p>
+ * The bins are stored row by row in one array, x major: bin (i, j) is at i * (yBins + 2) + j. A
+ * concurrent histogram may be filled by any number of threads at once and read while it is being
+ * filled; a local histogram is meant for one thread.
+ * </p>
+ */
+public class Histogram2D {
+
+	/**
+	 * The name of the histogram.
+	 */
+	private final String name;
+
+	/**
+	 * The binning along x.
+	 */
+	private final Axis xAxis;
+
+	/**
+	 * The binning along y.
+	 */
+	private final Axis yAxis;
+
+	/**
+	 * The number of y bins including underflow and overflow, the stride of the x index.
+	 */
+	private final int stride;
+
+	/**
+	 * The bin counts.
+	 */
+	private final Counts counts;
+
+	/**
+	 * Creates a concurrent histogram.
+	 *
+	 * @param name The name of the histogram.
+	 * @param xAxis The binning along x.
+	 * @param yAxis The binning along y.
+	 */
+	public Histogram2D(String name, Axis xAxis, Axis yAxis) {
+		this(name, xAxis, yAxis, true);
+	}
+
+	/**
+	 * Creates a histogram.
+	 *
+	 * @param name The name of the histogram.
+	 * @param xAxis The binning along x.
+	 * @param yAxis The binning along y.
+	 * @param concurrent true if any number of threads may fill the histogram at once, false if it is
+	 *            filled by one thread at a time.
+	 */
+	public Histogram2D(String name, Axis xAxis, Axis yAxis, boolean concurrent) {
+		this.name = name;
+		this.xAxis = xAxis;
+		this.yAxis = yAxis;
+		stride = yAxis.getBins() + 2;
+		counts = Counts.create((xAxis.getBins() + 2) * stride, concurrent);
+	}
+
+	/**
+	 * Adds a point.
+	 *
+	 * @param x The x value.
+	 * @param y The y value.
+	 */
+	public void fill(double x, double y) {
+		counts.add(xAxis.index(x) * stride + yAxis.index(y), 1);
+	}
+
+	/**
+	 * Adds the counts of another histogram with the same binning. The other histogram should not be
+	 * filled meanwhile.
+	 *
+	 * @param other The histogram to add.
+	 */
+	public void merge(Histogram2D other) {
+		if (!xAxis.equals(other.xAxis) || !yAxis.equals(other.yAxis)) {
+			throw new IllegalArgumentException("Cannot merge " + other.name + " into " + name + ": different binning");
+		}
+		counts.addAll(other.counts.snapshot());
+	}
+
+	/**
+	 * Adds bin counts laid out like {@link #snapshot()}, for example counts read back from a file.
+	 *
+	 * @param binCounts The counts to add, one per bin including underflow and overflow.
+	 */
+	public void add(long binCounts[]) {
+		if (binCounts.length != counts.size()) {
+			throw new IllegalArgumentException("Cannot add " + binCounts.length + " bins to " + name + ": expected " + counts.size());
+		}
+		counts.addAll(binCounts);
+	}
+
+	/**
+	 * Returns the count of a bin.
+	 *
+	 * @param xBin The x bin, 0 for underflow, 1..xBins, xBins + 1 for overflow.
+	 * @param yBin The y bin, 0 for underflow, 1..yBins, yBins + 1 for overflow.
+	 * @return The count.
+	 */
+	public long getCount(int xBin, int yBin) {
+		return counts.get(xBin * stride + yBin);
+	}
+
+	/**
+	 * Returns a copy of all bin counts, taken without blocking the writers, indexed by
+	 * xBin * (yBins + 2) + yBin.
+	 *
+	 * @return The bin counts.
+	 */
+	public long[] snapshot() {
+		return counts.snapshot();
+	}
+
+	/**
+	 * Returns the number of entries, including underflow and overflow.
+	 *
+	 * @return The number of entries.
+	 */
+	public long getEntries() {
+		long entries = 0;
+		for (long count : counts.snapshot()) {
+			entries += count;
+		}
+		return entries;
+	}
+
+	/**
+	 * Clears all bins.
+	 */
+	public void clear() {
+		counts.clear();
+	}
+
+	/**
+	 * Returns the name of the histogram.
+	 *
+	 * @return The name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the binning along x.
+	 *
+	 * @return The x axis.
+	 */
+	public Axis getXAxis() {
+		return xAxis;
+	}
+
+	/**
+	 * Returns the binning along y.
+	 *
+	 * @return The y axis.
+	 */
+	public Axis getYAxis() {
+		return yAxis;
+	}
+
+}
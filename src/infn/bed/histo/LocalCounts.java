@@ -0,0 +1,57 @@
+package infn.bed.histo;
+
+import java.util.Arrays;
+
+/**
+ * Bin counts in a plain primitive array, for histograms filled by one thread at a time such as the
+ * private histograms of a worker thread.
+ */
+final class LocalCounts extends Counts {
+
+	/**
+	 * The counters.
+	 */
+	private final long counts[];
+
+	/**
+	 * The constructor.
+	 *
+	 * @param size The number of counters.
+	 */
+	LocalCounts(int size) {
+		counts = new long[size];
+	}
+
+	@Override
+	public int size() {
+		return counts.length;
+	}
+
+	@Override
+	public void add(int index, long n) {
+		counts[index] += n;
+	}
+
+	@Override
+	public long get(int index) {
+		return counts[index];
+	}
+
+	@Override
+	public void addAll(long other[]) {
+		for (int k = 0; k < counts.length; k++) {
+			counts[k] += other[k];
+		}
+	}
+
+	@Override
+	public long[] snapshot() {
+		return counts.clone();
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(counts, 0);
+	}
+
+}
@@ -0,0 +1,85 @@
+package infn.bed.histo;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters that any number of threads may fill at once. Every thread increments one of several
+ * counter stripes chosen by thread identifier, so the writers do not contend on a single cache
+ * line; readers sum the stripes and never block the writers.
+ */
+final class StripedCounts extends Counts {
+
+	/**
+	 * The counter stripes. Each stripe holds a full set of counters.
+	 */
+	private final AtomicLongArray stripes[];
+
+	/**
+	 * The mask used to select a stripe from a thread identifier.
+	 */
+	private final int stripeMask;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param size The number of counters.
+	 */
+	StripedCounts(int size) {
+		int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+		stripes = new AtomicLongArray[stripeCount];
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new AtomicLongArray(size);
+		}
+		stripeMask = stripeCount - 1;
+	}
+
+	@Override
+	public int size() {
+		return stripes[0].length();
+	}
+
+	@Override
+	public void add(int index, long n) {
+		stripes[(int) Thread.currentThread().getId() & stripeMask].addAndGet(index, n);
+	}
+
+	@Override
+	public long get(int index) {
+		long count = 0;
+		for (AtomicLongArray stripe : stripes) {
+			count += stripe.get(index);
+		}
+		return count;
+	}
+
+	@Override
+	public void addAll(long counts[]) {
+		AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+		for (int k = 0; k < counts.length; k++) {
+			if (counts[k] != 0) {
+				stripe.addAndGet(k, counts[k]);
+			}
+		}
+	}
+
+	@Override
+	public long[] snapshot() {
+		long counts[] = new long[size()];
+		for (AtomicLongArray stripe : stripes) {
+			for (int k = 0; k < counts.length; k++) {
+				counts[k] += stripe.get(k);
+			}
+		}
+		return counts;
+	}
+
+	@Override
+	public void clear() {
+		for (AtomicLongArray stripe : stripes) {
+			for (int k = 0; k < stripe.length(); k++) {
+				stripe.set(k, 0);
+			}
+		}
+	}
+
+}
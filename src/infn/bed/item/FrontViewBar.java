@@ -1,11 +1,11 @@
 package infn.bed.item;
 
-import infn.bed.util.CalibrationFileParser;
 import infn.bed.view.BarFrontView;
 import infn.bed.view.BedView;
 import infn.bed.event.AccumulationManager;
 import infn.bed.event.ChargeTimeData;
 import infn.bed.event.EventManager;
+import infn.bed.event.ReconstructedData;
 import infn.bed.math.MathematicalConstants;
 
 import java.awt.Color;
@@ -15,7 +15,6 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -104,51 +103,6 @@ public class FrontViewBar extends RectangleItem {
 	 */
 	private double totalT[];
 
-	/**
-	 * The effective speed of light in the bar
-	 */
-	private double v_eff;
-
-	/**
-	 * The charge-to-energy conversion factor for the left PMT for the bar
-	 */
-	private double A_left;
-
-	/**
-	 * The charge-to-energy conversion factor for the right PMT for the bar
-	 */
-	private double A_right;
-
-	/**
-	 * The attenuation length
-	 */
-	private double lambda;
-
-	/**
-	 * Time delay for the left PMT
-	 */
-	private double delta_left;
-
-	/**
-	 * Time delay for the right PMT
-	 */
-	private double delta_right;
-
-	/**
-	 * The tdc-to-time conversion factor for the left PMT for the bar
-	 */
-	private double tdcConvLeft;
-
-	/**
-	 * The tdc-to-time conversion factor for the right PMT for the bar
-	 */
-	private double tdcConvRight;
-
-	/**
-	 * The length of the bar
-	 */
-	private double length;
-
 	/**
 	 * The view this bar is in
 	 */
@@ -192,24 +146,6 @@ public class FrontViewBar extends RectangleItem {
 		_name = "Bar: " + _bar;
 	}
 
-	/**
-	 * Gets the calibration constants from a file and stores them
-	 * 
-	 * TODO change file for real constants
-	 */
-	public void getConstants(File file) {
-		CalibrationFileParser calibrationFileParser = new CalibrationFileParser(file, "b", _bar);
-		v_eff = calibrationFileParser.getEffectiveVelocity();
-		A_left = calibrationFileParser.getLeftADCConversionFactor();
-		A_right = calibrationFileParser.getRightADCConversionFactor();
-		lambda = calibrationFileParser.getAttenuationLength();
-		delta_left = calibrationFileParser.getLeftShift();
-		delta_right = calibrationFileParser.getRightShift();
-		tdcConvLeft = calibrationFileParser.getLeftTDCConversionFactor();
-		tdcConvRight = calibrationFileParser.getRightTDCConversionFactor();
-		length = calibrationFileParser.getItemLength();
-	}
-
 	/**
 	 * Custom drawer for the bar.
 	 * 
@@ -220,7 +156,10 @@ public class FrontViewBar extends RectangleItem {
 	 */
 	@Override
 	public void drawItem(Graphics g, IContainer container) {
-		if (EventControl.getInstance().isAccumulating()) {
+		// single events are not drawn while accumulating; the accumulated
+		// mode is drawn from the periodic snapshot
+		if (EventControl.getInstance().isAccumulating()
+				&& _view.getMode() == BedView.Mode.SINGLE_EVENT) {
 			return;
 		}
 		super.drawItem(g, container);
@@ -251,8 +190,10 @@ public class FrontViewBar extends RectangleItem {
 		WorldGraphicsUtilities.drawWorldRectangle(g, container,
 				_worldRectangle, _style.getFillColor(), _style.getLineColor());
 
-		ChargeTimeData ctData = EventManager.getInstance().getChargeTimeData();
-		if (ctData != null) {
+		ReconstructedData reconstructedData = EventManager.getInstance()
+				.getReconstructedData();
+		if (reconstructedData != null) {
+			ChargeTimeData ctData = reconstructedData.getChargeTimeData();
 			hitSectors = ctData.getSectorArray();
 			hitLayers = ctData.getLayerArray();
 			hitPaddles = ctData.getPaddleArray();
@@ -261,7 +202,9 @@ public class FrontViewBar extends RectangleItem {
 			chargeRight = ctData.getRightPMTChargeArray();
 			timeRight = ctData.getRightPMTTimeArray();
 			if (chargeLeft != null && chargeRight != null) {
-				chargeToEnergy();
+				totalE = reconstructedData.getBarEnergyArray();
+				totalT = reconstructedData.getBarTimeArray();
+				posFromLeft = reconstructedData.getBarPositionArray();
 				for (int i = 0; i < totalE.length; i++) {
 					if (inThisBar(hitSectors[i], hitLayers[i], hitPaddles[i])) {
 						if (totalE[i] > 0) {
@@ -300,41 +243,6 @@ public class FrontViewBar extends RectangleItem {
 
 	}
 
-	/**
-	 * Converts the charge-time information to energy-time information
-	 */
-	private void chargeToEnergy() {
-		double t_l[] = new double[timeLeft.length];
-		double t_r[] = new double[timeRight.length];
-		for (int i = 0; i < timeLeft.length; i++) {
-			t_l[i] = (timeLeft[i] * 1.0 / tdcConvLeft) - delta_left;
-		}
-		for (int i = 0; i < timeRight.length; i++) {
-			t_r[i] = (timeRight[i] * 1.0 / tdcConvRight) - delta_right;
-		}
-		posFromLeft = new double[chargeLeft.length];
-		for (int i = 0; i < posFromLeft.length; i++) {
-			posFromLeft[i] = (v_eff * (t_l[i] - t_r[i]) + length) / 2.0;
-		}
-		double e_l[] = new double[chargeLeft.length];
-		double e_r[] = new double[chargeRight.length];
-		for (int i = 0; i < e_l.length; i++) {
-			e_l[i] = chargeLeft[i] * A_left;
-		}
-		for (int i = 0; i < e_r.length; i++) {
-			e_r[i] = chargeRight[i] * A_right;
-		}
-		totalE = new double[e_l.length];
-		totalT = new double[t_l.length];
-		for (int i = 0; i < totalE.length; i++) {
-			double e_l_prime = e_l[i] * Math.exp(posFromLeft[i] / lambda);
-			double e_r_prime = e_r[i]
-					* Math.exp((length - posFromLeft[i]) / lambda);
-			totalE[i] = (e_l_prime + e_r_prime) / 2;
-			totalT[i] = (t_l[i] + t_r[i] - (length / v_eff)) / 2.0;
-		}
-	}
-
 	/**
 	 * Checks if a given sector/layer/paddle is this bar
 	 * 
@@ -382,9 +290,8 @@ public class FrontViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Draw hits in accumulated mode
-	 * 
-	 * Currently unused
+	 * Draw hits in accumulated mode. Shows the hit position along the bar
+	 * versus energy.
 	 * 
 	 * @param g
 	 *            the graphics context
@@ -392,6 +299,9 @@ public class FrontViewBar extends RectangleItem {
 	 *            the rendering container
 	 */
 	private void accumulatedDrawItem(Graphics g, IContainer container) {
+		WorldGraphicsUtilities.drawWorldRectangle(g, container,
+				_worldRectangle, Color.white, _style.getLineColor());
+		HitPositionMapDrawer.draw(g, container, _worldRectangle, _bar);
 	}
 
 	/**
@@ -473,19 +383,16 @@ public class FrontViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Get the feedback strings for accumulated mode
-	 * 
-	 * Currently unused
+	 * Get the feedback strings for accumulated mode. Displays the relative hit
+	 * count and the hit position map entries.
 	 * 
 	 * @param feedbackStrings
 	 *            The list of feedback strings
 	 */
 	private void accumulatedFeedbackStrings(List<String> feedbackStrings) {
 
-		int dcAccumulatedData[] = AccumulationManager.getInstance()
-				.getAccumulatedGemcDcData();
-		int hitCount = dcAccumulatedData[_bar - 1];
-		int maxHit = AccumulationManager.getInstance().getMaxGemcDcCount();
+		long hitCount = AccumulationManager.getInstance().getBarHitCount(_bar);
+		long maxHit = AccumulationManager.getInstance().getMaxBarHitCount();
 		if ((hitCount < 1) || (maxHit < 1)) {
 			feedbackStrings.add("hit fraction 0.0");
 		} else {
@@ -493,6 +400,7 @@ public class FrontViewBar extends RectangleItem {
 			feedbackStrings.add("hit fraction "
 					+ DoubleFormat.doubleFormat(fract, 3));
 		}
+		feedbackStrings.add(HitPositionMapDrawer.summary(_bar));
 	}
 
 }
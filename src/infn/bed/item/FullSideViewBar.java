@@ -3,8 +3,10 @@ package infn.bed.item;
 import infn.bed.config.FullSideViewConfig;
 import infn.bed.event.ChargeTimeData;
 import infn.bed.event.EventManager;
+import infn.bed.event.RateMeter;
+import infn.bed.event.ReconstructedData;
+import infn.bed.geometry.GeometricConstants;
 import infn.bed.math.MathematicalConstants;
-import infn.bed.util.CalibrationFileParser;
 import infn.bed.view.BedView;
 import infn.bed.view.FullSideView;
 
@@ -15,7 +17,6 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -96,51 +97,6 @@ public class FullSideViewBar extends RectangleItem {
 	 */
 	private double totalT[];
 
-	/**
-	 * The effective speed of light in the bar
-	 */
-	private double v_eff;
-
-	/**
-	 * The charge-to-energy conversion factor for the left PMT for the bar
-	 */
-	private double A_left;
-
-	/**
-	 * The charge-to-energy conversion factor for the right PMT for the bar
-	 */
-	private double A_right;
-
-	/**
-	 * The attenuation length
-	 */
-	private double lambda;
-
-	/**
-	 * Time delay for the left PMT
-	 */
-	private double delta_left;
-
-	/**
-	 * Time delay for the right PMT
-	 */
-	private double delta_right;
-
-	/**
-	 * The tdc-to-time conversion factor for the left PMT for the bar
-	 */
-	private double tdcConvLeft;
-
-	/**
-	 * The tdc-to-time conversion factor for the right PMT for the bar
-	 */
-	private double tdcConvRight;
-
-	/**
-	 * The length of the bar
-	 */
-	private double length;
-
 	/**
 	 * The view this bar is in
 	 */
@@ -181,24 +137,6 @@ public class FullSideViewBar extends RectangleItem {
 		_name = "Bar: " + _bar;
 	}
 
-	/**
-	 * Gets the calibration constants from a file and stores them
-	 * 
-	 * TODO change file for real constants
-	 */
-	public void getConstants(File file) {
-		CalibrationFileParser calibrationFileParser = new CalibrationFileParser(file, "b", _bar);
-		v_eff = calibrationFileParser.getEffectiveVelocity();
-		A_left = calibrationFileParser.getLeftADCConversionFactor();
-		A_right = calibrationFileParser.getRightADCConversionFactor();
-		lambda = calibrationFileParser.getAttenuationLength();
-		delta_left = calibrationFileParser.getLeftShift();
-		delta_right = calibrationFileParser.getRightShift();
-		tdcConvLeft = calibrationFileParser.getLeftTDCConversionFactor();
-		tdcConvRight = calibrationFileParser.getRightTDCConversionFactor();
-		length = calibrationFileParser.getItemLength();
-	}
-
 	/**
 	 * Custom drawer for the bar.
 	 * 
@@ -209,7 +147,10 @@ public class FullSideViewBar extends RectangleItem {
 	 */
 	@Override
 	public void drawItem(Graphics g, IContainer container) {
-		if (EventControl.getInstance().isAccumulating()) {
+		// single events are not drawn while accumulating; the accumulated
+		// mode is drawn from the periodic snapshot
+		if (EventControl.getInstance().isAccumulating()
+				&& _view.getMode() == BedView.Mode.SINGLE_EVENT) {
 			return;
 		}
 		super.drawItem(g, container);
@@ -242,8 +183,10 @@ public class FullSideViewBar extends RectangleItem {
 				_worldRectangle, Color.white, _style.getLineColor());
 
 		// get the data and make sure it's not null
-		ChargeTimeData ctData = EventManager.getInstance().getChargeTimeData();
-		if (ctData != null) {
+		ReconstructedData reconstructedData = EventManager.getInstance()
+				.getReconstructedData();
+		if (reconstructedData != null) {
+			ChargeTimeData ctData = reconstructedData.getChargeTimeData();
 			hitSectors = ctData.getSectorArray();
 			hitLayers = ctData.getLayerArray();
 			hitPaddles = ctData.getPaddleArray();
@@ -255,8 +198,9 @@ public class FullSideViewBar extends RectangleItem {
 			// if we have hits
 			if (chargeLeft != null && chargeRight != null) {
 
-				// convert to energy
-				chargeToEnergy();
+				// get the energy-time information
+				totalE = reconstructedData.getBarEnergyArray();
+				totalT = reconstructedData.getBarTimeArray();
 
 				for (int i = 0; i < totalE.length; i++) {
 
@@ -294,41 +238,6 @@ public class FullSideViewBar extends RectangleItem {
 		}
 	}
 
-	/**
-	 * Converts the charge-time information to energy-time information
-	 */
-	private void chargeToEnergy() {
-		double t_l[] = new double[timeLeft.length];
-		double t_r[] = new double[timeRight.length];
-		for (int i = 0; i < timeLeft.length; i++) {
-			t_l[i] = (timeLeft[i] * 1.0 / tdcConvLeft) - delta_left;
-		}
-		for (int i = 0; i < timeRight.length; i++) {
-			t_r[i] = (timeRight[i] * 1.0 / tdcConvRight) - delta_right;
-		}
-		double posFromLeft[] = new double[chargeLeft.length];
-		for (int i = 0; i < posFromLeft.length; i++) {
-			posFromLeft[i] = (v_eff * (t_l[i] - t_r[i]) + length) / 2.0;
-		}
-		double e_l[] = new double[chargeLeft.length];
-		double e_r[] = new double[chargeRight.length];
-		for (int i = 0; i < e_l.length; i++) {
-			e_l[i] = chargeLeft[i] * A_left;
-		}
-		for (int i = 0; i < e_r.length; i++) {
-			e_r[i] = chargeRight[i] * A_right;
-		}
-		totalE = new double[e_l.length];
-		totalT = new double[t_l.length];
-		for (int i = 0; i < totalE.length; i++) {
-			double e_l_prime = e_l[i] * Math.exp(posFromLeft[i] / lambda);
-			double e_r_prime = e_r[i]
-					* Math.exp((length - posFromLeft[i]) / lambda);
-			totalE[i] = (e_l_prime + e_r_prime) / 2;
-			totalT[i] = (t_l[i] + t_r[i] - (length / v_eff)) / 2.0;
-		}
-	}
-
 	/**
 	 * Checks if a given sector/layer/paddle is this bar
 	 * 
@@ -376,9 +285,18 @@ public class FullSideViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Draw hits in accumulated mode
+	 * Check whether the cell holds one of the bars. The view has more cells
+	 * than there are bars; the remaining cells stay empty.
 	 * 
-	 * Currently unused
+	 * @return true if the cell is a bar, false otherwise
+	 */
+	private boolean isBar() {
+		return _bar <= GeometricConstants.BARS;
+	}
+
+	/**
+	 * Draw hits in accumulated mode. Shows the occupancy and the mean energy
+	 * of the bar, or an empty cell if there is no bar.
 	 * 
 	 * @param g
 	 *            the graphics context
@@ -386,6 +304,13 @@ public class FullSideViewBar extends RectangleItem {
 	 *            the rendering container
 	 */
 	private void accumulatedDrawItem(Graphics g, IContainer container) {
+		if (!isBar()) {
+			WorldGraphicsUtilities.drawWorldRectangle(g, container,
+					_worldRectangle, Color.white, _style.getLineColor());
+			return;
+		}
+		OccupancyDrawer.draw(g, container, _worldRectangle, _bar - 1,
+				_style.getLineColor());
 	}
 
 	/**
@@ -419,6 +344,10 @@ public class FullSideViewBar extends RectangleItem {
 					+ "cm, " + DoubleFormat.doubleFormat(y, 1) + "cm, "
 					+ DoubleFormat.doubleFormat(z, 1) + "cm";
 			feedbackStrings.add(rtp);
+			if (isBar()) {
+				feedbackStrings.add("rate "
+						+ RateMeter.format(RateMeter.getInstance().getRate(_bar - 1)));
+			}
 
 			if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
 				singleEventFeedbackStrings(feedbackStrings);
@@ -470,14 +399,16 @@ public class FullSideViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Get the feedback strings for accumulated mode
-	 * 
-	 * Currently unused
+	 * Get the feedback strings for accumulated mode. Displays the hit count
+	 * and the mean energy, if the cell is a bar.
 	 * 
 	 * @param feedbackStrings
 	 *            The list of feedback strings
 	 */
 	private void accumulatedFeedbackStrings(List<String> feedbackStrings) {
+		if (isBar()) {
+			feedbackStrings.add(OccupancyDrawer.summary(_bar - 1));
+		}
 	}
 
 }
@@ -3,9 +3,10 @@ package infn.bed.item;
 import infn.bed.config.FullSideViewConfig;
 import infn.bed.event.ChargeTimeData;
 import infn.bed.event.EventManager;
+import infn.bed.event.RateMeter;
+import infn.bed.event.ReconstructedData;
 import infn.bed.geometry.GeometricConstants;
 import infn.bed.math.MathematicalConstants;
-import infn.bed.util.CalibrationFileParser;
 import infn.bed.util.GetVetoLayer;
 import infn.bed.view.BedView;
 import infn.bed.view.FullSideView;
@@ -16,7 +17,6 @@ import java.awt.Graphics;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.io.File;
 import java.util.List;
 
 import cnuphys.bCNU.event.EventControl;
@@ -90,51 +90,6 @@ public class FullSideViewVeto extends RectangleItem {
 	 */
 	private double totalTimeArray[];
 
-	/**
-	 * The effective velocity.
-	 */
-	private double effectiveVelocity;
-
-	/**
-	 * The left ADC (analog-to-digital converter) conversion factor.
-	 */
-	private double leftADCConversionFactor;
-
-	/**
-	 * The right ADC (analog-to-digital converter) conversion factor.
-	 */
-	private double rightADCConversionFactor;
-
-	/**
-	 * The attenuation length.
-	 */
-	private double attenuationLength;
-
-	/**
-	 * The left shift.
-	 */
-	private double leftShift;
-
-	/**
-	 * The right shift.
-	 */
-	private double rightShift;
-
-	/**
-	 * The left TDC (time-to-digital converter) conversion factor.
-	 */
-	private double leftTDCConversionFactor;
-
-	/**
-	 * The right TDC (time-to-digital converter) conversion factor.
-	 */
-	private double rightTDCConversionFactor;
-
-	/**
-	 * The veto length.
-	 */
-	private double vetoLength;
-
 	/**
 	 * The view that contains the veto.
 	 */
@@ -168,24 +123,6 @@ public class FullSideViewVeto extends RectangleItem {
 		}
 	}
 
-	/**
-	 * Retrieves the calibration constants of the veto.
-	 * 
-	 * @param file A calibration file.
-	 */
-	public void getConstants(File file) {
-		CalibrationFileParser calibrationFileParser = new CalibrationFileParser(file, "v", _veto);
-		effectiveVelocity        = calibrationFileParser.getEffectiveVelocity();
-		leftADCConversionFactor  = calibrationFileParser.getLeftADCConversionFactor();
-		rightADCConversionFactor = calibrationFileParser.getRightADCConversionFactor();
-		attenuationLength        = calibrationFileParser.getAttenuationLength();
-		leftShift                = calibrationFileParser.getLeftShift();
-		rightShift               = calibrationFileParser.getRightShift();
-		leftTDCConversionFactor  = calibrationFileParser.getLeftTDCConversionFactor();
-		rightTDCConversionFactor = calibrationFileParser.getRightTDCConversionFactor();
-		vetoLength               = calibrationFileParser.getItemLength();
-	}
-
 	/**
 	 * Draws the veto.
 	 * 
@@ -194,7 +131,8 @@ public class FullSideViewVeto extends RectangleItem {
 	 */
 	@Override
 	public void drawItem(Graphics g, IContainer container) {
-		if (EventControl.getInstance().isAccumulating()) {
+		// single events are not drawn while accumulating; the accumulated mode is drawn from the periodic snapshot
+		if (EventControl.getInstance().isAccumulating() && _view.getMode() == BedView.Mode.SINGLE_EVENT) {
 			return;
 		}
 		
@@ -217,8 +155,9 @@ public class FullSideViewVeto extends RectangleItem {
 	private void singleEventDrawItem(Graphics g, IContainer container) {
 		WorldGraphicsUtilities.drawWorldRectangle(g, container, _worldRectangle, Color.white, getLineColor());
 		
-		ChargeTimeData chargeTimeData = EventManager.getInstance().getChargeTimeData();
-		if (chargeTimeData != null) {
+		ReconstructedData reconstructedData = EventManager.getInstance().getReconstructedData();
+		if (reconstructedData != null) {
+			ChargeTimeData chargeTimeData = reconstructedData.getChargeTimeData();
 			sectorArray         = chargeTimeData.getVetoSectorArray();
 			layerArray          = chargeTimeData.getVetoLayerArray();
 			channelArray        = chargeTimeData.getVetoChannelArray();
@@ -228,7 +167,8 @@ public class FullSideViewVeto extends RectangleItem {
 			dualSiPMTimeArray   = chargeTimeData.getDualSiPMVetoTimeArray();
 
 			if (chargeArray != null) {
-				chargeToEnergy();
+				totalEnergyArray = reconstructedData.getVetoEnergyArray();
+				totalTimeArray = reconstructedData.getVetoTimeArray();
 				for (int i = 0; i < totalEnergyArray.length; i++) {
 					if (inThisVeto(sectorArray[i], layerArray[i], channelArray[i])) {
 						if (totalEnergyArray[i] > 0) {
@@ -245,51 +185,6 @@ public class FullSideViewVeto extends RectangleItem {
 		}
 	}
 
-	/**
-	 * Converts charge-time information to energy-time information.
-	 */
-	private void chargeToEnergy() {
-		if (_veto == 8 || _veto == 9 || _veto == 11 || _veto == 12) {
-			double leftTimeArray[] = new double[timeArray.length];
-			double rightTimeArray[] = new double[dualSiPMTimeArray.length];
-			for (int i = 0; i < timeArray.length; i++) {
-				leftTimeArray[i] = (timeArray[i] / leftTDCConversionFactor) - leftShift;
-			}
-			for (int i = 0; i < dualSiPMTimeArray.length; i++) {
-				rightTimeArray[i] = (dualSiPMTimeArray[i] / rightTDCConversionFactor) - rightShift;
-			}
-			double positionFromLeftArray[] = new double[chargeArray.length];
-			for (int i = 0; i < positionFromLeftArray.length; i++) {
-				positionFromLeftArray[i] = (effectiveVelocity * (leftTimeArray[i] - rightTimeArray[i]) + vetoLength) / 2;
-			}
-			double leftEnergyArray[] = new double[chargeArray.length];
-			double rightEnergyArray[] = new double[dualSiPMChargeArray.length];
-			for (int i = 0; i < leftEnergyArray.length; i++) {
-				leftEnergyArray[i] = chargeArray[i] * leftADCConversionFactor;
-			}
-			for (int i = 0; i < rightEnergyArray.length; i++) {
-				rightEnergyArray[i] = dualSiPMChargeArray[i] * rightADCConversionFactor;
-			}
-			totalEnergyArray = new double[leftEnergyArray.length];
-			totalTimeArray = new double[leftTimeArray.length];
-			for (int i = 0; i < totalEnergyArray.length; i++) {
-				double leftEnergyPrime = leftEnergyArray[i] * Math.exp(positionFromLeftArray[i] / attenuationLength);
-				double rightEnergyPrime = rightEnergyArray[i] * Math.exp((vetoLength - positionFromLeftArray[i]) / attenuationLength);
-				totalEnergyArray[i] = (leftEnergyPrime + rightEnergyPrime) / 2;
-				totalTimeArray[i] = (leftTimeArray[i] + rightTimeArray[i] - (vetoLength / effectiveVelocity)) / 2;
-			}
-		} else {
-			totalEnergyArray = new double[chargeArray.length];
-			totalTimeArray = new double[timeArray.length];
-			for (int i = 0; i < totalTimeArray.length; i++) {
-				totalTimeArray[i] = timeArray[i] / leftTDCConversionFactor;
-			}
-			for (int i = 0; i < totalEnergyArray.length; i++) {
-				totalEnergyArray[i] = chargeArray[i] * leftADCConversionFactor;
-			}
-		}
-	}
-
 	/**
 	 * Returns true if the sector, layer, and channel combination is this veto, false otherwise.
 	 * 
@@ -341,12 +236,14 @@ public class FullSideViewVeto extends RectangleItem {
 	}
 
 	/**
-	 * Draws the accumulated mode hits.
+	 * Draws the accumulated occupancy and mean energy of the veto.
 	 * 
 	 * @param g The graphics context.
 	 * @param container The graphics container that is being rendered.
 	 */
-	private void accumulatedDrawItem(Graphics g, IContainer container) { }
+	private void accumulatedDrawItem(Graphics g, IContainer container) {
+		OccupancyDrawer.draw(g, container, _worldRectangle, GeometricConstants.BARS + _veto - 1, getLineColor());
+	}
 
 	/**
 	 * Add any appropriate feedback strings for the heads-up display or feedback
@@ -363,6 +260,7 @@ public class FullSideViewVeto extends RectangleItem {
 			int vetoLayer = GetVetoLayer.getVetoLayer(_veto);
 			String feedbackString = "\n" + (vetoLayer == 1 ? "Crystal n." : (vetoLayer == 2 ? "Internal Veto n." : "External Veto n.")) + _veto + "\n";
 			feedbackStringList.add(feedbackString);
+			feedbackStringList.add("$orange$Rate: " + RateMeter.format(RateMeter.getInstance().getRate(GeometricConstants.BARS + _veto - 1)));
 			if (_view.getMode() == BedView.Mode.SINGLE_EVENT) {
 				singleEventFeedbackStrings(feedbackStringList);
 			} else {
@@ -417,7 +315,9 @@ public class FullSideViewVeto extends RectangleItem {
 	 * 
 	 * @param feedbackStringList A list of feedback strings.
 	 */
-	private void accumulatedFeedbackStrings(List<String> feedbackStringList) { }
+	private void accumulatedFeedbackStrings(List<String> feedbackStringList) {
+		feedbackStringList.add("$orange$" + OccupancyDrawer.summary(GeometricConstants.BARS + _veto - 1));
+	}
 	
 	/**
 	 * Returns the line color of the veto.
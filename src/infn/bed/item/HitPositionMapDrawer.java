@@ -0,0 +1,66 @@
+package infn.bed.item;
+
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.AccumulationSnapshot;
+import infn.bed.event.HitPositionMap;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.geom.Rectangle2D;
+
+import cnuphys.bCNU.graphics.container.IContainer;
+import cnuphys.bCNU.graphics.world.WorldGraphicsUtilities;
+
+/**
+ * Draws the accumulated hit position map of a bar inside the bar rectangle,
+ * position along the bar on the horizontal axis and energy on the vertical
+ * axis. The colors come from the latest accumulation snapshot.
+ */
+class HitPositionMapDrawer {
+
+	/**
+	 * Draws the hit position map of a bar.
+	 * 
+	 * @param g
+	 *            the graphics context
+	 * @param container
+	 *            the rendering container
+	 * @param worldRectangle
+	 *            the rectangle the bar is drawn in
+	 * @param bar
+	 *            the bar (1-based)
+	 */
+	static void draw(Graphics g, IContainer container,
+			Rectangle2D.Double worldRectangle, int bar) {
+		AccumulationSnapshot snapshot = AccumulationSnapshot.getCurrent();
+		double width = worldRectangle.width / HitPositionMap.POSITION_BINS;
+		double height = worldRectangle.height / HitPositionMap.ENERGY_BINS;
+		Rectangle2D.Double cell = new Rectangle2D.Double(0, 0, width, height);
+		for (int x = 0; x < HitPositionMap.POSITION_BINS; x++) {
+			for (int y = 0; y < HitPositionMap.ENERGY_BINS; y++) {
+				Color color = snapshot.getPositionColor(bar, x, y);
+				if (color != null) {
+					cell.x = worldRectangle.x + x * width;
+					cell.y = worldRectangle.y + y * height;
+					WorldGraphicsUtilities.drawWorldRectangle(g, container,
+							cell, color, null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a one-line summary of the hit position map of a bar.
+	 * 
+	 * @param bar
+	 *            the bar (1-based)
+	 * @return the number of entries and of entries outside the map
+	 */
+	static String summary(int bar) {
+		HitPositionMap map = AccumulationManager.getInstance()
+				.getHitPositionMap();
+		return "position map entries " + map.getEntries(bar) + " ("
+				+ map.getOutOfRange(bar) + " outside)";
+	}
+
+}
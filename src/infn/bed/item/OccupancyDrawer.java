@@ -0,0 +1,73 @@
+package infn.bed.item;
+
+import infn.bed.event.AccumulationSnapshot;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.geom.Rectangle2D;
+
+import cnuphys.bCNU.format.DoubleFormat;
+import cnuphys.bCNU.graphics.container.IContainer;
+import cnuphys.bCNU.graphics.world.WorldGraphicsUtilities;
+
+/**
+ * Draws the accumulated occupancy and mean energy of a bar or veto inside its
+ * rectangle: the occupancy in the upper half and the mean energy in the lower
+ * half. The colors come from the latest accumulation snapshot.
+ */
+class OccupancyDrawer {
+
+	/**
+	 * Draws the occupancy and mean energy of a detector.
+	 *
+	 * @param g
+	 *            the graphics context
+	 * @param container
+	 *            the rendering container
+	 * @param worldRectangle
+	 *            the rectangle the detector is drawn in
+	 * @param detector
+	 *            the detector index, bars first, then vetoes
+	 * @param lineColor
+	 *            the outline color
+	 */
+	static void draw(Graphics g, IContainer container,
+			Rectangle2D.Double worldRectangle, int detector, Color lineColor) {
+		AccumulationSnapshot snapshot = AccumulationSnapshot.getCurrent();
+		Color occupancy = snapshot.getOccupancyColor(detector);
+		Color energy = snapshot.getMeanEnergyColor(detector);
+		if (occupancy == null) {
+			WorldGraphicsUtilities.drawWorldRectangle(g, container,
+					worldRectangle, Color.white, lineColor);
+			return;
+		}
+		Rectangle2D.Double half = new Rectangle2D.Double(worldRectangle.x,
+				worldRectangle.y, worldRectangle.width,
+				worldRectangle.height / 2);
+		WorldGraphicsUtilities.drawWorldRectangle(g, container, half,
+				occupancy, null);
+		half.y += half.height;
+		WorldGraphicsUtilities.drawWorldRectangle(g, container, half, energy,
+				null);
+		WorldGraphicsUtilities.drawWorldRectangle(g, container,
+				worldRectangle, null, lineColor);
+	}
+
+	/**
+	 * Returns a one-line summary of the occupancy and mean energy of a
+	 * detector.
+	 *
+	 * @param detector
+	 *            the detector index, bars first, then vetoes
+	 * @return the number of hits and their mean energy
+	 */
+	static String summary(int detector) {
+		AccumulationSnapshot snapshot = AccumulationSnapshot.getCurrent();
+		double meanEnergy = snapshot.getMeanEnergy(detector);
+		return "accumulated hits " + snapshot.getHits(detector)
+				+ ", mean energy "
+				+ (Double.isNaN(meanEnergy) ? "-" : DoubleFormat
+						.doubleFormat(meanEnergy, 2) + " MeV");
+	}
+
+}
@@ -1,9 +1,9 @@
 package infn.bed.item;
 
-import infn.bed.util.CalibrationFileParser;
 import infn.bed.view.BarSideView;
 import infn.bed.event.ChargeTimeData;
 import infn.bed.event.EventManager;
+import infn.bed.event.ReconstructedData;
 import infn.bed.math.MathematicalConstants;
 import infn.bed.view.BedView;
 
@@ -14,7 +14,6 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -95,51 +94,6 @@ public class SideViewBar extends RectangleItem {
 	 */
 	private double totalT[];
 
-	/**
-	 * The effective speed of light in the bar
-	 */
-	private double v_eff;
-
-	/**
-	 * The charge-to-energy conversion factor for the left PMT for the bar
-	 */
-	private double A_left;
-
-	/**
-	 * The charge-to-energy conversion factor for the right PMT for the bar
-	 */
-	private double A_right;
-
-	/**
-	 * The attenuation length
-	 */
-	private double lambda;
-
-	/**
-	 * Time delay for the left PMT
-	 */
-	private double delta_left;
-
-	/**
-	 * Time delay for the right PMT
-	 */
-	private double delta_right;
-
-	/**
-	 * The tdc-to-time conversion factor for the left PMT for the bar
-	 */
-	private double tdcConvLeft;
-
-	/**
-	 * The tdc-to-time conversion factor for the right PMT for the bar
-	 */
-	private double tdcConvRight;
-
-	/**
-	 * The length of the bar
-	 */
-	private double length;
-
 	/**
 	 * The view this bar is in
 	 */
@@ -180,24 +134,6 @@ public class SideViewBar extends RectangleItem {
 		_name = "Bar: " + _bar;
 	}
 
-	/**
-	 * Gets the calibration constants from a file and stores them
-	 * 
-	 * TODO change file for real constants
-	 */
-	public void getConstants(File file) {
-		CalibrationFileParser calibrationFileParser = new CalibrationFileParser(file, "b", _bar);
-		v_eff = calibrationFileParser.getEffectiveVelocity();
-		A_left = calibrationFileParser.getLeftADCConversionFactor();
-		A_right = calibrationFileParser.getRightADCConversionFactor();
-		lambda = calibrationFileParser.getAttenuationLength();
-		delta_left = calibrationFileParser.getLeftShift();
-		delta_right = calibrationFileParser.getRightShift();
-		tdcConvLeft = calibrationFileParser.getLeftTDCConversionFactor();
-		tdcConvRight = calibrationFileParser.getRightTDCConversionFactor();
-		length = calibrationFileParser.getItemLength();
-	}
-
 	/**
 	 * Custom drawer for the bar.
 	 * 
@@ -209,7 +145,10 @@ public class SideViewBar extends RectangleItem {
 	@Override
 	public void drawItem(Graphics g, IContainer container) {
 
-		if (EventControl.getInstance().isAccumulating()) {
+		// single events are not drawn while accumulating; the accumulated
+		// mode is drawn from the periodic snapshot
+		if (EventControl.getInstance().isAccumulating()
+				&& _view.getMode() == BedView.Mode.SINGLE_EVENT) {
 			return;
 		}
 
@@ -243,8 +182,10 @@ public class SideViewBar extends RectangleItem {
 				_worldRectangle, Color.white, _style.getLineColor());
 
 		// get the data and make sure it's not null
-		ChargeTimeData ctData = EventManager.getInstance().getChargeTimeData();
-		if (ctData != null) {
+		ReconstructedData reconstructedData = EventManager.getInstance()
+				.getReconstructedData();
+		if (reconstructedData != null) {
+			ChargeTimeData ctData = reconstructedData.getChargeTimeData();
 			hitSectors = ctData.getSectorArray();
 			hitLayers = ctData.getLayerArray();
 			hitPaddles = ctData.getPaddleArray();
@@ -256,8 +197,9 @@ public class SideViewBar extends RectangleItem {
 			// if we have hits
 			if (chargeLeft != null && chargeRight != null) {
 
-				// convert to energy
-				chargeToEnergy();
+				// get the energy-time information
+				totalE = reconstructedData.getBarEnergyArray();
+				totalT = reconstructedData.getBarTimeArray();
 
 				for (int i = 0; i < totalE.length; i++) {
 
@@ -295,44 +237,6 @@ public class SideViewBar extends RectangleItem {
 		}
 	}
 
-	/**
-	 * Converts the charge-time information to energy-time information
-	 */
-	private void chargeToEnergy() {
-		double t_l[] = new double[timeLeft.length];
-		double t_r[] = new double[timeRight.length];
-		// change tdc to time
-		for (int i = 0; i < timeLeft.length; i++) {
-			t_l[i] = (timeLeft[i] * 1.0 / tdcConvLeft) - delta_left;
-		}
-		for (int i = 0; i < timeRight.length; i++) {
-			t_r[i] = (timeRight[i] * 1.0 / tdcConvRight) - delta_right;
-		}
-		// get the position of the hit from the left side
-		double posFromLeft[] = new double[chargeLeft.length];
-		for (int i = 0; i < posFromLeft.length; i++) {
-			posFromLeft[i] = (v_eff * (t_l[i] - t_r[i]) + length) / 2.0;
-		}
-		// change charge to energy
-		double e_l[] = new double[chargeLeft.length];
-		double e_r[] = new double[chargeRight.length];
-		for (int i = 0; i < e_l.length; i++) {
-			e_l[i] = chargeLeft[i] * A_left;
-		}
-		for (int i = 0; i < e_r.length; i++) {
-			e_r[i] = chargeRight[i] * A_right;
-		}
-		totalE = new double[e_l.length];
-		totalT = new double[t_l.length];
-		for (int i = 0; i < totalE.length; i++) {
-			double e_l_prime = e_l[i] * Math.exp(posFromLeft[i] / lambda);
-			double e_r_prime = e_r[i]
-					* Math.exp((length - posFromLeft[i]) / lambda);
-			totalE[i] = (e_l_prime + e_r_prime) / 2;
-			totalT[i] = (t_l[i] + t_r[i] - (length / v_eff)) / 2.0;
-		}
-	}
-
 	/**
 	 * Checks if a given sector/layer/paddle is this bar
 	 * 
@@ -380,9 +284,8 @@ public class SideViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Draw hits in accumulated mode
-	 * 
-	 * Currently unused
+	 * Draw hits in accumulated mode. Shows the hit position along the bar
+	 * versus energy.
 	 * 
 	 * @param g
 	 *            the graphics context
@@ -390,6 +293,9 @@ public class SideViewBar extends RectangleItem {
 	 *            the rendering container
 	 */
 	private void accumulatedDrawItem(Graphics g, IContainer container) {
+		WorldGraphicsUtilities.drawWorldRectangle(g, container,
+				_worldRectangle, Color.white, _style.getLineColor());
+		HitPositionMapDrawer.draw(g, container, _worldRectangle, _bar);
 	}
 
 	/**
@@ -458,13 +364,13 @@ public class SideViewBar extends RectangleItem {
 	}
 
 	/**
-	 * Get the feedback strings for accumulated mode
-	 * 
-	 * Currently unused
+	 * Get the feedback strings for accumulated mode. Displays the hit position
+	 * map entries.
 	 * 
 	 * @param feedbackStrings
 	 *            The list of feedback strings
 	 */
 	private void accumulatedFeedbackStrings(List<String> feedbackStrings) {
+		feedbackStrings.add(HitPositionMapDrawer.summary(_bar));
 	}
 }
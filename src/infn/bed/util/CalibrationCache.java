@@ -0,0 +1,305 @@
+package infn.bed.util;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a compiled binary copy of every calibration file next to it, so that
+ * loading a calibration file does not parse text. The binary copy records the
+ * checksum of the text it was compiled from; it is memory-mapped and used only
+ * if the checksum still matches, otherwise the text is parsed and the binary
+ * copy is written again.
+ *
+ * <p>
+ * Binary layout (big-endian): magic, version, item count, source CRC-32, a
+ * presence bit mask of the items (b1..b9, v1..v34), the constants of every
+ * item in calibration file order, and the CRC-32 of everything before it.
+ * </p>
+ *
+ * <p>
+ * The cache can be turned off with -Dbed.calibrationCache=false.
+ * </p>
+ */
+public class CalibrationCache {
+
+	/**
+	 * The suffix appended to the calibration file name.
+	 */
+	public static final String SUFFIX = ".bin";
+
+	/**
+	 * The first word of a compiled calibration file ("BEDC").
+	 */
+	private static final int MAGIC = 0x42454443;
+
+	/**
+	 * The version of the binary layout.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The number of items (bars and vetoes).
+	 */
+	private static final int ITEMS = CalibrationTable.ITEMS;
+
+	/**
+	 * The size in bytes of a compiled calibration file.
+	 */
+	private static final int SIZE = 3 * Integer.BYTES + 2 * Long.BYTES + ITEMS * CalibrationConstants.COUNT * Double.BYTES + Long.BYTES;
+
+	/**
+	 * true if compiled files are used, false to always parse the text.
+	 */
+	private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("bed.calibrationCache", "true"));
+
+	/**
+	 * Private constructor; the class only has static methods.
+	 */
+	private CalibrationCache() {
+	}
+
+	/**
+	 * Loads a calibration file through its compiled copy, compiling it first if
+	 * the copy is missing, stale or damaged.
+	 *
+	 * @param file The calibration file.
+	 * @return The calibration table.
+	 * @throws InvalidCalibrationFileException If the calibration file cannot be read or is invalid.
+	 */
+	public static CalibrationTable load(File file) {
+		return load(file, null);
+	}
+
+	/**
+	 * Loads a calibration file through its compiled copy, reporting the progress.
+	 *
+	 * @param file The calibration file.
+	 * @param progress Receives the number of items read so far (out of {@link CalibrationTable#ITEMS}), or null.
+	 * @return The calibration table.
+	 * @throws InvalidCalibrationFileException If the calibration file cannot be read, is invalid, or the
+	 *             thread is interrupted while the text is parsed.
+	 */
+	public static CalibrationTable load(File file, IntConsumer progress) {
+		byte text[];
+		try {
+			text = Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			throw new InvalidCalibrationFileException(file.getPath() + ": " + e.getMessage());
+		}
+		long checksum = checksum(text, 0, text.length);
+
+		File compiled = getCompiledFile(file);
+		CalibrationTable table = enabled ? read(compiled, checksum, file.getPath()) : null;
+		if (table != null) {
+			if (progress != null) {
+				progress.accept(ITEMS);
+			}
+			return table;
+		}
+
+		table = parse(text, file.getPath(), progress);
+		compile(file, text, table);
+		return table;
+	}
+
+	/**
+	 * Parses the text of a calibration file.
+	 *
+	 * @param text The text of the calibration file.
+	 * @param source The name of the calibration file.
+	 * @param progress Receives the number of items read so far, or null.
+	 * @return The calibration table.
+	 * @throws InvalidCalibrationFileException If the text is invalid or the thread is interrupted.
+	 */
+	static CalibrationTable parse(byte text[], String source, IntConsumer progress) {
+		try {
+			return CalibrationTable.parse(new InputStreamReader(new ByteArrayInputStream(text), StandardCharsets.UTF_8), source, progress);
+		} catch (IOException e) {
+			throw new InvalidCalibrationFileException(source + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the compiled copy of a calibration file from a table already parsed from its text.
+	 * Failures are ignored; they only cost a parse the next time the file is loaded.
+	 *
+	 * @param file The calibration file.
+	 * @param text The text of the calibration file.
+	 * @param table The calibration table parsed from the text.
+	 */
+	static void compile(File file, byte text[], CalibrationTable table) {
+		if (enabled) {
+			try {
+				write(getCompiledFile(file), checksum(text, 0, text.length), table);
+			} catch (IOException e) {
+				// a read-only directory only costs the parse next time
+			}
+		}
+	}
+
+	/**
+	 * Returns the compiled copy of a calibration file.
+	 *
+	 * @param file The calibration file.
+	 * @return The compiled file next to it.
+	 */
+	public static File getCompiledFile(File file) {
+		return new File(file.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Turns the use of compiled files on or off.
+	 *
+	 * @param enabled true to use compiled files, false to always parse the text.
+	 */
+	public static void setEnabled(boolean enabled) {
+		CalibrationCache.enabled = enabled;
+	}
+
+	/**
+	 * Returns true if compiled files are used, false otherwise.
+	 *
+	 * @return true if compiled files are used, false otherwise.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Reads a compiled file.
+	 *
+	 * @param compiled The compiled file.
+	 * @param checksum The checksum of the calibration file text.
+	 * @param source The name of the calibration file.
+	 * @return The calibration table, or null if the compiled file is missing, stale or damaged.
+	 */
+	private static CalibrationTable read(File compiled, long checksum, String source) {
+		if (compiled.length() != SIZE) {
+			return null;
+		}
+		try (FileChannel channel = FileChannel.open(compiled.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, SIZE);
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != ITEMS || buffer.getLong() != checksum) {
+				return null;
+			}
+			if (buffer.getLong(SIZE - Long.BYTES) != checksum(buffer, SIZE - Long.BYTES)) {
+				return null;
+			}
+			long present = buffer.getLong();
+			CalibrationConstants bars[] = new CalibrationConstants[GeometricConstants.BARS];
+			CalibrationConstants vetoes[] = new CalibrationConstants[GeometricConstants.VETOES];
+			double values[] = new double[CalibrationConstants.COUNT];
+			for (int item = 0; item < ITEMS; item++) {
+				buffer.asDoubleBuffer().get(values);
+				buffer.position(buffer.position() + values.length * Double.BYTES);
+				if ((present & (1L << item)) == 0) {
+					continue;
+				}
+				if (item < bars.length) {
+					bars[item] = new CalibrationConstants(values);
+				} else {
+					vetoes[item - bars.length] = new CalibrationConstants(values);
+				}
+			}
+			return new CalibrationTable(bars, vetoes, source);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a compiled file, replacing the previous one in one step.
+	 *
+	 * @param compiled The compiled file.
+	 * @param checksum The checksum of the calibration file text.
+	 * @param table The calibration table.
+	 * @throws IOException If the file cannot be written.
+	 */
+	private static void write(File compiled, long checksum, CalibrationTable table) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(ITEMS).putLong(checksum);
+		long present = 0;
+		for (int item = 0; item < ITEMS; item++) {
+			if (getConstants(table, item) != null) {
+				present |= 1L << item;
+			}
+		}
+		buffer.putLong(present);
+		for (int item = 0; item < ITEMS; item++) {
+			CalibrationConstants constants = getConstants(table, item);
+			double values[] = (constants == null) ? new double[CalibrationConstants.COUNT] : constants.toArray();
+			for (double value : values) {
+				buffer.putDouble(value);
+			}
+		}
+		buffer.putLong(checksum(buffer, SIZE - Long.BYTES));
+		buffer.flip();
+
+		Path temporary = Files.createTempFile(compiled.getAbsoluteFile().getParentFile().toPath(), compiled.getName(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(temporary, compiled.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	/**
+	 * Returns the constants of an item by position in the calibration file order.
+	 *
+	 * @param table The calibration table.
+	 * @param item The zero-based position (bars first, then vetoes).
+	 * @return The constants, or null if the item has none.
+	 */
+	private static CalibrationConstants getConstants(CalibrationTable table, int item) {
+		return (item < GeometricConstants.BARS) ? table.getBarConstants(item + 1) : table.getVetoConstants(item - GeometricConstants.BARS + 1);
+	}
+
+	/**
+	 * Returns the CRC-32 of a byte range.
+	 *
+	 * @param bytes The bytes.
+	 * @param offset The start of the range.
+	 * @param length The length of the range.
+	 * @return The checksum.
+	 */
+	private static long checksum(byte bytes[], int offset, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return crc.getValue();
+	}
+
+	/**
+	 * Returns the CRC-32 of the start of a buffer.
+	 *
+	 * @param buffer The buffer.
+	 * @param length The number of bytes from the start of the buffer.
+	 * @return The checksum.
+	 */
+	private static long checksum(ByteBuffer buffer, int length) {
+		ByteBuffer range = buffer.duplicate();
+		range.position(0).limit(length);
+		CRC32 crc = new CRC32();
+		crc.update(range);
+		return crc.getValue();
+	}
+
+}
@@ -0,0 +1,168 @@
+package infn.bed.util;
+
+/**
+ * The calibration constants of one item (scintillator bar or veto).
+ */
+public final class CalibrationConstants {
+
+	/**
+	 * The number of constants of an item.
+	 */
+	public static final int COUNT = 9;
+
+	/**
+	 * The effective velocity.
+	 */
+	private final double effectiveVelocity;
+
+	/**
+	 * The left ADC (analog-to-digital converter) conversion factor.
+	 */
+	private final double leftADCConversionFactor;
+
+	/**
+	 * The right ADC (analog-to-digital converter) conversion factor.
+	 */
+	private final double rightADCConversionFactor;
+
+	/**
+	 * The attenuation length.
+	 */
+	private final double attenuationLength;
+
+	/**
+	 * The left shift.
+	 */
+	private final double leftShift;
+
+	/**
+	 * The right shift.
+	 */
+	private final double rightShift;
+
+	/**
+	 * The left TDC (time-to-digital converter) conversion factor.
+	 */
+	private final double leftTDCConversionFactor;
+
+	/**
+	 * The right TDC (time-to-digital converter) conversion factor.
+	 */
+	private final double rightTDCConversionFactor;
+
+	/**
+	 * The item (scintillator bar or veto) length.
+	 */
+	private final double itemLength;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param values The constants in calibration file order: veff Aleft Aright lambda deltaL deltaR tdcConvLeft tdcConvRight L.
+	 */
+	public CalibrationConstants(double... values) {
+		if (values.length != COUNT) {
+			throw new IllegalArgumentException("Expected " + COUNT + " calibration constants, got " + values.length);
+		}
+		effectiveVelocity        = values[0];
+		leftADCConversionFactor  = values[1];
+		rightADCConversionFactor = values[2];
+		attenuationLength        = values[3];
+		leftShift                = values[4];
+		rightShift               = values[5];
+		leftTDCConversionFactor  = values[6];
+		rightTDCConversionFactor = values[7];
+		itemLength               = values[8];
+	}
+
+	/**
+	 * Returns the constants in calibration file order.
+	 *
+	 * @return A new array of the constants.
+	 */
+	public double[] toArray() {
+		return new double[] { effectiveVelocity, leftADCConversionFactor, rightADCConversionFactor, attenuationLength, leftShift, rightShift, leftTDCConversionFactor, rightTDCConversionFactor, itemLength };
+	}
+
+	/**
+	 * Returns the effective velocity.
+	 *
+	 * @return effectiveVelocity The effective velocity;
+	 */
+	public double getEffectiveVelocity() {
+		return effectiveVelocity;
+	}
+
+	/**
+	 * Returns the left ADC (analog-to-digital converter) conversion factor.
+	 *
+	 * @return leftADCConversionFactor The left ADC (analog-to-digital converter) conversion factor.
+	 */
+	public double getLeftADCConversionFactor() {
+		return leftADCConversionFactor;
+	}
+
+	/**
+	 * Returns the right ADC (analog-to-digital converter) conversion factor.
+	 *
+	 * @return rightADCConversionFactor The right ADC (analog-to-digital converter) conversion factor.
+	 */
+	public double getRightADCConversionFactor() {
+		return rightADCConversionFactor;
+	}
+
+	/**
+	 * Returns the attenuation length.
+	 *
+	 * @return attenuationLength The attenuation length.
+	 */
+	public double getAttenuationLength() {
+		return attenuationLength;
+	}
+
+	/**
+	 * Returns the left shift.
+	 *
+	 * @return leftShift The left shift.
+	 */
+	public double getLeftShift() {
+		return leftShift;
+	}
+
+	/**
+	 * Returns the right shift.
+	 *
+	 * @return rightShift The right shift.
+	 */
+	public double getRightShift() {
+		return rightShift;
+	}
+
+	/**
+	 * Returns the left TDC (time-to-digital converter) conversion factor.
+	 *
+	 * @return leftTDCConversionFactor The left TDC (time-to-digital converter) conversion factor.
+	 */
+	public double getLeftTDCConversionFactor() {
+		return leftTDCConversionFactor;
+	}
+
+	/**
+	 * Returns the right TDC (time-to-digital converter) conversion factor.
+	 *
+	 * @return rightTDCConversionFactor The right TDC (time-to-digital converter) conversion factor.
+	 */
+	public double getRightTDCConversionFactor() {
+		return rightTDCConversionFactor;
+	}
+
+	/**
+	 * Returns the item (scintillator bar or veto) length.
+	 *
+	 * @return itemLength The item (scintillator bar or veto) length.
+	 */
+	public double getItemLength() {
+		return itemLength;
+	}
+
+}
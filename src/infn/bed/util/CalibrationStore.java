@@ -0,0 +1,363 @@
+package infn.bed.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * A directory of calibration files, each valid for a range of run numbers.
+ *
+ * <p>
+ * The directory holds an index file, {@value #INDEX_FILE_NAME}, with one line
+ * per calibration set:
+ * </p>
+ *
+ * <pre>
+ * # firstRun lastRun calibrationFile
+ * 1000 1999 calibration_1000-1999.dat
+ * 2000 *    calibration_2000-.dat
+ * </pre>
+ *
+ * <p>
+ * A last run of * leaves the range open. The ranges may not overlap. They are
+ * kept sorted, so the set of a run is found by binary search. The most recently
+ * used sets are kept parsed in memory.
+ * </p>
+ */
+public class CalibrationStore {
+
+	/**
+	 * The name of the index file in the store directory.
+	 */
+	public static final String INDEX_FILE_NAME = "runs.txt";
+
+	/**
+	 * The number of parsed calibration sets kept in memory.
+	 */
+	public static final int CACHE_SIZE = 8;
+
+	/**
+	 * The last run of an open range.
+	 */
+	private static final String OPEN_RANGE = "*";
+
+	/**
+	 * The comment initializer.
+	 */
+	private static final String COMMENT = "#";
+
+	/**
+	 * The token delimiter.
+	 */
+	private static final Pattern DELIMITER = Pattern.compile("\\s+");
+
+	/**
+	 * The store directory.
+	 */
+	private final File directory;
+
+	/**
+	 * The first run of every range, in increasing order.
+	 */
+	private int firstRuns[] = new int[0];
+
+	/**
+	 * The last run of every range.
+	 */
+	private int lastRuns[] = new int[0];
+
+	/**
+	 * The calibration file of every range, relative to the store directory.
+	 */
+	private String fileNames[] = new String[0];
+
+	/**
+	 * The parsed calibration sets by file name, least recently used first.
+	 */
+	private final Map<String, CalibrationTable> cache = new LinkedHashMap<String, CalibrationTable>(CACHE_SIZE, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, CalibrationTable> eldest) {
+			return size() > CACHE_SIZE;
+		}
+
+	};
+
+	/**
+	 * Opens a store. The directory and its index are created by the first
+	 * {@link #put(int, int, File)} if they do not exist.
+	 *
+	 * @param directory The store directory.
+	 * @throws IOException If the index cannot be read or is invalid.
+	 */
+	public CalibrationStore(File directory) throws IOException {
+		this.directory = directory;
+		File index = new File(directory, INDEX_FILE_NAME);
+		if (index.exists()) {
+			readIndex(index);
+		}
+	}
+
+	/**
+	 * Reads the index file.
+	 *
+	 * @param index The index file.
+	 * @throws IOException If the index cannot be read or is invalid.
+	 */
+	private void readIndex(File index) throws IOException {
+		try (BufferedReader reader = new BufferedReader(new FileReader(index))) {
+			int lineNumber = 0;
+			String s;
+			while ((s = reader.readLine()) != null) {
+				lineNumber++;
+				s = s.trim();
+				if (s.isEmpty() || s.startsWith(COMMENT)) {
+					continue;
+				}
+				String tokens[] = DELIMITER.split(s);
+				if (tokens.length != 3) {
+					throw new IOException(index + ":" + lineNumber + ": expected firstRun lastRun calibrationFile");
+				}
+				try {
+					int firstRun = Integer.parseInt(tokens[0]);
+					int lastRun = tokens[1].equals(OPEN_RANGE) ? Integer.MAX_VALUE : Integer.parseInt(tokens[1]);
+					insert(firstRun, lastRun, tokens[2]);
+				} catch (IllegalArgumentException e) {
+					throw new IOException(index + ":" + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes an index file, replacing the previous one in one step.
+	 *
+	 * @param firstRuns The first run of every range.
+	 * @param lastRuns The last run of every range.
+	 * @param fileNames The calibration file of every range.
+	 * @throws IOException If the index cannot be written.
+	 */
+	private void writeIndex(int firstRuns[], int lastRuns[], String fileNames[]) throws IOException {
+		Path index = new File(directory, INDEX_FILE_NAME).toPath();
+		Path temporary = new File(directory, INDEX_FILE_NAME + ".tmp").toPath();
+		try (Writer writer = Files.newBufferedWriter(temporary)) {
+			writer.write(COMMENT + " firstRun lastRun calibrationFile\n");
+			for (int i = 0; i < firstRuns.length; i++) {
+				String lastRun = (lastRuns[i] == Integer.MAX_VALUE) ? OPEN_RANGE : Integer.toString(lastRuns[i]);
+				writer.write(firstRuns[i] + " " + lastRun + " " + fileNames[i] + "\n");
+			}
+		}
+		Files.move(temporary, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Returns the position of a new range in the sorted index.
+	 *
+	 * @param firstRun The first run of the range.
+	 * @param lastRun The last run of the range.
+	 * @return The position the range is inserted at.
+	 * @throws IllegalArgumentException If the range is empty or overlaps another range.
+	 */
+	private int insertionPoint(int firstRun, int lastRun) {
+		if (lastRun < firstRun) {
+			throw new IllegalArgumentException("empty run range " + firstRun + "-" + lastRun);
+		}
+		int position = Arrays.binarySearch(firstRuns, firstRun);
+		if (position >= 0) {
+			throw new IllegalArgumentException("run range " + firstRun + "-" + lastRun + " overlaps " + fileNames[position]);
+		}
+		position = -position - 1;
+		if (position > 0 && lastRuns[position - 1] >= firstRun) {
+			throw new IllegalArgumentException("run range " + firstRun + "-" + lastRun + " overlaps " + fileNames[position - 1]);
+		}
+		if (position < firstRuns.length && firstRuns[position] <= lastRun) {
+			throw new IllegalArgumentException("run range " + firstRun + "-" + lastRun + " overlaps " + fileNames[position]);
+		}
+		return position;
+	}
+
+	/**
+	 * Inserts a range into the sorted index.
+	 *
+	 * @param firstRun The first run of the range.
+	 * @param lastRun The last run of the range.
+	 * @param fileName The calibration file, relative to the store directory.
+	 * @throws IllegalArgumentException If the range is empty or overlaps another range.
+	 */
+	private void insert(int firstRun, int lastRun, String fileName) {
+		int position = insertionPoint(firstRun, lastRun);
+		firstRuns = insert(firstRuns, position, firstRun);
+		lastRuns = insert(lastRuns, position, lastRun);
+		fileNames = insert(fileNames, position, fileName);
+	}
+
+	/**
+	 * Returns a copy of an array with a value inserted.
+	 *
+	 * @param array The array.
+	 * @param position The position of the new value.
+	 * @param value The new value.
+	 * @return The new array.
+	 */
+	private static int[] insert(int array[], int position, int value) {
+		int result[] = new int[array.length + 1];
+		System.arraycopy(array, 0, result, 0, position);
+		result[position] = value;
+		System.arraycopy(array, position, result, position + 1, array.length - position);
+		return result;
+	}
+
+	/**
+	 * Returns a copy of an array with a value inserted.
+	 *
+	 * @param array The array.
+	 * @param position The position of the new value.
+	 * @param value The new value.
+	 * @return The new array.
+	 */
+	private static String[] insert(String array[], int position, String value) {
+		String result[] = new String[array.length + 1];
+		System.arraycopy(array, 0, result, 0, position);
+		result[position] = value;
+		System.arraycopy(array, position, result, position + 1, array.length - position);
+		return result;
+	}
+
+	/**
+	 * Returns the index of the range holding a run.
+	 *
+	 * @param run The run number.
+	 * @return The index of the range, or -1 if no range holds the run.
+	 */
+	private int find(int run) {
+		int position = Arrays.binarySearch(firstRuns, run);
+		if (position < 0) {
+			// the last range starting before the run
+			position = -position - 2;
+		}
+		return (position >= 0 && run <= lastRuns[position]) ? position : -1;
+	}
+
+	/**
+	 * Adds a calibration set to the store. The file is read and parsed once; its
+	 * text is copied into the store directory, the index is rewritten and the
+	 * compiled copy is written from the parsed constants. The store only takes
+	 * the new range once both the file and the index are written; if either
+	 * fails, the store is left as it was.
+	 *
+	 * @param firstRun The first run the constants are valid for.
+	 * @param lastRun The last run the constants are valid for (Integer.MAX_VALUE for an open range).
+	 * @param calibrationFile The calibration file.
+	 * @throws IOException If the file cannot be copied or the index cannot be written.
+	 * @throws IllegalArgumentException If the range overlaps a range of the store.
+	 * @throws InvalidCalibrationFileException If the calibration file is invalid.
+	 */
+	public void put(int firstRun, int lastRun, File calibrationFile) throws IOException {
+		put(firstRun, lastRun, calibrationFile, null);
+	}
+
+	/**
+	 * Adds a calibration set to the store, reporting the progress of the parse.
+	 * The file is parsed before the store is locked, so the tables of other runs
+	 * can be looked up meanwhile.
+	 *
+	 * @param firstRun The first run the constants are valid for.
+	 * @param lastRun The last run the constants are valid for (Integer.MAX_VALUE for an open range).
+	 * @param calibrationFile The calibration file.
+	 * @param progress Receives the number of items parsed so far (out of {@link CalibrationTable#ITEMS}), or null.
+	 * @throws IOException If the file cannot be copied or the index cannot be written.
+	 * @throws IllegalArgumentException If the range overlaps a range of the store.
+	 * @throws InvalidCalibrationFileException If the calibration file is invalid or the thread is
+	 *             interrupted while it is parsed.
+	 */
+	public void put(int firstRun, int lastRun, File calibrationFile, IntConsumer progress) throws IOException {
+		String fileName = "calibration_" + firstRun + "-" + ((lastRun == Integer.MAX_VALUE) ? "" : Integer.toString(lastRun)) + ".dat";
+		File copy = new File(directory, fileName);
+		byte text[] = Files.readAllBytes(calibrationFile.toPath());
+		CalibrationTable table = CalibrationCache.parse(text, copy.getPath(), progress);
+		add(firstRun, lastRun, fileName, copy, text, table);
+	}
+
+	/**
+	 * Writes a parsed calibration set into the store and takes its range.
+	 *
+	 * @param firstRun The first run the constants are valid for.
+	 * @param lastRun The last run the constants are valid for.
+	 * @param fileName The calibration file, relative to the store directory.
+	 * @param copy The calibration file in the store directory.
+	 * @param text The text of the calibration file.
+	 * @param table The constants parsed from the text.
+	 * @throws IOException If the file or the index cannot be written.
+	 * @throws IllegalArgumentException If the range overlaps a range of the store.
+	 */
+	private synchronized void add(int firstRun, int lastRun, String fileName, File copy, byte text[], CalibrationTable table) throws IOException {
+		int position = insertionPoint(firstRun, lastRun);
+		int newFirstRuns[] = insert(firstRuns, position, firstRun);
+		int newLastRuns[] = insert(lastRuns, position, lastRun);
+		String newFileNames[] = insert(fileNames, position, fileName);
+		Files.createDirectories(directory.toPath());
+		Files.write(copy.toPath(), text);
+		try {
+			writeIndex(newFirstRuns, newLastRuns, newFileNames);
+		} catch (IOException e) {
+			Files.deleteIfExists(copy.toPath());
+			throw e;
+		}
+		firstRuns = newFirstRuns;
+		lastRuns = newLastRuns;
+		fileNames = newFileNames;
+		CalibrationCache.compile(copy, text, table);
+		cache.put(fileName, table);
+	}
+
+	/**
+	 * Returns the calibration constants of a run.
+	 *
+	 * @param run The run number.
+	 * @return The calibration constants, or null if no range holds the run.
+	 * @throws InvalidCalibrationFileException If the calibration file of the run is invalid.
+	 */
+	public synchronized CalibrationTable getTable(int run) {
+		int position = find(run);
+		if (position < 0) {
+			return null;
+		}
+		CalibrationTable table = cache.get(fileNames[position]);
+		if (table == null) {
+			table = CalibrationCache.load(new File(directory, fileNames[position]));
+			cache.put(fileNames[position], table);
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the number of calibration sets in the store.
+	 *
+	 * @return The number of run ranges.
+	 */
+	public synchronized int size() {
+		return firstRuns.length;
+	}
+
+	/**
+	 * Returns the store directory.
+	 *
+	 * @return The store directory.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+}
@@ -0,0 +1,273 @@
+package infn.bed.util;
+
+import infn.bed.geometry.GeometricConstants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.function.IntConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * The calibration constants of every item (scintillator bar or veto), read from
+ * a calibration file in a single pass. A table is immutable, so it can be
+ * shared by every view and thread.
+ *
+ * <p>
+ * The items must appear in the order b1..b9, v1..v34. Every bar is required;
+ * the file may end after any veto, in which case the remaining vetoes have no
+ * constants.
+ * </p>
+ */
+public final class CalibrationTable {
+
+	/**
+	 * The item name of the scintillator bars.
+	 */
+	public static final String BAR = "b";
+
+	/**
+	 * The item name of the vetoes.
+	 */
+	public static final String VETO = "v";
+
+	/**
+	 * The number of items (bars and vetoes) a calibration file can hold.
+	 */
+	public static final int ITEMS = GeometricConstants.BARS + GeometricConstants.VETOES;
+
+	/**
+	 * The comment initializer.
+	 */
+	private static final String COMMENT = "#";
+
+	/**
+	 * The token delimiter.
+	 */
+	private static final Pattern DELIMITER = Pattern.compile("\\s+");
+
+	/**
+	 * The constants of the bars indexed by zero-based bar number.
+	 */
+	private final CalibrationConstants barConstants[];
+
+	/**
+	 * The constants of the vetoes indexed by zero-based veto number (null if absent from the file).
+	 */
+	private final CalibrationConstants vetoConstants[];
+
+	/**
+	 * The name of the file the table was read from.
+	 */
+	private final String source;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param barConstants The constants of the bars indexed by zero-based bar number.
+	 * @param vetoConstants The constants of the vetoes indexed by zero-based veto number.
+	 * @param source The name of the file the table was read from.
+	 */
+	public CalibrationTable(CalibrationConstants barConstants[], CalibrationConstants vetoConstants[], String source) {
+		if (barConstants.length != GeometricConstants.BARS || vetoConstants.length != GeometricConstants.VETOES) {
+			throw new IllegalArgumentException("Expected " + GeometricConstants.BARS + " bars and " + GeometricConstants.VETOES + " vetoes");
+		}
+		this.barConstants = barConstants.clone();
+		this.vetoConstants = vetoConstants.clone();
+		this.source = source;
+	}
+
+	/**
+	 * Reads and validates a calibration file.
+	 *
+	 * @param file The file to parse.
+	 * @return The calibration table.
+	 * @throws InvalidCalibrationFileException If the calibration file cannot be read or is invalid.
+	 */
+	public static CalibrationTable parse(File file) {
+		try (Reader reader = new FileReader(file)) {
+			return parse(reader, file.getPath());
+		} catch (IOException e) {
+			throw new InvalidCalibrationFileException(file.getPath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads and validates calibration constants.
+	 *
+	 * @param reader The calibration file contents.
+	 * @param source The name of the calibration file, used in messages.
+	 * @return The calibration table.
+	 * @throws IOException If the contents cannot be read.
+	 * @throws InvalidCalibrationFileException If the calibration file is invalid.
+	 */
+	public static CalibrationTable parse(Reader reader, String source) throws IOException {
+		return parse(reader, source, null);
+	}
+
+	/**
+	 * Reads and validates calibration constants, reporting the progress. The
+	 * parsing stops if the thread is interrupted.
+	 *
+	 * @param reader The calibration file contents.
+	 * @param source The name of the calibration file, used in messages.
+	 * @param progress Receives the number of items read so far (out of {@link #ITEMS}), or null.
+	 * @return The calibration table.
+	 * @throws IOException If the contents cannot be read or the thread is interrupted.
+	 * @throws InvalidCalibrationFileException If the calibration file is invalid.
+	 */
+	public static CalibrationTable parse(Reader reader, String source, IntConsumer progress) throws IOException {
+		CalibrationConstants bars[] = new CalibrationConstants[GeometricConstants.BARS];
+		CalibrationConstants vetoes[] = new CalibrationConstants[GeometricConstants.VETOES];
+		BufferedReader bufferedReader = new BufferedReader(reader);
+		int items = 0;
+		int lineNumber = 0;
+		String s;
+		while ((s = bufferedReader.readLine()) != null) {
+			lineNumber++;
+			s = s.trim();
+			if (s.isEmpty() || s.startsWith(COMMENT)) {
+				continue;
+			}
+			if (items == bars.length + vetoes.length) {
+				throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": unexpected item after v" + vetoes.length);
+			}
+			String expected = (items < bars.length) ? BAR + (items + 1) : VETO + (items - bars.length + 1);
+			String tokens[] = DELIMITER.split(s);
+			if (!tokens[0].equals(expected)) {
+				throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": expected " + expected + ", found " + tokens[0]);
+			}
+			if (tokens.length != CalibrationConstants.COUNT + 1) {
+				throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": expected " + CalibrationConstants.COUNT + " constants for " + expected);
+			}
+			double values[] = new double[CalibrationConstants.COUNT];
+			try {
+				for (int i = 0; i < values.length; i++) {
+					values[i] = Double.parseDouble(tokens[i + 1]);
+				}
+			} catch (NumberFormatException e) {
+				throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": " + e.getMessage());
+			}
+			if (items < bars.length) {
+				bars[items] = new CalibrationConstants(values);
+			} else {
+				vetoes[items - bars.length] = new CalibrationConstants(values);
+			}
+			items++;
+			if (progress != null) {
+				progress.accept(items);
+			}
+			if (Thread.currentThread().isInterrupted()) {
+				throw new InterruptedIOException(source + ": loading cancelled");
+			}
+		}
+		if (items < bars.length) {
+			throw new InvalidCalibrationFileException(source + ": missing " + BAR + (items + 1));
+		}
+		return new CalibrationTable(bars, vetoes, source);
+	}
+
+	/**
+	 * Returns the constants of an item.
+	 *
+	 * @param item The item name (b for scintillator bar or v for veto).
+	 * @param identificationNumber The identification number of the item.
+	 * @return The constants, or null if the item has none.
+	 */
+	public CalibrationConstants getConstants(String item, int identificationNumber) {
+		if (BAR.equals(item)) {
+			return getBarConstants(identificationNumber);
+		}
+		if (VETO.equals(item)) {
+			return getVetoConstants(identificationNumber);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the constants of a bar.
+	 *
+	 * @param bar The bar number in one-based indexing.
+	 * @return The constants, or null if the bar number is out of range.
+	 */
+	public CalibrationConstants getBarConstants(int bar) {
+		return (bar < 1 || bar > barConstants.length) ? null : barConstants[bar - 1];
+	}
+
+	/**
+	 * Returns the constants of a veto.
+	 *
+	 * @param veto The veto number in one-based indexing.
+	 * @return The constants, or null if the veto has none.
+	 */
+	public CalibrationConstants getVetoConstants(int veto) {
+		return (veto < 1 || veto > vetoConstants.length) ? null : vetoConstants[veto - 1];
+	}
+
+	/**
+	 * Returns the name of the file the table was read from.
+	 *
+	 * @return The name of the calibration file.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	/**
+	 * Writes the table in calibration file format. The vetoes are written up to
+	 * the first one without constants.
+	 *
+	 * @param writer The destination.
+	 * @throws IOException If the table cannot be written.
+	 */
+	public void write(Writer writer) throws IOException {
+		PrintWriter out = new PrintWriter(writer);
+		out.println(COMMENT + "item veff Aleft Aright lambda deltaL deltaR tdcConvLeft tdcConvRight L");
+		out.println(COMMENT + "N/A cm/ns MeV MeV cm ns ns 1/ns 1/ns cm");
+		for (int i = 0; i < barConstants.length; i++) {
+			write(out, BAR + (i + 1), barConstants[i]);
+		}
+		for (int i = 0; i < vetoConstants.length && vetoConstants[i] != null; i++) {
+			write(out, VETO + (i + 1), vetoConstants[i]);
+		}
+		out.flush();
+		if (out.checkError()) {
+			throw new IOException("Cannot write the calibration constants");
+		}
+	}
+
+	/**
+	 * Writes the table to a calibration file.
+	 *
+	 * @param file The calibration file.
+	 * @throws IOException If the file cannot be written.
+	 */
+	public void write(File file) throws IOException {
+		try (Writer writer = new FileWriter(file)) {
+			write(writer);
+		}
+	}
+
+	/**
+	 * Writes the constants of one item.
+	 *
+	 * @param out The destination.
+	 * @param name The item name and number.
+	 * @param constants The constants.
+	 */
+	private static void write(PrintWriter out, String name, CalibrationConstants constants) {
+		out.print(name);
+		for (double value : constants.toArray()) {
+			out.print(' ');
+			out.print(value);
+		}
+		out.println();
+	}
+
+}
@@ -0,0 +1,215 @@
+package infn.bed.util;
+
+import infn.bed.math.MathematicalConstants;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * The pulse-finding parameters of every FADC (flash analog-to-digital converter) channel: the
+ * threshold, the resistance and the sample period. A table is immutable and holds the parameters
+ * in primitive arrays indexed by channel, so the pulse finder reads them once per channel.
+ *
+ * <p>
+ * A channel parameters file has one line per channel, "channel threshold resistance samplePeriod",
+ * with # comments. Channels not listed keep the defaults of {@link MathematicalConstants}.
+ * </p>
+ *
+ * <p>
+ * The table in use is switched at runtime with {@link #setCurrent(ChannelParameters)}; the events
+ * decoded afterwards, or re-run through the pulse finder, use the new table.
+ * </p>
+ */
+public final class ChannelParameters {
+
+	/**
+	 * The number of FADC channels.
+	 */
+	public static final int CHANNELS = 34;
+
+	/**
+	 * The default sample period of the FADC in ns.
+	 */
+	public static final int DEFAULT_SAMPLE_PERIOD = 4;
+
+	/**
+	 * The table with the same defaults for every channel.
+	 */
+	public static final ChannelParameters DEFAULT = new ChannelParameters();
+
+	/**
+	 * The comment initializer.
+	 */
+	private static final String COMMENT = "#";
+
+	/**
+	 * The token delimiter.
+	 */
+	private static final Pattern DELIMITER = Pattern.compile("\\s+");
+
+	/**
+	 * The table in use.
+	 */
+	private static volatile ChannelParameters current = DEFAULT;
+
+	/**
+	 * The threshold of every channel in ADC units (uncalibrated).
+	 */
+	private final int threshold[] = new int[CHANNELS];
+
+	/**
+	 * The resistance of every channel in ohms.
+	 */
+	private final int resistance[] = new int[CHANNELS];
+
+	/**
+	 * The sample period of every channel in ns.
+	 */
+	private final int samplePeriod[] = new int[CHANNELS];
+
+	/**
+	 * The name of the file the table was read from, or null for the defaults.
+	 */
+	private final String source;
+
+	/**
+	 * Creates the table of defaults.
+	 */
+	private ChannelParameters() {
+		this(null);
+	}
+
+	/**
+	 * Creates a table of defaults to be overridden by a file.
+	 *
+	 * @param source The name of the file.
+	 */
+	private ChannelParameters(String source) {
+		Arrays.fill(threshold, MathematicalConstants.ADC_THRESHOLD);
+		Arrays.fill(resistance, MathematicalConstants.FADC_RESISTANCE);
+		Arrays.fill(samplePeriod, DEFAULT_SAMPLE_PERIOD);
+		this.source = source;
+	}
+
+	/**
+	 * Reads and validates a channel parameters file.
+	 *
+	 * @param file The file to parse.
+	 * @return The channel parameters.
+	 * @throws InvalidCalibrationFileException If the file cannot be read or is invalid.
+	 */
+	public static ChannelParameters parse(File file) {
+		try (Reader reader = new FileReader(file)) {
+			return parse(reader, file.getPath());
+		} catch (IOException e) {
+			throw new InvalidCalibrationFileException(file.getPath() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads and validates channel parameters.
+	 *
+	 * @param reader The file contents.
+	 * @param source The name of the file, used in messages.
+	 * @return The channel parameters.
+	 * @throws IOException If the contents cannot be read.
+	 * @throws InvalidCalibrationFileException If the file is invalid.
+	 */
+	public static ChannelParameters parse(Reader reader, String source) throws IOException {
+		ChannelParameters parameters = new ChannelParameters(source);
+		BufferedReader bufferedReader = new BufferedReader(reader);
+		int lineNumber = 0;
+		String s;
+		while ((s = bufferedReader.readLine()) != null) {
+			lineNumber++;
+			s = s.trim();
+			if (s.isEmpty() || s.startsWith(COMMENT)) {
+				continue;
+			}
+			String tokens[] = DELIMITER.split(s);
+			if (tokens.length != 4) {
+				throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": expected channel threshold resistance samplePeriod");
+			}
+			try {
+				int channel = Integer.parseInt(tokens[0]);
+				if (channel < 0 || channel >= CHANNELS) {
+					throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": channel " + channel + " out of range");
+				}
+				int resistance = Integer.parseInt(tokens[2]);
+				int samplePeriod = Integer.parseInt(tokens[3]);
+				if (resistance <= 0 || samplePeriod <= 0) {
+					throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": resistance and sample period must be positive");
+				}
+				parameters.threshold[channel] = Integer.parseInt(tokens[1]);
+				parameters.resistance[channel] = resistance;
+				parameters.samplePeriod[channel] = samplePeriod;
+			} catch (NumberFormatException e) {
+				throw new InvalidCalibrationFileException(source + ":" + lineNumber + ": " + e.getMessage());
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Returns the table in use.
+	 *
+	 * @return The channel parameters in use.
+	 */
+	public static ChannelParameters getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Replaces the table in use.
+	 *
+	 * @param parameters The channel parameters, or null for the defaults.
+	 */
+	public static void setCurrent(ChannelParameters parameters) {
+		current = (parameters == null) ? DEFAULT : parameters;
+	}
+
+	/**
+	 * Returns the threshold of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The threshold in ADC units (uncalibrated).
+	 */
+	public int getThreshold(int channel) {
+		return threshold[channel];
+	}
+
+	/**
+	 * Returns the resistance of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The resistance in ohms.
+	 */
+	public int getResistance(int channel) {
+		return resistance[channel];
+	}
+
+	/**
+	 * Returns the sample period of a channel.
+	 *
+	 * @param channel The channel.
+	 * @return The sample period in ns.
+	 */
+	public int getSamplePeriod(int channel) {
+		return samplePeriod[channel];
+	}
+
+	/**
+	 * Returns the name of the file the table was read from.
+	 *
+	 * @return The name of the file, or null for the defaults.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+}
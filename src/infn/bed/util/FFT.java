@@ -0,0 +1,108 @@
+package infn.bed.util;
+
+/**
+ * An in-place radix-2 fast Fourier transform of a fixed size on primitive arrays.
+ *
+ * <p>
+ * The bit-reversal permutation and the twiddle factors are computed once by the constructor; the
+ * twiddle factors of every stage are stored next to each other, so the butterflies of a stage read
+ * them in order and the inner loop has no trigonometry and no allocation.
+ * </p>
+ */
+public final class FFT {
+
+	/**
+	 * The number of points.
+	 */
+	private final int size;
+
+	/**
+	 * The bit-reversed index of every point.
+	 */
+	private final int reversed[];
+
+	/**
+	 * The real parts of the twiddle factors; those of the stage with butterflies of half-width h
+	 * start at h - 1.
+	 */
+	private final double cos[];
+
+	/**
+	 * The imaginary parts of the twiddle factors, indexed like cos.
+	 */
+	private final double sin[];
+
+	/**
+	 * The constructor.
+	 *
+	 * @param size The number of points, a power of two.
+	 */
+	public FFT(int size) {
+		if (size < 1 || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("FFT size must be a power of two: " + size);
+		}
+		this.size = size;
+		reversed = new int[size];
+		int bits = Integer.numberOfTrailingZeros(size);
+		for (int i = 0; i < size; i++) {
+			reversed[i] = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+		}
+		cos = new double[Math.max(1, size - 1)];
+		sin = new double[cos.length];
+		for (int half = 1; half < size; half <<= 1) {
+			for (int k = 0; k < half; k++) {
+				double angle = -Math.PI * k / half;
+				cos[half - 1 + k] = Math.cos(angle);
+				sin[half - 1 + k] = Math.sin(angle);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of points.
+	 *
+	 * @return The size of the transform.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Replaces a complex sequence by its discrete Fourier transform, X[k] = sum x[n] exp(-2 pi i k n
+	 * / size), without normalization.
+	 *
+	 * @param re The real parts, at least size long.
+	 * @param im The imaginary parts, at least size long.
+	 */
+	public void transform(double re[], double im[]) {
+		for (int i = 0; i < size; i++) {
+			int j = reversed[i];
+			if (j > i) {
+				double t = re[i];
+				re[i] = re[j];
+				re[j] = t;
+				t = im[i];
+				im[i] = im[j];
+				im[j] = t;
+			}
+		}
+		for (int half = 1; half < size; half <<= 1) {
+			int twiddle = half - 1;
+			for (int start = 0; start < size; start += 2 * half) {
+				for (int k = 0; k < half; k++) {
+					int a = start + k;
+					int b = a + half;
+					double wr = cos[twiddle + k];
+					double wi = sin[twiddle + k];
+					double tr = wr * re[b] - wi * im[b];
+					double ti = wr * im[b] + wi * re[b];
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+		}
+	}
+
+}
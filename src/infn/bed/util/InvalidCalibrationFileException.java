@@ -14,5 +14,14 @@ public class InvalidCalibrationFileException extends RuntimeException {
 	public InvalidCalibrationFileException() {
 		super();
 	}
-	
+
+	/**
+	 * The constructor.
+	 *
+	 * @param message The reason the calibration file is invalid.
+	 */
+	public InvalidCalibrationFileException(String message) {
+		super(message);
+	}
+
 }
\ No newline at end of file
@@ -1,6 +1,9 @@
 package infn.bed.view;
 
 import infn.bed.component.ControlPanel;
+import infn.bed.event.AccumulationSnapshot;
+import infn.bed.event.EventCache;
+import infn.bed.event.IEventCacheListener;
 
 import java.awt.Point;
 import java.awt.event.ActionListener;
@@ -26,7 +29,8 @@ import cnuphys.bCNU.view.EventDisplayView;
  * @author Angelo Licastro
  */
 @SuppressWarnings("serial")
-public abstract class BedView extends EventDisplayView {
+public abstract class BedView extends EventDisplayView implements
+		IEventCacheListener {
 
 	/**
 	 * An instance of the ControlPanel object.
@@ -48,6 +52,11 @@ public abstract class BedView extends EventDisplayView {
 	 */
 	private String _lastTrajectory;
 
+	/**
+	 * The accumulation snapshot the view was last repainted for.
+	 */
+	private AccumulationSnapshot _lastSnapshot;
+
 	/**
 	 * The constructor.
 	 * 
@@ -56,7 +65,9 @@ public abstract class BedView extends EventDisplayView {
 	public BedView(Object... args) {
 		super(args);
 		createHeartbeat();
+		createAccumulationRefresh();
 		prepareForHovering();
+		EventCache.getInstance().addEventCacheListener(this);
 	}
 
 	/**
@@ -81,6 +92,30 @@ public abstract class BedView extends EventDisplayView {
 		new Timer(delay, taskPerformer).start();
 	}
 
+	/**
+	 * Creates a timer that repaints the accumulated mode display at a fixed
+	 * cadence, whatever the event rate.
+	 */
+	private void createAccumulationRefresh() {
+		ActionListener taskPerformer = event -> refreshAccumulation();
+		new Timer(AccumulationSnapshot.REFRESH_MILLIS, taskPerformer).start();
+	}
+
+	/**
+	 * Repaints the accumulated mode display if a newer accumulation snapshot
+	 * is available.
+	 */
+	private void refreshAccumulation() {
+		if (getMode() != Mode.ACCUMULATED) {
+			return;
+		}
+		AccumulationSnapshot snapshot = AccumulationSnapshot.refresh();
+		if (snapshot != _lastSnapshot) {
+			_lastSnapshot = snapshot;
+			getUserComponent().repaint();
+		}
+	}
+
 	/**
 	 * Sets up mouse listeners for hovering.
 	 */
@@ -190,10 +225,20 @@ public abstract class BedView extends EventDisplayView {
 	public void newPhysicsEvent(final EvioEvent event) {
 		super.newPhysicsEvent(event);
 		if (!EventControl.getInstance().isAccumulating()) {
-			getUserComponent().repaint();
+			// repainted at the next frame, with whatever event is current then
+			DisplayScheduler.getInstance().markDirty(getUserComponent());
 		}
 	}
 
+	/**
+	 * The cached events have been reprocessed, so the displayed event may have
+	 * changed.
+	 */
+	@Override
+	public void cachedEventsReprocessed() {
+		DisplayScheduler.getInstance().markDirty(getUserComponent());
+	}
+
 	/**
 	 * Creates a hovering window.
 	 * 
@@ -0,0 +1,200 @@
+package infn.bed.view;
+
+import infn.bed.component.ControlPanel;
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.CoincidenceMatrix;
+import infn.bed.geometry.GeometricConstants;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+
+import cnuphys.bCNU.attributes.AttributeType;
+import cnuphys.bCNU.drawable.DrawableAdapter;
+import cnuphys.bCNU.drawable.IDrawable;
+import cnuphys.bCNU.graphics.GraphicsUtilities;
+import cnuphys.bCNU.graphics.container.IContainer;
+import cnuphys.bCNU.graphics.toolbar.BaseToolBar;
+import cnuphys.bCNU.graphics.world.WorldGraphicsUtilities;
+
+/**
+ * Draws the accumulated bar and veto coincidence matrix as a heat map. Row and
+ * column d are bar d + 1 for the first bars and veto d - BARS + 1 for the rest.
+ * The diagonal (events in which a detector fired at all) is scaled separately
+ * from the coincidences.
+ */
+@SuppressWarnings("serial")
+public class CoincidenceView extends BedView {
+
+	/**
+	 * The number of rows and columns.
+	 */
+	private static final int N = AccumulationManager.DETECTORS;
+
+	/**
+	 * The grid used for positioning the cells, one unit per detector.
+	 */
+	private static Rectangle2D.Double _defaultWorldRectangle = new Rectangle2D.Double(
+			0.0, 0.0, N, N);
+
+	/**
+	 * Constructor.
+	 *
+	 * @param keyVals
+	 *            used in the super class (BedView) to set up parameters of this
+	 *            view
+	 */
+	private CoincidenceView(Object... keyVals) {
+		super(keyVals);
+		setBeforeDraw();
+	}
+
+	/**
+	 * Method used to create an instance of this class
+	 *
+	 * @return the new instance of the view
+	 */
+	public static CoincidenceView createCoincidenceView() {
+		CoincidenceView view = null;
+
+		// set to a fraction of screen
+		Dimension d = GraphicsUtilities.screenFraction(0.5);
+
+		// create the view
+		view = new CoincidenceView(
+				AttributeType.WORLDSYSTEM,
+				_defaultWorldRectangle,
+				AttributeType.WIDTH,
+				d.height, // container width, not total view width
+				AttributeType.HEIGHT,
+				d.height, // container height, not total view width
+				AttributeType.TOOLBAR, true, AttributeType.TOOLBARBITS,
+				BaseToolBar.NODRAWING & ~BaseToolBar.RANGEBUTTON
+						& ~BaseToolBar.TEXTFIELD
+						& ~BaseToolBar.CONTROLPANELBUTTON
+						& ~BaseToolBar.TEXTBUTTON & ~BaseToolBar.DELETEBUTTON,
+				AttributeType.VISIBLE, false, AttributeType.HEADSUP, false,
+				AttributeType.TITLE, "Coincidences",
+				AttributeType.STANDARDVIEWDECORATIONS, true);
+
+		view._controlPanel = new ControlPanel(view, ControlPanel.FEEDBACK
+				| ControlPanel.ACCUMULATIONLEGEND, 0);
+
+		view.add(view._controlPanel, BorderLayout.EAST);
+		view.pack();
+		return view;
+	}
+
+	/**
+	 * Draws the heat map cells from a snapshot of the accumulated counts
+	 */
+	private void setBeforeDraw() {
+		IDrawable beforeDraw = new DrawableAdapter() {
+
+			@Override
+			public void draw(Graphics g, IContainer container) {
+				CoincidenceMatrix matrix = AccumulationManager.getInstance()
+						.getCoincidenceMatrix();
+				long counts[] = matrix.snapshot();
+
+				long maxSingles = 0;
+				long maxPairs = 0;
+				for (int i = 0; i < N; i++) {
+					for (int j = i; j < N; j++) {
+						long count = counts[matrix.index(i, j)];
+						if (i == j) {
+							maxSingles = Math.max(maxSingles, count);
+						} else {
+							maxPairs = Math.max(maxPairs, count);
+						}
+					}
+				}
+
+				Rectangle2D.Double cell = new Rectangle2D.Double(0, 0, 1, 1);
+				for (int i = 0; i < N; i++) {
+					for (int j = 0; j < N; j++) {
+						long count = counts[matrix.index(i, j)];
+						long max = (i == j) ? maxSingles : maxPairs;
+						Color color = (count < 1 || max < 1) ? Color.white
+								: AccumulationManager.getColorScaleModel()
+										.getColor(((double) count) / max);
+						cell.setRect(j, N - 1 - i, 1, 1);
+						WorldGraphicsUtilities.drawWorldRectangle(g, container,
+								cell, color, Color.lightGray);
+					}
+				}
+			}
+
+		};
+
+		getContainer().setBeforeDraw(beforeDraw);
+	}
+
+	/**
+	 * Returns the name of a detector of the coincidence matrix.
+	 *
+	 * @param detector
+	 *            the zero-based row or column
+	 * @return the name of the bar or veto
+	 */
+	private static String getDetectorName(int detector) {
+		if (detector < GeometricConstants.BARS) {
+			return "Bar " + (detector + 1);
+		}
+		return "Veto " + (detector - GeometricConstants.BARS + 1);
+	}
+
+	/**
+	 * Displays the detector pair and the counts under the mouse.
+	 *
+	 * @param container
+	 *            the base container for the view.
+	 * @param screenPoint
+	 *            the pixel point
+	 * @param worldPoint
+	 *            the corresponding world location.
+	 * @param feedbackStrings
+	 *            the List of feedback strings to add to.
+	 */
+	@Override
+	public void getFeedbackStrings(IContainer container, Point screenPoint,
+			Point2D.Double worldPoint, List<String> feedbackStrings) {
+		super.getFeedbackStrings(container, screenPoint, worldPoint,
+				feedbackStrings);
+		if (_defaultWorldRectangle.contains(worldPoint)) {
+			int i = N - 1 - (int) worldPoint.y;
+			int j = (int) worldPoint.x;
+			CoincidenceMatrix matrix = AccumulationManager.getInstance()
+					.getCoincidenceMatrix();
+			feedbackStrings.add(getDetectorName(i) + " x "
+					+ getDetectorName(j));
+			feedbackStrings.add("$orange$Coincidences:  "
+					+ matrix.getCount(i, j));
+			feedbackStrings.add(getDetectorName(i) + " hits:  "
+					+ matrix.getCount(i, i));
+			feedbackStrings.add(getDetectorName(j) + " hits:  "
+					+ matrix.getCount(j, j));
+		}
+	}
+
+	/**
+	 * Gets which row of the matrix the point is in.
+	 *
+	 * @param worldPoint
+	 *            the corresponding world location.
+	 * @return the row (1-based) or -1 for none.
+	 */
+	@Override
+	public int getSector(Point2D.Double worldPoint) {
+		if (_defaultWorldRectangle.contains(worldPoint)) {
+			return N - (int) worldPoint.y;
+		}
+		return -1;
+	}
+
+}
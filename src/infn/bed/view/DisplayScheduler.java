@@ -0,0 +1,165 @@
+package infn.bed.view;
+
+import java.awt.Component;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.swing.Timer;
+
+/**
+ * Decouples the event rate from the rendering rate: a new event only marks a view dirty, and the
+ * dirty views are repainted at most at the maximum frame rate. A repaint draws whatever event is
+ * current at that moment, so the display always shows the most recent event; the events that
+ * arrive between two frames are never drawn and are counted as dropped frames.
+ *
+ * <p>
+ * Marking is thread-safe and cheap, so it can be done from the event thread at any rate. The frames
+ * are started by a Swing timer on the event dispatch thread.
+ * </p>
+ */
+public class DisplayScheduler {
+
+	/**
+	 * The default maximum frame rate in frames per second.
+	 */
+	public static final int DEFAULT_FRAME_RATE = 30;
+
+	/**
+	 * The highest maximum frame rate in frames per second.
+	 */
+	public static final int MAX_FRAME_RATE = 120;
+
+	/**
+	 * The instance of this class. There can only be one.
+	 */
+	private static DisplayScheduler instance;
+
+	/**
+	 * The components waiting for their next frame.
+	 */
+	private final Set<Component> dirty = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The number of repaint requests.
+	 */
+	private final LongAdder requested = new LongAdder();
+
+	/**
+	 * The number of repaints done.
+	 */
+	private final LongAdder drawn = new LongAdder();
+
+	/**
+	 * Starts a frame at the frame period.
+	 */
+	private final Timer timer;
+
+	/**
+	 * The maximum frame rate in frames per second.
+	 */
+	private volatile int frameRate = DEFAULT_FRAME_RATE;
+
+	/**
+	 * Private constructor for singleton DisplayScheduler.
+	 */
+	private DisplayScheduler() {
+		timer = new Timer(1000 / DEFAULT_FRAME_RATE, event -> frame());
+		timer.setCoalesce(true);
+		timer.start();
+	}
+
+	/**
+	 * Public access to the display scheduler singleton.
+	 *
+	 * @return The display scheduler singleton.
+	 */
+	public static synchronized DisplayScheduler getInstance() {
+		if (instance == null) {
+			instance = new DisplayScheduler();
+		}
+		return instance;
+	}
+
+	/**
+	 * Asks for a component to be repainted in the next frame. Asking again before that frame drops
+	 * the frame of the earlier request.
+	 *
+	 * @param component The component.
+	 */
+	public void markDirty(Component component) {
+		requested.increment();
+		dirty.add(component);
+	}
+
+	/**
+	 * Repaints the dirty components.
+	 */
+	private void frame() {
+		for (Iterator<Component> iterator = dirty.iterator(); iterator.hasNext();) {
+			Component component = iterator.next();
+			// removed before the repaint, so a request during the repaint gets a frame too
+			iterator.remove();
+			component.repaint();
+			drawn.increment();
+		}
+	}
+
+	/**
+	 * Sets the maximum frame rate.
+	 *
+	 * @param frameRate The frame rate in frames per second, from 1 to {@link #MAX_FRAME_RATE}.
+	 */
+	public void setFrameRate(int frameRate) {
+		this.frameRate = Math.max(1, Math.min(MAX_FRAME_RATE, frameRate));
+		timer.setDelay(1000 / this.frameRate);
+	}
+
+	/**
+	 * Returns the maximum frame rate.
+	 *
+	 * @return The frame rate in frames per second.
+	 */
+	public int getFrameRate() {
+		return frameRate;
+	}
+
+	/**
+	 * Returns the number of repaint requests.
+	 *
+	 * @return The number of times a component was marked dirty.
+	 */
+	public long getRequestedFrames() {
+		return requested.sum();
+	}
+
+	/**
+	 * Returns the number of repaints done.
+	 *
+	 * @return The number of frames drawn.
+	 */
+	public long getDrawnFrames() {
+		return drawn.sum();
+	}
+
+	/**
+	 * Returns the number of repaint requests that were merged into a later frame.
+	 *
+	 * @return The number of frames dropped, not counting the ones still waiting.
+	 */
+	public long getDroppedFrames() {
+		return Math.max(0, getRequestedFrames() - getDrawnFrames() - dirty.size());
+	}
+
+	/**
+	 * Returns a one-line summary of the frame counts.
+	 *
+	 * @return The summary.
+	 */
+	@Override
+	public String toString() {
+		return "maximum " + frameRate + " fps, " + getDrawnFrames() + " frames drawn, " + getDroppedFrames() + " dropped";
+	}
+
+}
@@ -3,13 +3,18 @@ package infn.bed.view;
 import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.swing.Timer;
+
 import cnuphys.bCNU.attributes.AttributeType;
 import cnuphys.bCNU.drawable.DrawableAdapter;
 import cnuphys.bCNU.drawable.IDrawable;
@@ -21,6 +26,7 @@ import cnuphys.bCNU.graphics.world.WorldGraphicsUtilities;
 import cnuphys.bCNU.layer.LogicalLayer;
 import cnuphys.bCNU.util.X11Colors;
 import infn.bed.component.ControlPanel;
+import infn.bed.event.RateMeter;
 import infn.bed.geometry.GeometricConstants;
 import infn.bed.item.FullSideViewBar;
 import infn.bed.item.FullSideViewVeto;
@@ -112,6 +118,21 @@ public class FullSideView extends BedView {
 	 */
 	private static Rectangle2D.Double _defaultWorldRectangle = new Rectangle2D.Double(0.0, 0.0, 3.0, 3.0);
 
+	/**
+	 * The interval between two repaints of the rate overlay in ms.
+	 */
+	private static final int RATE_REFRESH_MILLIS = 1000;
+
+	/**
+	 * The font of the rate overlay.
+	 */
+	private static final Font RATE_FONT = new Font(Font.SANS_SERIF, Font.BOLD, 10);
+
+	/**
+	 * true if the live rate of every bar and veto is drawn over it.
+	 */
+	private static volatile boolean _rateOverlay;
+
 	/**
 	 * Constructor.
 	 * 
@@ -124,6 +145,29 @@ public class FullSideView extends BedView {
 		setBeforeDraw();
 		setAfterDraw();
 		addItems();
+		new Timer(RATE_REFRESH_MILLIS, event -> {
+			if (_rateOverlay) {
+				getUserComponent().repaint();
+			}
+		}).start();
+	}
+
+	/**
+	 * Returns whether the live rates are drawn over the bars and vetoes.
+	 * 
+	 * @return true if the rate overlay is shown, false otherwise.
+	 */
+	public static boolean isRateOverlay() {
+		return _rateOverlay;
+	}
+
+	/**
+	 * Sets whether the live rates are drawn over the bars and vetoes.
+	 * 
+	 * @param rateOverlay true to show the rate overlay.
+	 */
+	public static void setRateOverlay(boolean rateOverlay) {
+		_rateOverlay = rateOverlay;
 	}
 
 	/**
@@ -367,19 +411,57 @@ public class FullSideView extends BedView {
 	}
 
 	/**
-	 * Can be used to draw things based on the final layout, but unused at the current moment
+	 * Draws the live rates over the bars and vetoes if the rate overlay is on.
 	 */
 	private void setAfterDraw() {
 		IDrawable _afterDraw = new DrawableAdapter() {
 			@Override
 			public void draw(Graphics g, IContainer container) {
-				// ...
+				if (!_rateOverlay) {
+					return;
+				}
+				RateMeter rateMeter = RateMeter.getInstance();
+				g.setFont(RATE_FONT);
+				// only the first cells are bars, the others stay blank
+				int bars = Math.min(GeometricConstants.BARS, _barWorldRectanglesArrayList.size());
+				for (int bar = 0; bar < bars; bar++) {
+					drawRate(g, container, _barWorldRectanglesArrayList.get(bar), rateMeter.getRate(bar));
+				}
+				for (int veto = 0; veto < _vetoWorldRectanglesArrayList.size(); veto++) {
+					drawRate(g, container, _vetoWorldRectanglesArrayList.get(veto), rateMeter.getRate(GeometricConstants.BARS + veto));
+				}
 			}
 		};
 		
 		getContainer().setAfterDraw(_afterDraw);
 	}
 
+	/**
+	 * Draws a rate centered in a bar or veto rectangle, on a dark background so that it stays
+	 * readable over any fill color.
+	 * 
+	 * @param g the graphics context.
+	 * @param container the rendering container.
+	 * @param worldRectangle the rectangle of the bar or veto.
+	 * @param rate the rate in Hz.
+	 */
+	private static void drawRate(Graphics g, IContainer container, Rectangle2D.Double worldRectangle, double rate) {
+		Rectangle r = new Rectangle();
+		container.worldToLocal(r, worldRectangle);
+		String text = RateMeter.format(rate);
+		FontMetrics fm = g.getFontMetrics();
+		int width = fm.stringWidth(text);
+		if (width + 2 > r.width || fm.getHeight() > r.height) {
+			return;
+		}
+		int x = r.x + (r.width - width) / 2;
+		int y = r.y + (r.height - fm.getHeight()) / 2;
+		g.setColor(new Color(0, 0, 0, 160));
+		g.fillRect(x - 1, y, width + 2, fm.getHeight());
+		g.setColor(Color.white);
+		g.drawString(text, x, y + fm.getAscent());
+	}
+
 	/**
 	 * Creates the bar and veto instances that will handle and display hits
 	 */
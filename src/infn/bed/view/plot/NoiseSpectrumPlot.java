@@ -0,0 +1,114 @@
+package infn.bed.view.plot;
+
+import infn.bed.event.NoiseSpectrum;
+
+import java.awt.Color;
+import java.util.Collection;
+
+import javax.swing.Timer;
+
+import cnuphys.bCNU.view.PlotView;
+import cnuphys.splot.fit.FitType;
+import cnuphys.splot.pdata.DataColumn;
+import cnuphys.splot.pdata.DataColumnType;
+import cnuphys.splot.pdata.DataSet;
+import cnuphys.splot.pdata.DataSetException;
+import cnuphys.splot.pdata.DataSetType;
+import cnuphys.splot.plot.PlotParameters;
+import cnuphys.splot.style.SymbolType;
+
+/**
+ * Plots the average noise power spectrum of one FADC (flash analog-to-digital converter) channel in
+ * dB, refreshed while the plot is visible and new spectra come in.
+ */
+@SuppressWarnings("serial")
+public class NoiseSpectrumPlot extends PlotView {
+
+	/**
+	 * The interval between two refreshes in ms.
+	 */
+	private static final int REFRESH_MILLIS = 1000;
+
+	/**
+	 * The channel.
+	 */
+	private final int channel;
+
+	/**
+	 * The number of spectra of the last refresh.
+	 */
+	private long plottedSpectra = -1;
+
+	/**
+	 * The constructor.
+	 *
+	 * @param channel The FADC channel.
+	 */
+	public NoiseSpectrumPlot(int channel) {
+		super();
+		this.channel = channel;
+		setTitle("Noise Spectrum Channel " + channel);
+		new Timer(REFRESH_MILLIS, e -> {
+			if (isVisible()) {
+				refresh();
+			}
+		}).start();
+	}
+
+	/**
+	 * Replots the spectrum if spectra were added or cleared since the last refresh.
+	 */
+	public void refresh() {
+		NoiseSpectrum noiseSpectrum = NoiseSpectrum.getInstance();
+		long spectra = noiseSpectrum.getSpectra(channel);
+		if (spectra == plottedSpectra) {
+			return;
+		}
+		plottedSpectra = spectra;
+		DataSet dataSet;
+		try {
+			dataSet = new DataSet(DataSetType.XYXY, WavePlot.getColumnNames());
+		} catch (DataSetException e) {
+			e.printStackTrace();
+			return;
+		}
+		double average[] = noiseSpectrum.getAverage(channel);
+		if (spectra > 0) {
+			for (int bin = 0; bin < average.length; bin++) {
+				// -100 dB stands in for empty bins
+				double power = (average[bin] > 0) ? 10 * Math.log10(average[bin]) : -100;
+				dataSet.add(noiseSpectrum.getFrequency(channel, bin), power);
+			}
+		}
+		_plotCanvas.setDataSet(dataSet);
+		setPreferences(spectra, noiseSpectrum.getRms(channel));
+		_plotCanvas.repaint();
+	}
+
+	/**
+	 * Sets the preferences for the plot.
+	 *
+	 * @param spectra The number of spectra averaged.
+	 * @param rms The RMS noise in ADC.
+	 */
+	private void setPreferences(long spectra, double rms) {
+		Collection<DataColumn> yDataColumns = _plotCanvas.getDataSet().getAllColumnsByType(DataColumnType.Y);
+		for (DataColumn dataColumn : yDataColumns) {
+			dataColumn.getFit().setFitType(FitType.CONNECT);
+			dataColumn.getStyle().setSymbolType(SymbolType.CIRCLE);
+			dataColumn.getStyle().setSymbolSize(3);
+			dataColumn.getStyle().setFillColor(new Color(0, 0, 255, 96));
+			dataColumn.getStyle().setLineColor(Color.black);
+		}
+		PlotParameters plotParameters = _plotCanvas.getParameters();
+		plotParameters.mustIncludeXZero(true);
+		plotParameters.setXLabel("MHz");
+		plotParameters.setYLabel("dB ADC^2");
+		String title = "Channel " + channel + ": " + spectra + " spectra";
+		if (spectra > 0) {
+			title += String.format(", RMS %.2f ADC", rms);
+		}
+		plotParameters.setPlotTitle(title);
+	}
+
+}
@@ -0,0 +1,186 @@
+package infn.bed.view.plot;
+
+import infn.bed.event.AccumulationManager;
+import infn.bed.event.WaveformPersistence;
+import infn.bed.util.ChannelParameters;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Draws the waveform persistence of one channel as an image: sample time on the horizontal axis,
+ * ADC value on the vertical axis and the number of waveforms through each cell on a logarithmic
+ * color scale. The image is cropped to the samples and ADC values that were hit and redrawn at a
+ * fixed cadence while the panel is showing. There is one panel per channel, which moves to the
+ * newest plot of the channel, so replacing the plots does not allocate new images and timers.
+ */
+@SuppressWarnings("serial")
+class PersistencePanel extends JComponent {
+
+	/**
+	 * The interval between two redraws in ms.
+	 */
+	private static final int REFRESH_MILLIS = 500;
+
+	/**
+	 * The margin around the image in pixels.
+	 */
+	private static final int MARGIN = 36;
+
+	/**
+	 * The number of entries of the color lookup table.
+	 */
+	private static final int COLORS = 256;
+
+	/**
+	 * The font of the labels.
+	 */
+	private static final Font LABEL_FONT = new Font(Font.SANS_SERIF, Font.PLAIN, 10);
+
+	/**
+	 * The panel of every channel, created when first shown.
+	 */
+	private static final PersistencePanel panels[] = new PersistencePanel[WaveformPersistence.CHANNELS];
+
+	/**
+	 * The channel.
+	 */
+	private final int channel;
+
+	/**
+	 * Redraws the panel while it is showing.
+	 */
+	private final Timer timer = new Timer(REFRESH_MILLIS, e -> repaint());
+
+	/**
+	 * The image, one pixel per cell.
+	 */
+	private final BufferedImage image = new BufferedImage(WaveformPersistence.SAMPLES, WaveformPersistence.ADC_BINS, BufferedImage.TYPE_INT_RGB);
+
+	/**
+	 * The constructor.
+	 *
+	 * @param channel The FADC channel.
+	 */
+	private PersistencePanel(int channel) {
+		this.channel = channel;
+		setOpaque(true);
+		setBackground(Color.black);
+		setPreferredSize(new Dimension(400, 300));
+	}
+
+	/**
+	 * Returns the panel of a channel, creating it when first asked for. Adding the panel to a plot
+	 * removes it from the plot that showed it before.
+	 *
+	 * @param channel The FADC channel.
+	 * @return The panel.
+	 */
+	static synchronized PersistencePanel getPanel(int channel) {
+		if (panels[channel] == null) {
+			panels[channel] = new PersistencePanel(channel);
+		}
+		return panels[channel];
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		timer.start();
+	}
+
+	@Override
+	public void removeNotify() {
+		timer.stop();
+		super.removeNotify();
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		g.setColor(getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+		g.setFont(LABEL_FONT);
+		g.setColor(Color.white);
+		FontMetrics fm = g.getFontMetrics();
+
+		WaveformPersistence persistence = WaveformPersistence.getInstance();
+		int density[] = persistence.snapshot(channel);
+		String title = "Channel " + channel + ": " + persistence.getWaveforms(channel) + " waveforms";
+		g.drawString(title, MARGIN, fm.getAscent() + 2);
+		if (density == null) {
+			return;
+		}
+
+		// crop to the cells that were hit
+		int max = 0;
+		int lastSample = 0;
+		int lowBin = WaveformPersistence.ADC_BINS;
+		int highBin = -1;
+		for (int sample = 0; sample < WaveformPersistence.SAMPLES; sample++) {
+			int row = sample * WaveformPersistence.ADC_BINS;
+			for (int bin = 0; bin < WaveformPersistence.ADC_BINS; bin++) {
+				int count = density[row + bin];
+				if (count > 0) {
+					max = Math.max(max, count);
+					lastSample = sample;
+					lowBin = Math.min(lowBin, bin);
+					highBin = Math.max(highBin, bin);
+				}
+			}
+		}
+		if (max == 0) {
+			return;
+		}
+		lowBin = Math.max(0, lowBin - 1);
+		highBin = Math.min(WaveformPersistence.ADC_BINS - 1, highBin + 1);
+		int samples = lastSample + 1;
+		int bins = highBin - lowBin + 1;
+
+		int colors[] = new int[COLORS];
+		for (int i = 0; i < COLORS; i++) {
+			colors[i] = AccumulationManager.getColorScaleModel().getColor((i + 1.0) / COLORS).getRGB();
+		}
+		double scale = (COLORS - 1) / Math.log1p(max);
+		int background = getBackground().getRGB();
+		for (int sample = 0; sample < samples; sample++) {
+			int row = sample * WaveformPersistence.ADC_BINS;
+			for (int bin = lowBin; bin <= highBin; bin++) {
+				int count = density[row + bin];
+				// ADC values increase upwards
+				image.setRGB(sample, highBin - bin, (count == 0) ? background : colors[(int) (Math.log1p(count) * scale)]);
+			}
+		}
+
+		int width = getWidth() - 2 * MARGIN;
+		int height = getHeight() - 2 * MARGIN;
+		if (width > 0 && height > 0) {
+			Graphics2D g2 = (Graphics2D) g;
+			g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			g2.drawImage(image, MARGIN, MARGIN, MARGIN + width, MARGIN + height, 0, 0, samples, bins, null);
+			g.setColor(Color.gray);
+			g.drawRect(MARGIN, MARGIN, width, height);
+		}
+
+		g.setColor(Color.white);
+		int period = ChannelParameters.getCurrent().getSamplePeriod(channel);
+		int bottom = getHeight() - MARGIN + fm.getAscent() + 2;
+		g.drawString("0", MARGIN, bottom);
+		String end = (samples * period) + " ns";
+		g.drawString(end, getWidth() - MARGIN - fm.stringWidth(end), bottom);
+		String top = Integer.toString(WaveformPersistence.getAdcLowEdge(highBin + 1));
+		g.drawString(top, Math.max(0, MARGIN - fm.stringWidth(top) - 2), MARGIN + fm.getAscent());
+		String low = Integer.toString(WaveformPersistence.getAdcLowEdge(lowBin));
+		g.drawString(low, Math.max(0, MARGIN - fm.stringWidth(low) - 2), getHeight() - MARGIN);
+		g.drawString("ADC", 2, getHeight() / 2);
+	}
+
+}
@@ -1,6 +1,7 @@
 package infn.bed.view.plot;
 
 import java.awt.Color;
+import java.awt.Container;
 import java.util.Collection;
 
 import cnuphys.bCNU.view.PlotView;
@@ -22,11 +23,74 @@ import cnuphys.splot.style.SymbolType;
 @SuppressWarnings("serial")
 public class WavePlot extends PlotView {
 
+	/**
+	 * true if the plots show the accumulated waveform persistence, false if they show the waveform
+	 * of the current event.
+	 */
+	private static volatile boolean persistence;
+
+	/**
+	 * The FADC (flash analog-to-digital converter) channel, or -1 if unknown.
+	 */
+	private final int channel;
+
+	/**
+	 * The content pane with the waveform of the current event.
+	 */
+	private Container traceContentPane;
+
 	/**
 	 * The constructor.
 	 */
 	public WavePlot() {
+		this(-1);
+	}
+
+	/**
+	 * The constructor.
+	 * 
+	 * @param channel The FADC channel the plot shows.
+	 */
+	public WavePlot(int channel) {
 		super();
+		this.channel = channel;
+	}
+
+	/**
+	 * Returns whether the plots show the accumulated waveform persistence.
+	 * 
+	 * @return true if the plots show the waveform persistence, false if they show the waveform of
+	 *         the current event.
+	 */
+	public static boolean isPersistence() {
+		return persistence;
+	}
+
+	/**
+	 * Sets whether the plots show the accumulated waveform persistence. Plots that exist already
+	 * switch on their next {@link #updateMode()}.
+	 * 
+	 * @param persistence true to show the waveform persistence, false to show the waveform of the
+	 *            current event.
+	 */
+	public static void setPersistence(boolean persistence) {
+		WavePlot.persistence = persistence;
+	}
+
+	/**
+	 * Shows the waveform persistence or the waveform of the current event, whichever is selected.
+	 */
+	public void updateMode() {
+		boolean showPersistence = persistence && (channel >= 0);
+		if (traceContentPane == null) {
+			traceContentPane = getContentPane();
+		}
+		Container content = showPersistence ? PersistencePanel.getPanel(channel) : traceContentPane;
+		if (getContentPane() != content) {
+			setContentPane(content);
+			revalidate();
+			repaint();
+		}
 	}
 
 	/**
@@ -95,6 +159,7 @@ public class WavePlot extends PlotView {
 	public void addData(DataSet dataSet, boolean isLeft) {
 		this._plotCanvas.setDataSet(dataSet);
 		setPreferences(isLeft);
+		updateMode();
 	}
 
 }
\ No newline at end of file